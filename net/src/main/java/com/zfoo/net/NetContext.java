@@ -19,8 +19,11 @@ import com.zfoo.net.core.AbstractClient;
 import com.zfoo.net.core.AbstractServer;
 import com.zfoo.net.packet.IPacketService;
 import com.zfoo.net.router.IRouter;
+import com.zfoo.net.router.PacketStatistics;
+import com.zfoo.net.router.SignalBridge;
 import com.zfoo.net.session.ISessionManager;
 import com.zfoo.net.task.TaskBus;
+import com.zfoo.net.task.VirtualTaskBus;
 import com.zfoo.protocol.exception.ExceptionUtils;
 import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.ReflectionUtils;
@@ -113,6 +116,10 @@ public class NetContext implements ApplicationListener<ApplicationContextEvent>,
             instance.configManager.initRegistry();
             instance.consumer.init();
 
+            if (instance.configManager.getLocalConfig().isStatistics()) {
+                PacketStatistics.enable();
+            }
+
             logger.info("Net started successfully and cost [{}] seconds", stopWatch.costSeconds());
         } else if (event instanceof ContextClosedEvent) {
             shutdownBefore();
@@ -146,6 +153,12 @@ public class NetContext implements ApplicationListener<ApplicationContextEvent>,
             for (ExecutorService executor : executors) {
                 ThreadUtils.shutdown(executor);
             }
+            var stealingExecutor = TaskBus.stealingExecutor();
+            if (stealingExecutor != null) {
+                ThreadUtils.shutdown(stealingExecutor);
+            }
+            VirtualTaskBus.shutdown();
+            SignalBridge.shutdown();
         } catch (Throwable e) {
             logger.error("Net thread pool failed shutdown: " + ExceptionUtils.getMessage(e));
             return;
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.zfoo.net.anno;
+
+import java.lang.annotation.*;
+
+/**
+ * EN: Map a http path to the protocol class, the path variables like /user/{uid} and the query parameters are bound to the fields of the protocol with the same name
+ * CN: 把http的路径映射到协议类，路径变量（比如/user/{uid}）和查询参数会绑定到协议中同名的属性上
+ *
+ * @author godotg
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface HttpRoute {
+
+    /**
+     * eg: /hello, /user/{uid}
+     */
+    String value();
+
+    /**
+     * http method, eg: GET, POST
+     */
+    String[] method() default {"GET", "POST"};
+
+}
@@ -14,6 +14,11 @@
 package com.zfoo.net.config.model;
 
 import com.zfoo.net.consumer.registry.Register;
+import com.zfoo.net.core.TransportType;
+import com.zfoo.net.router.FlushStrategy;
+import com.zfoo.net.router.UnwritablePolicy;
+import com.zfoo.net.task.BackPressurePolicy;
+import com.zfoo.net.task.TaskExecutorStrategy;
 import com.zfoo.protocol.generate.GenerateOperation;
 
 import java.util.Objects;
@@ -40,6 +45,106 @@ public class NetConfig {
      */
     private String codeLanguages;
 
+    /**
+     * 发送消息的flush策略，为空则使用IMMEDIATE
+     */
+    private FlushStrategy flushStrategy;
+
+    /**
+     * BATCH策略下，积累多少个包立刻flush
+     */
+    private int flushBatchSize;
+
+    /**
+     * TaskBus的线程模型，为空则使用SINGLE_THREAD
+     */
+    private TaskExecutorStrategy taskExecutor;
+
+    /**
+     * WORK_STEALING模型下，每个taskExecutorHash的最大排队任务数量，小于等于0表示无界
+     */
+    private int taskQueueCapacity;
+
+    /**
+     * WORK_STEALING模型下，任务队列满了之后的处理策略，为空则使用DISCARD
+     */
+    private BackPressurePolicy taskBackPressure;
+
+    /**
+     * 是否使用对象池回收入站消息的DecodedPacketInfo，PacketReceiverTask和网关的GatewayAttachment
+     */
+    private boolean inboundRecycle;
+
+    /**
+     * 网关是否直接透传客户端的消息到Provider，不解码和重新编码，Provider也需要使用支持透传的版本
+     */
+    private boolean gatewayPassthrough;
+
+    /**
+     * 包体超过这个大小才会压缩，小于等于0表示不压缩，压缩需要客户端和服务器协商
+     */
+    private int compressThreshold;
+
+    /**
+     * TcpCodecHandler发送的包超过这个大小会被切成多个分片逐步发送，小于等于0表示不分片
+     */
+    private int fragmentSize;
+
+    /**
+     * channel不可写的时候NORMAL和DROPPABLE通道的消息的处理策略，为空则使用WRITE
+     */
+    private UnwritablePolicy unwritablePolicy;
+
+    /**
+     * UdpServer和UdpClient使用可靠udp层，每个对端一个UdpPeerChannel
+     */
+    private boolean udpReliable;
+
+    /**
+     * 可靠udp层的一个datagram的最大长度，小于等于0使用默认的1400
+     */
+    private int udpMtu;
+
+    /**
+     * 可靠udp层的发送和接收窗口的分片数量，小于等于0使用默认的256
+     */
+    private int udpWindow;
+
+    /**
+     * 可靠udp服务器的最大对端数量，超过之后新的对端的握手会被拒绝，小于等于0使用默认的10000
+     */
+    private int udpMaxPeers;
+
+    /**
+     * 服务器和客户端使用的传输层，为空则使用AUTO，IO_URING不可用的时候回退到EPOLL，EPOLL不可用的时候回退到NIO
+     */
+    private TransportType transport;
+
+    /**
+     * websocket服务器的permessage-deflate压缩，客户端压缩窗口的大小（window bits，9到15），小于等于0表示不开启
+     */
+    private int websocketDeflateWindow;
+
+    /**
+     * 一次flush中的多个小包合并成一个websocket帧，合并的帧不超过这个大小，小于等于0表示每个包一个帧
+     */
+    private int websocketCoalesceSize;
+
+    /**
+     * 记录每个协议和每个Session的流量和处理耗时，可以通过JMX或者HttpServer的metrics路径读取
+     */
+    private boolean statistics;
+
+    /**
+     * 服务器的空闲超时时间（秒），超时没有任何读写则关闭连接，会根据客户端的心跳间隔自适应的缩短，小于等于0使用默认的180
+     */
+    private int idleTimeout;
+
+    /**
+     * 客户端空闲多少秒之后发送心跳，需要小于服务器的idle-timeout，小于等于0使用默认的60
+     */
+    private int heartbeatInterval;
+
     /**
      * 注册中心
      */
@@ -153,6 +258,166 @@ public class NetConfig {
         this.codeLanguages = codeLanguages;
     }
 
+    public FlushStrategy getFlushStrategy() {
+        return flushStrategy;
+    }
+
+    public void setFlushStrategy(FlushStrategy flushStrategy) {
+        this.flushStrategy = flushStrategy;
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    public void setFlushBatchSize(int flushBatchSize) {
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    public TaskExecutorStrategy getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    public void setTaskExecutor(TaskExecutorStrategy taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    public int getTaskQueueCapacity() {
+        return taskQueueCapacity;
+    }
+
+    public void setTaskQueueCapacity(int taskQueueCapacity) {
+        this.taskQueueCapacity = taskQueueCapacity;
+    }
+
+    public BackPressurePolicy getTaskBackPressure() {
+        return taskBackPressure;
+    }
+
+    public void setTaskBackPressure(BackPressurePolicy taskBackPressure) {
+        this.taskBackPressure = taskBackPressure;
+    }
+
+    public boolean isInboundRecycle() {
+        return inboundRecycle;
+    }
+
+    public void setInboundRecycle(boolean inboundRecycle) {
+        this.inboundRecycle = inboundRecycle;
+    }
+
+    public boolean isGatewayPassthrough() {
+        return gatewayPassthrough;
+    }
+
+    public void setGatewayPassthrough(boolean gatewayPassthrough) {
+        this.gatewayPassthrough = gatewayPassthrough;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public int getFragmentSize() {
+        return fragmentSize;
+    }
+
+    public void setFragmentSize(int fragmentSize) {
+        this.fragmentSize = fragmentSize;
+    }
+
+    public UnwritablePolicy getUnwritablePolicy() {
+        return unwritablePolicy;
+    }
+
+    public void setUnwritablePolicy(UnwritablePolicy unwritablePolicy) {
+        this.unwritablePolicy = unwritablePolicy;
+    }
+
+    public boolean isUdpReliable() {
+        return udpReliable;
+    }
+
+    public void setUdpReliable(boolean udpReliable) {
+        this.udpReliable = udpReliable;
+    }
+
+    public int getUdpMtu() {
+        return udpMtu;
+    }
+
+    public void setUdpMtu(int udpMtu) {
+        this.udpMtu = udpMtu;
+    }
+
+    public int getUdpWindow() {
+        return udpWindow;
+    }
+
+    public void setUdpWindow(int udpWindow) {
+        this.udpWindow = udpWindow;
+    }
+
+    public int getUdpMaxPeers() {
+        return udpMaxPeers;
+    }
+
+    public void setUdpMaxPeers(int udpMaxPeers) {
+        this.udpMaxPeers = udpMaxPeers;
+    }
+
+    public TransportType getTransport() {
+        return transport;
+    }
+
+    public void setTransport(TransportType transport) {
+        this.transport = transport;
+    }
+
+    public int getWebsocketDeflateWindow() {
+        return websocketDeflateWindow;
+    }
+
+    public void setWebsocketDeflateWindow(int websocketDeflateWindow) {
+        this.websocketDeflateWindow = websocketDeflateWindow;
+    }
+
+    public int getWebsocketCoalesceSize() {
+        return websocketCoalesceSize;
+    }
+
+    public void setWebsocketCoalesceSize(int websocketCoalesceSize) {
+        this.websocketCoalesceSize = websocketCoalesceSize;
+    }
+
+    public boolean isStatistics() {
+        return statistics;
+    }
+
+    public void setStatistics(boolean statistics) {
+        this.statistics = statistics;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
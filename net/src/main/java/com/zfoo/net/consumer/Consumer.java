@@ -34,6 +34,7 @@ import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -41,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * 服务调度和负载均衡，两个关键点：摘除故障节点，负载均衡
@@ -56,6 +58,23 @@ public class Consumer implements IConsumer {
     // consumer|provider -> LoadBalancer
     private final Map<String, IConsumerLoadBalancer> consumerLoadBalancerMap = new HashMap<>();
 
+    /**
+     * 数组下标为ProtocolModule的id，服务提供者变化的时候整体替换（copy on write），查找服务提供者不需要遍历所有的clientSession
+     */
+    private final AtomicReferenceArray<ProviderModuleCache> providerModuleCaches = new AtomicReferenceArray<>(ProtocolManager.MAX_MODULE_NUM);
+
+    private static class ProviderModuleCache {
+        // 不可变的服务提供者列表
+        private final List<Session> providers;
+        // 这个模块的服务提供者的第一个消费者的loadBalancer，可能为null
+        private final IConsumerLoadBalancer loadBalancer;
+
+        private ProviderModuleCache(List<Session> providers, IConsumerLoadBalancer loadBalancer) {
+            this.providers = providers;
+            this.loadBalancer = loadBalancer;
+        }
+    }
+
     @Override
     public void init() {
         var consumerConfig = NetContext.getConfigManager().getLocalConfig().getConsumer();
@@ -67,60 +86,86 @@ public class Consumer implements IConsumer {
             var loadBalancer = AbstractConsumerLoadBalancer.valueOf(consumer.getLoadBalancer());
             consumerLoadBalancerMap.put(consumer.getConsumer(), loadBalancer);
         }
+        updateProviders();
     }
 
+    /**
+     * clientSession的增加删除或者clientSession的消费者注册信息变化的时候调用，重新计算每个模块的服务提供者
+     */
+    @Override
+    public synchronized void updateProviders() {
+        for (var module : ProtocolManager.modules) {
+            if (module == null) {
+                continue;
+            }
+            var list = new ArrayList<Session>();
+            NetContext.getSessionManager().forEachClientSession(session -> {
+                var consumerAttribute = session.getConsumerRegister();
+                if (consumerAttribute == null) {
+                    return;
+                }
+                var providerConfig = consumerAttribute.getProviderConfig();
+                if (providerConfig == null) {
+                    return;
+                }
+                var providers = providerConfig.getProviders();
+                if (providers == null) {
+                    return;
+                }
+                if (providers.stream().noneMatch(it -> it.getProtocolModule().equals(module.getName()))) {
+                    return;
+                }
+                list.add(session);
+            });
+
+            if (list.isEmpty()) {
+                providerModuleCaches.set(module.getId(), null);
+                continue;
+            }
+            var providers = List.copyOf(list);
+            providerModuleCaches.set(module.getId(), new ProviderModuleCache(providers, findLoadBalancer(providers)));
+        }
+    }
 
     // find all session that can process interface/packet of protocolModule
     @Override
     public List<Session> findProviders(Object packet) {
         var protocolModule = ProtocolManager.moduleByProtocol(packet.getClass());
-        var list = new ArrayList<Session>();
-        NetContext.getSessionManager().forEachClientSession(session -> {
-            var consumerAttribute = session.getConsumerRegister();
-            if (consumerAttribute == null) {
-                return;
-            }
-            var providerConfig = consumerAttribute.getProviderConfig();
-            if (providerConfig == null) {
-                return;
-            }
-            var providers = providerConfig.getProviders();
-            if (providers == null) {
-                return;
-            }
-            if (providers.stream().noneMatch(it -> it.getProtocolModule().equals(protocolModule.getName()))) {
-                return;
-            }
-            list.add(session);
-        });
-        if (CollectionUtils.isEmpty(list)) {
+        var providerModuleCache = providerModuleCaches.get(protocolModule.getId());
+        if (providerModuleCache == null) {
             throw new RunException("[protocol:{}] has no service that provides the [module:{}]", packet.getClass().getSimpleName(), protocolModule);
         }
-        return list;
+        return providerModuleCache.providers;
     }
 
     // Select a consumer loadBalancer
     @Override
     public IConsumerLoadBalancer selectLoadBalancer(List<Session> providers, Object packet) {
+        var protocolModule = ProtocolManager.moduleByProtocol(packet.getClass());
+        var providerModuleCache = providerModuleCaches.get(protocolModule.getId());
+        // providers是findProviders返回的，直接使用缓存的loadBalancer
+        var loadBalancer = (providerModuleCache != null && providerModuleCache.providers == providers)
+                ? providerModuleCache.loadBalancer
+                : findLoadBalancer(providers);
+        if (loadBalancer == null) {
+            throw new RunException("[protocol:{}] can not find any loadBalancer for the [module:{}]", packet.getClass().getSimpleName(), protocolModule);
+        }
+        return loadBalancer;
+    }
+
+    @Nullable
+    private IConsumerLoadBalancer findLoadBalancer(List<Session> providers) {
         // select first consumer loadBalancer
         // 不同的服务提供者可能会提供同一个接口，消费者可能同时消费了这些提供了同一个接口的服务提供者，取第一个消费者的loadBalancer
-        IConsumerLoadBalancer loadBalancer = null;
         for (var providerSession : providers) {
             for (var provider : providerSession.getConsumerRegister().getProviderConfig().getProviders()) {
-                if (consumerLoadBalancerMap.containsKey(provider.getProvider())) {
-                    loadBalancer = consumerLoadBalancerMap.get(provider.getProvider());
-                    break;
+                var loadBalancer = consumerLoadBalancerMap.get(provider.getProvider());
+                if (loadBalancer != null) {
+                    return loadBalancer;
                 }
             }
-            if (loadBalancer != null) {
-                break;
-            }
         }
-        if (loadBalancer == null) {
-            var protocolModule = ProtocolManager.moduleByProtocol(packet.getClass());
-            throw new RunException("[protocol:{}] can not find any loadBalancer for the [module:{}]", packet.getClass().getSimpleName(), protocolModule);
-        }
-        return loadBalancer;
+        return null;
     }
 
 
@@ -133,15 +178,34 @@ public class Consumer implements IConsumer {
         NetContext.getRouter().send(session, packet, NoAnswerAttachment.valueOf(taskExecutorHash));
     }
 
+    @Override
+    public void send(Object packet, long argument) {
+        var providers = findProviders(packet);
+        var loadBalancer = selectLoadBalancer(providers, packet);
+        var session = loadBalancer.selectProvider(providers, packet, argument);
+        var taskExecutorHash = TaskBus.calTaskExecutorHash(argument);
+        NetContext.getRouter().send(session, packet, NoAnswerAttachment.valueOf(taskExecutorHash));
+    }
+
     @Override
     public <T> SyncAnswer<T> syncAsk(Object packet, Class<T> answerClass, Object argument) throws Exception {
         var providers = findProviders(packet);
         var loadBalancer = selectLoadBalancer(providers, packet);
         var session = loadBalancer.selectProvider(providers, packet, argument);
+        return syncAsk(session, loadBalancer, packet, answerClass, TaskBus.calTaskExecutorHash(argument));
+    }
 
+    @Override
+    public <T> SyncAnswer<T> syncAsk(Object packet, Class<T> answerClass, long argument) throws Exception {
+        var providers = findProviders(packet);
+        var loadBalancer = selectLoadBalancer(providers, packet);
+        var session = loadBalancer.selectProvider(providers, packet, argument);
+        return syncAsk(session, loadBalancer, packet, answerClass, TaskBus.calTaskExecutorHash(argument));
+    }
+
+    private <T> SyncAnswer<T> syncAsk(Session session, IConsumerLoadBalancer loadBalancer, Object packet, Class<T> answerClass, int taskExecutorHash) throws Exception {
         // 下面的代码逻辑同Router的syncAsk，如果修改的话，记得一起修改
         var clientSignalAttachment = new SignalAttachment();
-        var taskExecutorHash = TaskBus.calTaskExecutorHash(argument);
         clientSignalAttachment.setTaskExecutorHash(taskExecutorHash);
 
         try {
@@ -178,9 +242,20 @@ public class Consumer implements IConsumer {
         var providers = findProviders(packet);
         var loadBalancer = selectLoadBalancer(providers, packet);
         var session = loadBalancer.selectProvider(providers, packet, argument);
+        var asyncAnswer = NetContext.getRouter().asyncAsk(session, packet, answerClass, argument);
+        return asyncAsk(session, loadBalancer, packet, asyncAnswer);
+    }
 
+    @Override
+    public <T> AsyncAnswer<T> asyncAsk(Object packet, Class<T> answerClass, long argument) {
+        var providers = findProviders(packet);
+        var loadBalancer = selectLoadBalancer(providers, packet);
+        var session = loadBalancer.selectProvider(providers, packet, argument);
         var asyncAnswer = NetContext.getRouter().asyncAsk(session, packet, answerClass, argument);
+        return asyncAsk(session, loadBalancer, packet, asyncAnswer);
+    }
 
+    private <T> AsyncAnswer<T> asyncAsk(Session session, IConsumerLoadBalancer loadBalancer, Object packet, AsyncAnswer<T> asyncAnswer) {
         // load balancer之前调用
         loadBalancer.beforeLoadBalancer(session, packet, asyncAnswer.getSignalAttachment());
 
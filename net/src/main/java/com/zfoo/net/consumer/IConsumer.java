@@ -28,6 +28,12 @@ public interface IConsumer {
 
     void init();
 
+    /**
+     * EN: Update the protocol module indexed providers, called when the client sessions or their registers changed
+     * CN: 更新按照协议模块索引的服务提供者，clientSession或者clientSession的注册信息变化的时候调用
+     */
+    void updateProviders();
+
     List<Session> findProviders(Object packet);
 
     IConsumerLoadBalancer selectLoadBalancer(List<Session> providers, Object packet);
@@ -42,8 +48,17 @@ public interface IConsumer {
      */
     void send(Object packet, @Nullable Object argument);
 
+    /**
+     * 和send(packet, Long.valueOf(argument))相同，使用用户的uid计算负载均衡的时候不需要装箱
+     */
+    void send(Object packet, long argument);
+
     <T> SyncAnswer<T> syncAsk(Object packet, Class<T> answerClass, @Nullable Object argument) throws Exception;
 
+    <T> SyncAnswer<T> syncAsk(Object packet, Class<T> answerClass, long argument) throws Exception;
+
     <T> AsyncAnswer<T> asyncAsk(Object packet, Class<T> answerClass, @Nullable Object argument);
 
+    <T> AsyncAnswer<T> asyncAsk(Object packet, Class<T> answerClass, long argument);
+
 }
@@ -37,14 +37,19 @@ public class CachedConsistentHashLoadBalancer extends AbstractConsumerLoadBalanc
             return RandomLoadBalancer.getInstance().selectProvider(providers, packet, argument);
         }
 
-        if (!(argument instanceof Number)) {
+        // 只有整数才能作为缓存的key，和HashUtils.fnvHash(Object)一样按照long计算一致性hash
+        if (!(argument instanceof Long || argument instanceof Integer || argument instanceof Short || argument instanceof Byte)) {
             return ConsistentHashLoadBalancer.getInstance().selectProvider(providers, packet, argument);
         }
 
-        var arg = (Number) argument;
+        return selectProvider(providers, packet, ((Number) argument).longValue());
+    }
+
+    @Override
+    public Session selectProvider(List<Session> providers, Object packet, long argument) {
         var protocolModuleId = (long) ProtocolManager.moduleByProtocol(packet.getClass()).getId();
         // 8 Byte cachedKey = 7 byte of argument + 1 byte of protocolModuleId
-        var cachedKey = arg.longValue() << 8 | protocolModuleId;
+        var cachedKey = argument << 8 | protocolModuleId;
         var sid = cache.get(cachedKey);
         if (sid == null) {
             var providerSession = ConsistentHashLoadBalancer.getInstance().selectProvider(providers, packet, argument);
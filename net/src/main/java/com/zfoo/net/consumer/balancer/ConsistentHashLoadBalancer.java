@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.Nullable;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -47,13 +48,22 @@ public class ConsistentHashLoadBalancer extends AbstractConsumerLoadBalancer {
     private static final AtomicReferenceArray<ConsistentCache> consistentHashMap = new AtomicReferenceArray<>(ProtocolManager.MAX_MODULE_NUM);
     private static final int VIRTUAL_NODE_NUMS = 200;
 
+    /**
+     * 服务提供者列表的引用就是这个缓存的版本号（epoch），Consumer在服务提供者变化的时候会替换整个列表，
+     * 所以引用相同就说明服务提供者没有变化，不需要每次都对比所有的服务提供者
+     */
     public static class ConsistentCache {
+        public List<Session> providers;
         public HashSetLong providerSids;
+        // 一致性hash环，value为sessions数组的下标
         public FastTreeMapIntLong treeMap;
+        public Session[] sessions;
 
-        public ConsistentCache(HashSetLong providerSids, FastTreeMapIntLong treeMap) {
+        public ConsistentCache(List<Session> providers, HashSetLong providerSids, FastTreeMapIntLong treeMap, Session[] sessions) {
+            this.providers = providers;
             this.providerSids = providerSids;
             this.treeMap = treeMap;
+            this.sessions = sessions;
         }
     }
 
@@ -78,39 +88,76 @@ public class ConsistentHashLoadBalancer extends AbstractConsumerLoadBalancer {
             return RandomLoadBalancer.getInstance().selectProvider(providers, packet, argument);
         }
 
+        return selectProvider(providers, packet, HashUtils.fnvHash(argument));
+    }
+
+    /**
+     * 和selectProvider(providers, packet, Long.valueOf(argument))的结果相同，使用用户的uid计算一致性hash的时候不需要装箱
+     */
+    @Override
+    public Session selectProvider(List<Session> providers, Object packet, long argument) {
+        return selectProvider(providers, packet, HashUtils.fnvHash(argument));
+    }
+
+    private Session selectProvider(List<Session> providers, Object packet, int hash) {
         var module = ProtocolManager.moduleByProtocol(packet.getClass());
         var consistentCache = consistentHashMap.get(module.getId());
         if (consistentCache == null) {
             consistentCache = updateModuleToConsistentHash(providers, module);
-        }
-        var providerSids = consistentCache.providerSids;
-        // providers和consistentHashMap的服务提供者不一致同样进行更新操作
-        if (providerSids.size() != providers.size() || providers.stream().anyMatch(it -> !providerSids.contains(it.getSid()))) {
-            consistentCache = updateModuleToConsistentHash(providers, module);
+        } else if (consistentCache.providers != providers) {
+            // providers和consistentHashMap的服务提供者不一致同样进行更新操作，一致的话只更新版本号
+            consistentCache = sameProviders(consistentCache, providers)
+                    ? updateModuleEpoch(consistentCache, providers, module)
+                    : updateModuleToConsistentHash(providers, module);
         }
         var treeMap = consistentCache.treeMap;
-        var nearestIndex = treeMap.indexOfNearestCeilingKey(HashUtils.fnvHash(argument));
+        var nearestIndex = treeMap.indexOfNearestCeilingKey(hash);
         if (nearestIndex < 0) {
             throw new RunException("no service provides the [module:{}]", module);
         }
-        var sid = treeMap.getByIndex(nearestIndex);
-        // 因为每次都会对比sid，一定会从providers获得session
-        return providers.stream().filter(it -> it.getSid() == sid).findFirst().get();
+        return consistentCache.sessions[(int) treeMap.getByIndex(nearestIndex)];
+    }
+
+    private boolean sameProviders(ConsistentCache consistentCache, List<Session> providers) {
+        var providerSids = consistentCache.providerSids;
+        if (providerSids.size() != providers.size()) {
+            return false;
+        }
+        for (var i = 0; i < providers.size(); i++) {
+            if (!providerSids.contains(providers.get(i).getSid())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ConsistentCache updateModuleEpoch(ConsistentCache consistentCache, List<Session> providers, ProtocolModule module) {
+        var newConsistentCache = new ConsistentCache(providers, consistentCache.providerSids, consistentCache.treeMap, consistentCache.sessions);
+        consistentHashMap.set(module.getId(), newConsistentCache);
+        return newConsistentCache;
     }
 
     @Nullable
     private ConsistentCache updateModuleToConsistentHash(List<Session> providers, ProtocolModule module) {
         var sessionStringList = providers.stream()
-                .map(session -> new Pair<>(session.getConsumerRegister().toString(), session.getSid()))
+                .map(session -> new Pair<>(session.getConsumerRegister().toString(), session))
                 .sorted((a, b) -> a.getKey().compareTo(b.getKey()))
                 .toList();
 
         var consistentHash = new ConsistentHash<>(sessionStringList, VIRTUAL_NODE_NUMS);
         var virtualNodeTreeMap = consistentHash.getVirtualNodeTreeMap();
 
+        // 虚拟节点直接映射到sessions数组的下标，选择服务提供者的时候不需要再查找session
+        var sessions = new Session[sessionStringList.size()];
+        var sidIndexMap = new HashMap<Long, Long>();
+        for (var i = 0; i < sessions.length; i++) {
+            sessions[i] = sessionStringList.get(i).getValue();
+            sidIndexMap.put(sessions[i].getSid(), (long) i);
+        }
+
         var virtualTreeMap = new TreeMap<Integer, Long>();
         for (var entry : virtualNodeTreeMap.entrySet()) {
-            virtualTreeMap.put(entry.getKey(), entry.getValue().getValue());
+            virtualTreeMap.put(entry.getKey(), sidIndexMap.get(entry.getValue().getValue().getSid()));
         }
 
         // 缓存服务提供者的sid
@@ -119,7 +166,7 @@ public class ConsistentHashLoadBalancer extends AbstractConsumerLoadBalancer {
         // 使用更高性能的tree map
         var fastTreeMap = new FastTreeMapIntLong(virtualTreeMap);
 
-        var consistentCache = new ConsistentCache(sidSet, fastTreeMap);
+        var consistentCache = new ConsistentCache(providers, sidSet, fastTreeMap, sessions);
         consistentHashMap.set(module.getId(), consistentCache);
         return consistentCache;
     }
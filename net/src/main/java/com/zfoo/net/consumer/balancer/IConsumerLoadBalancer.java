@@ -34,6 +34,14 @@ public interface IConsumerLoadBalancer {
      */
     Session selectProvider(List<Session> providers, Object packet, @Nullable Object argument);
 
+    /**
+     * 和selectProvider(providers, packet, Long.valueOf(argument))的结果相同，一般是用户的uid。
+     * 默认装箱之后调用上面的方法，一致性hash的负载均衡器重写这个方法，计算的时候不需要装箱
+     */
+    default Session selectProvider(List<Session> providers, Object packet, long argument) {
+        return selectProvider(providers, packet, Long.valueOf(argument));
+    }
+
     default void beforeLoadBalancer(Session session, Object packet, SignalAttachment attachment) {
     }
 
@@ -39,4 +39,9 @@ public class RandomLoadBalancer extends AbstractConsumerLoadBalancer {
         return RandomUtils.randomEle(providers);
     }
 
+    @Override
+    public Session selectProvider(List<Session> providers, Object packet, long argument) {
+        return RandomUtils.randomEle(providers);
+    }
+
 }
@@ -477,6 +477,7 @@ public class ZookeeperRegistry implements IRegistry {
                 if (!SessionUtils.isActive(consumer)) {
                     recheckFlag = true;
                     NetContext.getSessionManager().removeClientSession(consumer);
+                    NetContext.getConsumer().updateProviders();
                     logger.error("[consumer:{}] lost connection, removed from ClientSession", consumer);
                 }
                 continue;
@@ -497,6 +498,7 @@ public class ZookeeperRegistry implements IRegistry {
                 }
 
                 session.setConsumerRegister(providerCache);
+                NetContext.getConsumer().updateProviders();
                 logger.info("Consumer starts consuming the provider:[{}]", providerCache);
                 EventBus.post(ConsumerStartEvent.valueOf(providerCache, session));
             } catch (Throwable t) {
@@ -15,18 +15,14 @@ package com.zfoo.net.core;
 
 import com.zfoo.net.NetContext;
 import com.zfoo.net.handler.BaseRouteHandler;
+import com.zfoo.net.packet.PacketService;
 import com.zfoo.net.session.Session;
 import com.zfoo.protocol.exception.ExceptionUtils;
 import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.protocol.util.ThreadUtils;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,20 +33,50 @@ public abstract class AbstractClient<C extends Channel> extends ChannelInitializ
 
     protected static final Logger logger = LoggerFactory.getLogger(AbstractClient.class);
 
-    protected static final EventLoopGroup nioEventLoopGroup = Epoll.isAvailable()
-            ? new EpollEventLoopGroup(Runtime.getRuntime().availableProcessors() + 1, new DefaultThreadFactory("netty-client", true))
-            : new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() + 1, new DefaultThreadFactory("netty-client", true));
+    // 所有客户端共享的传输层和线程组，第一个客户端启动的时候按照配置的传输层创建
+    private static NetTransport clientTransport;
+    private static EventLoopGroup clientEventLoopGroup;
 
     protected String hostAddress;
     protected int port;
 
     protected Bootstrap bootstrap;
 
+    // 单个包的最大长度，超过这个长度会断开连接，开启了fragment-size的大包会分片发送
+    protected int maxFrameLength = IOUtils.BYTES_PER_MB;
+
     public AbstractClient(HostAndPort host) {
         this.hostAddress = host.getHost();
         this.port = host.getPort();
     }
 
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * 在start()之前调用，只对TcpCodecHandler有效
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength <= 0 || maxFrameLength > PacketService.PACKET_MAX_LENGTH) {
+            throw new IllegalArgumentException(StringUtils.format("maxFrameLength [{}] must be in (0, {}]", maxFrameLength, PacketService.PACKET_MAX_LENGTH));
+        }
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    protected synchronized static NetTransport transport() {
+        if (clientTransport == null) {
+            clientTransport = NetTransport.current();
+            clientEventLoopGroup = clientTransport.newEventLoopGroup(Runtime.getRuntime().availableProcessors() + 1, "netty-client");
+        }
+        return clientTransport;
+    }
+
+    protected synchronized static EventLoopGroup eventLoopGroup() {
+        transport();
+        return clientEventLoopGroup;
+    }
+
     @Override
     public synchronized Session start() {
         return doStart();
@@ -58,8 +84,8 @@ public abstract class AbstractClient<C extends Channel> extends ChannelInitializ
 
     private synchronized Session doStart() {
         this.bootstrap = new Bootstrap();
-        this.bootstrap.group(nioEventLoopGroup)
-                .channel(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class)
+        this.bootstrap.group(eventLoopGroup())
+                .channel(transport().getSocketChannelClass())
                 .option(ChannelOption.TCP_NODELAY, true)
                 .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_MB))
                 .handler(this);
@@ -84,7 +110,7 @@ public abstract class AbstractClient<C extends Channel> extends ChannelInitializ
 
 
     public synchronized static void shutdown() {
-        ThreadUtils.shutdownEventLoopGracefully("netty-client", nioEventLoopGroup);
+        ThreadUtils.shutdownEventLoopGracefully("netty-client", clientEventLoopGroup);
     }
 
 }
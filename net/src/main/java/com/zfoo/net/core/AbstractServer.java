@@ -13,16 +13,13 @@
 
 package com.zfoo.net.core;
 
+import com.zfoo.net.packet.PacketService;
 import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.protocol.util.ThreadUtils;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.channel.unix.UnixChannelOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,11 +47,107 @@ public abstract class AbstractServer<C extends Channel> extends ChannelInitializ
 
     protected ChannelFuture channelFuture;
 
+    // 服务器启动的时候按照配置解析的传输层
+    protected NetTransport transport;
+
+    // 单个包的最大长度，超过这个长度会断开连接，开启了fragment-size的大包会分片发送
+    protected int maxFrameLength = IOUtils.BYTES_PER_MB;
+
+    /**
+     * epoll和io_uring下通过SO_REUSEPORT绑定到同一个端口的监听channel的数量，每个监听channel在bossGroup中独立的event loop上accept，内核把新的连接分配给不同的监听channel
+     */
+    protected int acceptorNum = 1;
+
+    // SO_REUSEPORT绑定的除了channelFuture之外的其它监听channel
+    protected final List<Channel> acceptorChannels = new ArrayList<>();
+
+    // 监听channel的accept队列的长度，小于等于0使用netty的默认值（/proc/sys/net/core/somaxconn）
+    protected int backlog;
+
+    // 连接的接收和发送缓冲区的大小，小于等于0使用操作系统的默认值
+    protected int receiveBufferSize;
+    protected int sendBufferSize;
+
+    // epoll和io_uring下TCP_FASTOPEN的等待队列的长度，小于等于0表示不开启
+    protected int tcpFastOpen;
+
     public AbstractServer(HostAndPort host) {
         this.hostAddress = host.getHost();
         this.port = host.getPort();
     }
 
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * 在start()之前调用，只对TcpCodecHandler有效
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if (maxFrameLength <= 0 || maxFrameLength > PacketService.PACKET_MAX_LENGTH) {
+            throw new IllegalArgumentException(StringUtils.format("maxFrameLength [{}] must be in (0, {}]", maxFrameLength, PacketService.PACKET_MAX_LENGTH));
+        }
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getAcceptorNum() {
+        return acceptorNum;
+    }
+
+    /**
+     * 在start()之前调用，只在epoll和io_uring下有效
+     */
+    public void setAcceptorNum(int acceptorNum) {
+        if (acceptorNum <= 0) {
+            throw new IllegalArgumentException(StringUtils.format("acceptorNum [{}] must be greater than 0", acceptorNum));
+        }
+        this.acceptorNum = acceptorNum;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * 在start()之前调用
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * 在start()之前调用
+     */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * 在start()之前调用
+     */
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getTcpFastOpen() {
+        return tcpFastOpen;
+    }
+
+    /**
+     * 在start()之前调用，只在epoll和io_uring下有效
+     */
+    public void setTcpFastOpen(int tcpFastOpen) {
+        this.tcpFastOpen = tcpFastOpen;
+    }
+
     @Override
     public void start() {
         doStart();
@@ -62,22 +155,37 @@ public abstract class AbstractServer<C extends Channel> extends ChannelInitializ
 
     protected synchronized void doStart() {
         var cpuNum = Runtime.getRuntime().availableProcessors();
+        transport = NetTransport.current();
+        // SO_REUSEPORT只在epoll和io_uring下有效，每个监听channel需要一个独立的event loop
+        var acceptors = transport.isNative() ? acceptorNum : 1;
         // 一条线程持有一个端口对应的selector，如果我们启动不仅仅是一个服务器端口的话，为了更好的性能需要修改对应的bossGroup数量
-        bossGroup = Epoll.isAvailable()
-                ? new EpollEventLoopGroup(Math.max(1, cpuNum / 8), new DefaultThreadFactory("netty-boss", true))
-                : new NioEventLoopGroup(Math.max(1, cpuNum / 8), new DefaultThreadFactory("netty-boss", true));
+        var bossNum = Math.max(Math.max(1, cpuNum / 8), acceptors);
+        bossGroup = transport.newEventLoopGroup(bossNum, "netty-boss");
 
-        workerGroup = Epoll.isAvailable()
-                ? new EpollEventLoopGroup(cpuNum * 2, new DefaultThreadFactory("netty-worker", true))
-                : new NioEventLoopGroup(cpuNum * 2, new DefaultThreadFactory("netty-worker", true));
+        workerGroup = transport.newEventLoopGroup(cpuNum * 2, "netty-worker");
 
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group(bossGroup, workerGroup)
-                .channel(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+                .channel(transport.getServerSocketChannelClass())
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .childOption(ChannelOption.TCP_NODELAY, true)
                 .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_MB))
                 .childHandler(this);
+        if (backlog > 0) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, backlog);
+        }
+        if (receiveBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+        }
+        if (sendBufferSize > 0) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+        }
+        if (transport.getTcpFastOpenOption() != null && tcpFastOpen > 0) {
+            bootstrap.option(transport.getTcpFastOpenOption(), tcpFastOpen);
+        }
+        if (acceptors > 1) {
+            bootstrap.option(UnixChannelOption.SO_REUSEPORT, true);
+        }
         // 绑定端口，同步等待成功
         // channelFuture = bootstrap.bind(hostAddress, port).sync();
         // 等待服务端监听端口关闭
@@ -88,9 +196,14 @@ public abstract class AbstractServer<C extends Channel> extends ChannelInitializ
         channelFuture = bootstrap.bind(hostAddress, port);
         channelFuture.syncUninterruptibly();
 
+        // 每次bind都会创建一个新的监听channel，依次注册到bossGroup的下一个event loop上，bossGroup的数量不小于acceptors，所以每个监听channel都有独立的event loop
+        for (var i = 1; i < acceptors; i++) {
+            acceptorChannels.add(bootstrap.bind(hostAddress, port).syncUninterruptibly().channel());
+        }
+
         allServers.add(this);
 
-        logger.info("{} started at [{}:{}]", this.getClass().getSimpleName(), hostAddress, port);
+        logger.info("{} started at [{}:{}] with [{}] acceptors and [{}] transport", this.getClass().getSimpleName(), hostAddress, port, acceptors, transport.getType());
     }
 
 
@@ -106,6 +219,14 @@ public abstract class AbstractServer<C extends Channel> extends ChannelInitializ
                 logger.warn(e.getMessage(), e);
             }
         }
+        for (var channel : acceptorChannels) {
+            try {
+                channel.close().syncUninterruptibly();
+            } catch (Exception e) {
+                logger.warn(e.getMessage(), e);
+            }
+        }
+        acceptorChannels.clear();
     }
 
     public synchronized static void shutdownAllServers() {
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core;
+
+import com.zfoo.net.NetContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDatagramChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.util.EnumMap;
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiFunction;
+
+/**
+ * EN: The resolved transport, provides the event loop group and the channel classes of the servers and clients.
+ * io_uring is an optional dependency so it is loaded by reflection, if it is unavailable the transport falls back to epoll and then nio.
+ * CN: 解析之后实际使用的传输层，提供服务器和客户端的线程组和channel的类型。
+ * io_uring是可选的依赖所以通过反射加载，不可用的时候依次回退到epoll和nio。
+ *
+ * @author godotg
+ */
+public final class NetTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(NetTransport.class);
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    // 配置的传输层 -> 实际使用的传输层，只在服务器和客户端启动的时候解析
+    private static final EnumMap<TransportType, NetTransport> transports = new EnumMap<>(TransportType.class);
+
+    private final TransportType type;
+    private final BiFunction<Integer, ThreadFactory, EventLoopGroup> eventLoopGroupFactory;
+    private final Class<? extends ServerSocketChannel> serverSocketChannelClass;
+    private final Class<? extends SocketChannel> socketChannelClass;
+    private final Class<? extends DatagramChannel> datagramChannelClass;
+    // 不支持TCP_FASTOPEN则为null
+    private final ChannelOption<Integer> tcpFastOpenOption;
+
+    private NetTransport(TransportType type, BiFunction<Integer, ThreadFactory, EventLoopGroup> eventLoopGroupFactory
+            , Class<? extends ServerSocketChannel> serverSocketChannelClass, Class<? extends SocketChannel> socketChannelClass
+            , Class<? extends DatagramChannel> datagramChannelClass, ChannelOption<Integer> tcpFastOpenOption) {
+        this.type = type;
+        this.eventLoopGroupFactory = eventLoopGroupFactory;
+        this.serverSocketChannelClass = serverSocketChannelClass;
+        this.socketChannelClass = socketChannelClass;
+        this.datagramChannelClass = datagramChannelClass;
+        this.tcpFastOpenOption = tcpFastOpenOption;
+    }
+
+    /**
+     * 本地配置的传输层
+     */
+    public static NetTransport current() {
+        return of(NetContext.getConfigManager().getLocalConfig().getTransport());
+    }
+
+    public static synchronized NetTransport of(@Nullable TransportType type) {
+        var transportType = Objects.requireNonNullElse(type, TransportType.AUTO);
+        var transport = transports.get(transportType);
+        if (transport == null) {
+            transport = resolve(transportType);
+            transports.put(transportType, transport);
+            logger.info("transport [{}] resolved to [{}]", transportType, transport.type);
+        }
+        return transport;
+    }
+
+    private static NetTransport resolve(TransportType type) {
+        if (type == TransportType.NIO) {
+            return nio();
+        }
+        // 依次尝试io_uring，epoll和nio，io_uring不可用的时候继续尝试epoll
+        if (type == TransportType.IO_URING) {
+            var ioUring = ioUring();
+            if (ioUring != null) {
+                return ioUring;
+            }
+        }
+        if (Epoll.isAvailable()) {
+            return epoll();
+        }
+        if (type != TransportType.AUTO) {
+            logger.warn("epoll is not available [{}], fall back to nio", Epoll.unavailabilityCause().getMessage());
+        }
+        return nio();
+    }
+
+    private static NetTransport nio() {
+        return new NetTransport(TransportType.NIO, NioEventLoopGroup::new, NioServerSocketChannel.class
+                , NioSocketChannel.class, NioDatagramChannel.class, null);
+    }
+
+    private static NetTransport epoll() {
+        return new NetTransport(TransportType.EPOLL, EpollEventLoopGroup::new, EpollServerSocketChannel.class
+                , EpollSocketChannel.class, EpollDatagramChannel.class, ChannelOption.TCP_FASTOPEN);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static NetTransport ioUring() {
+        try {
+            // io_uring还在netty的incubator中，是一个可选的依赖，使用反射避免编译期依赖
+            var ioUringClass = Class.forName(IO_URING_PACKAGE + "IOUring");
+            if (!(boolean) ioUringClass.getMethod("isAvailable").invoke(null)) {
+                var cause = (Throwable) ioUringClass.getMethod("unavailabilityCause").invoke(null);
+                logger.warn("io_uring is not available [{}], fall back to epoll", cause == null ? null : cause.getMessage());
+                return null;
+            }
+            var eventLoopGroupConstructor = Class.forName(IO_URING_PACKAGE + "IOUringEventLoopGroup").getConstructor(int.class, ThreadFactory.class);
+            BiFunction<Integer, ThreadFactory, EventLoopGroup> eventLoopGroupFactory = (nThreads, threadFactory) -> {
+                try {
+                    return (EventLoopGroup) eventLoopGroupConstructor.newInstance(nThreads, threadFactory);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            return new NetTransport(TransportType.IO_URING, eventLoopGroupFactory
+                    , (Class<? extends ServerSocketChannel>) Class.forName(IO_URING_PACKAGE + "IOUringServerSocketChannel")
+                    , (Class<? extends SocketChannel>) Class.forName(IO_URING_PACKAGE + "IOUringSocketChannel")
+                    , (Class<? extends DatagramChannel>) Class.forName(IO_URING_PACKAGE + "IOUringDatagramChannel")
+                    , ChannelOption.TCP_FASTOPEN);
+        } catch (Throwable t) {
+            logger.warn("io_uring can not be loaded, the netty-incubator-transport-native-io_uring dependency may be missing [{}], fall back to epoll", t.toString());
+            return null;
+        }
+    }
+
+    public EventLoopGroup newEventLoopGroup(int nThreads, String poolName) {
+        return eventLoopGroupFactory.apply(nThreads, new DefaultThreadFactory(poolName, true));
+    }
+
+    public TransportType getType() {
+        return type;
+    }
+
+    public Class<? extends ServerSocketChannel> getServerSocketChannelClass() {
+        return serverSocketChannelClass;
+    }
+
+    public Class<? extends SocketChannel> getSocketChannelClass() {
+        return socketChannelClass;
+    }
+
+    public Class<? extends DatagramChannel> getDatagramChannelClass() {
+        return datagramChannelClass;
+    }
+
+    /**
+     * epoll和io_uring都是native的传输层，支持SO_REUSEPORT
+     */
+    public boolean isNative() {
+        return type != TransportType.NIO;
+    }
+
+    public boolean isEpoll() {
+        return type == TransportType.EPOLL;
+    }
+
+    @Nullable
+    public ChannelOption<Integer> getTcpFastOpenOption() {
+        return tcpFastOpenOption;
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core;
+
+/**
+ * EN: The transport used by the servers and clients, an unavailable transport falls back to the next one in the order of IO_URING, EPOLL, NIO
+ * CN: 服务器和客户端使用的传输层，不可用的传输层按照IO_URING，EPOLL，NIO的顺序回退
+ *
+ * @author godotg
+ */
+public enum TransportType {
+
+    /**
+     * EN: Use epoll if available, otherwise nio, the default transport
+     * CN: epoll可用就使用epoll，否则使用nio，默认的传输层
+     */
+    AUTO,
+
+    /**
+     * EN: Use io_uring, need the netty-incubator-transport-native-io_uring dependency and a linux kernel 5.9+
+     * CN: 使用io_uring，需要自己引入netty-incubator-transport-native-io_uring依赖，并且linux内核5.9以上
+     */
+    IO_URING,
+
+    /**
+     * EN: Use epoll, need the netty-transport-native-epoll dependency
+     * CN: 使用epoll，需要netty-transport-native-epoll依赖
+     */
+    EPOLL,
+
+    /**
+     * EN: Use the jdk nio
+     * CN: 使用jdk的nio
+     */
+    NIO;
+
+}
@@ -13,14 +13,15 @@
 
 package com.zfoo.net.core.gateway;
 
+import com.zfoo.net.NetContext;
 import com.zfoo.net.core.AbstractServer;
 import com.zfoo.net.core.HostAndPort;
 import com.zfoo.net.handler.GatewayRouteHandler;
+import com.zfoo.net.handler.codec.tcp.GatewayTcpCodecHandler;
 import com.zfoo.net.handler.codec.tcp.TcpCodecHandler;
 import com.zfoo.net.handler.idle.ServerIdleHandler;
 import com.zfoo.net.session.Session;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.springframework.lang.Nullable;
 
 import java.util.function.BiFunction;
@@ -39,9 +40,13 @@ public class GatewayServer extends AbstractServer<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 180));
         channel.pipeline().addLast(new ServerIdleHandler());
-        channel.pipeline().addLast(new TcpCodecHandler());
+        // 开启透传之后网关不再解码和重新编码客户端的包，有packetFilter的时候需要检查包的内容，依然要解码
+        if (NetContext.getConfigManager().getLocalConfig().isGatewayPassthrough()) {
+            channel.pipeline().addLast(new GatewayTcpCodecHandler(maxFrameLength, packetFilter != null));
+        } else {
+            channel.pipeline().addLast(new TcpCodecHandler(maxFrameLength));
+        }
         channel.pipeline().addLast(new GatewayRouteHandler(packetFilter));
     }
 }
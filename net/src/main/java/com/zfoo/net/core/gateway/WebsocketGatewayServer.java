@@ -17,15 +17,16 @@ import com.zfoo.net.core.AbstractServer;
 import com.zfoo.net.core.HostAndPort;
 import com.zfoo.net.handler.GatewayRouteHandler;
 import com.zfoo.net.handler.codec.websocket.WebSocketCodecHandler;
+import com.zfoo.net.handler.codec.websocket.WebSocketDeflate;
 import com.zfoo.net.handler.idle.ServerIdleHandler;
 import com.zfoo.net.session.Session;
 import com.zfoo.protocol.util.IOUtils;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 import org.springframework.lang.Nullable;
 
 import java.util.function.BiFunction;
@@ -44,12 +45,16 @@ public class WebsocketGatewayServer extends AbstractServer<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 180));
         channel.pipeline().addLast(new ServerIdleHandler());
 
         channel.pipeline().addLast(new HttpServerCodec(8 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB));
         channel.pipeline().addLast(new HttpObjectAggregator(16 * IOUtils.BYTES_PER_MB));
-        channel.pipeline().addLast(new WebSocketServerProtocolHandler("/websocket"));
+        var deflateHandler = WebSocketDeflate.newServerHandler();
+        if (deflateHandler != null) {
+            channel.pipeline().addLast(deflateHandler);
+        }
+        channel.pipeline().addLast(new WebSocketServerProtocolHandler("/websocket", null, deflateHandler != null));
+        channel.pipeline().addLast(new WebSocketFrameAggregator(IOUtils.BYTES_PER_MB));
         channel.pipeline().addLast(new ChunkedWriteHandler());
         channel.pipeline().addLast(new WebSocketCodecHandler());
         channel.pipeline().addLast(new GatewayRouteHandler(packetFilter));
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.http;
+
+import com.zfoo.net.anno.HttpRoute;
+import com.zfoo.net.enhance.EnhanceUtils;
+import com.zfoo.net.enhance.HttpBinderDefinition;
+import com.zfoo.net.enhance.IHttpBinder;
+import com.zfoo.net.handler.codec.http.HttpCodecHandler;
+import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.router.attachment.HttpAttachment;
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.buffer.ByteBufUtils;
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.GraalVmUtils;
+import com.zfoo.protocol.util.JsonUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.http.*;
+import io.netty.util.AsciiString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * EN: Resolve the http request to the protocol annotated by HttpRoute, the body is decoded by the Content-Type (json or the zfoo binary protocol),
+ * then the path variables and the query parameters are bound to the protocol.
+ * CN: 把http请求解析为HttpRoute注解的协议，body按照Content-Type解析（json或者zfoo的二进制协议），然后把路径变量和查询参数绑定到协议上。
+ *
+ * @author godotg
+ */
+public class HttpRouteResolver implements Function<FullHttpRequest, DecodedPacketInfo> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpRouteResolver.class);
+
+    private final HttpRouteTable<IHttpBinder> routeTable = new HttpRouteTable<>();
+
+    /**
+     * 扫描所有注册的协议，在ProtocolManager初始化之后调用
+     */
+    public HttpRouteResolver() {
+        for (var protocol : ProtocolManager.protocols) {
+            if (protocol == null || protocol.protocolConstructor() == null) {
+                continue;
+            }
+            var packetClazz = protocol.protocolConstructor().getDeclaringClass();
+            var httpRoute = packetClazz.getDeclaredAnnotation(HttpRoute.class);
+            if (httpRoute == null) {
+                continue;
+            }
+            addRoute(packetClazz, httpRoute);
+        }
+    }
+
+    public void addRoute(Class<?> packetClazz, HttpRoute httpRoute) {
+        IHttpBinder binder;
+        try {
+            var definition = new HttpBinderDefinition(packetClazz);
+            binder = GraalVmUtils.isGraalVM() ? definition : EnhanceUtils.createHttpBinder(definition);
+        } catch (Throwable t) {
+            throw new RunException("Registration http route [class:{}] unknown exception", packetClazz.getSimpleName(), t);
+        }
+        for (var method : httpRoute.method()) {
+            routeTable.addRoute(HttpMethod.valueOf(method), httpRoute.value(), binder);
+            logger.info("http route [{} {}] -> [{}]", method, httpRoute.value(), packetClazz.getSimpleName());
+        }
+    }
+
+    /**
+     * @return 没有匹配的路径返回null
+     */
+    @Override
+    public DecodedPacketInfo apply(FullHttpRequest fullHttpRequest) {
+        var uri = fullHttpRequest.uri();
+        var queryStart = uri.indexOf('?');
+        var path = queryStart < 0 ? uri : uri.substring(0, queryStart);
+
+        // 大部分请求的参数都很少
+        var params = new HashMap<String, String>(8);
+        var binder = routeTable.match(fullHttpRequest.method(), path, params);
+        if (binder == null) {
+            return null;
+        }
+        if (queryStart >= 0) {
+            parseQuery(uri, queryStart + 1, params);
+        }
+
+        var packet = fullHttpRequest.content().isReadable() ? readBody(fullHttpRequest, binder) : binder.newPacket();
+        binder.bind(packet, params);
+        return DecodedPacketInfo.valueOf(packet, HttpAttachment.valueOf(fullHttpRequest, HttpResponseStatus.OK));
+    }
+
+    /**
+     * body的格式错误（json格式错误，zfoo协议被截断等）都抛出IllegalArgumentException，HttpCodecHandler会返回400而不是关闭连接
+     */
+    private Object readBody(FullHttpRequest fullHttpRequest, IHttpBinder binder) {
+        var contentType = fullHttpRequest.headers().get(HttpHeaderNames.CONTENT_TYPE);
+        var content = fullHttpRequest.content();
+        try {
+            if (contentType != null && AsciiString.containsIgnoreCase(contentType, HttpCodecHandler.APPLICATION_ZFOO)) {
+                // 先检查协议号和路由的协议一致，不反序列化客户端发送的任意协议
+                var protocolId = ByteBufUtils.readShort(content);
+                if (!ProtocolManager.isProtocolClass(binder.packetClazz()) || protocolId != ProtocolManager.protocolId(binder.packetClazz())) {
+                    throw new IllegalArgumentException(StringUtils.format("http body [protocolId:{}] does not match the route [{}]", protocolId, binder.packetClazz().getSimpleName()));
+                }
+                return ProtocolManager.getProtocol(protocolId).read(content);
+            }
+            if (contentType != null && AsciiString.containsIgnoreCase(contentType, HttpHeaderValues.APPLICATION_JSON)) {
+                var packet = JsonUtils.inputStream2Object(new ByteBufInputStream(content), binder.packetClazz());
+                // body是json的null
+                if (packet == null) {
+                    throw new IllegalArgumentException(StringUtils.format("http body of [{}] is null", binder.packetClazz().getSimpleName()));
+                }
+                return packet;
+            }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException(StringUtils.format("http body of [{}] is malformed", binder.packetClazz().getSimpleName()), e);
+        }
+        // 表单的body和查询参数一样绑定
+        if (contentType != null && AsciiString.containsIgnoreCase(contentType, HttpHeaderValues.APPLICATION_X_WWW_FORM_URLENCODED)) {
+            var packet = binder.newPacket();
+            var params = new HashMap<String, String>(8);
+            parseQuery(content.toString(HttpConstants.DEFAULT_CHARSET), 0, params);
+            binder.bind(packet, params);
+            return packet;
+        }
+        return binder.newPacket();
+    }
+
+    private static void parseQuery(String query, int start, Map<String, String> params) {
+        var index = start;
+        while (index < query.length()) {
+            var end = query.indexOf('&', index);
+            if (end < 0) {
+                end = query.length();
+            }
+            var equal = query.indexOf('=', index);
+            if (equal > index && equal < end) {
+                var name = QueryStringDecoder.decodeComponent(query.substring(index, equal));
+                var value = QueryStringDecoder.decodeComponent(query.substring(equal + 1, end));
+                // 路径变量优先于查询参数
+                params.putIfAbsent(name, value);
+            }
+            index = end + 1;
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.http;
+
+import com.zfoo.protocol.exception.RunException;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EN: The radix tree of the http paths, the common prefixes of the paths are stored only once, a path variable like {uid} matches a whole path segment.
+ * Static segments take precedence over path variables.
+ * CN: http路径的基数树，路径的公共前缀只保存一次，路径变量（比如{uid}）匹配一个完整的路径段，静态的路径优先于路径变量。
+ *
+ * @author godotg
+ */
+public class HttpRouteTable<T> {
+
+    private static class Node<T> {
+        // 静态路径的片段，路径变量的节点为null
+        private String prefix;
+        // 路径变量的名称
+        private String paramName;
+        // 静态的子节点，每个子节点的首字符都不相同
+        private final List<Node<T>> children = new ArrayList<>(2);
+        private Node<T> paramChild;
+        // 在这个节点结束的路径，http method -> value
+        private Map<HttpMethod, T> values;
+
+        private Node(String prefix, String paramName) {
+            this.prefix = prefix;
+            this.paramName = paramName;
+        }
+    }
+
+    private final Node<T> root = new Node<>("", null);
+
+    /**
+     * 启动的时候调用，不是线程安全的
+     */
+    public void addRoute(HttpMethod method, String path, T value) {
+        if (path.isEmpty() || path.charAt(0) != '/') {
+            throw new RunException("http path [{}] must start with '/'", path);
+        }
+        var node = root;
+        var index = 0;
+        while (index < path.length()) {
+            var paramStart = path.indexOf('{', index);
+            if (paramStart < 0) {
+                node = addStatic(node, path.substring(index));
+                break;
+            }
+            if (paramStart > index) {
+                node = addStatic(node, path.substring(index, paramStart));
+            }
+            var paramEnd = path.indexOf('}', paramStart);
+            if (paramEnd < 0 || paramEnd == paramStart + 1 || (paramEnd + 1 < path.length() && path.charAt(paramEnd + 1) != '/') || path.charAt(paramStart - 1) != '/') {
+                throw new RunException("http path [{}] has an illegal path variable, it should be like /user/{uid}", path);
+            }
+            var paramName = path.substring(paramStart + 1, paramEnd);
+            if (node.paramChild == null) {
+                node.paramChild = new Node<>(null, paramName);
+            } else if (!node.paramChild.paramName.equals(paramName)) {
+                throw new RunException("http path [{}] has the path variable [{}] which conflicts with [{}]", path, paramName, node.paramChild.paramName);
+            }
+            node = node.paramChild;
+            index = paramEnd + 1;
+        }
+
+        if (node.values == null) {
+            node.values = new HashMap<>(4);
+        }
+        if (node.values.putIfAbsent(method, value) != null) {
+            throw new RunException("duplicate http route [{} {}]", method, path);
+        }
+    }
+
+    private Node<T> addStatic(Node<T> node, String text) {
+        while (!text.isEmpty()) {
+            Node<T> next = null;
+            for (var i = 0; i < node.children.size(); i++) {
+                var child = node.children.get(i);
+                var common = commonPrefixLength(child.prefix, text);
+                if (common == 0) {
+                    continue;
+                }
+                if (common < child.prefix.length()) {
+                    // 把子节点分裂成公共前缀和剩余部分两个节点
+                    var middle = new Node<T>(child.prefix.substring(0, common), null);
+                    child.prefix = child.prefix.substring(common);
+                    middle.children.add(child);
+                    node.children.set(i, middle);
+                    child = middle;
+                }
+                next = child;
+                text = text.substring(common);
+                break;
+            }
+            if (next == null) {
+                next = new Node<>(text, null);
+                node.children.add(next);
+                text = "";
+            }
+            node = next;
+        }
+        return node;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        var length = Math.min(a.length(), b.length());
+        var i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 匹配path，path中不能包含查询参数，匹配到的路径变量会放入params中
+     *
+     * @return 没有匹配的路径返回null
+     */
+    @Nullable
+    public T match(HttpMethod method, String path, Map<String, String> params) {
+        return match(root, method, path, 0, params);
+    }
+
+    private T match(Node<T> node, HttpMethod method, String path, int index, Map<String, String> params) {
+        if (index == path.length()) {
+            return node.values == null ? null : node.values.get(method);
+        }
+
+        var c = path.charAt(index);
+        for (var i = 0; i < node.children.size(); i++) {
+            var child = node.children.get(i);
+            if (child.prefix.charAt(0) != c) {
+                continue;
+            }
+            if (path.startsWith(child.prefix, index)) {
+                var value = match(child, method, path, index + child.prefix.length(), params);
+                if (value != null) {
+                    return value;
+                }
+            }
+            break;
+        }
+
+        // 静态路径没有匹配上，尝试路径变量
+        var paramChild = node.paramChild;
+        if (paramChild != null) {
+            var end = path.indexOf('/', index);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (end > index) {
+                var value = match(paramChild, method, path, end, params);
+                if (value != null) {
+                    params.put(paramChild.paramName, QueryStringDecoder.decodeComponent(path.substring(index, end)));
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+}
@@ -37,17 +37,37 @@ public class HttpServer extends AbstractServer<SocketChannel> {
      */
     private Function<FullHttpRequest, DecodedPacketInfo> uriResolver;
 
+    /**
+     * GET这个路径返回Prometheus格式的PacketStatistics，为null表示不开启，比如：/metrics
+     */
+    private String metricsPath;
+
+    /**
+     * 使用HttpRoute注解的协议作为路由，没有匹配的路径返回404
+     */
+    public HttpServer(HostAndPort host) {
+        this(host, new HttpRouteResolver());
+    }
+
     public HttpServer(HostAndPort host, Function<FullHttpRequest, DecodedPacketInfo> uriResolver) {
         super(host);
         this.uriResolver = uriResolver;
     }
 
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    public void setMetricsPath(String metricsPath) {
+        this.metricsPath = metricsPath;
+    }
+
     @Override
     protected void initChannel(SocketChannel channel) {
         channel.pipeline().addLast(new HttpServerCodec(8 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB));
         channel.pipeline().addLast(new HttpObjectAggregator(16 * IOUtils.BYTES_PER_MB));
         channel.pipeline().addLast(new ChunkedWriteHandler());
-        channel.pipeline().addLast(new HttpCodecHandler(uriResolver));
+        channel.pipeline().addLast(new HttpCodecHandler(uriResolver, metricsPath));
         channel.pipeline().addLast(new ServerRouteHandler());
     }
 }
@@ -19,7 +19,6 @@ import com.zfoo.net.handler.ClientRouteHandler;
 import com.zfoo.net.handler.codec.json.JsonTcpCodecHandler;
 import com.zfoo.net.handler.idle.ClientIdleHandler;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -31,7 +30,6 @@ public class JsonTcpClient extends AbstractClient<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 60));
         channel.pipeline().addLast(new ClientIdleHandler());
         channel.pipeline().addLast(new JsonTcpCodecHandler());
         channel.pipeline().addLast(new ClientRouteHandler());
@@ -19,7 +19,6 @@ import com.zfoo.net.handler.ServerRouteHandler;
 import com.zfoo.net.handler.codec.json.JsonTcpCodecHandler;
 import com.zfoo.net.handler.idle.ServerIdleHandler;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -32,7 +31,6 @@ public class JsonTcpServer extends AbstractServer<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) throws Exception {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 180));
         channel.pipeline().addLast(new ServerIdleHandler());
         channel.pipeline().addLast(new JsonTcpCodecHandler());
         channel.pipeline().addLast(new ServerRouteHandler());
@@ -24,8 +24,8 @@ import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolConfig;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -41,11 +41,11 @@ public class JsonWebsocketClient extends AbstractClient<SocketChannel> {
 
     @Override
     public void initChannel(SocketChannel channel) {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 60));
         channel.pipeline().addLast(new ClientIdleHandler());
         channel.pipeline().addLast(new HttpClientCodec(8 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB));
         channel.pipeline().addLast(new HttpObjectAggregator(16 * IOUtils.BYTES_PER_MB));
         channel.pipeline().addLast(new WebSocketClientProtocolHandler(webSocketClientProtocolConfig));
+        channel.pipeline().addLast(new WebSocketFrameAggregator(IOUtils.BYTES_PER_MB));
         channel.pipeline().addLast(new ChunkedWriteHandler());
         channel.pipeline().addLast(new JsonWebSocketCodecHandler());
         channel.pipeline().addLast(new ClientRouteHandler());
@@ -19,7 +19,6 @@ import com.zfoo.net.handler.ClientRouteHandler;
 import com.zfoo.net.handler.codec.tcp.TcpCodecHandler;
 import com.zfoo.net.handler.idle.ClientIdleHandler;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -31,11 +30,10 @@ public class TcpClient extends AbstractClient<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) {
-        // 可以看出来，这个客户端检测到空闲的时间是60s，相对短一点，这样子就可以发送心跳。
-        // 服务器端则是180s，相对长一点，一旦检测到空闲，则把客户端踢掉。
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 60));
+        // 客户端空闲heartbeat-interval（默认60s）之后发送心跳，相对短一点。
+        // 服务器端则是idle-timeout（默认180s），相对长一点，一旦检测到空闲，则把客户端踢掉。
         channel.pipeline().addLast(new ClientIdleHandler());
-        channel.pipeline().addLast(new TcpCodecHandler());
+        channel.pipeline().addLast(new TcpCodecHandler(maxFrameLength));
         channel.pipeline().addLast(new ClientRouteHandler());
     }
 }
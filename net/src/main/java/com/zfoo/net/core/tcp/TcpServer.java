@@ -19,7 +19,6 @@ import com.zfoo.net.handler.ServerRouteHandler;
 import com.zfoo.net.handler.codec.tcp.TcpCodecHandler;
 import com.zfoo.net.handler.idle.ServerIdleHandler;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -32,9 +31,8 @@ public class TcpServer extends AbstractServer<SocketChannel> {
 
     @Override
     protected void initChannel(SocketChannel channel) throws Exception {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 180));
         channel.pipeline().addLast(new ServerIdleHandler());
-        channel.pipeline().addLast(new TcpCodecHandler());
+        channel.pipeline().addLast(new TcpCodecHandler(maxFrameLength));
         channel.pipeline().addLast(new ServerRouteHandler());
     }
 }
@@ -18,15 +18,17 @@ import com.zfoo.net.core.AbstractClient;
 import com.zfoo.net.core.HostAndPort;
 import com.zfoo.net.handler.BaseRouteHandler;
 import com.zfoo.net.handler.ClientRouteHandler;
+import com.zfoo.net.handler.codec.udp.ReliableUdpHandler;
 import com.zfoo.net.handler.codec.udp.UdpCodecHandler;
+import com.zfoo.net.handler.codec.udp.UdpPeerCodecHandler;
+import com.zfoo.net.handler.idle.ClientIdleHandler;
 import com.zfoo.net.session.Session;
 import com.zfoo.protocol.exception.ExceptionUtils;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollDatagramChannel;
-import io.netty.channel.socket.nio.NioDatagramChannel;
+
+import java.net.InetSocketAddress;
 
 /**
  * @author godotg
@@ -41,8 +43,8 @@ public class UdpClient extends AbstractClient<Channel> {
     public synchronized Session start() {
         try {
             this.bootstrap = new Bootstrap();
-            this.bootstrap.group(nioEventLoopGroup)
-                    .channel(Epoll.isAvailable() ? EpollDatagramChannel.class : NioDatagramChannel.class)
+            this.bootstrap.group(eventLoopGroup())
+                    .channel(transport().getDatagramChannelClass())
                     .option(ChannelOption.SO_BROADCAST, true)
                     .handler(this);
 
@@ -53,6 +55,10 @@ public class UdpClient extends AbstractClient<Channel> {
             if (channelFuture.isSuccess()) {
                 if (channelFuture.channel().isActive()) {
                     var channel = channelFuture.channel();
+                    var reliableUdpHandler = channel.pipeline().get(ReliableUdpHandler.class);
+                    if (reliableUdpHandler != null) {
+                        return startPeer(channel, reliableUdpHandler);
+                    }
                     var session = BaseRouteHandler.initChannel(channel);
                     NetContext.getSessionManager().addClientSession(session);
                     logger.info("UdpClient started at [{}]", channel.localAddress());
@@ -69,8 +75,29 @@ public class UdpClient extends AbstractClient<Channel> {
         return null;
     }
 
+    /**
+     * 可靠udp的客户端的session绑定在服务器的UdpPeerChannel上
+     */
+    private Session startPeer(Channel channel, ReliableUdpHandler reliableUdpHandler) {
+        var peer = reliableUdpHandler.newPeer(channel, new InetSocketAddress(hostAddress, port));
+        peer.pipeline().addLast(new ClientIdleHandler());
+        peer.pipeline().addLast(new UdpPeerCodecHandler());
+        peer.pipeline().addLast(new ClientRouteHandler());
+        var session = BaseRouteHandler.initChannel(peer);
+        NetContext.getSessionManager().addClientSession(session);
+        // 服务器断开之后udp channel也没有用了
+        peer.closeFuture().addListener(it -> channel.close());
+        channel.eventLoop().register(peer).syncUninterruptibly();
+        logger.info("UdpClient started at [{}] with reliable udp to [{}]", channel.localAddress(), peer.remoteAddress());
+        return session;
+    }
+
     @Override
     protected void initChannel(Channel channel) {
+        if (NetContext.getConfigManager().getLocalConfig().isUdpReliable()) {
+            channel.pipeline().addLast(new ReliableUdpHandler(null));
+            return;
+        }
         channel.pipeline().addLast(new UdpCodecHandler());
         channel.pipeline().addLast(new ClientRouteHandler());
     }
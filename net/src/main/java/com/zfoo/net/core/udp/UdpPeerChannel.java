@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.udp;
+
+import com.zfoo.net.handler.codec.udp.ReliableUdpConnection;
+import com.zfoo.net.handler.codec.udp.ReliableUdpHandler;
+import com.zfoo.net.handler.codec.udp.UdpSequencedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.EventLoop;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+/**
+ * EN: A virtual channel of one remote peer on a shared udp channel, the messages are sent and received by the reliable udp layer.
+ * The session of the UdpPeerChannel is used in the same way as the session of tcp, and the UdpPeerChannel is closed after the peer is dead or idle.
+ * CN: 共享的udp channel上的一个对端的虚拟channel，消息通过可靠udp层收发。
+ * UdpPeerChannel的session和tcp的session的用法一样，对端断开或者空闲之后UdpPeerChannel会被关闭。
+ *
+ * @author godotg
+ */
+public class UdpPeerChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+
+    private static final int OPEN = 0;
+    private static final int ACTIVE = 1;
+    private static final int CLOSED = 2;
+
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+
+    private final InetSocketAddress remoteAddress;
+
+    private final ReliableUdpHandler handler;
+
+    private final ReliableUdpConnection connection;
+
+    private volatile int state = OPEN;
+
+    public UdpPeerChannel(Channel parent, InetSocketAddress remoteAddress, ReliableUdpHandler handler, int mtu, int window) {
+        super(parent);
+        this.remoteAddress = remoteAddress;
+        this.handler = handler;
+        this.connection = new ReliableUdpConnection(this, mtu, window);
+    }
+
+    public ReliableUdpConnection connection() {
+        return connection;
+    }
+
+    /**
+     * 收到确认之后发送窗口有了空间，继续发送留在ChannelOutboundBuffer中的消息
+     */
+    public void resumeWrite() {
+        var outboundBuffer = unsafe().outboundBuffer();
+        if (outboundBuffer != null && !outboundBuffer.isEmpty()) {
+            unsafe().flush();
+        }
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new UdpPeerUnsafe();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        // 直接写入父channel，所以必须在父channel的event loop中
+        return loop == parent().eventLoop();
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return parent().localAddress();
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return remoteAddress;
+    }
+
+    @Override
+    protected void doRegister() {
+        state = ACTIVE;
+        handler.addPeer(this);
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException("UdpPeerChannel shares the local address of the udp channel");
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        if (state == CLOSED) {
+            return;
+        }
+        state = CLOSED;
+        handler.removePeer(this);
+        connection.release();
+    }
+
+    @Override
+    protected void doBeginRead() {
+        // 消息由ReliableUdpHandler主动传递过来
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        var now = ReliableUdpConnection.now();
+        while (true) {
+            var msg = in.current();
+            if (msg == null) {
+                break;
+            }
+            try {
+                if (msg instanceof UdpSequencedFrame frame) {
+                    connection.sendSequenced(frame.content(), now);
+                } else if (msg instanceof ByteBuf buffer) {
+                    // 发送窗口满了，剩下的消息留在ChannelOutboundBuffer中，收到确认之后继续发送，积压的消息也会让channel变得不可写
+                    if (!connection.isSendWindowAvailable()) {
+                        break;
+                    }
+                    connection.send(buffer, now);
+                } else {
+                    in.remove(new UnsupportedOperationException("unsupported message type: " + msg.getClass().getName()));
+                    continue;
+                }
+            } catch (IllegalArgumentException e) {
+                in.remove(e);
+                continue;
+            }
+            in.remove();
+        }
+        connection.flush(now);
+        handler.scheduleUpdate(this);
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return state != CLOSED;
+    }
+
+    @Override
+    public boolean isActive() {
+        return state == ACTIVE;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    private class UdpPeerUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            promise.setFailure(new UnsupportedOperationException("UdpPeerChannel is already bound to the peer"));
+        }
+    }
+
+}
@@ -12,58 +12,149 @@
 
 package com.zfoo.net.core.udp;
 
+import com.zfoo.net.NetContext;
 import com.zfoo.net.core.AbstractServer;
 import com.zfoo.net.core.HostAndPort;
+import com.zfoo.net.core.NetTransport;
 import com.zfoo.net.handler.ServerRouteHandler;
+import com.zfoo.net.handler.codec.udp.ReliableUdpHandler;
 import com.zfoo.net.handler.codec.udp.UdpCodecHandler;
+import com.zfoo.net.handler.codec.udp.UdpPeerCodecHandler;
+import com.zfoo.net.handler.idle.ServerIdleHandler;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollDatagramChannel;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioDatagramChannel;
-import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.unix.UnixChannelOption;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * udp没有accept，setAcceptorNum()设置的是通过SO_REUSEPORT绑定到同一个端口的udp channel的数量，每个channel在不同的event loop中读写，
+ * 和AbstractServer一样默认为1，需要的时候显式开启，只在epoll和io_uring下有效
+ *
  * @author godotg
  */
 public class UdpServer extends AbstractServer<Channel> {
     private static final Logger logger = LoggerFactory.getLogger(UdpServer.class);
 
+    // udp协议的一个datagram的最大长度
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+
+    // 一次读取的接收buffer的最大长度，每个channel每次读取都会分配一个，recvmmsg一次读取的datagram的数量不会超过这个长度能放下的数量
+    private static final int MAX_READ_BUFFER_SIZE = 64 * IOUtils.BYTES_PER_KB;
+
+    /**
+     * epoll下一次recvmmsg最多读取的datagram的数量，等于1表示每次只读取一个datagram。
+     * 多个datagram写入之后一起flush的时候，epoll会使用sendmmsg一次系统调用发送。
+     */
+    private int readBatchSize = 16;
+
+    /**
+     * 普通udp的一个datagram的最大长度，小于等于0表示可能收到65507字节的datagram，这时一个datagram就占满了接收buffer，不会使用recvmmsg批量读取。
+     * 可靠udp的datagram的最大长度是udp-mtu
+     */
+    private int maxDatagramSize;
+
     public UdpServer(HostAndPort host) {
         super(host);
     }
 
+    public int getReadBatchSize() {
+        return readBatchSize;
+    }
+
+    /**
+     * 在start()之前调用，只在epoll下有效
+     */
+    public void setReadBatchSize(int readBatchSize) {
+        if (readBatchSize <= 0) {
+            throw new IllegalArgumentException(StringUtils.format("readBatchSize [{}] must be greater than 0", readBatchSize));
+        }
+        this.readBatchSize = readBatchSize;
+    }
+
+    public int getMaxDatagramSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * 在start()之前调用，只对普通udp有效，超过这个长度的datagram会被截断
+     */
+    public void setMaxDatagramSize(int maxDatagramSize) {
+        if (maxDatagramSize > MAX_DATAGRAM_SIZE) {
+            throw new IllegalArgumentException(StringUtils.format("maxDatagramSize [{}] must not be greater than {}", maxDatagramSize, MAX_DATAGRAM_SIZE));
+        }
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
     @Override
     public void start() {
         var cpuNum = Runtime.getRuntime().availableProcessors();
+        transport = NetTransport.current();
 
         // 配置服务端nio线程组
-        workerGroup = Epoll.isAvailable()
-                ? new EpollEventLoopGroup(cpuNum * 2, new DefaultThreadFactory("netty-worker", true))
-                : new NioEventLoopGroup(cpuNum * 2, new DefaultThreadFactory("netty-worker", true));
+        workerGroup = transport.newEventLoopGroup(cpuNum * 2, "netty-worker");
 
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(workerGroup)
-                .channel(Epoll.isAvailable() ? EpollDatagramChannel.class : NioDatagramChannel.class)
+                .channel(transport.getDatagramChannelClass())
                 .option(ChannelOption.SO_BROADCAST, true)
                 .handler(this);
 
+        var channelNum = 1;
+        if (transport.isNative()) {
+            // 可靠udp的datagram不会超过mtu，普通的udp没有指定maxDatagramSize的话需要能够读取最大的datagram
+            var config = NetContext.getConfigManager().getLocalConfig();
+            var datagramSize = config.isUdpReliable()
+                    ? (config.getUdpMtu() > 0 ? config.getUdpMtu() : ReliableUdpHandler.DEFAULT_MTU)
+                    : (maxDatagramSize > 0 ? maxDatagramSize : MAX_DATAGRAM_SIZE);
+            // 接收buffer的大小限制在MAX_READ_BUFFER_SIZE之内，不会因为最大的datagram每次读取都分配1MB的buffer
+            var batchSize = Math.min(readBatchSize, MAX_READ_BUFFER_SIZE / datagramSize);
+            // recvmmsg只在epoll下有效
+            if (transport.isEpoll() && batchSize > 1) {
+                // 接收的buffer可以放下多个datagram的时候使用recvmmsg一次系统调用读取多个datagram，netty会把buffer切分成多个DatagramPacket
+                bootstrap.option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, datagramSize)
+                        .option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(datagramSize * batchSize));
+            }
+            if (acceptorNum > 1) {
+                bootstrap.option(UnixChannelOption.SO_REUSEPORT, true);
+                channelNum = acceptorNum;
+            }
+        }
+
         // 异步
         channelFuture = bootstrap.bind(hostAddress, port);
         channelFuture.syncUninterruptibly();
 
+        // 每次bind都会创建一个新的channel，依次注册到workerGroup的下一个event loop上，内核按照对端的地址把datagram分配给不同的channel
+        for (var i = 1; i < channelNum; i++) {
+            acceptorChannels.add(bootstrap.bind(hostAddress, port).syncUninterruptibly().channel());
+        }
+
         allServers.add(this);
 
-        logger.info("{} started at [{}:{}]", this.getClass().getSimpleName(), hostAddress, port);
+        logger.info("{} started at [{}:{}] with [{}] channels and [{}] transport", this.getClass().getSimpleName(), hostAddress, port, channelNum, transport.getType());
     }
 
     @Override
     protected void initChannel(Channel channel) {
+        if (NetContext.getConfigManager().getLocalConfig().isUdpReliable()) {
+            // 每个对端一个UdpPeerChannel，和tcp一样每个对端都有自己的session
+            channel.pipeline().addLast(new ReliableUdpHandler(new ChannelInitializer<UdpPeerChannel>() {
+                @Override
+                protected void initChannel(UdpPeerChannel peer) {
+                    peer.pipeline().addLast(new ServerIdleHandler());
+                    peer.pipeline().addLast(new UdpPeerCodecHandler());
+                    peer.pipeline().addLast(new ServerRouteHandler());
+                }
+            }));
+            return;
+        }
         channel.pipeline().addLast(new UdpCodecHandler());
         channel.pipeline().addLast(new ServerRouteHandler());
     }
@@ -17,14 +17,15 @@ import com.zfoo.net.core.AbstractServer;
 import com.zfoo.net.core.HostAndPort;
 import com.zfoo.net.handler.ServerRouteHandler;
 import com.zfoo.net.handler.codec.websocket.WebSocketCodecHandler;
+import com.zfoo.net.handler.codec.websocket.WebSocketDeflate;
 import com.zfoo.net.handler.idle.ServerIdleHandler;
 import com.zfoo.protocol.util.IOUtils;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
-import io.netty.handler.timeout.IdleStateHandler;
 
 /**
  * @author godotg
@@ -37,15 +38,21 @@ public class WebsocketServer extends AbstractServer<SocketChannel> {
 
     @Override
     public void initChannel(SocketChannel channel) {
-        channel.pipeline().addLast(new IdleStateHandler(0, 0, 180));
         channel.pipeline().addLast(new ServerIdleHandler());
         // 编解码 http 请求
         channel.pipeline().addLast(new HttpServerCodec(8 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB, 16 * IOUtils.BYTES_PER_KB));
         // 聚合解码 HttpRequest/HttpContent/LastHttpContent 到 FullHttpRequest
         // 保证接收的 Http 请求的完整性
         channel.pipeline().addLast(new HttpObjectAggregator(16 * IOUtils.BYTES_PER_MB));
+        // permessage-deflate压缩，需要在握手之前加入
+        var deflateHandler = WebSocketDeflate.newServerHandler();
+        if (deflateHandler != null) {
+            channel.pipeline().addLast(deflateHandler);
+        }
         // 处理其他的 WebSocketFrame
-        channel.pipeline().addLast(new WebSocketServerProtocolHandler("/websocket"));
+        channel.pipeline().addLast(new WebSocketServerProtocolHandler("/websocket", null, deflateHandler != null));
+        // 聚合分片的帧（continuation frame）
+        channel.pipeline().addLast(new WebSocketFrameAggregator(IOUtils.BYTES_PER_MB));
         // 写文件内容，支持异步发送大的码流，一般用于发送文件流
         channel.pipeline().addLast(new ChunkedWriteHandler());
         // 编解码WebSocketFrame二进制协议
@@ -21,6 +21,7 @@ import javassist.*;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.util.Map;
 
 /**
  * @author godotg
@@ -30,6 +31,7 @@ public abstract class EnhanceUtils {
     static {
         var classArray = new Class<?>[]{
                 IPacketReceiver.class,
+                IHttpBinder.class,
                 Session.class
         };
 
@@ -100,4 +102,86 @@ public abstract class EnhanceUtils {
         var receiver = (IPacketReceiver) resultConstructor.newInstance(bean);
         return receiver;
     }
+
+    public static IHttpBinder createHttpBinder(HttpBinderDefinition definition) throws NotFoundException, CannotCompileException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
+        var classPool = ClassPool.getDefault();
+        var packetClazz = definition.packetClazz();
+
+        var enhanceClazz = classPool.makeClass(EnhanceUtils.class.getName() + "HttpBinder" + UuidUtils.getLocalIntId());
+        enhanceClazz.addInterface(classPool.get(IHttpBinder.class.getName()));
+
+        var constructor = new CtConstructor(classPool.get(new String[]{}), enhanceClazz);
+        constructor.setBody("{}");
+        constructor.setModifiers(Modifier.PUBLIC);
+        enhanceClazz.addConstructor(constructor);
+
+        // 定义类实现的接口方法packetClazz
+        var packetClazzMethod = new CtMethod(classPool.get(Class.class.getName()), "packetClazz", null, enhanceClazz);
+        packetClazzMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        packetClazzMethod.setBody(StringUtils.format("{ return {}.class; }", packetClazz.getName()));
+        enhanceClazz.addMethod(packetClazzMethod);
+
+        // 定义类实现的接口方法newPacket
+        var newPacketMethod = new CtMethod(classPool.get(Object.class.getName()), "newPacket", null, enhanceClazz);
+        newPacketMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        newPacketMethod.setBody(StringUtils.format("{ return new {}(); }", packetClazz.getName()));
+        enhanceClazz.addMethod(newPacketMethod);
+
+        // 定义类实现的接口方法bind，每个属性直接调用setter，没有反射
+        var bindMethod = new CtMethod(classPool.get(void.class.getName()), "bind", classPool.get(new String[]{Object.class.getName(), Map.class.getName()}), enhanceClazz);
+        bindMethod.setModifiers(Modifier.PUBLIC + Modifier.FINAL);
+        var builder = new StringBuilder();
+        builder.append(StringUtils.format("{{} packet = ({})$1; String value = null;", packetClazz.getName(), packetClazz.getName()));
+        for (var field : definition.getFields()) {
+            builder.append(StringUtils.format("value = (String) $2.get(\"{}\");", field.getName()));
+            builder.append(StringUtils.format("if (value != null) { packet.{}({}); }", HttpBinderDefinition.setterName(field), parseExpression(field.getType())));
+        }
+        builder.append("}");
+        bindMethod.setBody(builder.toString());
+        enhanceClazz.addMethod(bindMethod);
+
+        enhanceClazz.detach();
+
+        var resultClazz = enhanceClazz.toClass(IHttpBinder.class);
+        var resultConstructor = resultClazz.getConstructor();
+        var binder = (IHttpBinder) resultConstructor.newInstance();
+        return binder;
+    }
+
+    /**
+     * javassist不支持自动装箱，基础类型和包装类型需要调用不同的方法
+     */
+    private static String parseExpression(Class<?> clazz) {
+        if (clazz == String.class) {
+            return "value";
+        } else if (clazz == boolean.class) {
+            return "Boolean.parseBoolean(value)";
+        } else if (clazz == Boolean.class) {
+            return "Boolean.valueOf(value)";
+        } else if (clazz == byte.class) {
+            return "Byte.parseByte(value)";
+        } else if (clazz == Byte.class) {
+            return "Byte.valueOf(value)";
+        } else if (clazz == short.class) {
+            return "Short.parseShort(value)";
+        } else if (clazz == Short.class) {
+            return "Short.valueOf(value)";
+        } else if (clazz == int.class) {
+            return "Integer.parseInt(value)";
+        } else if (clazz == Integer.class) {
+            return "Integer.valueOf(value)";
+        } else if (clazz == long.class) {
+            return "Long.parseLong(value)";
+        } else if (clazz == Long.class) {
+            return "Long.valueOf(value)";
+        } else if (clazz == float.class) {
+            return "Float.parseFloat(value)";
+        } else if (clazz == Float.class) {
+            return "Float.valueOf(value)";
+        } else if (clazz == double.class) {
+            return "Double.parseDouble(value)";
+        } else {
+            return "Double.valueOf(value)";
+        }
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.zfoo.net.enhance;
+
+import com.zfoo.protocol.util.ReflectionUtils;
+import com.zfoo.protocol.util.StringUtils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * EN: Bind the http parameters to the protocol by reflection, to avoid reflection, will eventually use javassist bytecode enhanced methods to proxy this class
+ * CN: 通过反射把http的参数绑定到协议上，为了避免反射最终会用javassist字节码增强的方法去代理HttpBinderDefinition
+ *
+ * @author godotg
+ */
+public class HttpBinderDefinition implements IHttpBinder {
+
+    /**
+     * The protocol class mapped by HttpRoute, eg: HttpHelloRequest
+     */
+    private Class<?> packetClazz;
+
+    private Constructor<?> constructor;
+
+    /**
+     * The fields which can be bound from the http parameters, only the primitive, boxed and String fields with a setter
+     */
+    private List<Field> fields = new ArrayList<>();
+
+    private List<Method> setters = new ArrayList<>();
+
+    public HttpBinderDefinition(Class<?> packetClazz) {
+        this.packetClazz = packetClazz;
+        this.constructor = ReflectionUtils.publicEmptyConstructor(packetClazz);
+        for (var field : ReflectionUtils.notStaticAndTransientFields(packetClazz)) {
+            if (!isBindableType(field.getType())) {
+                continue;
+            }
+            try {
+                var setter = packetClazz.getMethod(setterName(field), field.getType());
+                fields.add(field);
+                setters.add(setter);
+            } catch (NoSuchMethodException e) {
+                // 没有setter的属性只能通过body绑定
+            }
+        }
+    }
+
+    public static boolean isBindableType(Class<?> clazz) {
+        return clazz.isPrimitive() && clazz != char.class && clazz != void.class
+                || clazz == String.class || clazz == Boolean.class || clazz == Byte.class || clazz == Short.class
+                || clazz == Integer.class || clazz == Long.class || clazz == Float.class || clazz == Double.class;
+    }
+
+    public static String setterName(Field field) {
+        return StringUtils.format("set{}", StringUtils.capitalize(field.getName()));
+    }
+
+    public static Object parse(Class<?> clazz, String value) {
+        if (clazz == String.class) {
+            return value;
+        } else if (clazz == boolean.class || clazz == Boolean.class) {
+            return Boolean.parseBoolean(value);
+        } else if (clazz == byte.class || clazz == Byte.class) {
+            return Byte.parseByte(value);
+        } else if (clazz == short.class || clazz == Short.class) {
+            return Short.parseShort(value);
+        } else if (clazz == int.class || clazz == Integer.class) {
+            return Integer.parseInt(value);
+        } else if (clazz == long.class || clazz == Long.class) {
+            return Long.parseLong(value);
+        } else if (clazz == float.class || clazz == Float.class) {
+            return Float.parseFloat(value);
+        } else {
+            return Double.parseDouble(value);
+        }
+    }
+
+    @Override
+    public Class<?> packetClazz() {
+        return packetClazz;
+    }
+
+    @Override
+    public Object newPacket() {
+        return ReflectionUtils.newInstance(constructor);
+    }
+
+    @Override
+    public void bind(Object packet, Map<String, String> params) {
+        for (var i = 0; i < fields.size(); i++) {
+            var field = fields.get(i);
+            var value = params.get(field.getName());
+            if (value != null) {
+                ReflectionUtils.invokeMethod(packet, setters.get(i), parse(field.getType(), value));
+            }
+        }
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ *
+ */
+
+package com.zfoo.net.enhance;
+
+import java.util.Map;
+
+/**
+ * @author godotg
+ */
+public interface IHttpBinder {
+
+    Class<?> packetClazz();
+
+    Object newPacket();
+
+    /**
+     * 把http的路径变量和查询参数绑定到协议的属性上
+     */
+    void bind(Object packet, Map<String, String> params);
+
+}
@@ -56,7 +56,32 @@ public abstract class BaseRouteHandler extends ChannelInboundHandlerAdapter {
             return;
         }
         DecodedPacketInfo decodedPacketInfo = (DecodedPacketInfo) msg;
-        NetContext.getRouter().receive(session, decodedPacketInfo.getPacket(), decodedPacketInfo.getAttachment());
+        var packet = decodedPacketInfo.getPacket();
+        var attachment = decodedPacketInfo.getAttachment();
+        decodedPacketInfo.recycle();
+        NetContext.getRouter().receive(session, packet, attachment);
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        // channel重新可写之后写入排队的NORMAL消息和合并的消息
+        if (ctx.channel().isWritable()) {
+            var session = SessionUtils.getSession(ctx);
+            if (session != null) {
+                NetContext.getRouter().writeHeld(session);
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 断开之后不会再可写，释放还在排队的消息
+        var session = SessionUtils.getSession(ctx);
+        if (session != null) {
+            session.releaseHeldPackets();
+        }
+        super.channelInactive(ctx);
     }
 
     @Override
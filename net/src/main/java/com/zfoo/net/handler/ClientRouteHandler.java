@@ -53,8 +53,9 @@ public class ClientRouteHandler extends BaseRouteHandler {
         NetContext.getSessionManager().removeClientSession(session);
         EventBus.post(ClientSessionInactiveEvent.valueOf(session));
 
-        // 如果是消费者inactive，还需要触发客户端消费者检查事件，以便重新连接
+        // 如果是消费者inactive，需要从服务提供者中摘除，还需要触发客户端消费者检查事件，以便重新连接
         if (session.getConsumerRegister() != null) {
+            NetContext.getConsumer().updateProviders();
             NetContext.getConfigManager().getRegistry().checkConsumer();
         }
 
@@ -17,17 +17,24 @@ import com.zfoo.event.manager.EventBus;
 import com.zfoo.net.NetContext;
 import com.zfoo.net.core.gateway.IGatewayLoadBalancer;
 import com.zfoo.net.core.gateway.model.GatewaySessionInactiveEvent;
+import com.zfoo.net.handler.idle.AbstractIdleHandler;
 import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.packet.PassthroughPacketInfo;
 import com.zfoo.net.packet.common.Heartbeat;
 import com.zfoo.net.packet.common.Ping;
 import com.zfoo.net.packet.common.Pong;
+import com.zfoo.net.router.PacketStatistics;
 import com.zfoo.net.router.attachment.GatewayAttachment;
 import com.zfoo.net.router.attachment.SignalAttachment;
 import com.zfoo.net.session.Session;
 import com.zfoo.net.util.SessionUtils;
+import com.zfoo.protocol.ProtocolManager;
 import com.zfoo.protocol.util.JsonUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import org.slf4j.Logger;
@@ -63,9 +70,18 @@ public class GatewayRouteHandler extends ServerRouteHandler {
             return;
         }
 
+        // 开启了gateway-passthrough，没有解码的包直接透传给Provider
+        if (msg instanceof PassthroughPacketInfo) {
+            forwardingPassthrough(session, (PassthroughPacketInfo) msg);
+            return;
+        }
+
         var decodedPacketInfo = (DecodedPacketInfo) msg;
         var packet = decodedPacketInfo.getPacket();
+        var signalAttachment = (SignalAttachment) decodedPacketInfo.getAttachment();
+        decodedPacketInfo.recycle();
         if (packet.getClass() == Heartbeat.class) {
+            AbstractIdleHandler.heartbeat(session);
             return;
         }
         if (packet.getClass() == Ping.class) {
@@ -80,8 +96,9 @@ public class GatewayRouteHandler extends ServerRouteHandler {
 
 
         // 把客户端信息包装为一个GatewayAttachment,因此通过这个网关附加包可以得到用户或玩家的uid、sid之类的信息
-        var gatewayAttachment = new GatewayAttachment(session);
-        var signalAttachment = (SignalAttachment) decodedPacketInfo.getAttachment();
+        var gatewayAttachment = NetContext.getConfigManager().getLocalConfig().isInboundRecycle()
+                ? GatewayAttachment.recycledValueOf(session)
+                : new GatewayAttachment(session);
         if (signalAttachment != null) {
             signalAttachment.setClient(SignalAttachment.SIGNAL_SERVER);
             gatewayAttachment.setSignalAttachment(signalAttachment);
@@ -110,19 +127,79 @@ public class GatewayRouteHandler extends ServerRouteHandler {
     }
 
     /**
-     * 转发网关收到的包到Provider
+     * 转发网关收到的包到Provider，转发之后网关就不再使用这个attachment，从对象池中获取的attachment在这里放回对象池
      */
-    private void forwardingPacket(Object packet, Object attachment, Object argument) {
+    private void forwardingPacket(Object packet, GatewayAttachment attachment, Object argument) {
         try {
             // 网关统一用 moduleid uid 获取 session
             var providers = NetContext.getConsumer().findProviders(packet);
             var loadBalancer = NetContext.getConsumer().selectLoadBalancer(providers, packet);
             var providerSession = loadBalancer.selectProvider(providers, packet, argument);
+            sendToProvider(providerSession, packet, attachment);
+        } catch (Exception e) {
+            logger.error("An exception occurred at the gateway", e);
+        } catch (Throwable t) {
+            logger.error("An error occurred at the gateway", t);
+        } finally {
+            attachment.recycle();
+        }
+    }
+
+    /**
+     * 和forwardingPacket(packet, attachment, Long.valueOf(argument))一样，使用uid或者sid计算一致性hash的时候不需要装箱
+     */
+    private void forwardingPacket(Object packet, GatewayAttachment attachment, long argument) {
+        try {
+            var providers = NetContext.getConsumer().findProviders(packet);
+            var loadBalancer = NetContext.getConsumer().selectLoadBalancer(providers, packet);
+            var providerSession = loadBalancer.selectProvider(providers, packet, argument);
+            sendToProvider(providerSession, packet, attachment);
+        } catch (Exception e) {
+            logger.error("An exception occurred at the gateway", e);
+        } catch (Throwable t) {
+            logger.error("An error occurred at the gateway", t);
+        } finally {
+            attachment.recycle();
+        }
+    }
+
+    /**
+     * Router.send会在Provider的channel中异步编码，那时候从对象池中获取的attachment可能已经被下一个包复用了，
+     * 所以开启了inbound-recycle的时候在当前线程编码，编码之后attachment就可以放回对象池
+     */
+    private void sendToProvider(Session providerSession, Object packet, GatewayAttachment attachment) {
+        if (!NetContext.getConfigManager().getLocalConfig().isInboundRecycle()) {
             NetContext.getRouter().send(providerSession, packet, attachment);
+            return;
+        }
+        var buffer = ByteBufAllocator.DEFAULT.ioBuffer();
+        NetContext.getPacketService().write(buffer, packet, attachment);
+        if (PacketStatistics.isEnabled()) {
+            PacketStatistics.recordSend(ProtocolManager.protocolId(packet.getClass()));
+        }
+        NetContext.getRouter().forward(providerSession, EncodedBufferPacketInfo.valueOf(packet, buffer));
+    }
+
+    /**
+     * 透传客户端的原始字节到Provider，和forwardingPacket的一致性hash规则一样，先使用uid，然后才是sid
+     */
+    private void forwardingPassthrough(Session session, PassthroughPacketInfo packetInfo) {
+        try {
+            var packet = packetInfo.getPacket();
+            var sid = session.getSid();
+            var uid = session.getUid();
+            var providers = NetContext.getConsumer().findProviders(packet);
+            var loadBalancer = NetContext.getConsumer().selectLoadBalancer(providers, packet);
+            // uid和sid都是long，使用selectProvider(providers, packet, long)，不会装箱
+            var providerSession = loadBalancer.selectProvider(providers, packet, uid > 0 ? uid : sid);
+            var buffer = PacketService.passthroughBuffer(sid, uid, packetInfo.getBody().retain());
+            NetContext.getRouter().forward(providerSession, EncodedBufferPacketInfo.valueOf(packet, buffer));
         } catch (Exception e) {
             logger.error("An exception occurred at the gateway", e);
         } catch (Throwable t) {
             logger.error("An error occurred at the gateway", t);
+        } finally {
+            packetInfo.release();
         }
     }
 
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.cipher;
+
+import com.zfoo.protocol.exception.RunException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * EN: The stream ciphers supported by PacketCipher, the encrypted data has the same length as the plain data.
+ * There is no MAC, the ciphertext is malleable and the integrity of the packets is not protected.
+ * CN: PacketCipher支持的流加密算法，加密之后的数据和原始数据的长度一样。没有MAC，密文可以被篡改，不提供完整性保护
+ *
+ * @author godotg
+ */
+public enum CipherAlgorithm {
+
+    /**
+     * key的长度为16，24或者32，iv的长度为16
+     */
+    AES_CTR("AES/CTR/NoPadding", "AES"),
+
+    /**
+     * key的长度为32，nonce的长度为12，没有AES硬件加速的移动设备上比AES快
+     */
+    CHACHA20("ChaCha20", "ChaCha20");
+
+    private final String transformation;
+
+    private final String keyAlgorithm;
+
+    CipherAlgorithm(String transformation, String keyAlgorithm) {
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    public Cipher newCipher(int mode, byte[] key, byte[] iv) {
+        try {
+            var cipher = Cipher.getInstance(transformation);
+            var keySpec = new SecretKeySpec(key, keyAlgorithm);
+            var parameterSpec = this == CHACHA20 ? new ChaCha20ParameterSpec(iv, 0) : new IvParameterSpec(iv);
+            cipher.init(mode, keySpec, parameterSpec);
+            return cipher;
+        } catch (Exception e) {
+            throw new RunException(e);
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.cipher;
+
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.session.Session;
+import com.zfoo.protocol.exception.RunException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import javax.crypto.Cipher;
+
+/**
+ * EN: Per session stream encryption of the packet body, it works directly on the ByteBuf without byte[] copies,
+ * the inbound packets are decrypted in place and the outbound packets are encrypted in place if the buffer is not shared.
+ * CN: 每个session独立的包体流加密，直接在ByteBuf上加密和解密，没有byte[]的拷贝。
+ * 收到的包原地解密，发送的包如果buffer没有被共享（比如广播的buffer）也是原地加密。
+ * <p>
+ * 加密的包的包头次高位为1，包头本身不加密，所以登录之前的明文包和登录之后的密文包可以在同一个连接上混合传输。
+ * 收到第一个密文包之后，再收到包体不为空的明文包会断开连接，防止中间人清除加密标记位把密文降级为明文。
+ * 客户端到服务器使用iv，服务器到客户端使用第一个字节最高位取反的iv，两个方向不会使用同样的密钥流。
+ * <p>
+ * 注意：这里只有加密，没有MAC，不提供完整性保护。AES-CTR和ChaCha20都是流加密，密文的某一位翻转之后明文的同一位也会翻转，
+ * 中间人不知道key也可以有针对性的篡改包体（比如已知协议格式中某个字段的位置），接收方无法发现。
+ * 只能用来防止抓包和简单的外挂，需要防篡改的场景请使用TLS，或者在业务层对关键的包做签名。
+ * <p>
+ * 使用方法，key和iv由使用者在登录的时候自己协商：
+ * 1. 客户端发送登录请求之前调用enableDecrypt，然后收到登录响应之后调用enableEncrypt
+ * 2. 服务器收到登录请求之后调用enableDecrypt，发送登录响应之后调用enableEncrypt
+ *
+ * @author godotg
+ */
+public class PacketCipher {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketCipher.class);
+
+    public static final AttributeKey<PacketCipher> CIPHER_KEY = AttributeKey.valueOf("cipher");
+
+    public static final int CIPHER_FLAG = PacketService.PACKET_CIPHER_FLAG;
+
+    private final Cipher encryptCipher;
+
+    private final Cipher decryptCipher;
+
+    // 只会在channel的event loop中访问
+    private boolean encryptEnabled = false;
+    private boolean decryptStarted = false;
+
+    /**
+     * @param server 服务器和客户端的加密方向使用不同的iv
+     */
+    public PacketCipher(CipherAlgorithm algorithm, byte[] key, byte[] iv, boolean server) {
+        var serverIv = iv.clone();
+        serverIv[0] ^= (byte) 0x80;
+        this.encryptCipher = algorithm.newCipher(Cipher.ENCRYPT_MODE, key, server ? serverIv : iv);
+        this.decryptCipher = algorithm.newCipher(Cipher.DECRYPT_MODE, key, server ? iv : serverIv);
+    }
+
+    /**
+     * 没有开启加密的channel返回null
+     */
+    @Nullable
+    public static PacketCipher cipher(Channel channel) {
+        // attr()在没有属性的时候会创建属性，先用hasAttr()判断
+        return channel.hasAttr(CIPHER_KEY) ? channel.attr(CIPHER_KEY).get() : null;
+    }
+
+    public static boolean isEncrypted(int header) {
+        return (header & CIPHER_FLAG) != 0;
+    }
+
+    /**
+     * 开始解密对方发过来的加密包，在event loop中执行，所以和之前写入的包的顺序是确定的
+     */
+    public static void enableDecrypt(Session session, CipherAlgorithm algorithm, byte[] key, byte[] iv) {
+        var channel = session.getChannel();
+        // 服务器接收的channel有parent
+        var packetCipher = new PacketCipher(algorithm, key, iv, channel.parent() != null);
+        channel.eventLoop().execute(() -> channel.attr(CIPHER_KEY).set(packetCipher));
+    }
+
+    /**
+     * 开始加密之后发送的包，在这之前写入的包依然是明文，必须先调用enableDecrypt
+     */
+    public static void enableEncrypt(Session session) {
+        var channel = session.getChannel();
+        channel.eventLoop().execute(() -> {
+            var packetCipher = cipher(channel);
+            if (packetCipher == null) {
+                logger.error("session [{}] must enable decrypt before encrypt", session);
+                return;
+            }
+            packetCipher.encryptEnabled = true;
+        });
+    }
+
+    public boolean isEncryptEnabled() {
+        return encryptEnabled;
+    }
+
+    /**
+     * 原地解密buffer中可读的字节
+     */
+    public void decrypt(ByteBuf buffer) {
+        decryptStarted = true;
+        cryptInPlace(decryptCipher, buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    /**
+     * 收到一个没有加密标记的包，已经收到过密文包则抛出异常断开连接。包体为空的包不会加密（encryptFrame），所以不检查
+     */
+    public void checkPlaintext(ByteBuf buffer) {
+        if (decryptStarted && buffer.isReadable()) {
+            throw new IllegalArgumentException("received a plaintext packet after the encrypted packets, the cipher flag may have been stripped");
+        }
+    }
+
+    /**
+     * 加密一个完整的包，frame包括包头的长度，包头不加密只设置加密的标记位
+     *
+     * @param shared frame是否被共享，共享的frame不能原地加密，会加密到一个新的buffer并且释放frame
+     */
+    public ByteBuf encryptFrame(ByteBufAllocator alloc, ByteBuf frame, boolean shared) {
+        var headerIndex = frame.readerIndex();
+        var length = frame.readableBytes() - PacketService.PACKET_HEAD_LENGTH;
+        if (length <= 0) {
+            return frame;
+        }
+        var header = frame.getInt(headerIndex) | CIPHER_FLAG;
+        if (!shared) {
+            try {
+                cryptInPlace(encryptCipher, frame, headerIndex + PacketService.PACKET_HEAD_LENGTH, length);
+            } catch (Throwable t) {
+                frame.release();
+                throw t;
+            }
+            frame.setInt(headerIndex, header);
+            return frame;
+        }
+
+        var out = alloc.directBuffer(frame.readableBytes());
+        try {
+            out.writeInt(header);
+            for (var nioBuffer : frame.nioBuffers(headerIndex + PacketService.PACKET_HEAD_LENGTH, length)) {
+                var writerIndex = out.writerIndex();
+                var count = encryptCipher.update(nioBuffer, out.internalNioBuffer(writerIndex, out.writableBytes()));
+                out.writerIndex(writerIndex + count);
+            }
+        } catch (Throwable t) {
+            out.release();
+            throw new RunException(t);
+        } finally {
+            frame.release();
+        }
+        return out;
+    }
+
+    private static void cryptInPlace(Cipher cipher, ByteBuf buffer, int index, int length) {
+        try {
+            // Cipher.update(ByteBuffer, ByteBuffer)保证输入和输出是同一块内存的时候结果也是正确的
+            for (var nioBuffer : buffer.nioBuffers(index, length)) {
+                cipher.update(nioBuffer, nioBuffer.duplicate());
+            }
+        } catch (Exception e) {
+            throw new RunException(e);
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.compress;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.protocol.util.FastThreadLocalAdapter;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.springframework.lang.Nullable;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * EN: Compression of the packets, every packet is compressed on its own, so the Deflater and Inflater are thread local (one per event loop)
+ * instead of per connection, and work directly on the ByteBuf without byte[] copies. Only the packets larger than the compress-threshold are compressed.
+ * CN: 包的压缩，每个包都是独立压缩的，所以Deflater和Inflater是线程本地的（每个event loop一个），而不是每个连接一个，
+ * 连接数很多的时候不会占用大量的native内存。直接在ByteBuf上压缩和解压，没有byte[]的拷贝，只会压缩超过compress-threshold的包。
+ * <p>
+ * 压缩的包的格式：header(4byte，最高位为1) + 原始包体的长度(4byte) + deflate压缩后的包体
+ * <p>
+ * 协商：客户端连接建立之后发送一个长度为0的压缩包头作为握手，服务器收到之后回复同样的握手，
+ * 双方都收到握手之后才会压缩发出的包。包含这个类的版本中，没有开启压缩的一方会忽略握手，不会回复，
+ * 所以两端都是这个版本的时候compress-threshold的配置可以不一样。
+ * <p>
+ * 注意：旧版本的TcpCodecHandler和WebSocketCodecHandler会把握手的包头0x80000000当作负数的长度，直接断开连接。
+ * 客户端（包括consumer连接provider）配置compress-threshold之前，它连接的所有服务器都必须先升级到这个版本，
+ * 滚动升级的时候先升级服务器，再开启客户端的compress-threshold。服务器配置compress-threshold不会主动发送握手，对旧的客户端没有影响。
+ *
+ * @author godotg
+ */
+public class PacketCompressor {
+
+    /**
+     * 包头的最高位为1表示压缩的包
+     */
+    public static final int COMPRESS_FLAG = PacketService.PACKET_COMPRESS_FLAG;
+
+    /**
+     * 压缩的包在包头之后还有一个int表示原始包体的长度
+     */
+    public static final int COMPRESS_HEAD_LENGTH = PacketService.PACKET_HEAD_LENGTH + 4;
+
+    private final int threshold;
+
+    // deflate使用最快的压缩级别，不带zlib的头和校验；每次压缩和解压之后都会reset，所以同一个线程的所有连接可以共享
+    private static final FastThreadLocalAdapter<Deflater> LOCAL_DEFLATER = new FastThreadLocalAdapter<>(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final FastThreadLocalAdapter<Inflater> LOCAL_INFLATER = new FastThreadLocalAdapter<>(() -> new Inflater(true));
+
+    // 只会在channel的event loop中访问
+    private boolean peerSupported = false;
+    private boolean helloSent = false;
+
+    public PacketCompressor(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * 没有配置compress-threshold则返回null，表示不使用压缩
+     */
+    @Nullable
+    public static PacketCompressor newCompressor() {
+        var threshold = NetContext.getConfigManager().getLocalConfig().getCompressThreshold();
+        return threshold > 0 ? new PacketCompressor(threshold) : null;
+    }
+
+    public static boolean isCompressed(int header) {
+        return (header & COMPRESS_FLAG) != 0;
+    }
+
+    public static int length(int header) {
+        return header & ~PacketService.PACKET_FLAG_MASK;
+    }
+
+    /**
+     * 握手包，一个长度为0的压缩包头
+     */
+    public ByteBuf hello(ByteBufAllocator alloc) {
+        helloSent = true;
+        return alloc.ioBuffer(PacketService.PACKET_HEAD_LENGTH).writeInt(COMPRESS_FLAG);
+    }
+
+    /**
+     * 收到对方的握手，返回true表示自己还没有发送过握手，需要回复
+     */
+    public boolean receiveHello() {
+        peerSupported = true;
+        return !helloSent;
+    }
+
+    public boolean isPeerSupported() {
+        return peerSupported;
+    }
+
+    /**
+     * 压缩一个完整的包，frame包括包头的长度。包体小于阈值或者压缩之后没有变小则直接返回frame，否则释放frame返回压缩后的包
+     */
+    public ByteBuf compressFrame(ByteBufAllocator alloc, ByteBuf frame) {
+        var rawLength = frame.readableBytes() - PacketService.PACKET_HEAD_LENGTH;
+        if (!peerSupported || rawLength < threshold) {
+            return frame;
+        }
+        ByteBuf compressed;
+        try {
+            compressed = compress(alloc, frame, frame.readerIndex() + PacketService.PACKET_HEAD_LENGTH, rawLength);
+        } catch (Throwable t) {
+            frame.release();
+            throw t;
+        }
+        if (compressed == null) {
+            return frame;
+        }
+        frame.release();
+        return compressed;
+    }
+
+    @Nullable
+    private ByteBuf compress(ByteBufAllocator alloc, ByteBuf frame, int rawIndex, int rawLength) {
+        // deflate最坏的情况下会比原始数据稍大，压缩之后没有变小就不使用压缩的结果
+        var deflater = LOCAL_DEFLATER.get();
+        var out = alloc.directBuffer(COMPRESS_HEAD_LENGTH + rawLength + (rawLength >> 12) + (rawLength >> 14) + 64);
+        try {
+            out.writerIndex(COMPRESS_HEAD_LENGTH);
+            for (var nioBuffer : frame.nioBuffers(rawIndex, rawLength)) {
+                deflater.setInput(nioBuffer);
+                while (!deflater.needsInput()) {
+                    deflate(deflater, out);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(deflater, out);
+            }
+        } catch (Throwable t) {
+            out.release();
+            throw t;
+        } finally {
+            deflater.reset();
+        }
+
+        var length = out.readableBytes() - PacketService.PACKET_HEAD_LENGTH;
+        if (length >= rawLength) {
+            out.release();
+            return null;
+        }
+        out.setInt(0, COMPRESS_FLAG | length);
+        out.setInt(PacketService.PACKET_HEAD_LENGTH, rawLength);
+        return out;
+    }
+
+    private void deflate(Deflater deflater, ByteBuf out) {
+        if (!out.isWritable()) {
+            out.ensureWritable(IOUtils.BYTES_PER_KB);
+        }
+        var writerIndex = out.writerIndex();
+        var count = deflater.deflate(out.internalNioBuffer(writerIndex, out.writableBytes()));
+        out.writerIndex(writerIndex + count);
+    }
+
+    /**
+     * 解压一个压缩的包体，in不包括包头的长度，返回的buffer需要调用者释放
+     */
+    public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in) {
+        return decompress(alloc, in, IOUtils.BYTES_PER_MB);
+    }
+
+    /**
+     * @param maxLength 解压之后的最大长度，和包的最大长度一样，防止解压炸弹
+     */
+    public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in, int maxLength) {
+        var rawLength = in.readInt();
+        if (rawLength < 0 || rawLength > maxLength) {
+            throw new IllegalArgumentException(StringUtils.format("illegal compressed packet [rawLength:{}]", rawLength));
+        }
+        var inflater = LOCAL_INFLATER.get();
+        var out = alloc.directBuffer(rawLength, rawLength);
+        try {
+            for (var nioBuffer : in.nioBuffers()) {
+                inflater.setInput(nioBuffer);
+                while (!inflater.needsInput() && !inflater.finished()) {
+                    var writerIndex = out.writerIndex();
+                    var count = inflater.inflate(out.internalNioBuffer(writerIndex, out.writableBytes()));
+                    // 输出已经满了或者需要字典，都是非法的压缩数据
+                    if (count == 0 && !inflater.needsInput() && !inflater.finished()) {
+                        throw new IllegalArgumentException(StringUtils.format("illegal compressed packet, raw length is larger than [{}]", rawLength));
+                    }
+                    out.writerIndex(writerIndex + count);
+                }
+            }
+            if (!inflater.finished() || out.readableBytes() != rawLength) {
+                throw new IllegalArgumentException(StringUtils.format("illegal compressed packet [rawLength:{}] [inflated:{}]", rawLength, out.readableBytes()));
+            }
+            in.skipBytes(in.readableBytes());
+            return out;
+        } catch (DataFormatException e) {
+            out.release();
+            throw new IllegalArgumentException("illegal compressed packet", e);
+        } catch (Throwable t) {
+            out.release();
+            throw t;
+        } finally {
+            inflater.reset();
+        }
+    }
+
+}
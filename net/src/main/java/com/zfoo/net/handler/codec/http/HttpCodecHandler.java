@@ -15,76 +15,302 @@ package com.zfoo.net.handler.codec.http;
 import com.zfoo.net.packet.DecodedPacketInfo;
 import com.zfoo.net.packet.EncodedPacketInfo;
 import com.zfoo.net.packet.common.Message;
+import com.zfoo.net.router.PacketStatistics;
 import com.zfoo.net.router.attachment.HttpAttachment;
+import com.zfoo.protocol.ProtocolManager;
 import com.zfoo.protocol.util.JsonUtils;
 import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.http.*;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.springframework.lang.Nullable;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 
 /**
+ * EN: The response is encoded with the zfoo binary protocol if the Accept header of the request contains application/x-zfoo, otherwise json.
+ * Keep-alive clients can send multiple requests without waiting for the responses (pipelining), the responses are always written in the order of the requests.
+ * CN: 请求头的Accept包含application/x-zfoo的时候响应使用zfoo的二进制协议，否则使用json。
+ * keep-alive的客户端可以不等待响应连续发送多个请求（pipelining），响应总是按照请求的顺序写入。
+ * <p>
+ * 每个请求都保证有且只有一个响应：处理器抛出异常的时候Router会返回500，超过requestTimeout没有响应的请求返回504，
+ * 否则后面的响应都会一直等待这个请求；同一个请求重复的响应，比如超时之后才到达的响应，直接丢弃。
+ *
  * @author godotg
  */
 public class HttpCodecHandler extends MessageToMessageCodec<FullHttpRequest, EncodedPacketInfo> {
 
+    /**
+     * zfoo二进制协议的content type，body为ProtocolManager.write()写入的数据
+     */
+    public static final AsciiString APPLICATION_ZFOO = AsciiString.cached("application/x-zfoo");
+
+    public static final long DEFAULT_REQUEST_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
     private final Function<FullHttpRequest, DecodedPacketInfo> uriResolver;
 
+    // PacketStatistics的Prometheus格式的拉取路径，为null表示不开启
+    private final String metricsPath;
+
+    // 下一个请求的序号
+    private long readSequence;
+
+    // 下一个可以写入的响应的序号
+    private long writeSequence;
+
+    // pipelining中比前面的请求先处理完的响应，等前面的响应写入之后再按照顺序写入
+    private final Map<Long, PendingWrite> pendingWrites = new HashMap<>();
+
+    // 交给处理器之后还没有写入响应的请求，按照序号的顺序排列，只会在channel的event loop中访问
+    private final ArrayDeque<InflightRequest> inflightRequests = new ArrayDeque<>();
+
+    private final long requestTimeoutNanos;
+
+    // 最早的请求的超时检查，一个连接最多只有一个
+    private ScheduledFuture<?> timeoutFuture;
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+
+    private static class InflightRequest {
+        private final HttpAttachment attachment;
+        private final long deadline;
+
+        private InflightRequest(HttpAttachment attachment, long deadline) {
+            this.attachment = attachment;
+            this.deadline = deadline;
+        }
+    }
+
     public HttpCodecHandler(Function<FullHttpRequest, DecodedPacketInfo> uriResolver) {
+        this(uriResolver, null);
+    }
+
+    public HttpCodecHandler(Function<FullHttpRequest, DecodedPacketInfo> uriResolver, @Nullable String metricsPath) {
+        this(uriResolver, metricsPath, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    public HttpCodecHandler(Function<FullHttpRequest, DecodedPacketInfo> uriResolver, @Nullable String metricsPath, long requestTimeoutMillis) {
         super();
         this.uriResolver = uriResolver;
+        this.metricsPath = metricsPath;
+        this.requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis > 0 ? requestTimeoutMillis : DEFAULT_REQUEST_TIMEOUT);
     }
 
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, FullHttpRequest fullHttpRequest, List<Object> list) {
-        var decodedPacketInfo = uriResolver.apply(fullHttpRequest);
+        if (isMetricsRequest(fullHttpRequest)) {
+            writeMessage(channelHandlerContext, fullHttpRequest, Message.valueInfo(PacketStatistics.prometheus()), HttpResponseStatus.OK);
+            return;
+        }
+        DecodedPacketInfo decodedPacketInfo;
+        try {
+            decodedPacketInfo = uriResolver.apply(fullHttpRequest);
+        } catch (IllegalArgumentException e) {
+            // 参数的格式错误
+            writeMessage(channelHandlerContext, fullHttpRequest, Message.valueError(e.getMessage()), HttpResponseStatus.BAD_REQUEST);
+            return;
+        }
+        if (decodedPacketInfo == null) {
+            writeMessage(channelHandlerContext, fullHttpRequest, Message.valueInfo(HttpResponseStatus.NOT_FOUND.reasonPhrase()), HttpResponseStatus.NOT_FOUND);
+            return;
+        }
+        if (decodedPacketInfo.getAttachment() instanceof HttpAttachment) {
+            var attachment = (HttpAttachment) decodedPacketInfo.getAttachment();
+            attachment.setSequence(readSequence++);
+            inflightRequests.add(new InflightRequest(attachment, System.nanoTime() + requestTimeoutNanos));
+            if (timeoutFuture == null) {
+                scheduleTimeout(channelHandlerContext);
+            }
+        }
         list.add(decodedPacketInfo);
     }
 
+    private void scheduleTimeout(ChannelHandlerContext ctx) {
+        var inflightRequest = inflightRequests.peek();
+        if (inflightRequest == null) {
+            return;
+        }
+        timeoutFuture = ctx.executor().schedule(() -> checkTimeout(ctx, inflightRequest), inflightRequest.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private void checkTimeout(ChannelHandlerContext ctx, InflightRequest expiredRequest) {
+        timeoutFuture = null;
+        // 定时任务按照event loop的时钟触发，触发的时候expiredRequest一定已经超时了，不能只依赖System.nanoTime()判断
+        var now = Math.max(System.nanoTime(), expiredRequest.deadline);
+        InflightRequest inflightRequest;
+        while ((inflightRequest = inflightRequests.peek()) != null && inflightRequest.deadline - now <= 0) {
+            inflightRequests.poll();
+            var sequence = inflightRequest.attachment.getSequence();
+            if (sequence < writeSequence || pendingWrites.containsKey(sequence)) {
+                continue;
+            }
+            // 超时的请求返回504，后面已经处理完的响应才能继续写入，处理器之后的响应会被当作重复的响应丢弃
+            var attachment = HttpAttachment.valueOf(inflightRequest.attachment.getFullHttpRequest(), HttpResponseStatus.GATEWAY_TIMEOUT);
+            attachment.setSequence(sequence);
+            ctx.channel().writeAndFlush(EncodedPacketInfo.valueOf(Message.valueError(HttpResponseStatus.GATEWAY_TIMEOUT.reasonPhrase()), attachment));
+        }
+        scheduleTimeout(ctx);
+    }
+
+    private boolean isMetricsRequest(FullHttpRequest fullHttpRequest) {
+        if (metricsPath == null || fullHttpRequest.method() != HttpMethod.GET) {
+            return false;
+        }
+        var uri = fullHttpRequest.uri();
+        return uri.startsWith(metricsPath) && (uri.length() == metricsPath.length() || uri.charAt(metricsPath.length()) == '?');
+    }
+
+    /**
+     * 错误和metrics的响应也需要按照请求的顺序写入，所以从channel的尾部经过这个handler写入
+     */
+    private void writeMessage(ChannelHandlerContext ctx, FullHttpRequest fullHttpRequest, Message message, HttpResponseStatus httpResponseStatus) {
+        var attachment = HttpAttachment.valueOf(fullHttpRequest, httpResponseStatus);
+        attachment.setSequence(readSequence++);
+        ctx.channel().writeAndFlush(EncodedPacketInfo.valueOf(message, attachment));
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        var attachment = httpAttachment(msg);
+        if (attachment == null) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+
+        // 同一个请求的响应已经写入或者已经在等待写入，比如超时之后才到达的响应，或者处理器返回之后又抛出了异常
+        var sequence = attachment.getSequence();
+        if (sequence < writeSequence || pendingWrites.containsKey(sequence)) {
+            promise.tryFailure(new IllegalStateException(StringUtils.format("duplicate http response [sequence:{}]", sequence)));
+            return;
+        }
+
+        // 前面的请求的响应还没有写入
+        if (sequence != writeSequence) {
+            pendingWrites.put(attachment.getSequence(), new PendingWrite(msg, promise));
+            return;
+        }
+
+        writeInOrder(ctx, attachment, msg, promise);
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+
+        // 当前的响应写入之后，后面已经处理完的响应也可以按照顺序写入了，这些响应的flush可能已经错过了，所以需要再flush一次
+        var drained = false;
+        PendingWrite pendingWrite;
+        while ((pendingWrite = pendingWrites.remove(writeSequence)) != null) {
+            writeInOrder(ctx, httpAttachment(pendingWrite.msg), pendingWrite.msg, pendingWrite.promise);
+            drained = true;
+        }
+        if (drained) {
+            ctx.flush();
+        }
+    }
+
+    private void writeInOrder(ChannelHandlerContext ctx, HttpAttachment attachment, Object msg, ChannelPromise promise) throws Exception {
+        writeSequence++;
+        while (!inflightRequests.isEmpty() && inflightRequests.peek().attachment.getSequence() < writeSequence) {
+            inflightRequests.poll();
+        }
+        if (HttpUtil.isKeepAlive(attachment.getFullHttpRequest())) {
+            super.write(ctx, msg, promise);
+        } else {
+            // 客户端不支持keep-alive，响应写入之后关闭连接
+            super.write(ctx, msg, promise.unvoid().addListener(ChannelFutureListener.CLOSE));
+        }
+    }
+
+    private HttpAttachment httpAttachment(Object msg) {
+        if (msg instanceof EncodedPacketInfo && ((EncodedPacketInfo) msg).getAttachment() instanceof HttpAttachment) {
+            return (HttpAttachment) ((EncodedPacketInfo) msg).getAttachment();
+        }
+        return null;
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        for (var pendingWrite : pendingWrites.values()) {
+            pendingWrite.promise.tryFailure(new ClosedChannelException());
+        }
+        pendingWrites.clear();
+        inflightRequests.clear();
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+        super.handlerRemoved(ctx);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, EncodedPacketInfo out, List<Object> list) {
         var packet = out.getPacket();
         var attachment = (HttpAttachment) out.getAttachment();
 
-        var protocolVersion = attachment.getFullHttpRequest().protocolVersion();
+        var fullHttpRequest = attachment.getFullHttpRequest();
+        var protocolVersion = fullHttpRequest.protocolVersion();
         var httpResponseStatus = attachment.getHttpResponseStatus();
+        FullHttpResponse fullHttpResponse;
         if (packet.getClass() == Message.class) {
             var message = (Message) packet;
-            if (message.fail()) {
+            // 已经指定了错误的状态码（比如500和504）的话保留原来的状态码
+            if (message.fail() && httpResponseStatus.code() < 400) {
                 httpResponseStatus = HttpResponseStatus.BAD_REQUEST;
             }
 
             if (StringUtils.isEmpty(message.getMessage())) {
-                var fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus);
-                fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
-                fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, 0);
-                fullHttpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-                list.add(fullHttpResponse);
+                fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus);
             } else {
                 var byteBuf = channelHandlerContext.alloc().ioBuffer();
                 byteBuf.writeCharSequence(message.getMessage(), StringUtils.DEFAULT_CHARSET);
-                var fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus, byteBuf);
-
-                fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
-                fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, byteBuf.readableBytes());
-                fullHttpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-                list.add(fullHttpResponse);
+                fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus, byteBuf);
             }
+            fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN);
         } else {
+            // 直接序列化到响应的buffer中，没有中间的字符串和字节数组的拷贝
             var byteBuf = channelHandlerContext.alloc().ioBuffer();
-            var jsonStr = JsonUtils.object2String(packet);
-            byteBuf.writeBytes(StringUtils.bytes(jsonStr));
-            var fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus, byteBuf);
+            var zfoo = acceptZfoo(fullHttpRequest);
+            try {
+                if (zfoo) {
+                    ProtocolManager.write(byteBuf, packet);
+                } else {
+                    JsonUtils.object2OutputStream(new ByteBufOutputStream(byteBuf), packet);
+                }
+            } catch (Throwable t) {
+                byteBuf.release();
+                throw t;
+            }
+            fullHttpResponse = new DefaultFullHttpResponse(protocolVersion, httpResponseStatus, byteBuf);
+            fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, zfoo ? APPLICATION_ZFOO : HttpHeaderValues.APPLICATION_JSON);
+        }
 
-            fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
-            fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, byteBuf.readableBytes());
-            fullHttpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
-//                fullHttpResponse.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        fullHttpResponse.headers().set(HttpHeaderNames.CONTENT_LENGTH, fullHttpResponse.content().readableBytes());
+        fullHttpResponse.headers().set(HttpHeaderNames.CONNECTION, HttpUtil.isKeepAlive(fullHttpRequest) ? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        list.add(fullHttpResponse);
+    }
 
-            list.add(fullHttpResponse);
-        }
+    private boolean acceptZfoo(FullHttpRequest fullHttpRequest) {
+        var accept = fullHttpRequest.headers().get(HttpHeaderNames.ACCEPT);
+        return accept != null && AsciiString.containsIgnoreCase(accept, APPLICATION_ZFOO);
     }
+
 }
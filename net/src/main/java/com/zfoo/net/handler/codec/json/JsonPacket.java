@@ -13,13 +13,25 @@
 
 package com.zfoo.net.handler.codec.json;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.zfoo.net.packet.DecodedPacketInfo;
 import com.zfoo.net.packet.EncodedPacketInfo;
 import com.zfoo.protocol.ProtocolManager;
-import com.zfoo.protocol.buffer.ByteBufUtils;
+import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.JsonUtils;
 import com.zfoo.protocol.util.StringUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * @author godotg
@@ -43,35 +55,147 @@ public class JsonPacket {
         return jsonPacket;
     }
 
+    /**
+     * EN: The ObjectReader and ObjectWriter of each protocol are cached by the protocolId, the serializers are resolved only once.
+     * CN: 按照protocolId缓存每个协议的ObjectReader和ObjectWriter，序列化器只需要查找一次，ObjectReader和ObjectWriter都是线程安全的
+     */
+    private static final ObjectReader[] readers = new ObjectReader[ProtocolManager.MAX_PROTOCOL_NUM];
+    private static final ObjectWriter[] writers = new ObjectWriter[ProtocolManager.MAX_PROTOCOL_NUM];
+
+    private static ObjectReader reader(short protocolId) {
+        var reader = readers[protocolId];
+        if (reader == null) {
+            // 并发的时候可能会创建多次，但是结果都一样
+            reader = JsonUtils.MAPPER.readerFor(protocolClass(protocolId));
+            readers[protocolId] = reader;
+        }
+        return reader;
+    }
+
+    private static ObjectWriter writer(short protocolId) {
+        var writer = writers[protocolId];
+        if (writer == null) {
+            writer = JsonUtils.MAPPER.writerFor(protocolClass(protocolId));
+            writers[protocolId] = writer;
+        }
+        return writer;
+    }
+
+    private static Class<?> protocolClass(short protocolId) {
+        return ProtocolManager.getProtocol(protocolId).protocolConstructor().getDeclaringClass();
+    }
+
+    /**
+     * 直接把json写入到byteBuf，不会生成中间的字符串和字节数组
+     */
     public static void writeEncodedPacketInfo(ByteBuf byteBuf, EncodedPacketInfo encodedPacketInfo) {
         var packet = encodedPacketInfo.getPacket();
         var attachment = encodedPacketInfo.getAttachment();
+        var protocolId = ProtocolManager.protocolId(packet.getClass());
         var attachmentId = attachment == null ? -1 : ProtocolManager.protocolId(attachment.getClass());
-        var jsonPacket = JsonPacket.valueOf(ProtocolManager.protocolId(packet.getClass()), packet, attachmentId, attachment);
-        var bytes = StringUtils.bytes(JsonUtils.object2String(jsonPacket));
-        byteBuf.writeBytes(bytes);
+        try (var generator = JsonUtils.MAPPER.getFactory().createGenerator((OutputStream) new ByteBufOutputStream(byteBuf), JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("protocolId", protocolId);
+            generator.writeNumberField("attachmentId", attachmentId);
+            generator.writeFieldName("packet");
+            writer(protocolId).writeValue(generator, packet);
+            if (attachment != null) {
+                generator.writeFieldName("attachment");
+                writer(attachmentId).writeValue(generator, attachment);
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new RunException("将对象[packet:{}]转换为json时异常", packet.getClass().getSimpleName(), e);
+        }
     }
 
+    /**
+     * EN: Parse the json directly from the byteBuf, the packet is bound by the cached ObjectReader as soon as the protocolId is known.
+     * If the packet appears before the protocolId, it is buffered as a json tree first.
+     * CN: 直接从byteBuf中流式解析json，读到protocolId之后用缓存的ObjectReader直接绑定packet；如果packet出现在protocolId的前面，则先解析为json树
+     */
     public static DecodedPacketInfo readDecodedPacketInfo(ByteBuf byteBuf) {
-        var bytes = ByteBufUtils.readAllBytes(byteBuf);
-        var jsonStr = StringUtils.bytesToString(bytes);
-        var jsonMap = JsonUtils.getJsonMap(jsonStr);
-        var protocolId = Short.parseShort(jsonMap.get("protocolId"));
-        var packetStr = jsonMap.get("packet");
-        var attachmentStr = jsonMap.get("attachmentId");
+        short protocolId = -1;
+        short attachmentId = -1;
+        Object packet = null;
         Object attachment = null;
-        if (StringUtils.isNotEmpty(attachmentStr)) {
-            var attachmentId = Short.parseShort(attachmentStr);
-            if (attachmentId >= 0) {
-                var attachmentClass = ProtocolManager.getProtocol(attachmentId).protocolConstructor().getDeclaringClass();
-                attachment = JsonUtils.string2Object(jsonMap.get("attachment"), attachmentClass);
+        JsonNode packetNode = null;
+        JsonNode attachmentNode = null;
+        try (var parser = createParser(byteBuf)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("json packet must be an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var fieldName = parser.getCurrentName();
+                var token = parser.nextToken();
+                switch (fieldName) {
+                    case "protocolId":
+                        protocolId = readId(parser, token, fieldName);
+                        break;
+                    case "attachmentId":
+                        attachmentId = readId(parser, token, fieldName);
+                        break;
+                    case "packet":
+                        if (protocolId >= 0) {
+                            packet = reader(protocolId).readValue(parser);
+                        } else {
+                            packetNode = JsonUtils.MAPPER.readTree(parser);
+                        }
+                        break;
+                    case "attachment":
+                        if (token == JsonToken.VALUE_NULL) {
+                            break;
+                        }
+                        if (attachmentId >= 0) {
+                            attachment = reader(attachmentId).readValue(parser);
+                        } else {
+                            attachmentNode = JsonUtils.MAPPER.readTree(parser);
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
             }
+
+            if (protocolId < 0) {
+                throw new IllegalArgumentException("json packet has no protocolId");
+            }
+            if (packetNode != null) {
+                packet = reader(protocolId).readValue(packetNode);
+            }
+            if (attachmentNode != null && attachmentId >= 0) {
+                attachment = reader(attachmentId).readValue(attachmentNode);
+            }
+        } catch (IOException e) {
+            throw new RunException("将json转换为协议[protocolId:{}]时异常", protocolId, e);
         }
-        var protocolClass = ProtocolManager.getProtocol(protocolId).protocolConstructor().getDeclaringClass();
-        var packet = JsonUtils.string2Object(packetStr, protocolClass);
         return DecodedPacketInfo.valueOf(packet, attachment);
     }
 
+    /**
+     * js的客户端可能把协议号发送成字符串，比如"protocolId":"1"，和之前的JsonUtils.getJsonMap一样数字和字符串都接受，-1表示没有
+     */
+    private static short readId(JsonParser parser, JsonToken token, String fieldName) throws IOException {
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_STRING) {
+            throw new IllegalArgumentException(StringUtils.format("json packet [{}] must be an integer", fieldName));
+        }
+        var id = parser.getValueAsInt(Integer.MIN_VALUE);
+        if (id < -1 || id >= ProtocolManager.MAX_PROTOCOL_NUM) {
+            throw new IllegalArgumentException(StringUtils.format("json packet [{}:{}] is illegal", fieldName, parser.getText()));
+        }
+        return (short) id;
+    }
+
+    private static JsonParser createParser(ByteBuf byteBuf) throws IOException {
+        var factory = JsonUtils.MAPPER.getFactory();
+        if (byteBuf.hasArray()) {
+            var parser = factory.createParser(byteBuf.array(), byteBuf.arrayOffset() + byteBuf.readerIndex(), byteBuf.readableBytes());
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            return parser;
+        }
+        return factory.createParser((InputStream) new ByteBufInputStream(byteBuf));
+    }
+
     public short getProtocolId() {
         return protocolId;
     }
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.tcp;
+
+import com.zfoo.net.core.gateway.IGatewayLoadBalancer;
+import com.zfoo.net.packet.PassthroughPacketInfo;
+import com.zfoo.net.packet.common.Heartbeat;
+import com.zfoo.net.packet.common.Ping;
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.exception.RunException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * 网关开启gateway-passthrough之后使用的codec，只读取protocolId，不解码包体，直接把原始的字节交给GatewayRouteHandler透传给Provider。
+ * <p>
+ * 以下的包依然需要完整的解码：
+ * 1. 网关自己处理的心跳包Heartbeat和Ping
+ * 2. 实现了IGatewayLoadBalancer的包，需要包里的字段做一致性hash
+ * 3. 网关设置了packetFilter，需要检查包的内容
+ *
+ * @author godotg
+ */
+public class GatewayTcpCodecHandler extends TcpCodecHandler {
+
+    // 需要完整解码的协议的标记
+    private static final Object DECODE = new Object();
+
+    // protocolId -> DECODE或者协议的一个共享的空对象，空对象只用来做负载均衡的模块查找。
+    // 协议注册之后不会再改变，并发写入的结果都一样，所以不需要同步
+    private static final Object[] prototypes = new Object[ProtocolManager.MAX_PROTOCOL_NUM];
+
+    private final boolean decodeAll;
+
+    /**
+     * @param decodeAll 网关有packetFilter的时候需要解码所有的包
+     */
+    public GatewayTcpCodecHandler(int maxFrameLength, boolean decodeAll) {
+        super(maxFrameLength);
+        this.decodeAll = decodeAll;
+    }
+
+    @Override
+    protected Object decodePacket(ChannelHandlerContext ctx, ByteBuf sliceByteBuf) {
+        if (decodeAll || sliceByteBuf.readableBytes() < 2) {
+            return super.decodePacket(ctx, sliceByteBuf);
+        }
+        var protocolId = sliceByteBuf.getShort(sliceByteBuf.readerIndex());
+        var prototype = protocolId < 0 ? DECODE : prototype(protocolId);
+        if (prototype == DECODE) {
+            return super.decodePacket(ctx, sliceByteBuf);
+        }
+        return PassthroughPacketInfo.valueOf(protocolId, prototype, sliceByteBuf.retainedSlice());
+    }
+
+    private static Object prototype(short protocolId) {
+        var prototype = prototypes[protocolId];
+        if (prototype != null) {
+            return prototype;
+        }
+        var protocol = ProtocolManager.getProtocol(protocolId);
+        // 没有注册的协议交给PacketService解码，和没有开启透传的时候一样抛出异常
+        if (protocol == null) {
+            return DECODE;
+        }
+        var clazz = protocol.protocolConstructor().getDeclaringClass();
+        if (clazz == Heartbeat.class || clazz == Ping.class || IGatewayLoadBalancer.class.isAssignableFrom(clazz)) {
+            prototype = DECODE;
+        } else {
+            try {
+                prototype = protocol.protocolConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RunException(e);
+            }
+        }
+        prototypes[protocolId] = prototype;
+        return prototype;
+    }
+
+}
@@ -14,35 +14,117 @@
 package com.zfoo.net.handler.codec.tcp;
 
 import com.zfoo.net.NetContext;
+import com.zfoo.net.handler.BaseRouteHandler;
+import com.zfoo.net.handler.codec.cipher.PacketCipher;
+import com.zfoo.net.handler.codec.compress.PacketCompressor;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
 import com.zfoo.net.packet.EncodedPacketInfo;
 import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.router.PacketStatistics;
 import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.StringUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.ByteToMessageCodec;
+import org.springframework.lang.Nullable;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.List;
 
 /**
  * header(4byte) + protocolId(2byte) + packet
  * header = body(bytes.length) + protocolId.length(2byte)
+ * <p>
+ * 开启了fragment-size之后，超过这个大小的包会被切成多个分片：分片的header(4byte，带分片标记) + 原始的包的一部分，
+ * 第一个分片包含原始的包的header，分片逐个写入socket，其它的小包可以插在分片之间发送，所以不会被大包阻塞，
+ * 但是在大包之后发送的小包可能会比大包先到达。开启了加密的话，流加密的密钥流是有状态的，接收方必须按照加密的顺序解密，
+ * 所以正在发送分片的时候，后面的包都排在分片之后发送，不会插队。接收方把分片拷贝到一个连续的buffer中，接收完之后再解析，
+ * 不会持有socket读取的buffer，所以对方发送大量很小的分片也只会占用和实际收到的数据一样多的内存。
  *
  * @author godotg
  */
 public class TcpCodecHandler extends ByteToMessageCodec<EncodedPacketInfo> {
 
+    // 没有配置compress-threshold则为null
+    private final PacketCompressor compressor;
+
+    // 单个包的最大长度，分片的包是拼接之后的长度
+    private final int maxFrameLength;
+
+    // 小于等于0表示不分片
+    private final int fragmentSize;
+
+    // 正在接收的分片，只会在channel的event loop中访问
+    private ByteBuf fragments;
+    private int fragmentsLength;
+
+    // 正在分片发送的包和加密之后排在分片后面的包，一次只发送一个包，只会在channel的event loop中访问
+    private ArrayDeque<PendingFrame> pendingFrames;
+
+    private static class PendingFrame {
+        private final ByteBuf frame;
+        private final ChannelPromise promise;
+        // false表示不分片，整个包一次写入
+        private final boolean fragmented;
+
+        private PendingFrame(ByteBuf frame, ChannelPromise promise, boolean fragmented) {
+            this.frame = frame;
+            this.promise = promise;
+            this.fragmented = fragmented;
+        }
+    }
+
+    public TcpCodecHandler() {
+        this(IOUtils.BYTES_PER_MB);
+    }
+
+    public TcpCodecHandler(int maxFrameLength) {
+        this(maxFrameLength, NetContext.getConfigManager().getLocalConfig().getFragmentSize(), PacketCompressor.newCompressor());
+    }
+
+    public TcpCodecHandler(int maxFrameLength, int fragmentSize, @Nullable PacketCompressor compressor) {
+        this.maxFrameLength = maxFrameLength;
+        // 第一个分片至少要包含原始的包的header
+        this.fragmentSize = fragmentSize > 0 ? Math.max(fragmentSize, PacketService.PACKET_HEAD_LENGTH) : 0;
+        this.compressor = compressor;
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        // 客户端发起压缩的握手，服务器的channel有parent；旧版本的服务器不认识握手会断开连接，所以服务器要先升级
+        if (compressor != null && ctx.channel().parent() == null) {
+            ctx.writeAndFlush(compressor.hello(ctx.alloc()));
+        }
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        super.handlerRemoved(ctx);
+        if (fragments != null) {
+            fragments.release();
+            fragments = null;
+        }
+        failPendingFrames(new ClosedChannelException());
+    }
+
     @Override
     protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
         // 不够读一个int
-        if (in.readableBytes() <= PacketService.PACKET_HEAD_LENGTH) {
+        if (in.readableBytes() < PacketService.PACKET_HEAD_LENGTH) {
             return;
         }
         in.markReaderIndex();
-        var length = in.readInt();
+        var header = in.readInt();
+
+        // 包头的最高三位是标记位
+        var flags = header & PacketService.PACKET_FLAG_MASK;
+        var length = header & PacketService.PACKET_MAX_LENGTH;
 
         // 如果长度非法，则抛出异常断开连接，按照自己的使用场景指定合适的长度，防止客户端发送超大包占用带宽
-        if (length < 0 || length > IOUtils.BYTES_PER_MB) {
+        if (length > maxFrameLength) {
             throw new IllegalArgumentException(StringUtils.format("illegal packet [length:{}]", length));
         }
 
@@ -52,15 +134,231 @@ public class TcpCodecHandler extends ByteToMessageCodec<EncodedPacketInfo> {
             return;
         }
 
+        if (flags == PacketService.PACKET_FRAGMENT_FLAG) {
+            decodeFragment(ctx, in.readSlice(length), out);
+            return;
+        }
+
         // readSlice和byte[]数组相比，readSlice减少了垃圾回收
-        var sliceByteBuf = in.readSlice(length);
-        var packetInfo = NetContext.getPacketService().read(sliceByteBuf);
-        out.add(packetInfo);
+        decodeFrame(ctx, flags, in.readSlice(length), out);
+    }
+
+    private void decodeFragment(ChannelHandlerContext ctx, ByteBuf fragment, List<Object> out) {
+        if (fragments == null) {
+            // 第一个分片的开头是原始的包的header，提前检查长度，不合法的大包不需要等到接收完
+            if (fragment.readableBytes() < PacketService.PACKET_HEAD_LENGTH) {
+                throw new IllegalArgumentException(StringUtils.format("illegal first fragment [length:{}]", fragment.readableBytes()));
+            }
+            var length = fragment.getInt(fragment.readerIndex()) & PacketService.PACKET_MAX_LENGTH;
+            if (length > maxFrameLength) {
+                throw new IllegalArgumentException(StringUtils.format("illegal fragmented packet [length:{}]", length));
+            }
+            // 按照实际收到的数据扩容，不会按照对方声明的长度预先分配内存
+            fragments = ctx.alloc().buffer(fragment.readableBytes());
+            fragmentsLength = PacketService.PACKET_HEAD_LENGTH + length;
+        }
+        if (fragments.readableBytes() + fragment.readableBytes() > fragmentsLength) {
+            throw new IllegalArgumentException(StringUtils.format("illegal fragmented packet [length:{}] [received:{}]"
+                    , fragmentsLength, fragments.readableBytes() + fragment.readableBytes()));
+        }
+        fragments.writeBytes(fragment);
+
+        if (fragments.readableBytes() < fragmentsLength) {
+            return;
+        }
+        var frame = fragments;
+        fragments = null;
+        try {
+            var flags = frame.readInt() & PacketService.PACKET_FLAG_MASK;
+            decodeFrame(ctx, flags, frame, out);
+        } finally {
+            frame.release();
+        }
+    }
+
+    private void decodeFrame(ChannelHandlerContext ctx, int flags, ByteBuf sliceByteBuf, List<Object> out) {
+        if ((flags & PacketService.PACKET_FRAGMENT_FLAG) != 0) {
+            throw new IllegalArgumentException("illegal nested fragment");
+        }
+
+        // 先解密再解压，和发送的顺序相反
+        var cipher = PacketCipher.cipher(ctx.channel());
+        if (PacketCipher.isEncrypted(flags)) {
+            if (cipher == null) {
+                throw new IllegalArgumentException("received an encrypted packet before enable decrypt");
+            }
+            cipher.decrypt(sliceByteBuf);
+        } else if (cipher != null) {
+            // 收到过密文之后不再接受明文，防止降级
+            cipher.checkPlaintext(sliceByteBuf);
+        }
+        if (!PacketCompressor.isCompressed(flags)) {
+            out.add(readPacket(ctx, sliceByteBuf));
+            return;
+        }
+        // 长度为0的压缩包是压缩的握手，没有开启压缩则忽略握手，对方收不到回复就不会发送压缩的包
+        if (!sliceByteBuf.isReadable()) {
+            if (compressor != null && compressor.receiveHello()) {
+                ctx.writeAndFlush(compressor.hello(ctx.alloc()));
+            }
+            return;
+        }
+        if (compressor == null) {
+            throw new IllegalArgumentException("received a compressed packet but compress-threshold is not configured");
+        }
+        var inflated = compressor.decompress(ctx.alloc(), sliceByteBuf, maxFrameLength);
+        try {
+            out.add(readPacket(ctx, inflated));
+        } finally {
+            inflated.release();
+        }
+    }
+
+    private Object readPacket(ChannelHandlerContext ctx, ByteBuf sliceByteBuf) {
+        if (PacketStatistics.isEnabled() && sliceByteBuf.readableBytes() >= 2) {
+            var bytes = PacketService.PACKET_HEAD_LENGTH + sliceByteBuf.readableBytes();
+            PacketStatistics.recordIn(sliceByteBuf.getShort(sliceByteBuf.readerIndex()), bytes);
+            var session = ctx.channel().attr(BaseRouteHandler.SESSION_KEY).get();
+            if (session != null) {
+                session.recordIn(bytes);
+            }
+        }
+        return decodePacket(ctx, sliceByteBuf);
+    }
+
+    /**
+     * 记录一个完整的包的流量，frame包括包头的长度，在压缩和加密之前
+     */
+    private void recordOut(ChannelHandlerContext ctx, ByteBuf frame) {
+        if (!PacketStatistics.isEnabled() || frame.readableBytes() < PacketService.PACKET_HEAD_LENGTH + 2) {
+            return;
+        }
+        PacketStatistics.recordOut(frame.getShort(frame.readerIndex() + PacketService.PACKET_HEAD_LENGTH), frame.readableBytes());
+        var session = ctx.channel().attr(BaseRouteHandler.SESSION_KEY).get();
+        if (session != null) {
+            session.recordOut(frame.readableBytes());
+        }
+    }
+
+    /**
+     * 解析一个完整的包，sliceByteBuf只包含包体，不包含包头的长度
+     */
+    protected Object decodePacket(ChannelHandlerContext ctx, ByteBuf sliceByteBuf) {
+        return NetContext.getPacketService().read(sliceByteBuf);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        // 需要压缩，加密或者分片的话，先编码成完整的包再处理
+        if (msg instanceof EncodedPacketInfo) {
+            var compressing = compressor != null && compressor.isPeerSupported();
+            var cipher = PacketCipher.cipher(ctx.channel());
+            var encrypting = cipher != null && cipher.isEncryptEnabled();
+            if (compressing || encrypting || fragmentSize > 0) {
+                var frame = encodeFrame(ctx, (EncodedPacketInfo) msg);
+                // 已经编码过的buffer可能被广播共享，不能原地加密，压缩之后的buffer是新的
+                var shared = msg instanceof EncodedBufferPacketInfo;
+                if (compressing) {
+                    var compressedFrame = compressor.compressFrame(ctx.alloc(), frame);
+                    shared = shared && compressedFrame == frame;
+                    frame = compressedFrame;
+                }
+                if (encrypting) {
+                    frame = cipher.encryptFrame(ctx.alloc(), frame, shared);
+                }
+                var fragmented = fragmentSize > 0 && frame.readableBytes() > fragmentSize;
+                // 对方按照收到的顺序解密，加密之后的包不能插在正在发送的分片之间，否则密钥流会错位
+                var queued = encrypting && pendingFrames != null && !pendingFrames.isEmpty();
+                if (fragmented || queued) {
+                    writePendingFrame(ctx, frame, promise, fragmented);
+                    return;
+                }
+                ctx.write(frame, promise);
+                return;
+            }
+        }
+        // 已经编码过的包直接透传buffer，buffer的引用交给下一个handler释放
+        if (msg instanceof EncodedBufferPacketInfo) {
+            var buffer = ((EncodedBufferPacketInfo) msg).getBuffer();
+            recordOut(ctx, buffer);
+            ctx.write(buffer, promise);
+            return;
+        }
+        super.write(ctx, msg, promise);
+    }
+
+    private void writePendingFrame(ChannelHandlerContext ctx, ByteBuf frame, ChannelPromise promise, boolean fragmented) {
+        if (pendingFrames == null) {
+            pendingFrames = new ArrayDeque<>();
+        }
+        pendingFrames.add(new PendingFrame(frame, promise, fragmented));
+        // 前面的包的分片还没有发送完，等前面的包发送完之后再发送
+        if (pendingFrames.size() == 1) {
+            writeNextFragment(ctx, false);
+        }
+    }
+
+    /**
+     * 上一个分片写入socket之后才会写入下一个分片，所以大包不会一次性占满发送缓冲区，其它的包可以插在分片之间发送
+     */
+    private void writeNextFragment(ChannelHandlerContext ctx, boolean flush) {
+        var pendingFrame = pendingFrames.peek();
+        if (pendingFrame == null) {
+            return;
+        }
+        var frame = pendingFrame.frame;
+        ByteBuf fragment;
+        if (pendingFrame.fragmented) {
+            var length = Math.min(fragmentSize, frame.readableBytes());
+            fragment = ctx.alloc().compositeBuffer(2)
+                    .addComponent(true, ctx.alloc().ioBuffer(PacketService.PACKET_HEAD_LENGTH).writeInt(PacketService.PACKET_FRAGMENT_FLAG | length))
+                    .addComponent(true, frame.readRetainedSlice(length));
+        } else {
+            // 不分片的包也在写入完成之后才从队列中移除，保证同一时间只有一个包在写入
+            fragment = frame.readRetainedSlice(frame.readableBytes());
+        }
+        var last = !frame.isReadable();
+        var future = flush ? ctx.writeAndFlush(fragment) : ctx.write(fragment);
+        future.addListener(it -> {
+            if (!it.isSuccess()) {
+                failPendingFrames(it.cause());
+                return;
+            }
+            if (last) {
+                pendingFrames.poll();
+                frame.release();
+                pendingFrame.promise.trySuccess();
+            }
+            writeNextFragment(ctx, true);
+        });
+    }
+
+    private void failPendingFrames(Throwable cause) {
+        if (pendingFrames == null) {
+            return;
+        }
+        PendingFrame pendingFrame;
+        while ((pendingFrame = pendingFrames.poll()) != null) {
+            pendingFrame.frame.release();
+            pendingFrame.promise.tryFailure(cause);
+        }
+    }
+
+    private ByteBuf encodeFrame(ChannelHandlerContext ctx, EncodedPacketInfo packetInfo) {
+        if (packetInfo instanceof EncodedBufferPacketInfo) {
+            var buffer = ((EncodedBufferPacketInfo) packetInfo).getBuffer();
+            recordOut(ctx, buffer);
+            return buffer;
+        }
+        var buffer = ctx.alloc().ioBuffer();
+        encode(ctx, packetInfo, buffer);
+        return buffer;
     }
 
     @Override
     protected void encode(ChannelHandlerContext ctx, EncodedPacketInfo packetInfo, ByteBuf out) {
         NetContext.getPacketService().write(out, packetInfo.getPacket(), packetInfo.getAttachment());
+        recordOut(ctx, out);
     }
 
 }
@@ -0,0 +1,533 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.udp;
+
+import com.zfoo.net.core.udp.UdpPeerChannel;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.socket.DatagramPacket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * EN: A KCP-like ARQ state machine of one udp peer with sequence numbers, selective acks, fast retransmit and timeout retransmit.
+ * The segments of the same peer are packed into as few datagrams as possible. All the methods are called in the event loop of the udp channel.
+ * CN: 一个udp对端的类似KCP的ARQ状态机，包括序列号，选择确认，快速重传和超时重传，同一个对端的多个分片会尽量合并到一个datagram中发送。
+ * 所有的方法都在udp channel的event loop中调用。
+ * <p>
+ * datagram := segment*
+ * <p>
+ * PUSH，可靠有序：cmd(1) sn(4) frg(1) len(2) data，frg是这个消息后面还有多少个分片
+ * <p>
+ * SEQUENCED，不可靠有序，比已经收到的旧的消息会被丢弃：cmd(1) sn(4) len(2) data。
+ * 一个对端的所有SEQUENCED消息共用一个序列号，不区分coalesceKey，所以不同key的消息之间也会互相丢弃，
+ * 比如先发送的实体A的位置比后发送的实体B的位置晚到达，A的位置会被丢弃，只适合用在丢掉之后很快会有新的消息覆盖的场景。
+ * <p>
+ * ACK：cmd(1) una(4) wnd(2) count(1) sn(4)*count，una之前的PUSH都已经收到，sn是una之后收到的PUSH
+ * <p>
+ * CONNECT：cmd(1) cookie(4)，客户端在收到服务器的任何消息之前，每个datagram的开头都会带上CONNECT，cookie为0表示还没有cookie，
+ * 服务器只会为第一个segment是带有合法cookie的CONNECT的地址创建对端，并且回复一个ACK，客户端收到之后握手完成
+ * <p>
+ * COOKIE：cmd(1) cookie(4)，服务器对没有合法cookie的CONNECT的回复，服务器不保存任何状态，回复不比请求大，不能用来做反射放大
+ *
+ * @author godotg
+ */
+public class ReliableUdpConnection {
+
+    public static final byte CMD_PUSH = 1;
+    public static final byte CMD_SEQUENCED = 2;
+    public static final byte CMD_ACK = 3;
+    public static final byte CMD_CONNECT = 4;
+    public static final byte CMD_COOKIE = 5;
+
+    public static final int CONNECT_LENGTH = 5;
+
+    private static final int PUSH_HEAD_LENGTH = 8;
+    private static final int SEQUENCED_HEAD_LENGTH = 7;
+    private static final int ACK_HEAD_LENGTH = 8;
+    private static final int MAX_ACKS_PER_SEGMENT = 64;
+
+    /**
+     * 定时检查超时重传的间隔，毫秒
+     */
+    public static final int INTERVAL = 10;
+    private static final int INITIAL_RTO = 200;
+    private static final int MIN_RTO = 30;
+    private static final int MAX_RTO = 60_000;
+    // 后面的分片被确认了多少次之后快速重传
+    private static final int FAST_RESEND = 2;
+    // 一个分片重传了多少次之后认为对端已经断开
+    private static final int DEAD_LINK = 20;
+    private static final int MAX_FRAGMENTS = 256;
+
+    private static class Segment {
+        private final int sn;
+        private final int frg;
+        private ByteBuf data;
+        private long sendTime;
+        private long resendAt;
+        private int rto;
+        private int transmits;
+        private int fastAcks;
+        private boolean acked;
+
+        private Segment(int sn, int frg, ByteBuf data, int rto) {
+            this.sn = sn;
+            this.frg = frg;
+            this.data = data;
+            this.rto = rto;
+        }
+    }
+
+    private final UdpPeerChannel channel;
+    private final int mtu;
+    private final int mss;
+    private final int window;
+
+    // 发送，按照sn的顺序排列的已经发送但是没有被确认的分片
+    private final ArrayDeque<Segment> unacked = new ArrayDeque<>();
+    private int sendNext;
+    private int remoteWindow;
+    private int sendSequenced;
+
+    // 接收，rcvNext之后乱序到达的分片缓存在环形数组中
+    private int rcvNext;
+    private final ByteBuf[] rcvData;
+    private final byte[] rcvFrg;
+    private int rcvBuffered;
+    private final List<ByteBuf> fragments = new ArrayList<>();
+    private int rcvSequenced;
+    private boolean sequencedReceived;
+    private final List<ByteBuf> received = new ArrayList<>();
+
+    // 还没有发送的确认
+    private final int[] acks;
+    private int ackCount;
+    private boolean ackNeeded;
+
+    private int srtt;
+    private int rttvar;
+    private int rto = INITIAL_RTO;
+    private long lastReceiveTime;
+
+    // 客户端的握手，收到服务器的消息之后结束
+    private boolean connecting;
+    private int cookie;
+    private long lastConnectTime;
+
+    // 正在合并的datagram
+    private ByteBuf datagram;
+    private boolean written;
+
+    public ReliableUdpConnection(UdpPeerChannel channel, int mtu, int window) {
+        if (mtu <= CONNECT_LENGTH + PUSH_HEAD_LENGTH + ACK_HEAD_LENGTH + 4 * MAX_ACKS_PER_SEGMENT || mtu > 65507) {
+            throw new IllegalArgumentException(StringUtils.format("illegal udp mtu [{}]", mtu));
+        }
+        if (window <= 0 || window > 65535) {
+            throw new IllegalArgumentException(StringUtils.format("illegal udp window [{}]", window));
+        }
+        this.channel = channel;
+        this.mtu = mtu;
+        // 握手的时候每个datagram的开头都有CONNECT
+        this.mss = mtu - CONNECT_LENGTH - PUSH_HEAD_LENGTH;
+        this.window = window;
+        this.remoteWindow = window;
+        this.rcvData = new ByteBuf[window];
+        this.rcvFrg = new byte[window];
+        this.acks = new int[window];
+        this.lastReceiveTime = now();
+    }
+
+    public static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    public long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+
+    /**
+     * 没有等待确认的分片，也不在握手，不需要定时调用update
+     */
+    public boolean isIdle() {
+        return unacked.isEmpty() && !connecting;
+    }
+
+    public boolean isConnecting() {
+        return connecting;
+    }
+
+    /**
+     * 客户端发起握手，在收到服务器的消息之前，每个datagram的开头都会带上CONNECT
+     */
+    public void connect(long now) {
+        connecting = true;
+        lastConnectTime = now;
+        prepare(0);
+        flush(now);
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // 发送
+
+    /**
+     * 发送窗口是否还有空间，对端的接收窗口为0的时候依然允许发送一个分片作为探测
+     */
+    public boolean isSendWindowAvailable() {
+        var sendUna = unacked.isEmpty() ? sendNext : unacked.peekFirst().sn;
+        return sendNext - sendUna < Math.min(window, Math.max(remoteWindow, 1));
+    }
+
+    /**
+     * 可靠有序的发送一个消息，超过mss的消息会被拆分成多个分片，不会改变message的引用计数
+     */
+    public void send(ByteBuf message, long now) {
+        var length = message.readableBytes();
+        var count = length <= mss ? 1 : (length + mss - 1) / mss;
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException(StringUtils.format("udp message is too large [length:{}] [max:{}]", length, mss * MAX_FRAGMENTS));
+        }
+        var index = message.readerIndex();
+        for (var i = count - 1; i >= 0; i--) {
+            var size = Math.min(mss, message.writerIndex() - index);
+            var segment = new Segment(sendNext++, i, message.retainedSlice(index, size), rto);
+            index += size;
+            unacked.add(segment);
+            transmit(segment, now);
+        }
+    }
+
+    /**
+     * 不可靠有序的发送一个消息，放不进一个分片的消息依然使用可靠的方式发送
+     */
+    public void sendSequenced(ByteBuf message, long now) {
+        var length = message.readableBytes();
+        if (length > mtu - CONNECT_LENGTH - SEQUENCED_HEAD_LENGTH) {
+            send(message, now);
+            return;
+        }
+        prepare(SEQUENCED_HEAD_LENGTH + length);
+        datagram.writeByte(CMD_SEQUENCED);
+        datagram.writeInt(++sendSequenced);
+        datagram.writeShort(length);
+        datagram.writeBytes(message, message.readerIndex(), length);
+    }
+
+    private void transmit(Segment segment, long now) {
+        var length = segment.data.readableBytes();
+        segment.transmits++;
+        segment.sendTime = now;
+        segment.resendAt = now + segment.rto;
+        prepare(PUSH_HEAD_LENGTH + length);
+        datagram.writeByte(CMD_PUSH);
+        datagram.writeInt(segment.sn);
+        datagram.writeByte(segment.frg);
+        datagram.writeShort(length);
+        datagram.writeBytes(segment.data, segment.data.readerIndex(), length);
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // 接收
+
+    /**
+     * 处理对端的一个datagram，按顺序到达的消息会传递给UdpPeerChannel的pipeline，不会改变in的引用计数
+     */
+    public void input(ByteBuf in, long now) {
+        lastReceiveTime = now;
+        var maxAck = 0;
+        var hasAck = false;
+        while (in.isReadable()) {
+            var cmd = in.readByte();
+            // 客户端收到了服务器的消息，握手完成
+            if (cmd == CMD_PUSH || cmd == CMD_SEQUENCED || cmd == CMD_ACK) {
+                connecting = false;
+            }
+            switch (cmd) {
+                case CMD_PUSH -> {
+                    var sn = in.readInt();
+                    var frg = in.readUnsignedByte();
+                    var length = in.readUnsignedShort();
+                    receivePush(sn, frg, in.readRetainedSlice(length));
+                }
+                case CMD_SEQUENCED -> {
+                    var sn = in.readInt();
+                    var length = in.readUnsignedShort();
+                    var data = in.readSlice(length);
+                    // 比已经收到的旧的消息直接丢弃
+                    if (!sequencedReceived || sn - rcvSequenced > 0) {
+                        sequencedReceived = true;
+                        rcvSequenced = sn;
+                        received.add(data.retain());
+                    }
+                }
+                case CMD_ACK -> {
+                    var una = in.readInt();
+                    var wnd = in.readUnsignedShort();
+                    var count = in.readUnsignedByte();
+                    acknowledgeUntil(una, now);
+                    remoteWindow = wnd;
+                    for (var i = 0; i < count; i++) {
+                        var sn = in.readInt();
+                        acknowledge(sn, now);
+                        if (!hasAck || sn - maxAck > 0) {
+                            hasAck = true;
+                            maxAck = sn;
+                        }
+                    }
+                }
+                case CMD_CONNECT -> {
+                    // 服务器回复一个确认，已经创建了对端之后重复的CONNECT也需要回复，可能之前的确认丢失了
+                    in.skipBytes(4);
+                    ackNeeded = true;
+                }
+                case CMD_COOKIE -> {
+                    var newCookie = in.readInt();
+                    // 带上服务器的cookie立刻重新发起握手
+                    if (connecting) {
+                        cookie = newCookie;
+                        lastConnectTime = now;
+                        prepare(0);
+                    }
+                }
+                default -> throw new IllegalArgumentException(StringUtils.format("illegal udp segment [cmd:{}]", cmd));
+            }
+        }
+
+        // 比maxAck小的还没有被确认的分片，可能已经丢失了
+        if (hasAck) {
+            for (var segment : unacked) {
+                if (segment.sn - maxAck >= 0) {
+                    break;
+                }
+                segment.fastAcks++;
+            }
+        }
+        while (!unacked.isEmpty() && unacked.peekFirst().acked) {
+            unacked.pollFirst();
+        }
+
+        for (var message : received) {
+            channel.pipeline().fireChannelRead(message);
+        }
+        received.clear();
+    }
+
+    private void receivePush(int sn, int frg, ByteBuf data) {
+        // 超出接收窗口的分片直接丢弃，不能确认，等待对方重传
+        var offset = sn - rcvNext;
+        if (offset >= window) {
+            data.release();
+            return;
+        }
+        ackNeeded = true;
+        if (ackCount < acks.length) {
+            acks[ackCount++] = sn;
+        }
+
+        // 重复的分片
+        var index = Math.floorMod(sn, window);
+        if (offset < 0 || rcvData[index] != null) {
+            data.release();
+            return;
+        }
+        rcvData[index] = data;
+        rcvFrg[index] = (byte) frg;
+        rcvBuffered++;
+
+        // 把连续的分片组装成完整的消息
+        while (rcvData[index = Math.floorMod(rcvNext, window)] != null) {
+            fragments.add(rcvData[index]);
+            rcvData[index] = null;
+            rcvBuffered--;
+            rcvNext++;
+            if (rcvFrg[index] != 0) {
+                if (fragments.size() >= MAX_FRAGMENTS) {
+                    throw new IllegalArgumentException(StringUtils.format("udp message has too many fragments [{}]", fragments.size()));
+                }
+                continue;
+            }
+            if (fragments.size() == 1) {
+                received.add(fragments.get(0));
+            } else {
+                var message = channel.alloc().compositeBuffer(fragments.size());
+                message.addComponents(true, fragments);
+                received.add(message);
+            }
+            fragments.clear();
+        }
+    }
+
+    private void acknowledgeUntil(int una, long now) {
+        while (!unacked.isEmpty() && unacked.peekFirst().sn - una < 0) {
+            acknowledged(unacked.pollFirst(), now);
+        }
+    }
+
+    private void acknowledge(int sn, long now) {
+        for (var segment : unacked) {
+            if (segment.sn == sn) {
+                acknowledged(segment, now);
+                return;
+            }
+            if (segment.sn - sn > 0) {
+                return;
+            }
+        }
+    }
+
+    private void acknowledged(Segment segment, long now) {
+        if (segment.acked) {
+            return;
+        }
+        segment.acked = true;
+        segment.data.release();
+        segment.data = null;
+        // 重传过的分片无法区分是哪一次发送的确认，不用来计算rtt
+        if (segment.transmits == 1) {
+            updateRto((int) (now - segment.sendTime));
+        }
+    }
+
+    private void updateRto(int rtt) {
+        rtt = Math.max(rtt, 0);
+        if (srtt == 0) {
+            srtt = Math.max(rtt, 1);
+            rttvar = rtt / 2;
+        } else {
+            var delta = Math.abs(rtt - srtt);
+            rttvar = (3 * rttvar + delta) / 4;
+            srtt = Math.max((7 * srtt + rtt) / 8, 1);
+        }
+        rto = Math.min(Math.max(srtt + Math.max(INTERVAL, 4 * rttvar), MIN_RTO), MAX_RTO);
+    }
+
+    // ------------------------------------------------------------------------------------------------------------
+    // 输出
+
+    /**
+     * 定时调用，超时重传，返回false表示对端已经断开
+     */
+    public boolean update(long now) {
+        // 握手的CONNECT也可能丢失，没有其它的消息需要发送的时候按照rto重新发送
+        if (connecting && now - lastConnectTime >= rto) {
+            lastConnectTime = now;
+            prepare(0);
+        }
+        for (var segment : unacked) {
+            if (segment.acked || now - segment.resendAt < 0) {
+                continue;
+            }
+            if (segment.transmits >= DEAD_LINK) {
+                return false;
+            }
+            segment.rto = Math.min(segment.rto + segment.rto / 2, MAX_RTO);
+            transmit(segment, now);
+        }
+        flush(now);
+        return true;
+    }
+
+    /**
+     * 快速重传，发送确认，把合并的datagram写入并且flush到udp channel
+     */
+    public void flush(long now) {
+        for (var segment : unacked) {
+            if (!segment.acked && segment.fastAcks >= FAST_RESEND) {
+                segment.fastAcks = 0;
+                transmit(segment, now);
+            }
+        }
+
+        if (ackNeeded) {
+            ackNeeded = false;
+            var wnd = Math.max(window - rcvBuffered, 0);
+            var i = 0;
+            do {
+                // una之前的分片已经被累积确认了
+                var start = i;
+                var count = 0;
+                while (i < ackCount && count < MAX_ACKS_PER_SEGMENT) {
+                    if (acks[i++] - rcvNext >= 0) {
+                        count++;
+                    }
+                }
+                prepare(ACK_HEAD_LENGTH + 4 * count);
+                datagram.writeByte(CMD_ACK);
+                datagram.writeInt(rcvNext);
+                datagram.writeShort(wnd);
+                datagram.writeByte(count);
+                for (var j = start; j < i; j++) {
+                    if (acks[j] - rcvNext >= 0) {
+                        datagram.writeInt(acks[j]);
+                    }
+                }
+            } while (i < ackCount);
+            ackCount = 0;
+        }
+
+        if (datagram != null) {
+            emit();
+        }
+        if (written) {
+            written = false;
+            channel.parent().flush();
+        }
+    }
+
+    private void prepare(int length) {
+        if (datagram != null && datagram.readableBytes() + length > mtu) {
+            emit();
+        }
+        if (datagram == null) {
+            datagram = channel.alloc().ioBuffer(mtu);
+            if (connecting) {
+                datagram.writeByte(CMD_CONNECT);
+                datagram.writeInt(cookie);
+            }
+        }
+    }
+
+    private void emit() {
+        // 先清空再写入，写入的过程中可能会再次进入
+        var buffer = datagram;
+        datagram = null;
+        written = true;
+        channel.parent().write(new DatagramPacket(buffer, channel.remoteAddress()));
+    }
+
+    public void release() {
+        for (var segment : unacked) {
+            if (segment.data != null) {
+                segment.data.release();
+            }
+        }
+        unacked.clear();
+        for (var i = 0; i < rcvData.length; i++) {
+            if (rcvData[i] != null) {
+                rcvData[i].release();
+                rcvData[i] = null;
+            }
+        }
+        fragments.forEach(ByteBuf::release);
+        fragments.clear();
+        received.forEach(ByteBuf::release);
+        received.clear();
+        if (datagram != null) {
+            datagram.release();
+            datagram = null;
+        }
+    }
+
+}
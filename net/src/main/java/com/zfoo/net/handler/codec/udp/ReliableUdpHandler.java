@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.udp;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.core.udp.UdpPeerChannel;
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EN: The reliable udp layer on the udp channel, dispatches the datagrams to the UdpPeerChannel of the sender.
+ * The server creates a UdpPeerChannel for a new sender only after a cookie handshake, the client only accepts the datagrams of the peer created at startup.
+ * CN: udp channel上的可靠udp层，把datagram分发给发送方的UdpPeerChannel。
+ * 服务器为每个新的发送方创建一个UdpPeerChannel，客户端只接收启动时创建的对端的datagram。
+ * <p>
+ * 服务器不会因为一个陌生地址的datagram就创建对端和session：新的地址必须先发送CONNECT，服务器回复一个无状态的cookie（对端地址和时间段的hmac），
+ * 客户端带着cookie再次发送CONNECT之后才会创建对端，所以伪造源地址的datagram不能创建对端，对端的数量也不会超过udp-max-peers。
+ *
+ * @author godotg
+ */
+public class ReliableUdpHandler extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReliableUdpHandler.class);
+
+    public static final int DEFAULT_MTU = 1400;
+    public static final int DEFAULT_WINDOW = 256;
+    public static final int DEFAULT_MAX_PEERS = 10000;
+
+    // cookie在这个时间段和下一个时间段内有效
+    private static final long COOKIE_PERIOD = TimeUnit.SECONDS.toMillis(30);
+
+    // 只在udp channel的event loop中访问
+    private final Map<InetSocketAddress, UdpPeerChannel> peers = new HashMap<>();
+
+    // 一次读取中收到了datagram的对端，读取完成之后统一发送确认
+    private final Set<UdpPeerChannel> readPeers = new HashSet<>();
+
+    // 有等待确认的分片或者正在握手的对端，只有这些对端需要定时检查重传
+    private final Set<UdpPeerChannel> updatePeers = new HashSet<>();
+
+    /**
+     * 服务器新的对端的handler，客户端为null
+     */
+    @Nullable
+    private final ChannelHandler peerHandler;
+
+    private final int mtu;
+    private final int window;
+    private final int maxPeers;
+
+    // 服务器计算cookie，客户端为null
+    @Nullable
+    private final Mac cookieMac;
+
+    private ScheduledFuture<?> updateFuture;
+
+    private long lastRejectLogTime;
+
+    public ReliableUdpHandler(@Nullable ChannelHandler peerHandler) {
+        this(peerHandler, NetContext.getConfigManager().getLocalConfig().getUdpMtu(), NetContext.getConfigManager().getLocalConfig().getUdpWindow()
+                , NetContext.getConfigManager().getLocalConfig().getUdpMaxPeers());
+    }
+
+    public ReliableUdpHandler(@Nullable ChannelHandler peerHandler, int mtu, int window) {
+        this(peerHandler, mtu, window, DEFAULT_MAX_PEERS);
+    }
+
+    public ReliableUdpHandler(@Nullable ChannelHandler peerHandler, int mtu, int window, int maxPeers) {
+        this.peerHandler = peerHandler;
+        this.mtu = mtu > 0 ? mtu : DEFAULT_MTU;
+        this.window = window > 0 ? window : DEFAULT_WINDOW;
+        this.maxPeers = maxPeers > 0 ? maxPeers : DEFAULT_MAX_PEERS;
+        this.cookieMac = peerHandler == null ? null : newCookieMac();
+    }
+
+    private static Mac newCookieMac() {
+        try {
+            // 每个udp channel一个随机的密钥，同一个对端的datagram总是被内核分配给同一个channel
+            var key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            var mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new RunException(e);
+        }
+    }
+
+    /**
+     * 创建一个对端，需要注册到udp channel的event loop之后才能收发消息
+     */
+    public UdpPeerChannel newPeer(Channel channel, InetSocketAddress remoteAddress) {
+        return new UdpPeerChannel(channel, remoteAddress, this, mtu, window);
+    }
+
+    public void addPeer(UdpPeerChannel peer) {
+        peers.put(peer.remoteAddress(), peer);
+        // 客户端的对端注册之后立刻发起握手
+        if (peerHandler == null) {
+            peer.connection().connect(ReliableUdpConnection.now());
+            updatePeers.add(peer);
+        }
+    }
+
+    public void removePeer(UdpPeerChannel peer) {
+        peers.remove(peer.remoteAddress(), peer);
+        updatePeers.remove(peer);
+    }
+
+    /**
+     * 对端发送了新的分片，需要定时检查重传，在udp channel的event loop中调用
+     */
+    public void scheduleUpdate(UdpPeerChannel peer) {
+        if (peer.isActive() && !peer.connection().isIdle()) {
+            updatePeers.add(peer);
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        updateFuture = ctx.executor().scheduleAtFixedRate(this::update, ReliableUdpConnection.INTERVAL, ReliableUdpConnection.INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        updateFuture.cancel(false);
+        closePeers();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        updateFuture.cancel(false);
+        closePeers();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof DatagramPacket datagram)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        try {
+            var peer = peers.get(datagram.sender());
+            if (peer == null) {
+                // 客户端只接收服务器的消息
+                if (peerHandler == null) {
+                    return;
+                }
+                peer = accept(ctx, datagram);
+                if (peer == null) {
+                    return;
+                }
+            }
+            try {
+                peer.connection().input(datagram.content(), ReliableUdpConnection.now());
+            } catch (Exception e) {
+                logger.warn("udp peer [{}] sent an illegal datagram and will be closed", peer.remoteAddress(), e);
+                peer.close();
+                return;
+            }
+            readPeers.add(peer);
+        } finally {
+            datagram.release();
+        }
+    }
+
+    /**
+     * 陌生地址的datagram，只有第一个segment是带有合法cookie的CONNECT才会创建对端，否则回复cookie或者直接丢弃
+     */
+    @Nullable
+    private UdpPeerChannel accept(ChannelHandlerContext ctx, DatagramPacket datagram) {
+        var content = datagram.content();
+        if (content.readableBytes() < ReliableUdpConnection.CONNECT_LENGTH || content.getByte(content.readerIndex()) != ReliableUdpConnection.CMD_CONNECT) {
+            return null;
+        }
+        var sender = datagram.sender();
+        var cookie = content.getInt(content.readerIndex() + 1);
+        var period = TimeUtils.now() / COOKIE_PERIOD;
+        if (cookie != cookie(sender, period) && cookie != cookie(sender, period - 1)) {
+            // 回复和请求一样大，不会被用来做反射放大
+            var reply = ctx.alloc().ioBuffer(ReliableUdpConnection.CONNECT_LENGTH)
+                    .writeByte(ReliableUdpConnection.CMD_COOKIE)
+                    .writeInt(cookie(sender, period));
+            ctx.writeAndFlush(new DatagramPacket(reply, sender));
+            return null;
+        }
+        if (peers.size() >= maxPeers) {
+            var now = TimeUtils.now();
+            if (now - lastRejectLogTime >= TimeUtils.MILLIS_PER_SECOND) {
+                lastRejectLogTime = now;
+                logger.warn("udp peers reach the max [{}], reject the new peer [{}]", maxPeers, sender);
+            }
+            return null;
+        }
+        var peer = newPeer(ctx.channel(), sender);
+        peer.pipeline().addLast(peerHandler);
+        // 已经在event loop中，会立刻注册并且触发channelActive
+        ctx.channel().eventLoop().register(peer);
+        return peer.isActive() ? peer : null;
+    }
+
+    private int cookie(InetSocketAddress address, long period) {
+        cookieMac.update(address.getAddress().getAddress());
+        cookieMac.update(ByteBuffer.allocate(10).putShort((short) address.getPort()).putLong(period).flip());
+        var cookie = ByteBuffer.wrap(cookieMac.doFinal()).getInt();
+        // 0表示客户端还没有cookie
+        return cookie == 0 ? 1 : cookie;
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        var now = ReliableUdpConnection.now();
+        for (var peer : readPeers) {
+            if (!peer.isActive()) {
+                continue;
+            }
+            peer.pipeline().fireChannelReadComplete();
+            peer.connection().flush(now);
+            peer.resumeWrite();
+        }
+        readPeers.clear();
+        ctx.fireChannelReadComplete();
+    }
+
+    private void update() {
+        if (updatePeers.isEmpty()) {
+            return;
+        }
+        var now = ReliableUdpConnection.now();
+        List<UdpPeerChannel> deadPeers = null;
+        for (var iterator = updatePeers.iterator(); iterator.hasNext(); ) {
+            var peer = iterator.next();
+            if (peer.connection().update(now)) {
+                // 所有的分片都被确认了，发送新的消息的时候再加入
+                if (peer.connection().isIdle()) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            if (deadPeers == null) {
+                deadPeers = new ArrayList<>();
+            }
+            deadPeers.add(peer);
+        }
+        if (deadPeers != null) {
+            for (var peer : deadPeers) {
+                logger.warn("udp peer [{}] is dead after too many retransmissions", peer.remoteAddress());
+                peer.close();
+            }
+        }
+    }
+
+    private void closePeers() {
+        for (var peer : List.copyOf(peers.values())) {
+            peer.close();
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.udp;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.router.SendGuarantee;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.util.List;
+
+/**
+ * EN: The codec of the UdpPeerChannel, the reliable udp layer keeps the message boundary, so every message is exactly one packet.
+ * The DROPPABLE packets are sent unreliable but sequenced.
+ * CN: UdpPeerChannel的编解码，可靠udp层保留了消息的边界，所以每个消息刚好是一个包。DROPPABLE的消息使用不可靠有序的方式发送。
+ *
+ * @author godotg
+ */
+public class UdpPeerCodecHandler extends MessageToMessageCodec<ByteBuf, EncodedPacketInfo> {
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (in.readableBytes() < PacketService.PACKET_HEAD_LENGTH) {
+            throw new IllegalArgumentException(StringUtils.format("illegal udp message [length:{}]", in.readableBytes()));
+        }
+        var length = in.readInt();
+        if (length != in.readableBytes()) {
+            throw new IllegalArgumentException(StringUtils.format("illegal packet [length:{}] [readable:{}]", length, in.readableBytes()));
+        }
+        out.add(NetContext.getPacketService().read(in));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, EncodedPacketInfo packetInfo, List<Object> out) {
+        var buffer = ctx.alloc().ioBuffer();
+        NetContext.getPacketService().write(buffer, packetInfo.getPacket(), packetInfo.getAttachment());
+        out.add(packetInfo.getGuarantee() == SendGuarantee.DROPPABLE ? new UdpSequencedFrame(buffer) : buffer);
+    }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.udp;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * EN: An encoded packet written to the UdpPeerChannel which is sent unreliable but sequenced, the older ones are dropped by the receiver
+ * CN: 写入UdpPeerChannel的编码后的消息，不可靠有序的发送，接收方会丢弃比已经收到的旧的消息
+ * <p>
+ * 一个对端的所有的消息共用一个序列号，不区分coalesceKey，不同key的消息乱序到达的时候旧的那个也会被丢弃
+ *
+ * @author godotg
+ */
+public class UdpSequencedFrame extends DefaultByteBufHolder {
+
+    public UdpSequencedFrame(ByteBuf data) {
+        super(data);
+    }
+
+}
@@ -14,43 +14,222 @@
 package com.zfoo.net.handler.codec.websocket;
 
 import com.zfoo.net.NetContext;
+import com.zfoo.net.handler.codec.cipher.PacketCipher;
+import com.zfoo.net.handler.codec.compress.PacketCompressor;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
 import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.PacketService;
 import com.zfoo.protocol.util.IOUtils;
 import com.zfoo.protocol.util.StringUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToMessageCodec;
 import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.PromiseNotifier;
+import org.springframework.lang.Nullable;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * header(4byte) + protocolId(2byte) + packet
  * header = body(bytes.length) + protocolId.length(2byte)
+ * <p>
+ * EN: A binary frame may contain several packets. The continuation frames are aggregated by WebSocketFrameAggregator before this handler.
+ * If websocket-coalesce-size is configured, the packets written before a flush are coalesced into one binary frame without copying.
+ * CN: 一个二进制帧中可以包含多个包，分片的帧在这个handler之前被WebSocketFrameAggregator聚合成一个完整的帧。
+ * 配置了websocket-coalesce-size之后，一次flush之前写入的多个包会零拷贝的合并成一个二进制帧发送。
  *
  * @author godotg
  */
 public class WebSocketCodecHandler extends MessageToMessageCodec<WebSocketFrame, EncodedPacketInfo> {
 
+    // 没有配置compress-threshold则为null
+    private final PacketCompressor compressor;
+
+    // 合并的帧的最大长度，小于等于0表示不合并
+    private final int coalesceSize;
+
+    // 等待flush的包，只会在channel的event loop中访问
+    private CompositeByteBuf pendingFrame;
+    private final List<ChannelPromise> pendingPromises = new ArrayList<>();
+
+    public WebSocketCodecHandler() {
+        this(PacketCompressor.newCompressor(), NetContext.getConfigManager().getLocalConfig().getWebsocketCoalesceSize());
+    }
+
+    public WebSocketCodecHandler(@Nullable PacketCompressor compressor, int coalesceSize) {
+        this.compressor = compressor;
+        this.coalesceSize = coalesceSize;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        // websocket握手完成之后客户端发起压缩的握手，旧版本的服务器不认识握手会断开连接，所以服务器要先升级
+        if (compressor != null && evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+            ctx.writeAndFlush(new BinaryWebSocketFrame(compressor.hello(ctx.alloc())));
+        }
+        super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        if (pendingFrame != null) {
+            pendingFrame.release();
+            pendingFrame = null;
+            for (var promise : pendingPromises) {
+                promise.tryFailure(new ClosedChannelException());
+            }
+            pendingPromises.clear();
+        }
+        super.handlerRemoved(ctx);
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, WebSocketFrame webSocketFrame, List<Object> list) {
         ByteBuf in = webSocketFrame.content();
+        // 对方合并发送的时候一个帧中有多个包
+        while (in.isReadable()) {
+            decodePacket(channelHandlerContext, in, list);
+        }
+    }
+
+    private void decodePacket(ChannelHandlerContext channelHandlerContext, ByteBuf in, List<Object> list) {
+        if (in.readableBytes() < PacketService.PACKET_HEAD_LENGTH) {
+            throw new IllegalArgumentException(StringUtils.format("illegal websocket frame, [{}] bytes left", in.readableBytes()));
+        }
         var length = in.readInt();
+
+        // 包头的最高三位是标记位，没有开启压缩的一方也需要识别对方的压缩握手
+        var cipher = PacketCipher.cipher(channelHandlerContext.channel());
+        var flags = length & PacketService.PACKET_FLAG_MASK;
+        length &= ~flags;
+
         // 如果长度非法，则抛出异常断开连接，按照自己的使用场景指定合适的长度，防止客户端发送超大包占用带宽
-        if (length < 0 || length > IOUtils.BYTES_PER_MB) {
+        if (length < 0 || length > IOUtils.BYTES_PER_MB || length > in.readableBytes()) {
             throw new IllegalArgumentException(StringUtils.format("illegal packet [length:{}]", length));
         }
         var sliceByteBuf = in.readSlice(length);
-        var packetInfo = NetContext.getPacketService().read(sliceByteBuf);
-        list.add(packetInfo);
+
+        // 先解密再解压，和发送的顺序相反
+        if (PacketCipher.isEncrypted(flags)) {
+            if (cipher == null) {
+                throw new IllegalArgumentException("received an encrypted packet before enable decrypt");
+            }
+            cipher.decrypt(sliceByteBuf);
+        } else if (cipher != null) {
+            // 收到过密文之后不再接受明文，防止降级
+            cipher.checkPlaintext(sliceByteBuf);
+        }
+        if (!PacketCompressor.isCompressed(flags)) {
+            list.add(NetContext.getPacketService().read(sliceByteBuf));
+            return;
+        }
+        // 长度为0的压缩包是压缩的握手，没有开启压缩则忽略握手，对方收不到回复就不会发送压缩的包
+        if (length == 0) {
+            if (compressor != null && compressor.receiveHello()) {
+                channelHandlerContext.writeAndFlush(new BinaryWebSocketFrame(compressor.hello(channelHandlerContext.alloc())));
+            }
+            return;
+        }
+        if (compressor == null) {
+            throw new IllegalArgumentException("received a compressed packet but compress-threshold is not configured");
+        }
+        var inflated = compressor.decompress(channelHandlerContext.alloc(), sliceByteBuf);
+        try {
+            list.add(NetContext.getPacketService().read(inflated));
+        } finally {
+            inflated.release();
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (coalesceSize <= 0) {
+            super.write(ctx, msg, promise);
+            return;
+        }
+        if (!(msg instanceof EncodedPacketInfo)) {
+            // 其它的帧不能插队到合并的包的前面
+            writePendingFrame(ctx);
+            super.write(ctx, msg, promise);
+            return;
+        }
+
+        ByteBuf byteBuf;
+        try {
+            byteBuf = encodePacket(ctx, (EncodedPacketInfo) msg);
+        } catch (Throwable t) {
+            promise.tryFailure(t);
+            return;
+        } finally {
+            ReferenceCountUtil.release(msg);
+        }
+        if (pendingFrame != null && pendingFrame.readableBytes() + byteBuf.readableBytes() > coalesceSize) {
+            writePendingFrame(ctx);
+        }
+        if (pendingFrame == null) {
+            pendingFrame = ctx.alloc().compositeDirectBuffer(Integer.MAX_VALUE);
+        }
+        pendingFrame.addComponent(true, byteBuf);
+        if (!promise.isVoid()) {
+            pendingPromises.add(promise);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        writePendingFrame(ctx);
+        super.flush(ctx);
+    }
+
+    private void writePendingFrame(ChannelHandlerContext ctx) {
+        if (pendingFrame == null) {
+            return;
+        }
+        var frame = new BinaryWebSocketFrame(pendingFrame);
+        pendingFrame = null;
+        if (pendingPromises.isEmpty()) {
+            ctx.write(frame, ctx.voidPromise());
+            return;
+        }
+        var promises = pendingPromises.toArray(new ChannelPromise[0]);
+        pendingPromises.clear();
+        ctx.write(frame).addListener(new PromiseNotifier<>(false, promises));
     }
 
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, EncodedPacketInfo out, List<Object> list) {
-        var byteBuf = channelHandlerContext.alloc().ioBuffer();
-        NetContext.getPacketService().write(byteBuf, out.getPacket(), out.getAttachment());
-        list.add(new BinaryWebSocketFrame(byteBuf));
+        list.add(new BinaryWebSocketFrame(encodePacket(channelHandlerContext, out)));
+    }
+
+    private ByteBuf encodePacket(ChannelHandlerContext channelHandlerContext, EncodedPacketInfo out) {
+        ByteBuf byteBuf;
+        // 已经编码过的包直接透传buffer，encode完成后out会被释放，所以这里需要retain
+        // 已经编码过的buffer可能被广播共享，不能原地加密，压缩之后的buffer是新的
+        var shared = out instanceof EncodedBufferPacketInfo;
+        if (shared) {
+            byteBuf = ((EncodedBufferPacketInfo) out).getBuffer().retain();
+        } else {
+            byteBuf = channelHandlerContext.alloc().ioBuffer();
+            NetContext.getPacketService().write(byteBuf, out.getPacket(), out.getAttachment());
+        }
+        if (compressor != null) {
+            var compressedBuf = compressor.compressFrame(channelHandlerContext.alloc(), byteBuf);
+            shared = shared && compressedBuf == byteBuf;
+            byteBuf = compressedBuf;
+        }
+        var cipher = PacketCipher.cipher(channelHandlerContext.channel());
+        if (cipher != null && cipher.isEncryptEnabled()) {
+            byteBuf = cipher.encryptFrame(channelHandlerContext.alloc(), byteBuf, shared);
+        }
+        return byteBuf;
     }
 
 
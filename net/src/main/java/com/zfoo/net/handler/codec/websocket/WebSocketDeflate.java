@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.websocket;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.handler.codec.http.websocketx.extensions.*;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+import org.springframework.lang.Nullable;
+
+import java.util.zip.Deflater;
+
+/**
+ * EN: The permessage-deflate (RFC 7692) extension of the websocket server, which is understood by the browsers natively.
+ * The compression context is taken over between the messages, so the sliding window of the previous messages works as a shared dictionary,
+ * the window of the client is bounded by websocket-deflate-window. The frames smaller than MIN_DEFLATE_LENGTH are not compressed.
+ * CN: websocket服务器的permessage-deflate压缩（RFC 7692），浏览器原生支持。
+ * 多个消息之间保留压缩的上下文，前面的消息的滑动窗口就相当于共享的字典，客户端的压缩窗口由websocket-deflate-window限制，小于MIN_DEFLATE_LENGTH的帧不压缩。
+ * <p>
+ * 服务器自己的压缩窗口固定为JDK zlib的32K，限制服务器的窗口需要jzlib，所以不接受客户端的server_max_window_bits。
+ * 开启了permessage-deflate之后不需要再配置compress-threshold，否则大包会被压缩两次。
+ * 解压使用WebSocketInflateDecoder代替Netty的解码器，一个消息解压之后最大为1M，和WebSocketFrameAggregator的限制一样。
+ *
+ * @author godotg
+ */
+public abstract class WebSocketDeflate {
+
+    /**
+     * 小包压缩之后几乎不会变小，而且浪费cpu
+     */
+    public static final int MIN_DEFLATE_LENGTH = 64;
+
+    private static final WebSocketExtensionFilter SKIP_SMALL_FRAME = frame -> frame.content().readableBytes() < MIN_DEFLATE_LENGTH;
+
+    private static final WebSocketExtensionFilterProvider FILTER_PROVIDER = new WebSocketExtensionFilterProvider() {
+        @Override
+        public WebSocketExtensionFilter encoderFilter() {
+            return SKIP_SMALL_FRAME;
+        }
+
+        @Override
+        public WebSocketExtensionFilter decoderFilter() {
+            return WebSocketExtensionFilter.NEVER_SKIP;
+        }
+    };
+
+    /**
+     * 没有配置websocket-deflate-window则返回null，表示不使用permessage-deflate
+     */
+    @Nullable
+    public static WebSocketServerExtensionHandler newServerHandler() {
+        var windowBits = NetContext.getConfigManager().getLocalConfig().getWebsocketDeflateWindow();
+        if (windowBits <= 0) {
+            return null;
+        }
+        return newServerHandler(windowBits, IOUtils.BYTES_PER_MB);
+    }
+
+    /**
+     * @param maxMessageLength 一个消息解压之后的最大长度，防止解压炸弹
+     */
+    public static WebSocketServerExtensionHandler newServerHandler(int windowBits, int maxMessageLength) {
+        if (windowBits < PerMessageDeflateServerExtensionHandshaker.MIN_WINDOW_SIZE || windowBits > PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE) {
+            throw new IllegalArgumentException(StringUtils.format("websocket-deflate-window [{}] must be between [{}] and [{}]"
+                    , windowBits, PerMessageDeflateServerExtensionHandshaker.MIN_WINDOW_SIZE, PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE));
+        }
+        // 和PacketCompressor一样使用最快的压缩级别，保留两端的压缩上下文
+        var handshaker = new PerMessageDeflateServerExtensionHandshaker(Deflater.BEST_SPEED, false, windowBits, false, false, FILTER_PROVIDER);
+        // 握手的参数协商和压缩还是使用Netty的实现，只替换掉没有长度限制的解压
+        return new WebSocketServerExtensionHandler(extensionData -> {
+            var extension = handshaker.handshakeExtension(extensionData);
+            if (extension == null) {
+                return null;
+            }
+            return new WebSocketServerExtension() {
+                @Override
+                public int rsv() {
+                    return extension.rsv();
+                }
+
+                @Override
+                public WebSocketExtensionEncoder newExtensionEncoder() {
+                    return extension.newExtensionEncoder();
+                }
+
+                @Override
+                public WebSocketExtensionDecoder newExtensionDecoder() {
+                    return new WebSocketInflateDecoder(maxMessageLength);
+                }
+
+                @Override
+                public WebSocketExtensionData newReponseData() {
+                    return extension.newReponseData();
+                }
+            };
+        });
+    }
+
+}
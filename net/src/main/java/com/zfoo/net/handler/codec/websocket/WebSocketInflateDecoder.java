@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.websocket;
+
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionDecoder;
+
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * EN: The permessage-deflate decoder with a limited inflated message length, Netty 4.1.104 inflates the whole frame without any limit,
+ * a small frame could be inflated to gigabytes before the WebSocketFrameAggregator sees it.
+ * CN: 限制了解压长度的permessage-deflate解码器，Netty 4.1.104自带的解码器会把整个帧全部解压，没有长度限制，
+ * 一个很小的压缩炸弹在WebSocketFrameAggregator检查长度之前就能解压出几个G，所以边解压边检查，超过maxMessageLength直接断开连接。
+ * <p>
+ * 和客户端一样保留压缩的上下文，JDK的Inflater总是使用32K的窗口，可以解压任意client_max_window_bits压缩的数据。
+ *
+ * @author godotg
+ */
+public class WebSocketInflateDecoder extends WebSocketExtensionDecoder {
+
+    /**
+     * RFC 7692，每个消息的末尾去掉了sync flush的这4个字节，解压的时候需要补上
+     */
+    private static final byte[] MESSAGE_TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+    private final int maxMessageLength;
+
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * 当前正在解压的消息已经解压出来的长度，-1表示没有正在解压的消息
+     */
+    private int messageLength = -1;
+
+    public WebSocketInflateDecoder(int maxMessageLength) {
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    @Override
+    public boolean acceptInboundMessage(Object msg) throws Exception {
+        if (!super.acceptInboundMessage(msg)) {
+            return false;
+        }
+        var frame = (WebSocketFrame) msg;
+        // 压缩的消息只在第一个帧设置RSV1，后面的continuation帧属于同一个压缩的消息
+        if (frame instanceof ContinuationWebSocketFrame) {
+            return messageLength >= 0;
+        }
+        return (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) && (frame.rsv() & WebSocketExtension.RSV1) != 0;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame frame, List<Object> out) throws Exception {
+        if (messageLength < 0) {
+            messageLength = 0;
+        }
+        var content = ctx.alloc().buffer();
+        try {
+            inflate(frame.content(), content);
+            if (frame.isFinalFragment()) {
+                if (!inflater.finished()) {
+                    inflate(Unpooled.wrappedBuffer(MESSAGE_TAIL), content);
+                }
+                // 客户端用BFINAL结束了压缩流，下一个消息是新的压缩流
+                if (inflater.finished()) {
+                    inflater.reset();
+                }
+                messageLength = -1;
+            }
+        } catch (DataFormatException e) {
+            content.release();
+            throw new CorruptedWebSocketFrameException(WebSocketCloseStatus.INVALID_PAYLOAD_DATA, "illegal permessage-deflate data", e);
+        } catch (Throwable t) {
+            content.release();
+            throw t;
+        }
+
+        if (frame instanceof TextWebSocketFrame) {
+            out.add(new TextWebSocketFrame(frame.isFinalFragment(), frame.rsv() & ~WebSocketExtension.RSV1, content));
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            out.add(new BinaryWebSocketFrame(frame.isFinalFragment(), frame.rsv() & ~WebSocketExtension.RSV1, content));
+        } else {
+            out.add(new ContinuationWebSocketFrame(frame.isFinalFragment(), frame.rsv(), content));
+        }
+    }
+
+    private void inflate(ByteBuf in, ByteBuf out) throws DataFormatException {
+        for (var nioBuffer : in.nioBuffers()) {
+            inflater.setInput(nioBuffer);
+            while (!inflater.needsInput() && !inflater.finished()) {
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("permessage-deflate does not support preset dictionary");
+                }
+                // 最多多解压出1个字节，用来判断是否超过了最大长度
+                var limit = maxMessageLength - messageLength + 1;
+                out.ensureWritable(Math.min(8 * IOUtils.BYTES_PER_KB, limit));
+                var writerIndex = out.writerIndex();
+                var count = inflater.inflate(out.internalNioBuffer(writerIndex, Math.min(out.writableBytes(), limit)));
+                out.writerIndex(writerIndex + count);
+                messageLength += count;
+                if (messageLength > maxMessageLength) {
+                    throw new CorruptedWebSocketFrameException(WebSocketCloseStatus.MESSAGE_TOO_BIG
+                            , StringUtils.format("inflated websocket message is larger than [{}]", maxMessageLength));
+                }
+            }
+        }
+        in.skipBytes(in.readableBytes());
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        inflater.end();
+        super.handlerRemoved(ctx);
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.idle;
+
+import com.zfoo.net.session.Session;
+import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.AttributeKey;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EN: Idle detection of one channel, replacing the IdleStateHandler. All the channels share one HashedWheelTimer, so adding and
+ * cancelling a timeout is O(1) and the event loops do not keep a scheduled task per channel in their priority queues.
+ * A read or a write only stores the coarse TimeUtils.now(), the timeout is not moved, it is checked lazily when it expires.
+ * CN: 一个channel的空闲检测，代替IdleStateHandler。所有的channel共享一个时间轮，添加和取消超时都是O(1)的，event loop的定时任务队列中也不需要为每个channel保存一个定时任务。
+ * 读写只会记录粗略的时间戳TimeUtils.now()，不会移动超时，超时到期的时候再检查是否真的空闲，没有空闲则按照剩余的时间重新放入时间轮。
+ * <p>
+ * 时间轮的线程只负责唤醒，检查在channel自己的event loop中执行，所以状态都不需要volatile。这个handler需要放在pipeline的最前面，每个channel一个实例
+ *
+ * @author godotg
+ */
+public abstract class AbstractIdleHandler extends ChannelDuplexHandler implements TimerTask, Runnable {
+
+    public static final AttributeKey<AbstractIdleHandler> IDLE_KEY = AttributeKey.valueOf("idle");
+
+    /**
+     * 时间轮的精度是1秒，和TimeUtils.now()的精度一致
+     */
+    private static final HashedWheelTimer wheel = new HashedWheelTimer(new DefaultThreadFactory("zfoo-idle-wheel", true), 1, TimeUnit.SECONDS, 512);
+
+    private static final int STATE_INIT = 0;
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_DESTROYED = 2;
+
+    private ChannelHandlerContext ctx;
+
+    private Timeout timeout;
+
+    private int state = STATE_INIT;
+
+    /**
+     * 最后一次读的时间
+     */
+    protected long lastReadTime;
+
+    /**
+     * 最后一次写的时间
+     */
+    protected long lastWriteTime;
+
+    /**
+     * 最后一次读或者写的时间
+     */
+    protected long lastActiveTime;
+
+    /**
+     * 当前的空闲超时时间（毫秒），每次检查的时候都会重新获取，所以可以动态调整
+     */
+    protected abstract long idleTimeoutMillis();
+
+    /**
+     * 空闲超时之后调用，在channel的event loop中执行
+     */
+    protected abstract void onIdle(ChannelHandlerContext ctx);
+
+    /**
+     * 从什么时候开始计算空闲，默认是读写都空闲（all idle）
+     */
+    protected long idleSince() {
+        return lastActiveTime;
+    }
+
+    /**
+     * 收到心跳包，在channel的event loop中执行
+     */
+    protected void onHeartbeat(long now) {
+    }
+
+    /**
+     * 记录session收到的心跳，只能在session的channel的event loop中调用（Router.receive）
+     */
+    public static void heartbeat(Session session) {
+        var idleHandler = session.getChannel().attr(IDLE_KEY).get();
+        if (idleHandler != null) {
+            idleHandler.onHeartbeat(TimeUtils.now());
+        }
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        ctx.channel().attr(IDLE_KEY).set(this);
+        if (ctx.channel().isActive()) {
+            start();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        destroy();
+        ctx.channel().attr(IDLE_KEY).compareAndSet(this, null);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        start();
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        destroy();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        var now = TimeUtils.now();
+        lastReadTime = now;
+        lastActiveTime = now;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        var now = TimeUtils.now();
+        lastWriteTime = now;
+        lastActiveTime = now;
+        ctx.write(msg, promise);
+    }
+
+    private void start() {
+        if (state != STATE_INIT) {
+            return;
+        }
+        state = STATE_STARTED;
+        var now = TimeUtils.now();
+        lastReadTime = now;
+        lastWriteTime = now;
+        lastActiveTime = now;
+        schedule(idleTimeoutMillis());
+    }
+
+    private void destroy() {
+        state = STATE_DESTROYED;
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+    }
+
+    private void schedule(long delayMillis) {
+        timeout = wheel.newTimeout(this, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 时间轮的线程中执行，转到channel的event loop中检查
+     */
+    @Override
+    public void run(Timeout timeout) {
+        ctx.executor().execute(this);
+    }
+
+    @Override
+    public void run() {
+        check(TimeUtils.now());
+    }
+
+    void check(long now) {
+        if (state != STATE_STARTED) {
+            return;
+        }
+        var idleTimeout = idleTimeoutMillis();
+        var idleTime = now - idleSince();
+        if (idleTime < idleTimeout) {
+            schedule(idleTimeout - idleTime);
+            return;
+        }
+        lastReadTime = now;
+        lastWriteTime = now;
+        lastActiveTime = now;
+        onIdle(ctx);
+        // onIdle可能关闭了channel
+        if (state == STATE_STARTED) {
+            schedule(idleTimeout);
+        }
+    }
+
+}
@@ -13,36 +13,49 @@
 
 package com.zfoo.net.handler.idle;
 
+import com.zfoo.net.NetContext;
 import com.zfoo.net.packet.EncodedPacketInfo;
 import com.zfoo.net.packet.common.Heartbeat;
-import com.zfoo.net.util.SessionUtils;
-import io.netty.channel.ChannelDuplexHandler;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.timeout.IdleState;
-import io.netty.handler.timeout.IdleStateEvent;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
 
 /**
+ * 客户端在heartbeat-interval时间内没有写则发送一个心跳包，心跳间隔需要小于服务器的idle-timeout。
+ * 服务器只按照读空闲判断超时，所以收到推送不算活跃，只接收服务器推送的客户端也需要发送心跳，否则会被服务器断开
+ *
  * @author godotg
  */
-@ChannelHandler.Sharable
-public class ClientIdleHandler extends ChannelDuplexHandler {
+public class ClientIdleHandler extends AbstractIdleHandler {
 
-    private static final Logger logger = LoggerFactory.getLogger(ClientIdleHandler.class);
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(60);
 
     private static final EncodedPacketInfo heartbeatPacket = EncodedPacketInfo.valueOf(new Heartbeat(), null);
 
+    private final long heartbeatInterval;
+
+    public ClientIdleHandler() {
+        this(TimeUnit.SECONDS.toMillis(NetContext.getConfigManager().getLocalConfig().getHeartbeatInterval()));
+    }
+
+    public ClientIdleHandler(long heartbeatIntervalMillis) {
+        this.heartbeatInterval = heartbeatIntervalMillis <= 0 ? DEFAULT_HEARTBEAT_INTERVAL : heartbeatIntervalMillis;
+    }
+
     @Override
-    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
-        if (evt instanceof IdleStateEvent) {
-            IdleStateEvent event = (IdleStateEvent) evt;
-            if (event.state() == IdleState.ALL_IDLE) {
-                logger.info("client send heartbeat to [sid:{}]", SessionUtils.getSession(ctx).getSid());
-                ctx.channel().writeAndFlush(heartbeatPacket);
-            }
-        }
+    protected long idleTimeoutMillis() {
+        return heartbeatInterval;
+    }
+
+    @Override
+    protected long idleSince() {
+        return lastWriteTime;
+    }
 
+    @Override
+    protected void onIdle(ChannelHandlerContext ctx) {
+        // 心跳是高频的操作，不打印日志
+        ctx.channel().writeAndFlush(heartbeatPacket);
     }
+
 }
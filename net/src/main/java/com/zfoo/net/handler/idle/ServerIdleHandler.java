@@ -13,31 +13,78 @@
 
 package com.zfoo.net.handler.idle;
 
+import com.zfoo.net.NetContext;
 import com.zfoo.net.util.SessionUtils;
-import io.netty.channel.ChannelDuplexHandler;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.timeout.IdleState;
-import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+
 /**
+ * 服务器在idle-timeout时间内没有读到任何数据则关闭连接，服务器主动推送的写不算活跃，否则一直推送的断线客户端永远不会被清理。
+ * <p>
+ * 超时时间会根据客户端的心跳间隔自适应：心跳间隔的平滑平均值乘以HEARTBEAT_MISS，限制在MIN_IDLE_TIMEOUT和idle-timeout之间，
+ * 心跳频繁的客户端（比如移动端）断线之后可以更快的被清理，心跳少于两次的连接使用idle-timeout
+ *
  * @author godotg
  */
-@ChannelHandler.Sharable
-public class ServerIdleHandler extends ChannelDuplexHandler {
+public class ServerIdleHandler extends AbstractIdleHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(ServerIdleHandler.class);
 
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(180);
+
+    public static final long MIN_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * 连续丢失多少次心跳才认为连接断开
+     */
+    public static final int HEARTBEAT_MISS = 3;
+
+    private final long maxIdleTimeout;
+
+    private long lastHeartbeatTime;
+
+    /**
+     * 心跳间隔的指数平滑平均值，0表示还没有统计
+     */
+    private long heartbeatInterval;
+
+    public ServerIdleHandler() {
+        this(TimeUnit.SECONDS.toMillis(NetContext.getConfigManager().getLocalConfig().getIdleTimeout()));
+    }
+
+    public ServerIdleHandler(long idleTimeoutMillis) {
+        this.maxIdleTimeout = idleTimeoutMillis <= 0 ? DEFAULT_IDLE_TIMEOUT : idleTimeoutMillis;
+    }
+
     @Override
-    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
-        if (evt instanceof IdleStateEvent) {
-            IdleStateEvent event = (IdleStateEvent) evt;
-            if (event.state() == IdleState.ALL_IDLE) {
-                logger.warn("channel is time out for close {}", SessionUtils.sessionSimpleInfo(ctx));
-                ctx.close();
-            }
+    protected long idleTimeoutMillis() {
+        if (heartbeatInterval <= 0) {
+            return maxIdleTimeout;
         }
+        return Math.max(Math.min(heartbeatInterval * HEARTBEAT_MISS, maxIdleTimeout), Math.min(MIN_IDLE_TIMEOUT, maxIdleTimeout));
     }
+
+    @Override
+    protected long idleSince() {
+        return lastReadTime;
+    }
+
+    @Override
+    protected void onHeartbeat(long now) {
+        if (lastHeartbeatTime > 0) {
+            var interval = now - lastHeartbeatTime;
+            heartbeatInterval = heartbeatInterval <= 0 ? interval : heartbeatInterval + (interval - heartbeatInterval) / 4;
+        }
+        lastHeartbeatTime = now;
+    }
+
+    @Override
+    protected void onIdle(ChannelHandlerContext ctx) {
+        logger.warn("channel is time out for close {}", SessionUtils.sessionSimpleInfo(ctx));
+        ctx.close();
+    }
+
 }
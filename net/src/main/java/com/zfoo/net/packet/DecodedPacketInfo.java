@@ -12,12 +12,25 @@
 
 package com.zfoo.net.packet;
 
+import io.netty.util.Recycler;
 
 /**
  * @author godotg
  */
 public class DecodedPacketInfo {
 
+    private static final Recycler<DecodedPacketInfo> RECYCLER = new Recycler<>() {
+        @Override
+        protected DecodedPacketInfo newObject(Handle<DecodedPacketInfo> handle) {
+            return new DecodedPacketInfo(handle);
+        }
+    };
+
+    /**
+     * 从对象池中获取的才不为空
+     */
+    private final transient Recycler.Handle<DecodedPacketInfo> handle;
+
     /**
      * 解码后的包
      */
@@ -29,6 +42,14 @@ public class DecodedPacketInfo {
     private Object attachment;
 
 
+    public DecodedPacketInfo() {
+        this.handle = null;
+    }
+
+    private DecodedPacketInfo(Recycler.Handle<DecodedPacketInfo> handle) {
+        this.handle = handle;
+    }
+
     public static DecodedPacketInfo valueOf(Object packet, Object attachment) {
         DecodedPacketInfo packetInfo = new DecodedPacketInfo();
         packetInfo.packet = packet;
@@ -36,6 +57,28 @@ public class DecodedPacketInfo {
         return packetInfo;
     }
 
+    /**
+     * 从对象池中获取，BaseRouteHandler和GatewayRouteHandler取出packet和attachment之后会调用recycle()放回对象池
+     */
+    public static DecodedPacketInfo recycledValueOf(Object packet, Object attachment) {
+        DecodedPacketInfo packetInfo = RECYCLER.get();
+        packetInfo.packet = packet;
+        packetInfo.attachment = attachment;
+        return packetInfo;
+    }
+
+    /**
+     * 放回对象池，调用之后不能再使用这个对象，不是从对象池中获取的对象调用这个方法没有任何作用
+     */
+    public void recycle() {
+        if (handle == null) {
+            return;
+        }
+        packet = null;
+        attachment = null;
+        handle.recycle(this);
+    }
+
 
     public Object getPacket() {
         return packet;
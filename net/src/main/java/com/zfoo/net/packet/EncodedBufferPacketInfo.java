@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * 已经被PacketService编码过的Packet，TcpCodecHandler和WebSocketCodecHandler会直接透传buffer，不会再次编码。
+ * <p>
+ * 其它的codec依然会编码packet，被netty释放的时候会释放buffer，所以不会内存泄露。
+ *
+ * @author godotg
+ */
+public class EncodedBufferPacketInfo extends EncodedPacketInfo implements ReferenceCounted {
+
+    /**
+     * 编码后的完整的包，包括包头的长度
+     */
+    private ByteBuf buffer;
+
+    public static EncodedBufferPacketInfo valueOf(Object packet, ByteBuf buffer) {
+        var packetInfo = new EncodedBufferPacketInfo();
+        packetInfo.setPacket(packet);
+        packetInfo.buffer = buffer;
+        return packetInfo;
+    }
+
+    public ByteBuf getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public int refCnt() {
+        return buffer.refCnt();
+    }
+
+    @Override
+    public EncodedBufferPacketInfo retain() {
+        buffer.retain();
+        return this;
+    }
+
+    @Override
+    public EncodedBufferPacketInfo retain(int increment) {
+        buffer.retain(increment);
+        return this;
+    }
+
+    @Override
+    public EncodedBufferPacketInfo touch() {
+        buffer.touch();
+        return this;
+    }
+
+    @Override
+    public EncodedBufferPacketInfo touch(Object hint) {
+        buffer.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return buffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return buffer.release(decrement);
+    }
+}
@@ -12,6 +12,7 @@
 
 package com.zfoo.net.packet;
 
+import com.zfoo.net.router.SendGuarantee;
 import org.springframework.lang.Nullable;
 
 /**
@@ -31,6 +32,11 @@ public class EncodedPacketInfo {
      */
     private Object attachment;
 
+    /**
+     * 发送保证，为空等同于NORMAL，udp的可靠传输中DROPPABLE的消息使用不可靠的有序传输
+     */
+    private SendGuarantee guarantee;
+
 
     public static EncodedPacketInfo valueOf(Object packet, @Nullable Object attachment) {
         EncodedPacketInfo packetInfo = new EncodedPacketInfo();
@@ -39,6 +45,12 @@ public class EncodedPacketInfo {
         return packetInfo;
     }
 
+    public static EncodedPacketInfo valueOf(Object packet, @Nullable Object attachment, SendGuarantee guarantee) {
+        var packetInfo = valueOf(packet, attachment);
+        packetInfo.guarantee = guarantee;
+        return packetInfo;
+    }
+
     public Object getPacket() {
         return packet;
     }
@@ -54,4 +66,12 @@ public class EncodedPacketInfo {
     public void setAttachment(Object attachment) {
         this.attachment = attachment;
     }
+
+    public SendGuarantee getGuarantee() {
+        return guarantee;
+    }
+
+    public void setGuarantee(SendGuarantee guarantee) {
+        this.guarantee = guarantee;
+    }
 }
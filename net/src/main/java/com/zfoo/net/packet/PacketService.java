@@ -13,6 +13,7 @@
 package com.zfoo.net.packet;
 
 import com.zfoo.net.NetContext;
+import com.zfoo.net.router.attachment.GatewayAttachment;
 import com.zfoo.net.router.attachment.SignalAttachment;
 import com.zfoo.protocol.ProtocolManager;
 import com.zfoo.protocol.buffer.ByteBufUtils;
@@ -27,6 +28,8 @@ import com.zfoo.protocol.util.NumberUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.protocol.xml.XmlProtocols;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -50,6 +53,27 @@ public class PacketService implements IPacketService {
      */
     public static final int PACKET_HEAD_LENGTH = 4;
 
+    /**
+     * 包头的最高三位是标记位，最高位表示压缩的包，次高位表示加密的包，第三位表示大包的分片，剩下的29位是包的长度
+     */
+    public static final int PACKET_COMPRESS_FLAG = Integer.MIN_VALUE;
+    public static final int PACKET_CIPHER_FLAG = 0x40000000;
+    public static final int PACKET_FRAGMENT_FLAG = 0x20000000;
+    public static final int PACKET_FLAG_MASK = PACKET_COMPRESS_FLAG | PACKET_CIPHER_FLAG | PACKET_FRAGMENT_FLAG;
+
+    /**
+     * 包头可以表示的最大长度
+     */
+    public static final int PACKET_MAX_LENGTH = ~PACKET_FLAG_MASK;
+
+    /**
+     * 网关透传的包的标记，写在protocolId的位置，协议号不会是负数
+     * 网关透传的包的格式：header(4byte) + flag(2byte) + sid(8byte) + uid(8byte) + 客户端发送的原始包体
+     */
+    public static final short GATEWAY_PASSTHROUGH_FLAG = -1;
+
+    public static final int GATEWAY_PASSTHROUGH_HEAD_LENGTH = PACKET_HEAD_LENGTH + 2 + 8 + 8;
+
     /**
      * 网络包的约定规则如下：
      * 1. 客户端的请求约定以Request结尾，服务器的响应约定以Response结尾
@@ -149,12 +173,55 @@ public class PacketService implements IPacketService {
     public DecodedPacketInfo read(ByteBuf buffer) {
         // 包的长度在上一层已经解析过
 
+        // 网关透传过来的包
+        if (buffer.readableBytes() >= 2 && buffer.getShort(buffer.readerIndex()) == GATEWAY_PASSTHROUGH_FLAG) {
+            return readPassthrough(buffer);
+        }
+
         // 解析包体
         var packet = ProtocolManager.read(buffer);
         // 解析包的附加包
         var hasAttachment = ByteBufUtils.tryReadBoolean(buffer);
         var attachment = hasAttachment ? (ProtocolManager.read(buffer)) : null;
-        return DecodedPacketInfo.valueOf(packet, attachment);
+        return NetContext.getConfigManager().getLocalConfig().isInboundRecycle()
+                ? DecodedPacketInfo.recycledValueOf(packet, attachment)
+                : DecodedPacketInfo.valueOf(packet, attachment);
+    }
+
+    /**
+     * 解析网关透传的包，还原出和网关解码之后再转发一样的GatewayAttachment
+     */
+    private DecodedPacketInfo readPassthrough(ByteBuf buffer) {
+        buffer.skipBytes(2);
+        var sid = buffer.readLong();
+        var uid = buffer.readLong();
+
+        var packet = ProtocolManager.read(buffer);
+        var hasAttachment = ByteBufUtils.tryReadBoolean(buffer);
+        var clientAttachment = hasAttachment ? (ProtocolManager.read(buffer)) : null;
+
+        var gatewayAttachment = new GatewayAttachment(sid, uid);
+        gatewayAttachment.setClient(true);
+        if (clientAttachment instanceof SignalAttachment) {
+            var signalAttachment = (SignalAttachment) clientAttachment;
+            signalAttachment.setClient(SignalAttachment.SIGNAL_SERVER);
+            gatewayAttachment.setSignalAttachment(signalAttachment);
+        }
+        return NetContext.getConfigManager().getLocalConfig().isInboundRecycle()
+                ? DecodedPacketInfo.recycledValueOf(packet, gatewayAttachment)
+                : DecodedPacketInfo.valueOf(packet, gatewayAttachment);
+    }
+
+    /**
+     * 网关透传客户端的包，在客户端的原始包体前面加上包头和客户端的sid、uid，body的引用交给返回的buffer
+     */
+    public static ByteBuf passthroughBuffer(long sid, long uid, ByteBuf body) {
+        var header = ByteBufAllocator.DEFAULT.ioBuffer(GATEWAY_PASSTHROUGH_HEAD_LENGTH);
+        header.writeInt(GATEWAY_PASSTHROUGH_HEAD_LENGTH - PACKET_HEAD_LENGTH + body.readableBytes());
+        header.writeShort(GATEWAY_PASSTHROUGH_FLAG);
+        header.writeLong(sid);
+        header.writeLong(uid);
+        return Unpooled.wrappedBuffer(header, body);
     }
 
     @Override
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * 网关开启gateway-passthrough之后，GatewayTcpCodecHandler不会解码客户端的包，只会解析出protocolId，
+ * GatewayRouteHandler直接把原始的字节透传给Provider，避免解码和重新编码的开销。
+ * <p>
+ * body是从客户端的buffer中retain的slice，包括protocolId、packet和attachment，不包括包头的长度，使用之后必须release。
+ *
+ * @author godotg
+ */
+public class PassthroughPacketInfo implements ReferenceCounted {
+
+    private short protocolId;
+
+    /**
+     * 协议对应的一个共享的空对象，只用来给负载均衡器查找packet.getClass()对应的模块，不能修改
+     */
+    private Object packet;
+
+    private ByteBuf body;
+
+    public static PassthroughPacketInfo valueOf(short protocolId, Object packet, ByteBuf body) {
+        var packetInfo = new PassthroughPacketInfo();
+        packetInfo.protocolId = protocolId;
+        packetInfo.packet = packet;
+        packetInfo.body = body;
+        return packetInfo;
+    }
+
+    public short getProtocolId() {
+        return protocolId;
+    }
+
+    public Object getPacket() {
+        return packet;
+    }
+
+    public ByteBuf getBody() {
+        return body;
+    }
+
+    @Override
+    public int refCnt() {
+        return body.refCnt();
+    }
+
+    @Override
+    public PassthroughPacketInfo retain() {
+        body.retain();
+        return this;
+    }
+
+    @Override
+    public PassthroughPacketInfo retain(int increment) {
+        body.retain(increment);
+        return this;
+    }
+
+    @Override
+    public PassthroughPacketInfo touch() {
+        body.touch();
+        return this;
+    }
+
+    @Override
+    public PassthroughPacketInfo touch(Object hint) {
+        body.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return body.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return body.release(decrement);
+    }
+}
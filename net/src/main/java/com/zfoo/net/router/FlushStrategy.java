@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.router;
+
+/**
+ * EN: How Router.send flushes the written packets to the socket
+ * CN: Router.send写入消息后刷新到socket的策略
+ *
+ * @author godotg
+ */
+public enum FlushStrategy {
+
+    /**
+     * EN: Flush every packet immediately, one syscall per packet, the default strategy
+     * CN: 每个包都立即flush，一个包一次系统调用，默认的策略
+     */
+    IMMEDIATE,
+
+    /**
+     * EN: Merge all the packets written to the same session in one event loop tick into one flush
+     * CN: 同一个session在一次event loop中写入的所有包合并为一次flush
+     */
+    EVENT_LOOP,
+
+    /**
+     * EN: Same as EVENT_LOOP, but also flush as soon as flushBatchSize packets are pending
+     * CN: 和EVENT_LOOP一样，但是积累了flushBatchSize个包之后会立刻flush
+     */
+    BATCH;
+
+}
@@ -13,12 +13,15 @@
 
 package com.zfoo.net.router;
 
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
 import com.zfoo.net.router.answer.AsyncAnswer;
 import com.zfoo.net.router.answer.SyncAnswer;
 import com.zfoo.net.session.Session;
 import com.zfoo.net.task.PacketReceiverTask;
 import org.springframework.lang.Nullable;
 
+import java.util.Collection;
+
 /**
  * @author godotg
  */
@@ -32,6 +35,50 @@ public interface IRouter {
 
     void send(Session session, Object packet, @Nullable Object attachment);
 
+    /**
+     * EN: Send the packet with the guarantee. When the channel is not writable the CRITICAL packets are written at once,
+     * ahead of the NORMAL packets held in the session by the WRITE policy, the others are handled by the unwritable-policy
+     * CN: 按照指定的发送保证发送消息。channel不可写的时候CRITICAL的消息立刻写入，排在WRITE策略下Session中排队的NORMAL消息前面，其它的消息按照unwritable-policy处理
+     */
+    void send(Session session, Object packet, SendGuarantee guarantee);
+
+    /**
+     * EN: Send a DROPPABLE packet, only the latest packet of the same coalesceKey is kept when the channel is not writable with the WRITE or COALESCE policy
+     * CN: 发送一个DROPPABLE的消息，WRITE和COALESCE策略下channel不可写的时候同一个coalesceKey只保留最新的消息，比如以实体id为key的位置同步
+     */
+    void sendLatest(Session session, Object packet, Object coalesceKey);
+
+    /**
+     * EN: Write the held NORMAL packets in order and then the coalesced packets after the channel becomes writable again,
+     * or release them if the channel is inactive, called in the event loop of the channel
+     * CN: channel重新可写之后先按顺序写入排队的NORMAL消息，再写入合并的消息，channel断开的话释放它们，在channel的event loop中调用
+     */
+    void writeHeld(Session session);
+
+    /**
+     * EN: Forward an already encoded buffer without encoding it again, the buffer is released after written
+     * CN: 转发一个已经编码好的buffer，不会再次编码，写出之后buffer会被释放
+     */
+    void forward(Session session, EncodedBufferPacketInfo packetInfo);
+
+    /**
+     * EN: Flush the packets which are written but not flushed by the EVENT_LOOP or BATCH flush strategy
+     * CN: 立刻flush在EVENT_LOOP或者BATCH策略下已经写入但是还没有flush的包
+     */
+    void flush(Session session);
+
+    /**
+     * EN: Send the packet to all the server sessions, the writes of the same session in one event loop tick are merged into one flush
+     * CN: 给所有的服务器session发送消息，同一个session在一次event loop中的写入会合并为一次flush
+     */
+    void broadcast(Object packet);
+
+    /**
+     * EN: Send the packet to the sessions, the packet will be encoded only once and the encoded buffer will be shared by all the sessions
+     * CN: 给sessions发送消息，消息只会被编码一次，所有的session共享编码后的buffer
+     */
+    void broadcast(Collection<Session> sessions, Object packet);
+
     void receive(Session session, Object packet, @Nullable Object attachment);
 
     void atReceiver(PacketReceiverTask packetReceiverTask);
@@ -58,4 +105,9 @@ public interface IRouter {
 
     <T> AsyncAnswer<T> asyncAsk(Session session, Object packet, @Nullable Class<T> answerClass, @Nullable Object argument);
 
+    /**
+     * 和asyncAsk(session, packet, answerClass, Long.valueOf(argument))相同，使用用户的uid的时候不需要装箱
+     */
+    <T> AsyncAnswer<T> asyncAsk(Session session, Object packet, @Nullable Class<T> answerClass, long argument);
+
 }
@@ -0,0 +1,349 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.router;
+
+import com.zfoo.protocol.ProtocolManager;
+import com.zfoo.protocol.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * EN: Traffic and handler latency counters of each protocol, only recorded after enable() is called (the statistics attribute of the config).
+ * The counters are LongAdder which are striped by threads, so the event loops and the task threads do not contend on the same cache line.
+ * CN: 每个协议的流量和处理耗时的计数，只有调用了enable()（配置了statistics）之后才会记录。
+ * 计数器使用按照线程分段的LongAdder，event loop和任务线程之间不会竞争同一个缓存行。
+ * <p>
+ * 字节数是解压和解密之后的包的长度（包括包头），可以通过JMX（com.zfoo.net:type=PacketStatistics）或者HttpServer的metrics路径读取
+ *
+ * @author godotg
+ */
+public abstract class PacketStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketStatistics.class);
+
+    public static final String OBJECT_NAME = "com.zfoo.net:type=PacketStatistics";
+
+    /**
+     * 处理耗时的直方图，第i个桶统计耗时小于2^i微秒的次数，最后一个桶统计其它所有的次数
+     */
+    public static final int LATENCY_BUCKETS = 24;
+
+    // 启动的时候设置，之后只会读取
+    private static boolean enabled = false;
+
+    private static final AtomicReferenceArray<ProtocolCounter> counters = new AtomicReferenceArray<>(ProtocolManager.MAX_PROTOCOL_NUM);
+
+    public static class ProtocolCounter {
+        private final short protocolId;
+        private final String protocolName;
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder packetsIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder packetsOut = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder handlerNanos = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+
+        private ProtocolCounter(short protocolId) {
+            this.protocolId = protocolId;
+            var protocol = ProtocolManager.protocols[protocolId];
+            this.protocolName = (protocol == null || protocol.protocolConstructor() == null) ? String.valueOf(protocolId) : protocol.protocolConstructor().getDeclaringClass().getSimpleName();
+            for (var i = 0; i < LATENCY_BUCKETS; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        public short getProtocolId() {
+            return protocolId;
+        }
+
+        public String getProtocolName() {
+            return protocolName;
+        }
+
+        public long getBytesIn() {
+            return bytesIn.sum();
+        }
+
+        public long getPacketsIn() {
+            return packetsIn.sum();
+        }
+
+        public long getBytesOut() {
+            return bytesOut.sum();
+        }
+
+        public long getPacketsOut() {
+            return packetsOut.sum();
+        }
+
+        /**
+         * Router.send()发送的次数，包括没有经过TcpCodecHandler的其它传输层
+         */
+        public long getSent() {
+            return sent.sum();
+        }
+
+        public long getHandled() {
+            var count = 0L;
+            for (var bucket : latencyBuckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public long getHandlerNanos() {
+            return handlerNanos.sum();
+        }
+
+        public long[] getLatencyBuckets() {
+            var buckets = new long[LATENCY_BUCKETS];
+            for (var i = 0; i < LATENCY_BUCKETS; i++) {
+                buckets[i] = latencyBuckets[i].sum();
+            }
+            return buckets;
+        }
+
+        /**
+         * 直方图估算的百分位耗时，返回所在的桶的上限（微秒）
+         */
+        public long latencyMicros(double percentile) {
+            var buckets = getLatencyBuckets();
+            var count = 0L;
+            for (var bucket : buckets) {
+                count += bucket;
+            }
+            if (count == 0) {
+                return 0;
+            }
+            var target = (long) Math.ceil(count * percentile);
+            var cumulative = 0L;
+            for (var i = 0; i < LATENCY_BUCKETS; i++) {
+                cumulative += buckets[i];
+                if (cumulative >= target) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (LATENCY_BUCKETS - 1);
+        }
+
+        public long getP50Micros() {
+            return latencyMicros(0.5);
+        }
+
+        public long getP99Micros() {
+            return latencyMicros(0.99);
+        }
+    }
+
+    private static class MXBean implements PacketStatisticsMXBean {
+        @Override
+        public long getBytesIn() {
+            return sum(ProtocolCounter::getBytesIn);
+        }
+
+        @Override
+        public long getBytesOut() {
+            return sum(ProtocolCounter::getBytesOut);
+        }
+
+        @Override
+        public long getPacketsIn() {
+            return sum(ProtocolCounter::getPacketsIn);
+        }
+
+        @Override
+        public long getPacketsOut() {
+            return sum(ProtocolCounter::getPacketsOut);
+        }
+
+        @Override
+        public long getHandlerNanos() {
+            return sum(ProtocolCounter::getHandlerNanos);
+        }
+
+        @Override
+        public List<ProtocolCounter> getProtocols() {
+            return protocolCounters();
+        }
+
+        @Override
+        public String getPrometheus() {
+            return prometheus();
+        }
+
+        private long sum(ToLongFunction<ProtocolCounter> function) {
+            var sum = 0L;
+            for (var counter : protocolCounters()) {
+                sum += function.applyAsLong(counter);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * 开始记录，并且把统计注册到JMX，重复调用只会注册一次
+     */
+    public static synchronized void enable() {
+        if (enabled) {
+            return;
+        }
+        enabled = true;
+        try {
+            var mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            var objectName = new ObjectName(OBJECT_NAME);
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(new MXBean(), objectName);
+            }
+        } catch (Exception e) {
+            logger.error("register packet statistics mbean [{}] exception", OBJECT_NAME, e);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    private static ProtocolCounter counter(short protocolId) {
+        var counter = counters.get(protocolId);
+        if (counter == null) {
+            counter = new ProtocolCounter(protocolId);
+            if (!counters.compareAndSet(protocolId, null, counter)) {
+                counter = counters.get(protocolId);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 网关透传的包的protocolId是负数，不属于任何协议
+     */
+    private static boolean isProtocol(short protocolId) {
+        return protocolId >= 0;
+    }
+
+    public static void recordIn(short protocolId, int bytes) {
+        if (isProtocol(protocolId)) {
+            var counter = counter(protocolId);
+            counter.bytesIn.add(bytes);
+            counter.packetsIn.increment();
+        }
+    }
+
+    public static void recordOut(short protocolId, int bytes) {
+        if (isProtocol(protocolId)) {
+            var counter = counter(protocolId);
+            counter.bytesOut.add(bytes);
+            counter.packetsOut.increment();
+        }
+    }
+
+    public static void recordSend(short protocolId) {
+        if (isProtocol(protocolId)) {
+            counter(protocolId).sent.increment();
+        }
+    }
+
+    public static void recordHandler(short protocolId, long nanos) {
+        if (!isProtocol(protocolId)) {
+            return;
+        }
+        var counter = counter(protocolId);
+        counter.handlerNanos.add(nanos);
+        // 耗时小于2^i微秒的放在第i个桶中
+        var micros = nanos / 1000;
+        var bucket = micros <= 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(micros), LATENCY_BUCKETS - 1);
+        counter.latencyBuckets[bucket].increment();
+    }
+
+    /**
+     * 有计数的协议，按照处理的总耗时从大到小排序，其次是收发的字节数
+     */
+    public static List<ProtocolCounter> protocolCounters() {
+        var list = new ArrayList<ProtocolCounter>();
+        for (var i = 0; i < counters.length(); i++) {
+            var counter = counters.get(i);
+            if (counter != null) {
+                list.add(counter);
+            }
+        }
+        list.sort(Comparator.comparingLong(ProtocolCounter::getHandlerNanos)
+                .thenComparingLong(it -> it.getBytesIn() + it.getBytesOut())
+                .reversed());
+        return list;
+    }
+
+    /**
+     * Prometheus的text格式（text/plain; version=0.0.4）
+     */
+    public static String prometheus() {
+        var counters = protocolCounters();
+        var builder = new StringBuilder();
+        appendCounter(builder, "zfoo_packet_in_bytes_total", counters, ProtocolCounter::getBytesIn);
+        appendCounter(builder, "zfoo_packet_in_total", counters, ProtocolCounter::getPacketsIn);
+        appendCounter(builder, "zfoo_packet_out_bytes_total", counters, ProtocolCounter::getBytesOut);
+        appendCounter(builder, "zfoo_packet_out_total", counters, ProtocolCounter::getPacketsOut);
+        appendCounter(builder, "zfoo_packet_sent_total", counters, ProtocolCounter::getSent);
+
+        var name = "zfoo_packet_handler_microseconds";
+        builder.append("# TYPE ").append(name).append(" histogram\n");
+        for (var counter : counters) {
+            var buckets = counter.getLatencyBuckets();
+            var labels = labels(counter);
+            var cumulative = 0L;
+            for (var i = 0; i < LATENCY_BUCKETS - 1; i++) {
+                cumulative += buckets[i];
+                builder.append(name).append("_bucket{").append(labels).append(",le=\"").append(1L << i).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += buckets[LATENCY_BUCKETS - 1];
+            builder.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+            builder.append(name).append("_sum{").append(labels).append("} ").append(counter.getHandlerNanos() / 1000).append('\n');
+            builder.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void appendCounter(StringBuilder builder, String name, List<ProtocolCounter> counters, ToLongFunction<ProtocolCounter> function) {
+        builder.append("# TYPE ").append(name).append(" counter\n");
+        for (var counter : counters) {
+            builder.append(name).append('{').append(labels(counter)).append("} ").append(function.applyAsLong(counter)).append('\n');
+        }
+    }
+
+    private static String labels(ProtocolCounter counter) {
+        return StringUtils.format("protocol=\"{}\",name=\"{}\"", counter.protocolId, counter.protocolName);
+    }
+
+    /**
+     * 打印处理耗时最多的协议
+     */
+    public static void status() {
+        var counters = protocolCounters();
+        for (var i = 0; i < Math.min(counters.size(), 10); i++) {
+            var counter = counters.get(i);
+            logger.info("packet [{}:{}] [in:{}/{}B] [out:{}/{}B] [handled:{}] [cost:{}ms] [p50:{}us] [p99:{}us]"
+                    , counter.protocolId, counter.protocolName, counter.getPacketsIn(), counter.getBytesIn(), counter.getPacketsOut(), counter.getBytesOut()
+                    , counter.getHandled(), counter.getHandlerNanos() / 1_000_000, counter.getP50Micros(), counter.getP99Micros());
+        }
+    }
+
+}
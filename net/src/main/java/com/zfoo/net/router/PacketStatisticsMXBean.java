@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.router;
+
+import java.util.List;
+
+/**
+ * EN: The JMX view of PacketStatistics, registered as com.zfoo.net:type=PacketStatistics
+ * CN: PacketStatistics的JMX视图，注册的名称为com.zfoo.net:type=PacketStatistics，可以用jconsole或者jmc查看
+ *
+ * @author godotg
+ */
+public interface PacketStatisticsMXBean {
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getPacketsIn();
+
+    long getPacketsOut();
+
+    long getHandlerNanos();
+
+    /**
+     * 有流量的协议，按照处理的总耗时从大到小排序
+     */
+    List<PacketStatistics.ProtocolCounter> getProtocols();
+
+    /**
+     * Prometheus的text格式
+     */
+    String getPrometheus();
+
+}
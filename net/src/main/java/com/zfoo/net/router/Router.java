@@ -16,12 +16,14 @@ package com.zfoo.net.router;
 import com.zfoo.event.manager.EventBus;
 import com.zfoo.net.NetContext;
 import com.zfoo.net.anno.PacketReceiver;
-import com.zfoo.net.anno.Task;
 import com.zfoo.net.core.event.ServerExceptionEvent;
+import com.zfoo.net.handler.idle.AbstractIdleHandler;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
 import com.zfoo.net.packet.EncodedPacketInfo;
 import com.zfoo.net.packet.PacketService;
 import com.zfoo.net.packet.common.Error;
 import com.zfoo.net.packet.common.Heartbeat;
+import com.zfoo.net.packet.common.Message;
 import com.zfoo.net.router.answer.AsyncAnswer;
 import com.zfoo.net.router.answer.SyncAnswer;
 import com.zfoo.net.router.attachment.AttachmentType;
@@ -37,17 +39,25 @@ import com.zfoo.net.enhance.PacketReceiverDefinition;
 import com.zfoo.net.session.Session;
 import com.zfoo.net.task.PacketReceiverTask;
 import com.zfoo.net.task.TaskBus;
+import com.zfoo.net.task.VirtualTaskBus;
 import com.zfoo.protocol.ProtocolManager;
 import com.zfoo.protocol.collection.ArrayUtils;
+import com.zfoo.protocol.collection.CollectionUtils;
 import com.zfoo.protocol.exception.ExceptionUtils;
 import com.zfoo.protocol.exception.RunException;
 import com.zfoo.protocol.util.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.collection.ShortObjectHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.Nullable;
 
 import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -62,12 +72,18 @@ public class Router implements IRouter {
 
     public static final long DEFAULT_TIMEOUT = 3000;
 
+    /**
+     * 服务器的Session超过这个数量的时候，全服广播分块并行的写入
+     */
+    public static final int PARALLEL_BROADCAST_THRESHOLD = 4096;
+
     private final ShortObjectHashMap<IPacketReceiver> receiverMap = new ShortObjectHashMap<>();
 
     /**
      * 作为服务器接收方，会把receive收到的attachment存储在这个地方，只针对task线程。
      * atReceiver会设置attachment，但是在方法调用完成会取消，不需要过多关注。
      * asyncAsk会再次设置attachment，需要重点关注。
+     * VirtualTaskBus的邮箱中执行的任务的attachment由邮箱携带，不使用这个线程变量。
      */
     private final FastThreadLocalAdapter<Object> serverReceiverAttachmentThreadLocal = new FastThreadLocalAdapter<>();
 
@@ -77,15 +93,15 @@ public class Router implements IRouter {
     @Override
     public void receive(Session session, Object packet, @Nullable Object attachment) {
         if (packet.getClass() == Heartbeat.class) {
-            logger.info("server receive heartbeat from [sid:{}]", session.getSid());
+            // 心跳是高频的操作，只记录心跳的间隔，不打印日志
+            AbstractIdleHandler.heartbeat(session);
             return;
         }
 
-        var task = new PacketReceiverTask(session, packet, attachment);
         if (attachment == null) {
             // 正常发送消息的接收,把客户端的业务请求包装下到路由策略指定的线程进行业务处理
             // 注意：像客户端以asyncAsk发送请求，在服务器处理完后返回结果，在请求方也是进入这个receive方法，但是attachment不为空，会提前return掉不会走到这
-            dispatchBySession(task);
+            dispatchBySession(PacketReceiverTask.valueOf(session, packet, attachment));
             return;
         }
 
@@ -95,13 +111,13 @@ public class Router implements IRouter {
 
             if (signalAttachment.getClient() == SignalAttachment.SIGNAL_OUTSIDE_CLIENT) {
                 // 服务器收到外部客户端的SIGNAL_OUTSIDE_CLIENT，不做任何处理
-                dispatchBySession(task);
+                dispatchBySession(PacketReceiverTask.valueOf(session, packet, attachment));
             } else if (signalAttachment.getClient() == SignalAttachment.SIGNAL_NATIVE_ARGUMENT_CLIENT) {
                 signalAttachment.setClient(SignalAttachment.SIGNAL_SERVER);
-                dispatchByTaskExecutorHash(signalAttachment.getTaskExecutorHash(), task);
+                dispatchByTaskExecutorHash(signalAttachment.getTaskExecutorHash(), PacketReceiverTask.valueOf(session, packet, attachment));
             } else if (signalAttachment.getClient() == SignalAttachment.SIGNAL_NATIVE_NO_ARGUMENT_CLIENT) {
                 signalAttachment.setClient(SignalAttachment.SIGNAL_SERVER);
-                dispatchBySession(task);
+                dispatchBySession(PacketReceiverTask.valueOf(session, packet, attachment));
             } else {
                 // 客户端收到服务器应答，客户端发送的时候client为SIGNAL_NATIVE_CLIENT，服务器收到的时候将其设置为SIGNAL_SERVER
                 var removedAttachment = (SignalAttachment) SignalBridge.removeSignalAttachment(signalAttachment);
@@ -123,7 +139,7 @@ public class Router implements IRouter {
             // 注意：此时并没有return，这样子网关的消息才能发给home，在home进行处理LogoutRequest消息的处理
             if (gatewayAttachment.isClient()) {
                 gatewayAttachment.setClient(false);
-                dispatchByTaskExecutorHash(gatewayAttachment.taskExecutorHash(), task);
+                dispatchByTaskExecutorHash(gatewayAttachment.taskExecutorHash(), PacketReceiverTask.valueOf(session, packet, attachment));
             } else {
                 // 这里是：别的服务提供者提供授权给网关，比如：在用户或玩家登录后，home服查到了玩家uid，然后发给Gateway服
                 var gatewaySession = NetContext.getSessionManager().getServerSession(gatewayAttachment.getSid());
@@ -138,11 +154,11 @@ public class Router implements IRouter {
 
         if (attachment.getClass() == HttpAttachment.class) {
             var httpAttachment = (HttpAttachment) attachment;
-            dispatchByTaskExecutorHash(httpAttachment.getTaskExecutorHash(), task);
+            dispatchByTaskExecutorHash(httpAttachment.getTaskExecutorHash(), PacketReceiverTask.valueOf(session, packet, attachment));
             return;
         }
 
-        dispatchBySession(task);
+        dispatchBySession(PacketReceiverTask.valueOf(session, packet, attachment));
     }
 
     /**
@@ -187,12 +203,54 @@ public class Router implements IRouter {
         switch (receiver.task()) {
             case TaskBus -> TaskBus.execute(taskExecutorHash, packetReceiverTask);
             case NettyIO -> atReceiver(packetReceiverTask);
-//            case VirtualThread -> Thread.ofVirtual().name("virtual-at" + clazz.getSimpleName()).start(() -> atReceiver(packetReceiverTask));
+            case VirtualThread -> VirtualTaskBus.execute(taskExecutorHash, packetReceiverTask);
         }
     }
 
     @Override
     public void send(Session session, Object packet, Object attachment) {
+        send(session, packet, attachment, SendGuarantee.NORMAL);
+    }
+
+    @Override
+    public void send(Session session, Object packet, SendGuarantee guarantee) {
+        // 和send(session, packet)一样，服务器异步返回的消息需要带上signalAttachment
+        send(session, packet, serverReceiverAttachment(), guarantee);
+    }
+
+    private void send(Session session, Object packet, Object attachment, SendGuarantee guarantee) {
+        if (session == null) {
+            logger.error("session is null and can not be sent.");
+            return;
+        }
+        if (packet == null) {
+            logger.error("packet is null and can not be sent.");
+            return;
+        }
+        if (PacketStatistics.isEnabled()) {
+            PacketStatistics.recordSend(ProtocolManager.protocolId(packet.getClass()));
+        }
+        send(session, EncodedPacketInfo.valueOf(packet, attachment, guarantee));
+    }
+
+    /**
+     * 按照消息的发送保证写入，channel不可写的时候按照unwritable-policy处理
+     */
+    private void send(Session session, EncodedPacketInfo packetInfo) {
+        if (!session.getChannel().isWritable()) {
+            writeUnwritable(session, packetInfo);
+            return;
+        }
+        // 还有排队中的NORMAL消息，新的NORMAL消息也要排在它们后面，保证NORMAL消息之间的顺序
+        if (guarantee(packetInfo) == SendGuarantee.NORMAL && session.hasHeldPackets()) {
+            hold(session, packetInfo);
+            return;
+        }
+        write(session, packetInfo);
+    }
+
+    @Override
+    public void sendLatest(Session session, Object packet, Object coalesceKey) {
         if (session == null) {
             logger.error("session is null and can not be sent.");
             return;
@@ -201,21 +259,218 @@ public class Router implements IRouter {
             logger.error("packet is null and can not be sent.");
             return;
         }
+        var channel = session.getChannel();
+        if (channel.isWritable()) {
+            // 新的消息可以直接写入，还在等待的旧消息就不需要写入了
+            session.removeCoalesced(coalesceKey);
+            write(session, EncodedPacketInfo.valueOf(packet, null, SendGuarantee.DROPPABLE));
+            return;
+        }
+        var policy = unwritablePolicy();
+        if (channel.isActive() && (policy == UnwritablePolicy.WRITE || policy == UnwritablePolicy.COALESCE)) {
+            session.coalesce(coalesceKey, packet);
+            UnwritableStatistics.incrementCoalesced(session);
+            // 放入之前channel可能已经变为可写，writeHeld已经执行过了，需要再写一次，否则这个消息要等到下一次可写才会发送
+            if (channel.isWritable()) {
+                channel.eventLoop().execute(() -> writeHeld(session));
+            }
+            return;
+        }
+        writeUnwritable(session, EncodedPacketInfo.valueOf(packet, null, SendGuarantee.DROPPABLE));
+    }
+
+    @Override
+    public void writeHeld(Session session) {
+        var channel = session.getChannel();
+        if (!channel.isActive()) {
+            session.releaseHeldPackets();
+            return;
+        }
+        // 先按顺序写入排队的NORMAL消息，再写入合并的DROPPABLE消息，写入的过程中又变得不可写了，剩下的消息继续等待
+        var heldPackets = session.getHeldPackets();
+        if (heldPackets != null) {
+            EncodedPacketInfo packetInfo;
+            while (channel.isWritable() && (packetInfo = heldPackets.poll()) != null) {
+                write(session, packetInfo);
+            }
+        }
+        var packets = session.getCoalescedPackets();
+        if (packets == null || packets.isEmpty()) {
+            return;
+        }
+        for (var entry : packets.entrySet()) {
+            if (!channel.isWritable()) {
+                return;
+            }
+            // 可能同时有新的消息覆盖了这个key，只删除当前的这个消息
+            var packet = entry.getValue();
+            if (packets.remove(entry.getKey(), packet)) {
+                write(session, EncodedPacketInfo.valueOf(packet, null, SendGuarantee.DROPPABLE));
+            }
+        }
+    }
+
+    @Override
+    public void forward(Session session, EncodedBufferPacketInfo packetInfo) {
+        if (session == null) {
+            logger.error("session is null and the buffer can not be forwarded.");
+            packetInfo.release();
+            return;
+        }
+        send(session, packetInfo);
+    }
+
+    private UnwritablePolicy unwritablePolicy() {
+        return Objects.requireNonNullElse(NetContext.getConfigManager().getLocalConfig().getUnwritablePolicy(), UnwritablePolicy.WRITE);
+    }
+
+    private static SendGuarantee guarantee(EncodedPacketInfo packetInfo) {
+        return Objects.requireNonNullElse(packetInfo.getGuarantee(), SendGuarantee.NORMAL);
+    }
+
+    /**
+     * channel不可写的时候按照消息的发送保证和unwritable-policy处理：CRITICAL的消息直接写入，
+     * WRITE策略下NORMAL的消息在Session中排队，所以CRITICAL的消息会排在它们前面，丢弃的消息会被释放
+     */
+    private void writeUnwritable(Session session, EncodedPacketInfo packetInfo) {
+        // 已经断开的channel写入会失败，和之前一样在write中打印日志
+        if (!session.getChannel().isActive()) {
+            write(session, packetInfo);
+            return;
+        }
+        var guarantee = guarantee(packetInfo);
+        if (guarantee == SendGuarantee.CRITICAL) {
+            UnwritableStatistics.incrementWritten(session);
+            write(session, packetInfo);
+            return;
+        }
+        switch (unwritablePolicy()) {
+            case WRITE -> {
+                if (guarantee == SendGuarantee.DROPPABLE) {
+                    UnwritableStatistics.incrementDropped(session);
+                    ReferenceCountUtil.release(packetInfo);
+                    return;
+                }
+                UnwritableStatistics.incrementHeld(session);
+                if (UnwritableStatistics.tryLog()) {
+                    logger.warn("hold msg until the channel is writable, protocol [{}] session [{}] [held:{}]"
+                            , packetInfo.getPacket().getClass().getSimpleName(), session, session.getUnwritableCounter().getHeld());
+                }
+                hold(session, packetInfo);
+            }
+            case DISCONNECT -> {
+                logger.warn("session [{}] is too slow to write and will be disconnected", session);
+                UnwritableStatistics.incrementDisconnected(session);
+                ReferenceCountUtil.release(packetInfo);
+                session.close();
+            }
+            default -> {
+                UnwritableStatistics.incrementDropped(session);
+                ReferenceCountUtil.release(packetInfo);
+            }
+        }
+    }
 
-        var packetInfo = EncodedPacketInfo.valueOf(packet, attachment);
+    private void hold(Session session, EncodedPacketInfo packetInfo) {
+        session.hold(packetInfo);
+        // 放入之前channel可能已经变为可写或者已经断开，writeHeld已经执行过了，需要再执行一次，否则这个消息要等到下一次可写才会发送
+        var channel = session.getChannel();
+        if (channel.isWritable() || !channel.isActive()) {
+            channel.eventLoop().execute(() -> writeHeld(session));
+        }
+    }
 
+    private void write(Session session, EncodedPacketInfo packetInfo) {
         var channel = session.getChannel();
-        if (!channel.isActive() || !channel.isWritable()) {
+        if (!channel.isActive()) {
             logger.warn("send msg error, protocol [{}] isActive=[{}] isWritable=[{}]"
-                    , packet.getClass().getSimpleName(), channel.isActive(), channel.isWritable());
+                    , packetInfo.getPacket().getClass().getSimpleName(), channel.isActive(), channel.isWritable());
+        }
+
+        var netConfig = NetContext.getConfigManager().getLocalConfig();
+        var flushStrategy = netConfig.getFlushStrategy();
+        if (flushStrategy == null || flushStrategy == FlushStrategy.IMMEDIATE) {
+            channel.writeAndFlush(packetInfo);
+        } else if (flushStrategy == FlushStrategy.EVENT_LOOP) {
+            session.writeAndFlushLater(packetInfo, 0);
+        } else {
+            session.writeAndFlushLater(packetInfo, netConfig.getFlushBatchSize());
+        }
+    }
+
+    @Override
+    public void flush(Session session) {
+        if (session == null) {
+            logger.error("session is null and can not be flushed.");
+            return;
+        }
+        session.flush();
+    }
+
+    /**
+     * 广播的包不需要attachment，只会被编码一次，同一个session的多次广播在一次event loop中只会flush一次
+     */
+    @Override
+    public void broadcast(Object packet) {
+        if (packet == null) {
+            logger.error("packet is null and can not be broadcast.");
+            return;
+        }
+        var buffer = encodeBroadcastPacket(packet);
+        try {
+            var sessionManager = NetContext.getSessionManager();
+            if (sessionManager.serverSessionSize() >= PARALLEL_BROADCAST_THRESHOLD) {
+                sessionManager.forEachServerSessionParallel(session -> broadcast(session, packet, buffer));
+            } else {
+                sessionManager.forEachServerSession(session -> broadcast(session, packet, buffer));
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public void broadcast(Collection<Session> sessions, Object packet) {
+        if (packet == null) {
+            logger.error("packet is null and can not be broadcast.");
+            return;
+        }
+        if (CollectionUtils.isEmpty(sessions)) {
+            return;
+        }
+        var buffer = encodeBroadcastPacket(packet);
+        try {
+            for (var session : sessions) {
+                broadcast(session, packet, buffer);
+            }
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private ByteBuf encodeBroadcastPacket(Object packet) {
+        var buffer = ByteBufAllocator.DEFAULT.ioBuffer();
+        NetContext.getPacketService().write(buffer, packet, null);
+        return buffer;
+    }
+
+    private void broadcast(Session session, Object packet, ByteBuf buffer) {
+        if (session == null || !session.getChannel().isActive()) {
+            return;
+        }
+        // 每个session持有一个独立读写索引的buffer副本，写出后由netty释放，丢弃的时候直接释放
+        var packetInfo = EncodedBufferPacketInfo.valueOf(packet, buffer.retainedDuplicate());
+        if (!session.getChannel().isWritable() || session.hasHeldPackets()) {
+            send(session, packetInfo);
+            return;
         }
-        channel.writeAndFlush(packetInfo);
+        session.writeAndFlushLater(packetInfo, 0);
     }
 
     @Override
     public void send(Session session, Object packet) {
         // 服务器异步返回的消息的发送会有signalAttachment，验证返回的消息是否满足
-        var serverSignalAttachment = serverReceiverAttachmentThreadLocal.get();
+        var serverSignalAttachment = serverReceiverAttachment();
         send(session, packet, serverSignalAttachment);
     }
 
@@ -271,16 +526,27 @@ public class Router implements IRouter {
             clientSignalAttachment.setClient(SignalAttachment.SIGNAL_NATIVE_ARGUMENT_CLIENT);
             clientSignalAttachment.setTaskExecutorHash(TaskBus.calTaskExecutorHash(argument));
         }
+        return asyncAsk(session, packet, answerClass, clientSignalAttachment);
+    }
 
+    @Override
+    public <T> AsyncAnswer<T> asyncAsk(Session session, Object packet, @Nullable Class<T> answerClass, long argument) {
+        var clientSignalAttachment = new SignalAttachment();
+        clientSignalAttachment.setClient(SignalAttachment.SIGNAL_NATIVE_ARGUMENT_CLIENT);
+        clientSignalAttachment.setTaskExecutorHash(TaskBus.calTaskExecutorHash(argument));
+        return asyncAsk(session, packet, answerClass, clientSignalAttachment);
+    }
+
+    private <T> AsyncAnswer<T> asyncAsk(Session session, Object packet, @Nullable Class<T> answerClass, SignalAttachment clientSignalAttachment) {
         // 服务器在同步或异步的消息处理中，又调用了同步或异步的方法，这时候threadReceiverAttachment不为空
-        var serverSignalAttachment = serverReceiverAttachmentThreadLocal.get();
+        var serverSignalAttachment = serverReceiverAttachment();
 
         try {
             var asyncAnswer = new AsyncAnswer<T>();
             asyncAnswer.setSignalAttachment(clientSignalAttachment);
 
+            // SignalBridge的时间轮会在超时的时候使用null完成responseFuture
             clientSignalAttachment.getResponseFuture()
-                    .completeOnTimeout(null, DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS) // 因此超时的情况，返回的是null
                     .thenApply(answer -> {
                         if (answer == null) {
                             throw new NetTimeOutException("async ask [{}] timeout exception", packet.getClass().getSimpleName());
@@ -302,7 +568,7 @@ public class Router implements IRouter {
 
                             // 接收者在同步或异步的消息处理中，又调用了异步的方法，这时候threadServerAttachment不为空
                             if (serverSignalAttachment != null) {
-                                serverReceiverAttachmentThreadLocal.set(serverSignalAttachment);
+                                setServerReceiverAttachment(serverSignalAttachment);
                             }
 
                             // 如果有异常的话，whenCompleteAsync的下一个thenAccept不会执行
@@ -325,14 +591,14 @@ public class Router implements IRouter {
                             logger.error("Asynchronous callback method [ask:{}][answer:{}] error", packet.getClass().getSimpleName(), answer.getClass().getSimpleName(), throwable1);
                         } finally {
                             if (serverSignalAttachment != null) {
-                                serverReceiverAttachmentThreadLocal.set(null);
+                                setServerReceiverAttachment(null);
                             }
                         }
 
                     }, TaskBus.currentThreadExecutor());
 
 
-            SignalBridge.addSignalAttachment(clientSignalAttachment);
+            SignalBridge.addTimeoutSignalAttachment(clientSignalAttachment);
 
             // 等到上层调用whenComplete才会发送消息
             asyncAnswer.setAskCallback(() -> send(session, packet, clientSignalAttachment));
@@ -357,29 +623,64 @@ public class Router implements IRouter {
         var attachment = packetReceiverTask.getAttachment();
 
         // The routing of the message
-        var receiver = receiverMap.get(ProtocolManager.protocolId(packet.getClass()));
+        var protocolId = ProtocolManager.protocolId(packet.getClass());
+        var receiver = receiverMap.get(protocolId);
+        var startTime = PacketStatistics.isEnabled() ? System.nanoTime() : 0L;
         try {
             // 接收者（服务器）同步和异步消息的接收
-            serverReceiverAttachmentThreadLocal.set(attachment);
-
-            // 虚拟线程赋值给ThreadLocal会出错，这里给使用者一个提示
-            if (receiver.task() == Task.VirtualThread && receiver.attachment() == null) {
-                logger.warn("virtual thread task can not set Attachment to ThreadLocal, may cause some sync and async timeout exception, please use attachment in receiver method signature and use attachment in sync and async request");
-            }
+            // VirtualThread的任务的attachment由邮箱携带，不使用FastThreadLocal
+            setServerReceiverAttachment(attachment);
 
             receiver.invoke(session, packet, attachment);
         } catch (Exception e) {
             EventBus.post(ServerExceptionEvent.valueOf(session, packet, attachment, e));
             logger.error("at{} e[uid:{}][sid:{}] invoke exception", StringUtils.capitalize(packet.getClass().getSimpleName()), session.getUid(), session.getSid(), e);
+            replyHttpError(session, attachment);
         } catch (Throwable t) {
             logger.error("at{} e[uid:{}][sid:{}] invoke error", StringUtils.capitalize(packet.getClass().getSimpleName()), session.getUid(), session.getSid(), t);
+            replyHttpError(session, attachment);
         } finally {
             // 如果有服务器在处理同步或者异步消息的时候由于错误没有返回给客户端消息，则可能会残留serverAttachment，所以先移除
-            serverReceiverAttachmentThreadLocal.set(null);
+            setServerReceiverAttachment(null);
+            // 开启了inbound-recycle的话放回对象池
+            packetReceiverTask.recycle();
+            if (startTime != 0L) {
+                PacketStatistics.recordHandler(protocolId, System.nanoTime() - startTime);
+            }
+        }
+    }
+
+
+    /**
+     * 服务器接收方正在处理的消息的attachment，VirtualTaskBus的邮箱中从邮箱获取，否则从线程变量获取
+     */
+    @Nullable
+    private Object serverReceiverAttachment() {
+        return VirtualTaskBus.isMailboxThread() ? VirtualTaskBus.currentAttachment() : serverReceiverAttachmentThreadLocal.get();
+    }
+
+    private void setServerReceiverAttachment(@Nullable Object attachment) {
+        if (VirtualTaskBus.isMailboxThread()) {
+            VirtualTaskBus.setCurrentAttachment(attachment);
+        } else {
+            serverReceiverAttachmentThreadLocal.set(attachment);
         }
     }
 
 
+    /**
+     * http请求的处理抛出了异常，返回500，否则pipelining的连接上后面的响应都要等待这个请求的响应。
+     * 处理器在抛出异常之前已经返回了响应的话，这个响应会被HttpCodecHandler当作重复的响应丢弃
+     */
+    private void replyHttpError(Session session, @Nullable Object attachment) {
+        if (!(attachment instanceof HttpAttachment httpAttachment)) {
+            return;
+        }
+        var errorAttachment = HttpAttachment.valueOf(httpAttachment.getFullHttpRequest(), HttpResponseStatus.INTERNAL_SERVER_ERROR);
+        errorAttachment.setSequence(httpAttachment.getSequence());
+        send(session, Message.valueError(HttpResponseStatus.INTERNAL_SERVER_ERROR.reasonPhrase()), errorAttachment);
+    }
+
     @Override
     public void registerPacketReceiverDefinition(Object bean) {
         var clazz = bean.getClass();
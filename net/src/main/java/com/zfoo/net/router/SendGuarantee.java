@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.router;
+
+/**
+ * EN: The send guarantee of a packet, it is also the outbound lane of the packet when the channel is not writable.
+ * The CRITICAL packets go to the channel at once, the NORMAL packets are held in order in the session and the DROPPABLE packets are coalesced or dropped,
+ * so a CRITICAL packet never waits behind the NORMAL packets sent after the channel became unwritable.
+ * CN: 消息的发送保证，也是channel不可写（发送缓冲区超过高水位）的时候消息的发送通道。
+ * CRITICAL的消息立刻写入channel，NORMAL的消息在Session中按顺序排队，DROPPABLE的消息被合并或者丢弃，
+ * 所以channel不可写之后发送的NORMAL消息不会挡在CRITICAL的消息前面，channel重新可写之后再写入排队的消息
+ *
+ * @author godotg
+ */
+public enum SendGuarantee {
+
+    /**
+     * EN: Always written at once even if the channel is not writable, such as login and payment results, ahead of the held NORMAL packets.
+     * The packets already in the ChannelOutboundBuffer are still sent before it
+     * CN: 即使channel不可写也立刻写入，比如登录和支付的结果，排在Session中排队的NORMAL消息前面，已经在ChannelOutboundBuffer中的消息依然先发送
+     */
+    CRITICAL,
+
+    /**
+     * EN: Handled by the unwritable-policy when the channel is not writable, the default guarantee
+     * CN: channel不可写的时候按照unwritable-policy处理，默认的发送保证
+     */
+    NORMAL,
+
+    /**
+     * EN: Dropped when the channel is not writable, or only the latest one of the same coalesce key is kept with the WRITE and COALESCE policy,
+     * such as the position updates keyed by entity
+     * CN: channel不可写的时候丢弃，WRITE和COALESCE策略下sendLatest的消息同一个coalesceKey只保留最新的一个，比如以实体id为key的位置同步。
+     * 可靠udp下使用不可靠有序的方式发送，所有的key共用一个序列号，乱序到达的旧消息即使是不同的key也会被丢弃
+     */
+    DROPPABLE;
+
+}
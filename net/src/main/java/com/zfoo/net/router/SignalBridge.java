@@ -9,16 +9,21 @@
  * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  * See the License for the specific language governing permissions and limitations under the License.
  */
-
 package com.zfoo.net.router;
 
 import com.zfoo.net.router.attachment.SignalAttachment;
+import com.zfoo.protocol.collection.concurrent.ConcurrentHashMapLongObject;
 import com.zfoo.protocol.util.JsonUtils;
+import com.zfoo.protocol.util.MpscSingleThreadExecutor;
+import com.zfoo.protocol.util.ThreadUtils;
+import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.internal.PlatformDependent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
@@ -31,19 +36,54 @@ public class SignalBridge {
 
     private static final Logger logger = LoggerFactory.getLogger(SignalBridge.class);
 
-    // equal with 32767
-    private static final int SIGNAL_MASK = 0B00000000_00000000_01111111_11111111;
+    // equal with 65535
+    private static final int SIGNAL_MASK = 0B00000000_00000000_11111111_11111111;
 
     /**
+     * EN: The signalId is used as the generation tag of the ring slot, the colliding attachments are stored in a primitive long map without boxing
+     * CN: signalId本身就是环形缓冲区槽位的版本号，冲突的attachment保存在没有装箱的原始类型map中
+     * <p>
      * key：signalId
      */
-    private static final Map<Integer, SignalAttachment> signalAttachmentMap = new ConcurrentHashMap<>(1000);
+    private static final ConcurrentHashMapLongObject<SignalAttachment> signalAttachmentMap = new ConcurrentHashMapLongObject<>(64);
     /**
      * EN:Ring buffer data structure, which is cache-friendly, can reduce cache contention and improve memory access efficiency
      * CN:环形缓冲区数据结构，该数据结构具有良好的缓存友好性，可以充分利用 CPU 缓存，减少缓存竞争，提高内存访问效率
      */
     private static final AtomicReferenceArray<SignalAttachment> signalAttachmentArray = new AtomicReferenceArray<>(SIGNAL_MASK + 1);
 
+    /**
+     * EN: Hashed timing wheel for the timeout of all the async requests, every bucket is a lock-free mpsc queue, all the requests of a bucket time out in bulk.
+     * The wheel is larger than DEFAULT_TIMEOUT, so the requests in a bucket are always due when the bucket is reached and need no deadline or rounds.
+     * CN: 所有异步请求的超时共用一个哈希时间轮，每个槽位是一个无锁的mpsc队列，一个槽位的请求批量超时。
+     * 时间轮的跨度比DEFAULT_TIMEOUT大，所以槽位被执行的时候里面的请求一定都已经超时了，不需要记录超时时间和轮数。
+     */
+    private static final long TICK_MILLIS = 100;
+    private static final int TIMEOUT_TICKS = (int) ((Router.DEFAULT_TIMEOUT + TICK_MILLIS - 1) / TICK_MILLIS) + 1;
+    private static final int WHEEL_MASK = (1 << (32 - Integer.numberOfLeadingZeros(TIMEOUT_TICKS))) - 1;
+    private static final Queue<SignalAttachment>[] wheel = newWheel();
+    private static volatile long currentTick = 0;
+
+    private static final MpscSingleThreadExecutor wheelExecutor = new MpscSingleThreadExecutor(runnable -> {
+        var thread = new FastThreadLocalThread(runnable, "signal-timeout-wheel");
+        thread.setDaemon(true);
+        thread.setUncaughtExceptionHandler((t, e) -> logger.error(t.toString(), e));
+        return thread;
+    });
+
+    static {
+        wheelExecutor.scheduleAtFixedRate(() -> expireTimeouts(), TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<SignalAttachment>[] newWheel() {
+        var buckets = (Queue<SignalAttachment>[]) new Queue<?>[WHEEL_MASK + 1];
+        for (var i = 0; i < buckets.length; i++) {
+            buckets[i] = PlatformDependent.newMpscQueue();
+        }
+        return buckets;
+    }
+
     public static void addSignalAttachment(SignalAttachment signalAttachment) {
         var signalId = signalAttachment.getSignalId();
         var hash = signalId & SIGNAL_MASK;
@@ -56,6 +96,16 @@ public class SignalBridge {
         signalAttachmentMap.put(signalId, signalAttachment);
     }
 
+    /**
+     * EN: Add the attachment and complete its responseFuture with null after Router.DEFAULT_TIMEOUT, used by the async request instead of CompletableFuture.completeOnTimeout()
+     * CN: 添加attachment，Router.DEFAULT_TIMEOUT之后使用null完成它的responseFuture，异步请求使用这个方法代替CompletableFuture.completeOnTimeout()
+     */
+    public static void addTimeoutSignalAttachment(SignalAttachment signalAttachment) {
+        addSignalAttachment(signalAttachment);
+        // 请求已经完成的话，超时的时候从map中找不到attachment，不会做任何处理
+        wheel[(int) ((currentTick + TIMEOUT_TICKS) & WHEEL_MASK)].offer(signalAttachment);
+    }
+
     public static SignalAttachment removeSignalAttachment(SignalAttachment signalAttachment) {
         return removeSignalAttachment(signalAttachment.getSignalId());
     }
@@ -65,25 +115,108 @@ public class SignalBridge {
 
         var attachment = signalAttachmentArray.get(hash);
         if (attachment != null && attachment.getSignalId() == signalId) {
-            // 使用性能更高的lazySet()，当我们想对一个原子变量进行修改，而且我们知道这个修改不需要立即对其他线程可见。
-            signalAttachmentArray.lazySet(hash, null);
-            return attachment;
+            // 使用compareAndSet而不是lazySet，超时线程和收到应答的线程可能同时移除，只能有一个成功
+            if (signalAttachmentArray.compareAndSet(hash, attachment, null)) {
+                return attachment;
+            }
+            return null;
         }
         return signalAttachmentMap.remove(signalId);
     }
 
-    public static void status() {
-        var count = 0;
+    private static void expireTimeouts() {
+        var bucket = wheel[(int) (currentTick & WHEEL_MASK)];
+        // 只处理当前已经在队列中的请求，避免生产者的速度比消费者快的时候一直不能结束
+        var size = bucket.size();
+        for (var i = 0; i < size; i++) {
+            var attachment = bucket.poll();
+            if (attachment == null) {
+                break;
+            }
+            try {
+                if (removeSignalAttachment(attachment) == attachment) {
+                    // 因此超时的情况，返回的是null
+                    attachment.getResponseFuture().complete(null);
+                }
+            } catch (Throwable t) {
+                logger.error("signal attachment [{}] timeout error", attachment.getSignalId(), t);
+            }
+        }
+        currentTick++;
+    }
+
+    public static void shutdown() {
+        ThreadUtils.shutdown(wheelExecutor);
+    }
+
+    /**
+     * 打印所有还没有完成的请求，返回各个容器中的数量和最早的请求已经等待的时间
+     */
+    public static Status status() {
+        var arrayCount = 0;
+        var oldestTimestamp = Long.MAX_VALUE;
         for (int i = 0; i < SIGNAL_MASK + 1; i++) {
             var value = signalAttachmentArray.get(i);
             if (value != null) {
-                logger.info("signalPacketArray has attachment [index:{}][count:{}][value:{}]", i, ++count, JsonUtils.object2String(value));
+                oldestTimestamp = Math.min(oldestTimestamp, value.getTimestamp());
+                logger.info("signalPacketArray has attachment [index:{}][count:{}][value:{}]", i, ++arrayCount, JsonUtils.object2String(value));
             }
         }
 
-        signalAttachmentMap.forEach((key, value) -> {
-            logger.info("signalAttachmentMap has attachment [key:{}][value:{}]", key, JsonUtils.object2String(value));
+        var mapCount = signalAttachmentMap.size();
+        // ConcurrentHashMapLongObject不支持values()，使用原始类型的遍历
+        var mapOldestTimestamp = new long[]{oldestTimestamp};
+        signalAttachmentMap.forEachPrimitive(it -> {
+            var value = it.value();
+            mapOldestTimestamp[0] = Math.min(mapOldestTimestamp[0], value.getTimestamp());
+            logger.info("signalAttachmentMap has attachment [key:{}][value:{}]", value.getSignalId(), JsonUtils.object2String(value));
         });
+        oldestTimestamp = mapOldestTimestamp[0];
+
+        var wheelCount = 0;
+        for (var bucket : wheel) {
+            wheelCount += bucket.size();
+        }
+
+        var oldestAge = oldestTimestamp == Long.MAX_VALUE ? 0 : TimeUtils.currentTimeMillis() - oldestTimestamp;
+        logger.info("SignalBridge pending requests [array:{}][map:{}][timing wheel:{}], the oldest pending request is [{}] ms old", arrayCount, mapCount, wheelCount, oldestAge);
+        return new Status(arrayCount, mapCount, wheelCount, oldestAge);
+    }
+
+    public static class Status {
+        private final int arrayCount;
+        private final int mapCount;
+        private final int wheelCount;
+        private final long oldestAge;
+
+        private Status(int arrayCount, int mapCount, int wheelCount, long oldestAge) {
+            this.arrayCount = arrayCount;
+            this.mapCount = mapCount;
+            this.wheelCount = wheelCount;
+            this.oldestAge = oldestAge;
+        }
+
+        public int getArrayCount() {
+            return arrayCount;
+        }
+
+        public int getMapCount() {
+            return mapCount;
+        }
+
+        /**
+         * 时间轮中还没有到期的请求，包括已经完成但是还没有被时间轮移除的请求
+         */
+        public int getWheelCount() {
+            return wheelCount;
+        }
+
+        /**
+         * 最早的请求已经等待的时间（毫秒），没有请求的时候为0
+         */
+        public long getOldestAge() {
+            return oldestAge;
+        }
     }
 
 }
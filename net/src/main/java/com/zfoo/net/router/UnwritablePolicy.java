@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.router;
+
+/**
+ * EN: What to do with the NORMAL and DROPPABLE packets when the channel is not writable, the CRITICAL packets are always written
+ * CN: channel不可写的时候怎么处理NORMAL和DROPPABLE的消息，CRITICAL的消息总是会写入
+ *
+ * @author godotg
+ */
+public enum UnwritablePolicy {
+
+    /**
+     * EN: Hold the NORMAL packets in order in the session and keep the latest packet of each coalesce key, write them when the channel is writable again,
+     * the other DROPPABLE packets are dropped, the default policy
+     * CN: NORMAL的消息在Session中按顺序排队，sendLatest的消息每个coalesceKey只保留最新的一个，channel重新可写之后再写入，
+     * 其它的DROPPABLE消息丢弃，默认的策略
+     */
+    WRITE,
+
+    /**
+     * EN: Drop the NORMAL and DROPPABLE packets
+     * CN: 丢弃NORMAL和DROPPABLE的消息
+     */
+    DROP,
+
+    /**
+     * EN: Drop the NORMAL packets, keep the latest DROPPABLE packet of each coalesce key and write them when the channel is writable again
+     * CN: 丢弃NORMAL的消息，DROPPABLE的消息每个coalesceKey只保留最新的一个，channel重新可写之后再写入
+     */
+    COALESCE,
+
+    /**
+     * EN: Close the slow session
+     * CN: 直接断开这个慢的session
+     */
+    DISCONNECT;
+
+}
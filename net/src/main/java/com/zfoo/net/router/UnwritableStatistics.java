@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.router;
+
+import com.zfoo.net.session.Session;
+import com.zfoo.scheduler.util.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EN: Counters of the packets sent to the unwritable channels, counted both globally and per session
+ * CN: 向不可写的channel发送消息的计数，全局和每个Session各有一份
+ *
+ * @author godotg
+ */
+public abstract class UnwritableStatistics {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnwritableStatistics.class);
+
+    private static final Counter total = new Counter();
+
+    // 上一次打印不可写的日志的时间，慢连接每个包都打印日志会刷屏
+    private static volatile long lastLogTime;
+
+    public static class Counter {
+        // 不可写依然写入的CRITICAL的消息
+        private final LongAdder written = new LongAdder();
+
+        // WRITE策略下排队等待channel重新可写的NORMAL消息
+        private final LongAdder held = new LongAdder();
+
+        private final LongAdder dropped = new LongAdder();
+
+        // 被合并的消息，同一个coalesceKey被新的消息覆盖或者等待写入
+        private final LongAdder coalesced = new LongAdder();
+
+        private final LongAdder disconnected = new LongAdder();
+
+        public long getWritten() {
+            return written.sum();
+        }
+
+        public long getHeld() {
+            return held.sum();
+        }
+
+        public long getDropped() {
+            return dropped.sum();
+        }
+
+        public long getCoalesced() {
+            return coalesced.sum();
+        }
+
+        public long getDisconnected() {
+            return disconnected.sum();
+        }
+    }
+
+    public static void incrementWritten(Session session) {
+        total.written.increment();
+        session.getUnwritableCounter().written.increment();
+    }
+
+    public static void incrementHeld(Session session) {
+        total.held.increment();
+        session.getUnwritableCounter().held.increment();
+    }
+
+    public static void incrementDropped(Session session) {
+        total.dropped.increment();
+        session.getUnwritableCounter().dropped.increment();
+    }
+
+    public static void incrementCoalesced(Session session) {
+        total.coalesced.increment();
+        session.getUnwritableCounter().coalesced.increment();
+    }
+
+    public static void incrementDisconnected(Session session) {
+        total.disconnected.increment();
+        session.getUnwritableCounter().disconnected.increment();
+    }
+
+    /**
+     * 不可写的日志每秒最多打印一次，返回true表示可以打印
+     */
+    public static boolean tryLog() {
+        var now = TimeUtils.now();
+        if (now - lastLogTime < TimeUtils.MILLIS_PER_SECOND) {
+            return false;
+        }
+        lastLogTime = now;
+        return true;
+    }
+
+    public static long written() {
+        return total.getWritten();
+    }
+
+    public static long held() {
+        return total.getHeld();
+    }
+
+    public static long dropped() {
+        return total.getDropped();
+    }
+
+    public static long coalesced() {
+        return total.getCoalesced();
+    }
+
+    public static long disconnected() {
+        return total.getDisconnected();
+    }
+
+    public static void status() {
+        logger.info("unwritable channel [written:{}] [held:{}] [dropped:{}] [coalesced:{}] [disconnected:{}]", written(), held(), dropped(), coalesced(), disconnected());
+    }
+
+}
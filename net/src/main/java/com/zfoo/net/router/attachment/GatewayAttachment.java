@@ -14,6 +14,7 @@ package com.zfoo.net.router.attachment;
 
 import com.zfoo.net.session.Session;
 import com.zfoo.protocol.anno.Protocol;
+import io.netty.util.Recycler;
 
 /**
  * @author godotg
@@ -21,6 +22,18 @@ import com.zfoo.protocol.anno.Protocol;
 @Protocol(id = 2)
 public class GatewayAttachment {
 
+    private static final Recycler<GatewayAttachment> RECYCLER = new Recycler<>() {
+        @Override
+        protected GatewayAttachment newObject(Handle<GatewayAttachment> handle) {
+            return new GatewayAttachment(handle);
+        }
+    };
+
+    /**
+     * 从对象池中获取的才不为空，GatewayRouteHandler转发到Provider之后会放回对象池
+     */
+    private final transient Recycler.Handle<GatewayAttachment> handle;
+
     /**
      * session id
      */
@@ -54,19 +67,52 @@ public class GatewayAttachment {
 
 
     public GatewayAttachment() {
+        this.handle = null;
     }
 
     public GatewayAttachment(Session session) {
+        this.handle = null;
         this.client = true;
         this.sid = session.getSid();
         this.uid = session.getUid();
     }
 
     public GatewayAttachment(long sid, long uid) {
+        this.handle = null;
         this.sid = sid;
         this.uid = uid;
     }
 
+    private GatewayAttachment(Recycler.Handle<GatewayAttachment> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池中获取，和new GatewayAttachment(session)一样
+     */
+    public static GatewayAttachment recycledValueOf(Session session) {
+        var attachment = RECYCLER.get();
+        attachment.client = true;
+        attachment.sid = session.getSid();
+        attachment.uid = session.getUid();
+        return attachment;
+    }
+
+    /**
+     * 放回对象池，调用之后不能再使用这个对象，不是从对象池中获取的对象调用这个方法没有任何作用
+     */
+    public void recycle() {
+        if (handle == null) {
+            return;
+        }
+        sid = 0;
+        uid = 0;
+        taskExecutorHash = 0;
+        client = false;
+        signalAttachment = null;
+        handle.recycle(this);
+    }
+
 
     /**
      * EN:Used to determine which thread the message is processed on
@@ -30,6 +30,9 @@ public class HttpAttachment {
 
     private transient HttpResponseStatus httpResponseStatus;
 
+    // 请求在连接上的序号，pipelining的响应按照这个序号的顺序返回
+    private transient long sequence;
+
     public static HttpAttachment valueOf(FullHttpRequest fullHttpRequest, HttpResponseStatus httpResponseStatus) {
         var attachment = new HttpAttachment();
         attachment.fullHttpRequest = fullHttpRequest;
@@ -77,4 +80,12 @@ public class HttpAttachment {
     public void setHttpResponseStatus(HttpResponseStatus httpResponseStatus) {
         this.httpResponseStatus = httpResponseStatus;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
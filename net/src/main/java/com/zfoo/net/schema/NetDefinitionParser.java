@@ -112,6 +112,48 @@ public class NetDefinitionParser implements BeanDefinitionParser {
 
         resolvePlaceholder("protocol-param", "protocolParam", builder, element, parserContext);
 
+        // 发送消息的flush策略
+        resolvePlaceholder("flush-strategy", "flushStrategy", builder, element, parserContext);
+        resolvePlaceholder("flush-batch-size", "flushBatchSize", builder, element, parserContext);
+
+        // TaskBus的线程模型
+        resolvePlaceholder("task-executor", "taskExecutor", builder, element, parserContext);
+        resolvePlaceholder("task-queue-capacity", "taskQueueCapacity", builder, element, parserContext);
+        resolvePlaceholder("task-back-pressure", "taskBackPressure", builder, element, parserContext);
+
+        // 入站消息的对象池
+        resolvePlaceholder("inbound-recycle", "inboundRecycle", builder, element, parserContext);
+        resolvePlaceholder("gateway-passthrough", "gatewayPassthrough", builder, element, parserContext);
+
+        // 压缩
+        resolvePlaceholder("compress-threshold", "compressThreshold", builder, element, parserContext);
+
+        // 大包分片
+        resolvePlaceholder("fragment-size", "fragmentSize", builder, element, parserContext);
+
+        // 发送缓冲区超过高水位之后的处理策略
+        resolvePlaceholder("unwritable-policy", "unwritablePolicy", builder, element, parserContext);
+
+        // 可靠udp
+        resolvePlaceholder("udp-reliable", "udpReliable", builder, element, parserContext);
+        resolvePlaceholder("udp-mtu", "udpMtu", builder, element, parserContext);
+        resolvePlaceholder("udp-window", "udpWindow", builder, element, parserContext);
+        resolvePlaceholder("udp-max-peers", "udpMaxPeers", builder, element, parserContext);
+
+        // 传输层
+        resolvePlaceholder("transport", "transport", builder, element, parserContext);
+
+        // websocket的压缩和合并发送
+        resolvePlaceholder("websocket-deflate-window", "websocketDeflateWindow", builder, element, parserContext);
+        resolvePlaceholder("websocket-coalesce-size", "websocketCoalesceSize", builder, element, parserContext);
+
+        // 流量和耗时的统计
+        resolvePlaceholder("statistics", "statistics", builder, element, parserContext);
+
+        // 空闲检测和心跳
+        resolvePlaceholder("idle-timeout", "idleTimeout", builder, element, parserContext);
+        resolvePlaceholder("heartbeat-interval", "heartbeatInterval", builder, element, parserContext);
+
         // -----注册中心解析-----
         // 上面解析的都是config标签的属性，这里开始解析registry元素
         var registryElement = DomUtils.getFirstChildElementByTagName(element, "registry");
@@ -27,8 +27,20 @@ public interface ISessionManager {
 
     int serverSessionSize();
 
+    /**
+     * EN: Find the server session of the logged in user without scanning all the sessions
+     * CN: 通过uid查找服务器的Session，不需要遍历所有的Session，没有登录或者已经断开返回null
+     */
+    Session getServerSessionByUid(long uid);
+
     void forEachServerSession(Consumer<Session> consumer);
 
+    /**
+     * EN: Visit the server sessions in chunks on multiple threads, returns after all the sessions are visited, the consumer must be thread safe
+     * CN: 分块在多个线程中并行的遍历服务器的Session，全部遍历完成之后才会返回，consumer需要是线程安全的，适用于大量Session的广播
+     */
+    void forEachServerSessionParallel(Consumer<Session> consumer);
+
     void addClientSession(Session session);
 
     void removeClientSession(Session session);
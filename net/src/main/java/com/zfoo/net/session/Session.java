@@ -13,10 +13,16 @@
 package com.zfoo.net.session;
 
 import com.zfoo.net.consumer.registry.Register;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.router.UnwritableStatistics;
 import com.zfoo.protocol.util.StringUtils;
 import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import org.springframework.lang.Nullable;
 
 import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -33,13 +39,57 @@ public class Session implements Closeable {
 
     private Channel channel;
 
+    /**
+     * EN: The number of packets written but not flushed yet, used by the EVENT_LOOP and BATCH flush strategy, only accessed by the event loop of the channel
+     * CN: 已经写入但是还没有flush的包的数量，EVENT_LOOP和BATCH的flush策略使用，只会在channel的event loop中读写
+     */
+    private int pendingFlushes = 0;
+
+    private final Runnable flushTask = () -> {
+        pendingFlushes = 0;
+        channel.flush();
+    };
+
+    /**
+     * EN: The latest DROPPABLE packet of each coalesce key waiting for the channel to be writable again, created lazily
+     * CN: 等待channel重新可写的DROPPABLE消息，每个coalesceKey只保留最新的一个，延迟创建
+     */
+    private volatile ConcurrentHashMap<Object, Object> coalescedPackets;
+
+    /**
+     * EN: The NORMAL packets held in order while the channel is not writable with the WRITE policy, so the CRITICAL packets are written ahead of them, created lazily
+     * CN: WRITE策略下channel不可写的时候按顺序排队的NORMAL消息，CRITICAL的消息不需要排在它们后面，channel重新可写之后在event loop中写入，延迟创建
+     */
+    private volatile ConcurrentLinkedQueue<EncodedPacketInfo> heldPackets;
+
+    /**
+     * EN: The counters of the packets sent to this session while the channel is not writable, created lazily
+     * CN: 这个Session的channel不可写的时候的消息计数，延迟创建
+     */
+    private volatile UnwritableStatistics.Counter unwritableCounter;
+
+    /**
+     * EN: The traffic of this session recorded by TcpCodecHandler when the statistics is enabled, only written by the event loop of the channel
+     * CN: 开启了statistics之后由TcpCodecHandler记录的这个Session的流量，只会在channel的event loop中写入，其它线程读取的是近似值
+     */
+    private long bytesIn;
+    private long packetsIn;
+    private long bytesOut;
+    private long packetsOut;
+
     // ------------------------------------------------------------------------------------------------------------
     // The following are extra parameters, add them yourself if necessary（下面都是额外参数，有需要的自己添加）
     /**
      * EN:The default user ID is an ID greater than 0, or equal 0 if there is no login, user extra parameters
      * CN:默认用户的id都是大于0的id，如果没有登录则等于0，用户额外参数
      */
-    private long uid = 0;
+    private volatile long uid = 0;
+
+    /**
+     * EN: Set when the session is added to the SessionManager as a server session, used to keep the uid index in sync
+     * CN: 作为服务器的Session加入SessionManager的时候设置，用来同步uid的索引
+     */
+    private volatile SessionManager sessionManager;
 
     /**
      * EN:Session extra parameters
@@ -82,6 +132,158 @@ public class Session implements Closeable {
         channel.close();
     }
 
+    /**
+     * EN: Write the message without flush, the first write of an event loop tick schedules one flush at the end of this tick.
+     * If batchSize greater than 0, the pending messages will be flushed as soon as there are batchSize messages.
+     * CN: 写入消息但是不立即flush，一次event loop中的第一次写入会在这次event loop的末尾安排一次flush。
+     * 如果batchSize大于0，积累了batchSize个消息后会立刻flush。
+     */
+    public void writeAndFlushLater(Object msg, int batchSize) {
+        var eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            writeLater(msg, batchSize);
+        } else {
+            // 写入和计数都要在event loop中执行，否则其它线程的写入任务可能排在已经安排的flush任务后面，计数了却没有被flush
+            eventLoop.execute(() -> writeLater(msg, batchSize));
+        }
+    }
+
+    private void writeLater(Object msg, int batchSize) {
+        channel.write(msg);
+        if (++pendingFlushes == 1) {
+            // 当前写入已经完成，这个flush任务一定在本次写入之后执行
+            channel.eventLoop().execute(flushTask);
+        } else if (batchSize > 0 && pendingFlushes >= batchSize) {
+            pendingFlushes = 0;
+            channel.flush();
+        }
+    }
+
+    public void flush() {
+        var eventLoop = channel.eventLoop();
+        if (eventLoop.inEventLoop()) {
+            flushTask.run();
+        } else {
+            eventLoop.execute(flushTask);
+        }
+    }
+
+    /**
+     * 保存coalesceKey最新的消息，返回true表示覆盖了一个还没有写入的旧消息
+     */
+    public boolean coalesce(Object coalesceKey, Object packet) {
+        var packets = coalescedPackets;
+        if (packets == null) {
+            synchronized (this) {
+                packets = coalescedPackets;
+                if (packets == null) {
+                    packets = new ConcurrentHashMap<>();
+                    coalescedPackets = packets;
+                }
+            }
+        }
+        return packets.put(coalesceKey, packet) != null;
+    }
+
+    /**
+     * channel可写的时候直接写入新的消息，旧的消息不再需要写入
+     */
+    public void removeCoalesced(Object coalesceKey) {
+        var packets = coalescedPackets;
+        if (packets != null) {
+            packets.remove(coalesceKey);
+        }
+    }
+
+    @Nullable
+    public ConcurrentHashMap<Object, Object> getCoalescedPackets() {
+        return coalescedPackets;
+    }
+
+    /**
+     * channel不可写的时候排队一个NORMAL消息
+     */
+    public void hold(EncodedPacketInfo packetInfo) {
+        var packets = heldPackets;
+        if (packets == null) {
+            synchronized (this) {
+                packets = heldPackets;
+                if (packets == null) {
+                    packets = new ConcurrentLinkedQueue<>();
+                    heldPackets = packets;
+                }
+            }
+        }
+        packets.offer(packetInfo);
+    }
+
+    public boolean hasHeldPackets() {
+        var packets = heldPackets;
+        return packets != null && !packets.isEmpty();
+    }
+
+    @Nullable
+    public ConcurrentLinkedQueue<EncodedPacketInfo> getHeldPackets() {
+        return heldPackets;
+    }
+
+    /**
+     * channel断开之后不会再可写，释放排队的消息和合并的消息
+     */
+    public void releaseHeldPackets() {
+        var packets = heldPackets;
+        if (packets != null) {
+            EncodedPacketInfo packetInfo;
+            while ((packetInfo = packets.poll()) != null) {
+                ReferenceCountUtil.release(packetInfo);
+            }
+        }
+        var coalesced = coalescedPackets;
+        if (coalesced != null) {
+            coalesced.clear();
+        }
+    }
+
+    public UnwritableStatistics.Counter getUnwritableCounter() {
+        var counter = unwritableCounter;
+        if (counter == null) {
+            synchronized (this) {
+                counter = unwritableCounter;
+                if (counter == null) {
+                    counter = new UnwritableStatistics.Counter();
+                    unwritableCounter = counter;
+                }
+            }
+        }
+        return counter;
+    }
+
+    public void recordIn(int bytes) {
+        bytesIn += bytes;
+        packetsIn++;
+    }
+
+    public void recordOut(int bytes) {
+        bytesOut += bytes;
+        packetsOut++;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getPacketsIn() {
+        return packetsIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getPacketsOut() {
+        return packetsOut;
+    }
+
     public long getSid() {
         return sid;
     }
@@ -95,7 +297,16 @@ public class Session implements Closeable {
     }
 
     public void setUid(long uid) {
+        var oldUid = this.uid;
         this.uid = uid;
+        var manager = sessionManager;
+        if (manager != null && oldUid != uid) {
+            manager.updateUid(this, oldUid);
+        }
+    }
+
+    void setSessionManager(SessionManager sessionManager) {
+        this.sessionManager = sessionManager;
     }
 
     public Register getConsumerRegister() {
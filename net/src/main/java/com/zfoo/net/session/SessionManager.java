@@ -13,11 +13,10 @@
 package com.zfoo.net.session;
 
 import com.zfoo.net.util.SessionUtils;
-import com.zfoo.protocol.collection.concurrent.ConcurrentHashMapLongObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 /**
@@ -27,6 +26,11 @@ public class SessionManager implements ISessionManager {
 
     private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
 
+    /**
+     * 并行遍历的时候每个任务大约遍历的Session数量，ConcurrentHashMap.forEachValue()按照这个数量拆分任务
+     */
+    private static final long PARALLELISM_THRESHOLD = 1024;
+
     /**
      * EN: As a server, the Session is connected by other clients
      * CN: 作为服务器，被别的客户端连接的Session
@@ -34,32 +38,60 @@ public class SessionManager implements ISessionManager {
      * 如：自己作为网关，那肯定有一大堆客户端连接，他们连接上来后，就会保存下来这些信息。
      * 因此：要全局消息广播，其实要用这个Map
      */
-    private final ConcurrentHashMapLongObject<Session> serverSessionMap = new ConcurrentHashMapLongObject<>(128);
+    private final ConcurrentHashMap<Long, Session> serverSessionMap = new ConcurrentHashMap<>(128);
+
+    /**
+     * EN: The secondary index of the server sessions by uid, kept in sync by Session.setUid(), only the logged in sessions (uid > 0) are indexed
+     * CN: 服务器Session按照uid的二级索引，由Session.setUid()同步更新，只有登录了的Session（uid大于0）才会被索引
+     */
+    private final ConcurrentHashMap<Long, Session> uidSessionMap = new ConcurrentHashMap<>(128);
 
     /**
      * EN: As a client, connect to another server and save Sessions
      * CN: 作为客户端，连接别的服务器上后，保存下来的Session
      * 如：自己配置了Consumer，说明自己作为消费者将要消费远程接口，就会创建一个TcpClient去连接Provider，那么连接上后，就会保存下来到这个Map中
      */
-    private final ConcurrentHashMapLongObject<Session> clientSessionMap = new ConcurrentHashMapLongObject<>(8);
+    private final ConcurrentHashMap<Long, Session> clientSessionMap = new ConcurrentHashMap<>(8);
 
     @Override
     public void addServerSession(Session session) {
-        if (serverSessionMap.containsKey(session.getSid())) {
+        if (serverSessionMap.putIfAbsent(session.getSid(), session) != null) {
             logger.error("Server received duplicate [session:{}]", SessionUtils.sessionInfo(session));
             return;
         }
-        serverSessionMap.put(session.getSid(), session);
+        session.setSessionManager(this);
+        updateUid(session, 0);
     }
 
     @Override
     public void removeServerSession(Session session) {
-        if (!serverSessionMap.containsKey(session.getSid())) {
+        if (!serverSessionMap.remove(session.getSid(), session)) {
             logger.error("[session:{}] does not exist", SessionUtils.sessionInfo(session));
             return;
         }
         try (session) {
-            serverSessionMap.remove(session.getSid());
+            session.setSessionManager(null);
+            var uid = session.getUid();
+            if (uid > 0) {
+                uidSessionMap.remove(uid, session);
+            }
+        }
+    }
+
+    /**
+     * Session.setUid()的时候调用，同一个uid重复登录的时候索引指向最新的Session
+     */
+    void updateUid(Session session, long oldUid) {
+        if (oldUid > 0) {
+            uidSessionMap.remove(oldUid, session);
+        }
+        var uid = session.getUid();
+        if (uid > 0) {
+            uidSessionMap.put(uid, session);
+            // 和removeServerSession()并发的时候，不能留下已经断开的Session的索引
+            if (serverSessionMap.get(session.getSid()) != session) {
+                uidSessionMap.remove(uid, session);
+            }
         }
     }
 
@@ -73,18 +105,27 @@ public class SessionManager implements ISessionManager {
         return serverSessionMap.size();
     }
 
+    @Override
+    public Session getServerSessionByUid(long uid) {
+        return uidSessionMap.get(uid);
+    }
+
     @Override
     public void forEachServerSession(Consumer<Session> consumer) {
-        serverSessionMap.forEachPrimitive(it -> consumer.accept(it.value()));
+        serverSessionMap.values().forEach(consumer);
+    }
+
+    @Override
+    public void forEachServerSessionParallel(Consumer<Session> consumer) {
+        serverSessionMap.forEachValue(PARALLELISM_THRESHOLD, consumer);
     }
 
     @Override
     public void addClientSession(Session session) {
-        if (clientSessionMap.containsKey(session.getSid())) {
+        if (clientSessionMap.putIfAbsent(session.getSid(), session) != null) {
             logger.error("client received duplicate [session:{}]", SessionUtils.sessionInfo(session));
             return;
         }
-        clientSessionMap.put(session.getSid(), session);
     }
 
     @Override
@@ -105,7 +146,7 @@ public class SessionManager implements ISessionManager {
 
     @Override
     public void forEachClientSession(Consumer<Session> consumer) {
-        clientSessionMap.forEachPrimitive(it -> consumer.accept(it.value()));
+        clientSessionMap.values().forEach(consumer);
     }
 
     @Override
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.task;
+
+/**
+ * EN: What to do when the task queue of a taskExecutorHash is full
+ * CN: 某个taskExecutorHash的任务队列满了之后的处理策略
+ *
+ * @author godotg
+ */
+public enum BackPressurePolicy {
+
+    /**
+     * EN: Block the caller until the queue has space, only for the business threads which submit tasks.
+     * The netty io threads never block, one full queue would stall all the channels of the event loop, the task is discarded instead.
+     * CN: 阻塞调用线程直到队列有空位，只适用于业务线程提交的任务。
+     * netty的io线程不会阻塞，否则一个满了的队列会让同一个event loop上的所有channel都停顿，而是和DISCARD一样丢弃任务
+     */
+    BLOCK,
+
+    /**
+     * EN: Discard the new task, count it and log a warning at most once per second, the default policy
+     * CN: 丢弃新的任务并计数，每秒最多打印一次警告，默认的策略
+     */
+    DISCARD,
+
+    /**
+     * EN: Throw a RejectedExecutionException to the caller
+     * CN: 向调用者抛出RejectedExecutionException异常
+     */
+    ABORT;
+
+}
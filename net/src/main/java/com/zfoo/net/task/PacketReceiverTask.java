@@ -14,22 +14,67 @@ package com.zfoo.net.task;
 
 import com.zfoo.net.NetContext;
 import com.zfoo.net.session.Session;
+import io.netty.util.Recycler;
 
 /**
  * @author godotg
  */
 public final class PacketReceiverTask implements Runnable {
 
+    private static final Recycler<PacketReceiverTask> RECYCLER = new Recycler<>() {
+        @Override
+        protected PacketReceiverTask newObject(Handle<PacketReceiverTask> handle) {
+            return new PacketReceiverTask(handle);
+        }
+    };
+
+    /**
+     * 从对象池中获取的才不为空
+     */
+    private final Recycler.Handle<PacketReceiverTask> handle;
+
     private Session session;
     private Object packet;
     private Object attachment;
 
     public PacketReceiverTask(Session session, Object packet, Object attachment) {
+        this.handle = null;
         this.session = session;
         this.packet = packet;
         this.attachment = attachment;
     }
 
+    private PacketReceiverTask(Recycler.Handle<PacketReceiverTask> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 开启了inbound-recycle则从对象池中获取，Router.atReceiver执行完之后放回对象池
+     */
+    public static PacketReceiverTask valueOf(Session session, Object packet, Object attachment) {
+        if (!NetContext.getConfigManager().getLocalConfig().isInboundRecycle()) {
+            return new PacketReceiverTask(session, packet, attachment);
+        }
+        var task = RECYCLER.get();
+        task.session = session;
+        task.packet = packet;
+        task.attachment = attachment;
+        return task;
+    }
+
+    /**
+     * 放回对象池，调用之后不能再使用这个对象，不是从对象池中获取的对象调用这个方法没有任何作用
+     */
+    public void recycle() {
+        if (handle == null) {
+            return;
+        }
+        session = null;
+        packet = null;
+        attachment = null;
+        handle.recycle(this);
+    }
+
     @Override
     public void run() {
         NetContext.getRouter().atReceiver(this);
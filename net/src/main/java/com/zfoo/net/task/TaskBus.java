@@ -17,6 +17,7 @@ import com.zfoo.event.manager.EventBus;
 import com.zfoo.net.NetContext;
 import com.zfoo.protocol.collection.concurrent.CopyOnWriteHashMapLongObject;
 import com.zfoo.protocol.util.AssertionUtils;
+import com.zfoo.protocol.util.MpscSingleThreadExecutor;
 import com.zfoo.protocol.util.RandomUtils;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.protocol.util.ThreadUtils;
@@ -24,10 +25,10 @@ import com.zfoo.scheduler.manager.SchedulerBus;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -52,17 +53,29 @@ public final class TaskBus {
      */
     private static final ExecutorService[] executors;
 
+    /**
+     * EN: Not null if the task-executor is WORK_STEALING, then the executors is empty
+     * CN: task-executor配置为WORK_STEALING时不为空，此时executors为空数组
+     */
+    private static final WorkStealingTaskExecutor stealingExecutor;
+
     static {
         var localConfig = NetContext.getConfigManager().getLocalConfig();
         var providerConfig = localConfig.getProvider();
 
         EXECUTOR_SIZE = (providerConfig == null || StringUtils.isBlank(providerConfig.getThread())) ? (Runtime.getRuntime().availableProcessors() + 1) : Integer.parseInt(providerConfig.getThread());
 
-        executors = new ExecutorService[EXECUTOR_SIZE];
-        for (int i = 0; i < executors.length; i++) {
-            var namedThreadFactory = new TaskThreadFactory(i);
-            var executor = Executors.newSingleThreadExecutor(namedThreadFactory);
-            executors[i] = executor;
+        if (localConfig.getTaskExecutor() == TaskExecutorStrategy.WORK_STEALING) {
+            executors = new ExecutorService[0];
+            stealingExecutor = new WorkStealingTaskExecutor(EXECUTOR_SIZE, localConfig.getTaskQueueCapacity(), localConfig.getTaskBackPressure());
+        } else {
+            stealingExecutor = null;
+            executors = new ExecutorService[EXECUTOR_SIZE];
+            for (int i = 0; i < executors.length; i++) {
+                var namedThreadFactory = new TaskThreadFactory(i);
+                var executor = new MpscSingleThreadExecutor(namedThreadFactory);
+                executors[i] = executor;
+            }
         }
     }
 
@@ -110,8 +123,20 @@ public final class TaskBus {
         return hash;
     }
 
+    /**
+     * 和calTaskExecutorHash(Long.valueOf(argument))的结果相同
+     */
+    public static int calTaskExecutorHash(long argument) {
+        return (int) argument;
+    }
+
     public static void execute(int taskExecutorHash, Runnable runnable) {
-        executors[calTaskExecutorIndex(taskExecutorHash)].execute(ThreadUtils.safeRunnable(runnable));
+        if (stealingExecutor != null) {
+            stealingExecutor.execute(taskExecutorHash, runnable);
+            return;
+        }
+        // MpscSingleThreadExecutor会捕获任务的异常，不需要再用ThreadUtils.safeRunnable()包装一层
+        executors[calTaskExecutorIndex(taskExecutorHash)].execute(runnable);
     }
 
     public static void execute(Object argument, Runnable runnable) {
@@ -126,6 +151,18 @@ public final class TaskBus {
             return taskExecutor;
         }
 
+        if (stealingExecutor != null) {
+            var stealingQueue = stealingExecutor.currentThreadExecutor();
+            if (stealingQueue != null) {
+                return stealingQueue;
+            }
+        }
+
+        var virtualExecutor = VirtualTaskBus.currentThreadExecutor();
+        if (virtualExecutor != null) {
+            return virtualExecutor;
+        }
+
         var eventExecutor = EventBus.threadExecutor(threadId);
         if (eventExecutor != null) {
             return eventExecutor;
@@ -136,7 +173,31 @@ public final class TaskBus {
             return schedulerExecutor;
         }
 
+        if (stealingExecutor != null) {
+            return stealingExecutor;
+        }
         return executors[calTaskExecutorIndex(RandomUtils.randomInt())];
     }
 
+    @Nullable
+    public static WorkStealingTaskExecutor stealingExecutor() {
+        return stealingExecutor;
+    }
+
+    /**
+     * EN: Log the queue depth of every task thread, and the latency and hot keys if the task-executor is WORK_STEALING
+     * CN: 打印每个task线程的排队任务数量，WORK_STEALING模型下还会打印任务的延迟和热点key
+     */
+    public static void status() {
+        if (stealingExecutor != null) {
+            stealingExecutor.status();
+            return;
+        }
+        for (var i = 0; i < executors.length; i++) {
+            if (executors[i] instanceof MpscSingleThreadExecutor) {
+                logger.info("task-p{} [pending:{}]", i + 1, ((MpscSingleThreadExecutor) executors[i]).pendingTasks());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.task;
+
+/**
+ * EN: How TaskBus executes the tasks of the same taskExecutorHash
+ * CN: TaskBus执行任务的线程模型
+ *
+ * @author godotg
+ */
+public enum TaskExecutorStrategy {
+
+    /**
+     * EN: A fixed array of single thread executors, the taskExecutorHash decides the thread, the default strategy
+     * CN: 固定数量的单线程池，taskExecutorHash决定在哪个线程执行，默认的策略
+     */
+    SINGLE_THREAD,
+
+    /**
+     * EN: Every taskExecutorHash has its own bounded queue, idle threads steal the whole queue from the busy threads
+     * CN: 每个taskExecutorHash都有自己的有界队列，空闲的线程会从繁忙的线程中窃取整个队列去执行
+     */
+    WORK_STEALING;
+
+}
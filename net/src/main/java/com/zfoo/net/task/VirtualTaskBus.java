@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.task;
+
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.protocol.util.ThreadUtils;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EN: Execute the tasks in virtual threads, the tasks of the same taskExecutorHash are still executed serially in a lightweight mailbox,
+ * so a blocking task only blocks the tasks of the same taskExecutorHash, instead of all the tasks hashed to the same TaskBus thread.
+ * If the jdk does not support virtual threads, a bounded pool of FALLBACK_THREAD_NUM platform threads is used instead,
+ * at most FALLBACK_THREAD_NUM keys can block at the same time, the other mailboxes wait in the queue of the pool.
+ * CN: 在虚拟线程中执行任务，相同taskExecutorHash的任务通过一个轻量的邮箱依然串行执行（Actor模型），
+ * 所以一个阻塞的任务只会阻塞相同taskExecutorHash的任务，而不会阻塞TaskBus同一个线程上的所有任务。
+ * 如果jdk不支持虚拟线程，则使用FALLBACK_THREAD_NUM个平台线程的有界线程池代替，避免每个阻塞的key都创建一个平台线程，
+ * 最多同时有FALLBACK_THREAD_NUM个key阻塞，其它的邮箱在线程池的队列中等待。
+ * <p>
+ * receiver的attachment参数就是收到的attachment，回复的时候可以显式的调用send(session, packet, attachment)；
+ * send(session, packet)使用的attachment由邮箱携带，而不是Router的FastThreadLocal，
+ * 虚拟线程中FastThreadLocal会退化为jdk的ThreadLocal，并且每个虚拟线程都要创建一个InternalThreadLocalMap。
+ *
+ * @author godotg
+ */
+public final class VirtualTaskBus {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualTaskBus.class);
+
+    /**
+     * jdk不支持虚拟线程的时候，平台线程池的大小
+     */
+    public static final int FALLBACK_THREAD_NUM = Runtime.getRuntime().availableProcessors() * 4;
+
+    private static final ExecutorService executor = newVirtualThreadExecutor();
+
+    // taskExecutorHash -> mailbox，邮箱中的任务执行完后会被移除
+    private static final ConcurrentHashMap<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    // 当前线程正在执行的邮箱，异步请求的回调需要回到同一个邮箱执行
+    private static final ThreadLocal<Mailbox> currentMailbox = new ThreadLocal<>();
+
+    private static class Mailbox implements Runnable, Executor {
+        private final int taskExecutorHash;
+        // 被邮箱的锁保护
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running = false;
+        // 已经从mailboxes中移除，不能再添加任务
+        private boolean dead = false;
+        // 正在执行的任务的attachment，只在执行邮箱的线程中访问
+        private Object attachment;
+
+        private Mailbox(int taskExecutorHash) {
+            this.taskExecutorHash = taskExecutorHash;
+        }
+
+        @Override
+        public void run() {
+            currentMailbox.set(this);
+            try {
+                while (true) {
+                    Runnable task;
+                    synchronized (this) {
+                        task = tasks.poll();
+                        if (task == null) {
+                            running = false;
+                            dead = true;
+                            mailboxes.remove(taskExecutorHash, this);
+                            return;
+                        }
+                    }
+                    task.run();
+                    attachment = null;
+                }
+            } finally {
+                currentMailbox.remove();
+            }
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            VirtualTaskBus.execute(taskExecutorHash, runnable);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // jdk21以上才有虚拟线程，使用反射保持对jdk17的兼容
+            var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            var virtualExecutor = (ExecutorService) method.invoke(null);
+            logger.info("VirtualTaskBus uses virtual thread executor");
+            return virtualExecutor;
+        } catch (Throwable t) {
+            logger.warn("jdk does not support virtual thread, VirtualTaskBus uses a pool of [{}] platform threads instead", FALLBACK_THREAD_NUM);
+            var threadNumber = new AtomicInteger(1);
+            // 邮箱的数量不会超过key的数量，所以队列不需要限制大小
+            var pool = new ThreadPoolExecutor(FALLBACK_THREAD_NUM, FALLBACK_THREAD_NUM, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                var thread = new FastThreadLocalThread(runnable, StringUtils.format("virtual-task-t{}", threadNumber.getAndIncrement()));
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler((th, e) -> logger.error(th.toString(), e));
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+
+    public static void execute(int taskExecutorHash, Runnable runnable) {
+        execute(executor, taskExecutorHash, runnable);
+    }
+
+    static void execute(Executor executor, int taskExecutorHash, Runnable runnable) {
+        var safeRunnable = ThreadUtils.safeRunnable(runnable);
+        while (true) {
+            var mailbox = mailboxes.computeIfAbsent(taskExecutorHash, Mailbox::new);
+            synchronized (mailbox) {
+                // 邮箱刚好执行完任务被移除了，重新创建一个邮箱
+                if (mailbox.dead) {
+                    continue;
+                }
+                mailbox.tasks.add(safeRunnable);
+                if (mailbox.running) {
+                    return;
+                }
+                mailbox.running = true;
+            }
+            try {
+                executor.execute(mailbox);
+            } catch (RejectedExecutionException e) {
+                // 线程池已经关闭，丢弃邮箱，否则这个key后面的任务都只会进入队列而不会被执行
+                int dropped;
+                synchronized (mailbox) {
+                    dropped = mailbox.tasks.size();
+                    mailbox.tasks.clear();
+                    mailbox.running = false;
+                    mailbox.dead = true;
+                    mailboxes.remove(taskExecutorHash, mailbox);
+                }
+                logger.error("VirtualTaskBus rejected the mailbox [taskExecutorHash:{}] and dropped [{}] tasks", taskExecutorHash, dropped);
+                throw e;
+            }
+            return;
+        }
+    }
+
+    /**
+     * 如果当前线程是VirtualTaskBus的线程，返回当前邮箱的Executor，否则返回null
+     */
+    @Nullable
+    public static Executor currentThreadExecutor() {
+        return currentMailbox.get();
+    }
+
+    /**
+     * 当前线程是否正在执行VirtualTaskBus的邮箱
+     */
+    public static boolean isMailboxThread() {
+        return currentMailbox.get() != null;
+    }
+
+    /**
+     * 当前邮箱正在执行的任务的attachment，不在邮箱中执行的时候返回null
+     */
+    @Nullable
+    public static Object currentAttachment() {
+        var mailbox = currentMailbox.get();
+        return mailbox == null ? null : mailbox.attachment;
+    }
+
+    /**
+     * 设置当前邮箱正在执行的任务的attachment，任务执行完之后自动清除，不在邮箱中执行的时候没有任何作用
+     */
+    public static void setCurrentAttachment(@Nullable Object attachment) {
+        var mailbox = currentMailbox.get();
+        if (mailbox != null) {
+            mailbox.attachment = attachment;
+        }
+    }
+
+    public static void shutdown() {
+        ThreadUtils.shutdown(executor);
+    }
+
+}
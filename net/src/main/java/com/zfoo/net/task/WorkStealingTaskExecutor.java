@@ -0,0 +1,638 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.task;
+
+import com.zfoo.protocol.util.RandomUtils;
+import com.zfoo.protocol.util.StringUtils;
+import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import io.netty.util.internal.ThreadExecutorMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EN: Every taskExecutorHash has its own bounded task queue, the tasks of the same taskExecutorHash are still executed serially.
+ * A key queue is executed by the worker of Math.abs(taskExecutorHash) % size as the SINGLE_THREAD strategy does,
+ * after DRAIN_BATCH tasks it goes back to the tail of the ready queue, and the idle workers steal the whole key queue from the busy workers,
+ * so a hot taskExecutorHash (a hot guild, a boss fight) no longer adds latency to all the other taskExecutorHash sharing the same thread.
+ * CN: 每个taskExecutorHash都有自己的有界任务队列，相同taskExecutorHash的任务依然串行执行。
+ * 任务队列默认由Math.abs(taskExecutorHash) % size的线程执行，和SINGLE_THREAD策略一样，每执行DRAIN_BATCH个任务就重新回到就绪队列的末尾，
+ * 空闲的线程会从繁忙的线程中窃取整个任务队列去执行，所以一个热点的taskExecutorHash（热门的公会，boss战）不会再增加同一个线程上其它任务的延迟。
+ *
+ * @author godotg
+ */
+public final class WorkStealingTaskExecutor extends AbstractExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkStealingTaskExecutor.class);
+
+    // 一个任务队列连续执行的最大任务数量，超过之后让出线程给其它的任务队列
+    private static final int DRAIN_BATCH = 64;
+
+    // 空闲线程的最大休眠时间，唤醒丢失的时候也能及时窃取其它线程的任务
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // 每个线程记录的热点key的数量
+    private static final int HOT_KEY_CAPACITY = 32;
+
+    // 热点key记录满了之后，每HOT_KEY_SAMPLE_INTERVAL次未命中才替换一次最小的key
+    private static final int HOT_KEY_SAMPLE_INTERVAL = 16;
+
+    private final Worker[] workers;
+
+    // 每个taskExecutorHash的最大排队任务数量
+    private final int queueCapacity;
+
+    private final BackPressurePolicy backPressurePolicy;
+
+    // taskExecutorHash -> key queue，队列中的任务执行完后会被移除
+    private final ConcurrentHashMap<Integer, KeyQueue> keyQueues = new ConcurrentHashMap<>();
+
+    private final LongAdder discardedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder blockedTasks = new LongAdder();
+
+    private volatile long lastDiscardLogTime = 0;
+
+    private volatile boolean shutdown = false;
+    // shutdownNow()之后不再执行剩余的任务
+    private volatile boolean stopped = false;
+
+    private static class TaskNode {
+        private final Runnable runnable;
+        private final long enqueueNanos;
+
+        private TaskNode(Runnable runnable, long enqueueNanos) {
+            this.runnable = runnable;
+            this.enqueueNanos = enqueueNanos;
+        }
+    }
+
+    private class KeyQueue implements Executor {
+        private final int taskExecutorHash;
+        // 被队列的锁保护
+        private final ArrayDeque<TaskNode> tasks = new ArrayDeque<>();
+        // 已经在某个线程的就绪队列中或者正在被执行
+        private boolean scheduled = false;
+        // 已经从keyQueues中移除，不能再添加任务
+        private boolean dead = false;
+        // 因为队列已满而阻塞等待的生产者数量
+        private int blocked = 0;
+
+        private KeyQueue(int taskExecutorHash) {
+            this.taskExecutorHash = taskExecutorHash;
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            WorkStealingTaskExecutor.this.execute(taskExecutorHash, runnable);
+        }
+    }
+
+    private class Worker extends FastThreadLocalThread {
+        private final int index;
+        private final ConcurrentLinkedDeque<KeyQueue> readyQueues = new ConcurrentLinkedDeque<>();
+        private volatile boolean idle = false;
+        // 当前线程正在执行的任务队列，异步请求的回调需要回到同一个任务队列执行
+        private KeyQueue currentQueue;
+
+        // 提交给当前线程的任务数量和当前线程取出的任务数量，任务可能被其它线程窃取，只有所有线程的总和才是排队中的任务数量
+        private final LongAdder submittedTasks = new LongAdder();
+        // 只有当前线程会修改
+        private final AtomicLong executedTasks = new AtomicLong(0);
+
+        // 统计数据，只有当前线程会修改，被Worker的锁保护
+        private long taskCount;
+        private long stealCount;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+        private long totalExecuteNanos;
+        private long maxExecuteNanos;
+        private final IntObjectHashMap<HotKey> hotKeys = new IntObjectHashMap<>(HOT_KEY_CAPACITY * 2);
+        private int hotKeyMisses;
+
+        private Worker(int index) {
+            super(StringUtils.format("task-p{}-t1", index + 1));
+            this.index = index;
+            setDaemon(false);
+            setPriority(Thread.NORM_PRIORITY);
+            setUncaughtExceptionHandler((t, e) -> logger.error(t.toString(), e));
+        }
+
+        private WorkStealingTaskExecutor owner() {
+            return WorkStealingTaskExecutor.this;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                var queue = nextQueue();
+                if (queue == null) {
+                    if (shutdown && pendingTasks() <= 0) {
+                        return;
+                    }
+                    // 先设置idle再检查一次，和signalWorker配合避免丢失唤醒
+                    idle = true;
+                    queue = nextQueue();
+                    if (queue == null) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        idle = false;
+                        continue;
+                    }
+                    idle = false;
+                }
+                drain(queue);
+            }
+        }
+
+        private KeyQueue nextQueue() {
+            var queue = readyQueues.pollFirst();
+            if (queue != null) {
+                return queue;
+            }
+            // 从其它线程就绪队列的末尾窃取整个任务队列，和队列的拥有者从头部取任务互不干扰
+            for (var i = 1; i < workers.length; i++) {
+                var victim = workers[(index + i) % workers.length];
+                queue = victim.readyQueues.pollLast();
+                if (queue != null) {
+                    synchronized (this) {
+                        stealCount++;
+                    }
+                    return queue;
+                }
+            }
+            return null;
+        }
+
+        private void drain(KeyQueue queue) {
+            var count = 0;
+            var totalWait = 0L;
+            var maxWait = 0L;
+            var maxExecute = 0L;
+            var startTime = System.nanoTime();
+            var now = startTime;
+            var empty = false;
+            currentQueue = queue;
+            try {
+                while (count < DRAIN_BATCH) {
+                    TaskNode node;
+                    synchronized (queue) {
+                        node = queue.tasks.poll();
+                        if (node == null) {
+                            queue.scheduled = false;
+                            queue.dead = true;
+                            keyQueues.remove(queue.taskExecutorHash, queue);
+                            empty = true;
+                            break;
+                        }
+                        if (queue.blocked > 0) {
+                            queue.notifyAll();
+                        }
+                    }
+                    // 只有当前线程写入，不需要CAS
+                    executedTasks.lazySet(executedTasks.get() + 1);
+
+                    var wait = now - node.enqueueNanos;
+                    totalWait += wait;
+                    maxWait = Math.max(maxWait, wait);
+                    try {
+                        node.runnable.run();
+                    } catch (Exception e) {
+                        logger.error("unknown exception", e);
+                    } catch (Throwable t) {
+                        logger.error("unknown error", t);
+                    }
+                    var executeStartTime = now;
+                    now = System.nanoTime();
+                    maxExecute = Math.max(maxExecute, now - executeStartTime);
+                    count++;
+                }
+            } finally {
+                currentQueue = null;
+            }
+
+            if (count > 0) {
+                record(queue.taskExecutorHash, count, totalWait, maxWait, now - startTime, maxExecute);
+            }
+
+            // 执行了DRAIN_BATCH个任务后还有任务，回到就绪队列的末尾，让其它任务队列先执行，同时也给空闲线程窃取的机会
+            if (!empty) {
+                readyQueues.offerLast(queue);
+                signalIdleWorker();
+            }
+        }
+
+        private synchronized void record(int taskExecutorHash, int count, long totalWait, long maxWait, long totalExecute, long maxExecute) {
+            taskCount += count;
+            totalWaitNanos += totalWait;
+            maxWaitNanos = Math.max(maxWaitNanos, maxWait);
+            totalExecuteNanos += totalExecute;
+            maxExecuteNanos = Math.max(maxExecuteNanos, maxExecute);
+
+            // Space-Saving算法，使用固定数量的计数器统计执行时间最长的key，被替换的key的计数会保留到新的key上
+            var hotKey = hotKeys.get(taskExecutorHash);
+            if (hotKey == null) {
+                if (hotKeys.size() < HOT_KEY_CAPACITY) {
+                    hotKey = new HotKey(taskExecutorHash);
+                } else {
+                    // 记录满了之后采样替换，O(capacity)的最小值查找均摊到每次drain上，没有被采样的冷key的执行时间会被忽略
+                    if (++hotKeyMisses < HOT_KEY_SAMPLE_INTERVAL) {
+                        return;
+                    }
+                    hotKeyMisses = 0;
+                    HotKey min = null;
+                    for (var key : hotKeys.values()) {
+                        if (min == null || key.executeNanos < min.executeNanos) {
+                            min = key;
+                        }
+                    }
+                    // 复用被替换的key，计数保留
+                    hotKeys.remove(min.taskExecutorHash);
+                    min.taskExecutorHash = taskExecutorHash;
+                    hotKey = min;
+                }
+                hotKeys.put(taskExecutorHash, hotKey);
+            }
+            hotKey.taskCount += count;
+            hotKey.executeNanos += totalExecute;
+        }
+
+        private synchronized WorkerStatistics statistics() {
+            var readyTasks = 0;
+            var readyQueueSize = 0;
+            for (var queue : readyQueues) {
+                readyQueueSize++;
+                synchronized (queue) {
+                    readyTasks += queue.tasks.size();
+                }
+            }
+            return new WorkerStatistics(getName(), readyQueueSize, readyTasks, taskCount, stealCount, totalWaitNanos, maxWaitNanos, totalExecuteNanos, maxExecuteNanos);
+        }
+
+        private synchronized void resetStatistics() {
+            taskCount = 0;
+            stealCount = 0;
+            totalWaitNanos = 0;
+            maxWaitNanos = 0;
+            totalExecuteNanos = 0;
+            maxExecuteNanos = 0;
+            hotKeys.clear();
+            hotKeyMisses = 0;
+        }
+    }
+
+    public static class WorkerStatistics {
+        private final String threadName;
+        private final int readyQueueSize;
+        private final int readyTaskSize;
+        private final long taskCount;
+        private final long stealCount;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+        private final long totalExecuteNanos;
+        private final long maxExecuteNanos;
+
+        public WorkerStatistics(String threadName, int readyQueueSize, int readyTaskSize, long taskCount, long stealCount
+                , long totalWaitNanos, long maxWaitNanos, long totalExecuteNanos, long maxExecuteNanos) {
+            this.threadName = threadName;
+            this.readyQueueSize = readyQueueSize;
+            this.readyTaskSize = readyTaskSize;
+            this.taskCount = taskCount;
+            this.stealCount = stealCount;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.totalExecuteNanos = totalExecuteNanos;
+            this.maxExecuteNanos = maxExecuteNanos;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+
+        public int getReadyQueueSize() {
+            return readyQueueSize;
+        }
+
+        public int getReadyTaskSize() {
+            return readyTaskSize;
+        }
+
+        public long getTaskCount() {
+            return taskCount;
+        }
+
+        public long getStealCount() {
+            return stealCount;
+        }
+
+        public long getAverageWaitNanos() {
+            return taskCount == 0 ? 0 : totalWaitNanos / taskCount;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        public long getAverageExecuteNanos() {
+            return taskCount == 0 ? 0 : totalExecuteNanos / taskCount;
+        }
+
+        public long getMaxExecuteNanos() {
+            return maxExecuteNanos;
+        }
+    }
+
+    public static class HotKey {
+        private int taskExecutorHash;
+        private long taskCount;
+        private long executeNanos;
+
+        public HotKey(int taskExecutorHash) {
+            this.taskExecutorHash = taskExecutorHash;
+        }
+
+        public int getTaskExecutorHash() {
+            return taskExecutorHash;
+        }
+
+        public long getTaskCount() {
+            return taskCount;
+        }
+
+        public long getExecuteNanos() {
+            return executeNanos;
+        }
+    }
+
+
+    public WorkStealingTaskExecutor(int workerSize, int queueCapacity, BackPressurePolicy backPressurePolicy) {
+        this.queueCapacity = queueCapacity <= 0 ? Integer.MAX_VALUE : queueCapacity;
+        this.backPressurePolicy = backPressurePolicy == null ? BackPressurePolicy.DISCARD : backPressurePolicy;
+        this.workers = new Worker[workerSize];
+        for (var i = 0; i < workerSize; i++) {
+            workers[i] = new Worker(i);
+        }
+        for (var worker : workers) {
+            worker.start();
+        }
+    }
+
+    public void execute(int taskExecutorHash, Runnable runnable) {
+        if (shutdown) {
+            throw new RejectedExecutionException(StringUtils.format("WorkStealingTaskExecutor has been shutdown, task [taskExecutorHash:{}] is rejected", taskExecutorHash));
+        }
+        var node = new TaskNode(runnable, System.nanoTime());
+        var worker = workers[Math.abs(taskExecutorHash % workers.length)];
+        while (true) {
+            var queue = keyQueues.computeIfAbsent(taskExecutorHash, it -> new KeyQueue(it));
+            synchronized (queue) {
+                // 队列刚好执行完任务被移除了，重新创建一个队列
+                if (queue.dead) {
+                    continue;
+                }
+                if (queue.tasks.size() >= queueCapacity) {
+                    if (!backPressure(queue)) {
+                        return;
+                    }
+                    // 阻塞等待的时候队列的任务可能已经执行完了
+                    if (queue.dead) {
+                        continue;
+                    }
+                }
+                queue.tasks.add(node);
+                worker.submittedTasks.increment();
+                if (queue.scheduled) {
+                    return;
+                }
+                queue.scheduled = true;
+            }
+            worker.readyQueues.offerLast(queue);
+            if (worker.idle) {
+                LockSupport.unpark(worker);
+            } else {
+                signalIdleWorker();
+            }
+            return;
+        }
+    }
+
+    /**
+     * 队列已满时的处理，在队列的锁中执行，返回true表示继续添加任务
+     */
+    private boolean backPressure(KeyQueue queue) {
+        switch (backPressurePolicy) {
+            case DISCARD -> {
+                return discard(queue);
+            }
+            case ABORT -> {
+                rejectedTasks.increment();
+                throw new RejectedExecutionException(StringUtils.format("task queue [taskExecutorHash:{}] is full [capacity:{}]", queue.taskExecutorHash, queueCapacity));
+            }
+            default -> {
+                // 当前线程就是执行任务的线程，阻塞会导致死锁，超出容量也要放入队列
+                if (currentWorker() != null) {
+                    return true;
+                }
+                // netty的io线程不能阻塞，否则同一个event loop上的所有channel都会停顿，丢弃任务
+                if (ThreadExecutorMap.currentExecutor() != null) {
+                    return discard(queue);
+                }
+                blockedTasks.increment();
+                queue.blocked++;
+                try {
+                    while (queue.tasks.size() >= queueCapacity && !queue.dead && !shutdown) {
+                        queue.wait(TimeUtils.MILLIS_PER_SECOND);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    queue.blocked--;
+                }
+                return true;
+            }
+        }
+    }
+
+    private boolean discard(KeyQueue queue) {
+        discardedTasks.increment();
+        var now = TimeUtils.now();
+        if (now - lastDiscardLogTime >= TimeUtils.MILLIS_PER_SECOND) {
+            lastDiscardLogTime = now;
+            logger.warn("task queue [taskExecutorHash:{}] is full [capacity:{}], discard the task [discarded:{}]", queue.taskExecutorHash, queueCapacity, discardedTasks.sum());
+        }
+        return false;
+    }
+
+    private void signalIdleWorker() {
+        for (var worker : workers) {
+            if (worker.idle) {
+                LockSupport.unpark(worker);
+                return;
+            }
+        }
+    }
+
+    @Nullable
+    private Worker currentWorker() {
+        var thread = Thread.currentThread();
+        if (thread instanceof Worker && ((Worker) thread).owner() == this) {
+            return (Worker) thread;
+        }
+        return null;
+    }
+
+    /**
+     * 如果当前线程正在执行任务，返回当前任务队列的Executor，否则返回null
+     */
+    @Nullable
+    public Executor currentThreadExecutor() {
+        var worker = currentWorker();
+        return worker == null ? null : worker.currentQueue;
+    }
+
+    public long pendingTasks() {
+        // 先读取取出的数量再读取提交的数量，任务一定是先提交再被取出，所以结果不会是负数
+        var executed = 0L;
+        for (var worker : workers) {
+            executed += worker.executedTasks.get();
+        }
+        var submitted = 0L;
+        for (var worker : workers) {
+            submitted += worker.submittedTasks.sum();
+        }
+        return submitted - executed;
+    }
+
+    public long discardedTasks() {
+        return discardedTasks.sum();
+    }
+
+    public List<WorkerStatistics> workerStatistics() {
+        var list = new ArrayList<WorkerStatistics>(workers.length);
+        for (var worker : workers) {
+            list.add(worker.statistics());
+        }
+        return list;
+    }
+
+    /**
+     * 执行时间最长的n个taskExecutorHash，从上一次resetStatistics()开始统计
+     */
+    public List<HotKey> hotKeys(int n) {
+        var map = new HashMap<Integer, HotKey>();
+        for (var worker : workers) {
+            synchronized (worker) {
+                // 一个key可能被多个线程执行过，合并统计数据
+                for (var hotKey : worker.hotKeys.values()) {
+                    var merged = map.computeIfAbsent(hotKey.taskExecutorHash, it -> new HotKey(it));
+                    merged.taskCount += hotKey.taskCount;
+                    merged.executeNanos += hotKey.executeNanos;
+                }
+            }
+        }
+        return map.values().stream()
+                .sorted(Comparator.comparingLong(HotKey::getExecuteNanos).reversed())
+                .limit(n)
+                .toList();
+    }
+
+    public void resetStatistics() {
+        for (var worker : workers) {
+            worker.resetStatistics();
+        }
+    }
+
+    public void status() {
+        logger.info("WorkStealingTaskExecutor [pending:{}][keyQueues:{}][blocked:{}][discarded:{}][rejected:{}]"
+                , pendingTasks(), keyQueues.size(), blockedTasks.sum(), discardedTasks.sum(), rejectedTasks.sum());
+        for (var statistics : workerStatistics()) {
+            logger.info("[{}] [readyQueues:{}][readyTasks:{}][tasks:{}][steals:{}][avgWait:{}us][maxWait:{}us][avgExecute:{}us][maxExecute:{}us]"
+                    , statistics.getThreadName(), statistics.getReadyQueueSize(), statistics.getReadyTaskSize(), statistics.getTaskCount(), statistics.getStealCount()
+                    , statistics.getAverageWaitNanos() / 1000, statistics.getMaxWaitNanos() / 1000, statistics.getAverageExecuteNanos() / 1000, statistics.getMaxExecuteNanos() / 1000);
+        }
+        for (var hotKey : hotKeys(10)) {
+            logger.info("hot key [taskExecutorHash:{}][tasks:{}][execute:{}ms]", hotKey.getTaskExecutorHash(), hotKey.getTaskCount(), hotKey.getExecuteNanos() / 100_0000);
+        }
+    }
+
+    // -------------------------------------------ExecutorService-------------------------------------------
+    @Override
+    public void execute(Runnable runnable) {
+        execute(RandomUtils.randomInt(), runnable);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        for (var worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        stopped = true;
+        shutdown();
+        var tasks = new ArrayList<Runnable>();
+        for (var queue : keyQueues.values()) {
+            synchronized (queue) {
+                queue.tasks.forEach(it -> tasks.add(it.runnable));
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        for (var worker : workers) {
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (var worker : workers) {
+            var remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return isTerminated();
+            }
+            worker.join(remaining);
+        }
+        return isTerminated();
+    }
+
+}
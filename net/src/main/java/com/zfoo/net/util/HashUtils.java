@@ -34,12 +34,7 @@ public abstract class HashUtils {
         for (byte b : data) {
             hash = (hash ^ b) * P;
         }
-        hash += hash << 13;
-        hash ^= hash >> 7;
-        hash += hash << 3;
-        hash ^= hash >> 17;
-        hash += hash << 5;
-        return Math.abs(hash);
+        return mix(hash);
     }
 
     /**
@@ -49,7 +44,48 @@ public abstract class HashUtils {
      * @return hash结果
      */
     public static int fnvHash(Object object) {
+        if (object instanceof Long || object instanceof Integer || object instanceof Short || object instanceof Byte) {
+            return fnvHash(((Number) object).longValue());
+        }
         var hash = object.toString().chars().reduce(INIT_HASH, (left, right) -> (left ^ right) * P);
+        return mix(hash);
+    }
+
+    /**
+     * 改进的32位FNV算法1，结果和fnvHash(Long.valueOf(value))相同，但是不会装箱和创建字符串
+     *
+     * @param value 计算hash的数字，按照十进制字符串的每个字符计算
+     * @return hash结果
+     */
+    public static int fnvHash(long value) {
+        var hash = INIT_HASH;
+        // 统一用负数计算，避免Long.MIN_VALUE取反溢出
+        if (value < 0) {
+            hash = (hash ^ '-') * P;
+        } else {
+            value = -value;
+        }
+        var divisor = 1L;
+        while (value / divisor <= -10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            var digit = (int) -(value / divisor);
+            hash = (hash ^ ('0' + digit)) * P;
+            value %= divisor;
+            divisor /= 10;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 改进的32位FNV算法1，结果和fnvHash(Integer.valueOf(value))相同
+     */
+    public static int fnvHash(int value) {
+        return fnvHash((long) value);
+    }
+
+    private static int mix(int hash) {
         hash += hash << 13;
         hash ^= hash >> 7;
         hash += hash << 3;
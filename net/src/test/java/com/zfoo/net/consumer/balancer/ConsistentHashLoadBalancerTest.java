@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.consumer.balancer;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.config.model.ProviderConfig;
+import com.zfoo.net.config.model.ProviderModule;
+import com.zfoo.net.consumer.registry.Register;
+import com.zfoo.net.packet.provider.ProviderMessAsk;
+import com.zfoo.net.session.Session;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * selectProvider(providers, packet, long)和selectProvider(providers, packet, Long.valueOf(argument))选择的服务提供者必须相同
+ *
+ * @author godotg
+ */
+public class ConsistentHashLoadBalancerTest {
+
+    private static final int PROVIDER_NUM = 8;
+
+    private static ClassPathXmlApplicationContext context;
+
+    private static List<Session> providers;
+
+    @BeforeClass
+    public static void setup() {
+        context = new ClassPathXmlApplicationContext("config.xml");
+        var sessions = new ArrayList<Session>();
+        for (var i = 0; i < PROVIDER_NUM; i++) {
+            var session = new Session(new EmbeddedChannel());
+            var providerConfig = ProviderConfig.valueOf("127.0.0.1:" + (9000 + i), List.of(new ProviderModule("myProviderModule", "provider" + i)));
+            session.setConsumerRegister(Register.valueOf("provider" + i, providerConfig, null));
+            NetContext.getSessionManager().addClientSession(session);
+            sessions.add(session);
+        }
+        providers = List.copyOf(sessions);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        providers.forEach(it -> NetContext.getSessionManager().removeClientSession(it));
+        context.close();
+    }
+
+    @Test
+    public void consistentHashTest() {
+        var packet = new ProviderMessAsk();
+        var loadBalancer = ConsistentHashLoadBalancer.getInstance();
+        for (var uid = -1000L; uid < 1000L; uid++) {
+            Assert.assertSame(loadBalancer.selectProvider(providers, packet, (Object) uid), loadBalancer.selectProvider(providers, packet, uid));
+        }
+    }
+
+    @Test
+    public void cachedConsistentHashTest() {
+        var packet = new ProviderMessAsk();
+        var loadBalancer = CachedConsistentHashLoadBalancer.getInstance();
+        for (var uid = 0L; uid < 1000L; uid++) {
+            // 第一次选择的时候写入缓存，第二次从缓存中读取，结果都和没有缓存的一致性hash相同
+            var expected = ConsistentHashLoadBalancer.getInstance().selectProvider(providers, packet, uid);
+            Assert.assertSame(expected, loadBalancer.selectProvider(providers, packet, uid));
+            Assert.assertSame(expected, loadBalancer.selectProvider(providers, packet, (Object) uid));
+            Assert.assertSame(expected, loadBalancer.selectProvider(providers, packet, (Object) (int) uid));
+        }
+    }
+
+    @Test
+    public void defaultBoxingTest() {
+        var arguments = new ArrayList<Object>();
+        IConsumerLoadBalancer loadBalancer = (providers, packet, argument) -> {
+            arguments.add(argument);
+            return providers.get(0);
+        };
+        loadBalancer.selectProvider(providers, new ProviderMessAsk(), 7L);
+        Assert.assertEquals(List.of(7L), arguments);
+    }
+
+}
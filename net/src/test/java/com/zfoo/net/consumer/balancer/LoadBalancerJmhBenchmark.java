@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.consumer.balancer;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.config.model.ProviderConfig;
+import com.zfoo.net.config.model.ProviderModule;
+import com.zfoo.net.consumer.registry.Register;
+import com.zfoo.net.packet.provider.ProviderMessAsk;
+import com.zfoo.net.session.Session;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比ConsistentHashLoadBalancer和CachedConsistentHashLoadBalancer选择服务提供者的吞吐量，同一个provider列表，uid在10万个之间循环
+ *
+ * @author godotg
+ */
+@Ignore
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoadBalancerJmhBenchmark {
+
+    private static final int PROVIDER_NUM = 8;
+    private static final long UID_NUM = 10_0000;
+
+    @Param({"CONSISTENT_HASH", "CACHED_CONSISTENT_HASH"})
+    public String loadBalancerType;
+
+    public ClassPathXmlApplicationContext context;
+
+    public IConsumerLoadBalancer loadBalancer;
+
+    public List<Session> providers;
+
+    public ProviderMessAsk packet;
+
+    public long uid;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new ClassPathXmlApplicationContext("config.xml");
+        loadBalancer = switch (loadBalancerType) {
+            case "CACHED_CONSISTENT_HASH" -> CachedConsistentHashLoadBalancer.getInstance();
+            default -> ConsistentHashLoadBalancer.getInstance();
+        };
+
+        var sessions = new ArrayList<Session>();
+        for (var i = 0; i < PROVIDER_NUM; i++) {
+            var session = new Session(new EmbeddedChannel());
+            var providerConfig = ProviderConfig.valueOf("127.0.0.1:" + (9000 + i), List.of(new ProviderModule("myProviderModule", "provider" + i)));
+            session.setConsumerRegister(Register.valueOf("provider" + i, providerConfig, null));
+            // CachedConsistentHashLoadBalancer通过SessionManager找回缓存的session
+            NetContext.getSessionManager().addClientSession(session);
+            sessions.add(session);
+        }
+        // 同一个列表的引用，ConsistentHashLoadBalancer不会重建缓存
+        providers = List.copyOf(sessions);
+        packet = new ProviderMessAsk();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        providers.forEach(it -> NetContext.getSessionManager().removeClientSession(it));
+        context.close();
+    }
+
+    @Benchmark
+    public Session selectProvider() {
+        uid = uid + 1 == UID_NUM ? 0 : uid + 1;
+        return loadBalancer.selectProvider(providers, packet, uid);
+    }
+
+    @Test
+    public void test() throws RunnerException {
+        // upload jmh-result.json to the following website in order to generate chart
+        // https://deepoove.com/jmh-visual-chart/
+        Options opt = new OptionsBuilder()
+                .include(LoadBalancerJmhBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+}
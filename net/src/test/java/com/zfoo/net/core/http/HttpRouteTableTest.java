@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.http;
+
+import com.zfoo.net.anno.HttpRoute;
+import com.zfoo.net.handler.codec.http.HttpCodecHandler;
+import com.zfoo.net.router.attachment.HttpAttachment;
+import com.zfoo.protocol.exception.RunException;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+
+/**
+ * @author godotg
+ */
+public class HttpRouteTableTest {
+
+    @HttpRoute(value = "/user/{uid}/item", method = "GET")
+    public static class UserItemRequest {
+        private long uid;
+        private int itemId;
+        private Boolean bind;
+        private String name;
+
+        public long getUid() {
+            return uid;
+        }
+
+        public void setUid(long uid) {
+            this.uid = uid;
+        }
+
+        public int getItemId() {
+            return itemId;
+        }
+
+        public void setItemId(int itemId) {
+            this.itemId = itemId;
+        }
+
+        public Boolean getBind() {
+            return bind;
+        }
+
+        public void setBind(Boolean bind) {
+            this.bind = bind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    public void matchTest() {
+        var routeTable = new HttpRouteTable<String>();
+        routeTable.addRoute(HttpMethod.GET, "/user", "user");
+        routeTable.addRoute(HttpMethod.GET, "/user/{uid}", "userId");
+        routeTable.addRoute(HttpMethod.GET, "/user/{uid}/item/{itemId}", "userItem");
+        routeTable.addRoute(HttpMethod.GET, "/user/me", "me");
+        routeTable.addRoute(HttpMethod.POST, "/user/me", "postMe");
+        routeTable.addRoute(HttpMethod.GET, "/users", "users");
+        routeTable.addRoute(HttpMethod.GET, "/hello", "hello");
+
+        var params = new HashMap<String, String>();
+        Assert.assertEquals("user", routeTable.match(HttpMethod.GET, "/user", params));
+        Assert.assertEquals("users", routeTable.match(HttpMethod.GET, "/users", params));
+        Assert.assertEquals("hello", routeTable.match(HttpMethod.GET, "/hello", params));
+        Assert.assertTrue(params.isEmpty());
+
+        // 静态路径优先于路径变量
+        Assert.assertEquals("me", routeTable.match(HttpMethod.GET, "/user/me", params));
+        Assert.assertEquals("postMe", routeTable.match(HttpMethod.POST, "/user/me", params));
+        Assert.assertTrue(params.isEmpty());
+
+        Assert.assertEquals("userId", routeTable.match(HttpMethod.GET, "/user/100", params));
+        Assert.assertEquals("100", params.get("uid"));
+
+        params.clear();
+        Assert.assertEquals("userItem", routeTable.match(HttpMethod.GET, "/user/me/item/a%20b", params));
+        Assert.assertEquals("me", params.get("uid"));
+        Assert.assertEquals("a b", params.get("itemId"));
+
+        params.clear();
+        Assert.assertNull(routeTable.match(HttpMethod.GET, "/user/100/item", params));
+        Assert.assertNull(routeTable.match(HttpMethod.GET, "/use", params));
+        Assert.assertNull(routeTable.match(HttpMethod.GET, "/user/", params));
+        Assert.assertNull(routeTable.match(HttpMethod.DELETE, "/user/me", params));
+        Assert.assertTrue(params.isEmpty());
+    }
+
+    @Test(expected = RunException.class)
+    public void duplicateTest() {
+        var routeTable = new HttpRouteTable<String>();
+        routeTable.addRoute(HttpMethod.GET, "/user/{uid}", "a");
+        routeTable.addRoute(HttpMethod.GET, "/user/{id}/item", "b");
+    }
+
+    @Test
+    public void resolveTest() {
+        var resolver = new HttpRouteResolver();
+        resolver.addRoute(UserItemRequest.class, UserItemRequest.class.getDeclaredAnnotation(HttpRoute.class));
+
+        var request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user/100/item?itemId=7&bind=true&name=zfoo%20net&uid=1", Unpooled.EMPTY_BUFFER);
+        var decodedPacketInfo = resolver.apply(request);
+        var packet = (UserItemRequest) decodedPacketInfo.getPacket();
+        // 路径变量优先于查询参数
+        Assert.assertEquals(100, packet.getUid());
+        Assert.assertEquals(7, packet.getItemId());
+        Assert.assertEquals(Boolean.TRUE, packet.getBind());
+        Assert.assertEquals("zfoo net", packet.getName());
+        Assert.assertSame(request, ((HttpAttachment) decodedPacketInfo.getAttachment()).getFullHttpRequest());
+
+        var post = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/user/100/item", Unpooled.EMPTY_BUFFER);
+        Assert.assertNull(resolver.apply(post));
+    }
+
+    @Test
+    public void malformedBodyTest() {
+        var resolver = new HttpRouteResolver();
+        resolver.addRoute(UserItemRequest.class, UserItemRequest.class.getDeclaredAnnotation(HttpRoute.class));
+
+        // body的格式错误都是IllegalArgumentException，返回400而不是关闭连接
+        var json = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user/100/item", Unpooled.copiedBuffer("{\"name\":", StringUtils.DEFAULT_CHARSET));
+        json.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+        Assert.assertThrows(IllegalArgumentException.class, () -> resolver.apply(json));
+        json.release();
+
+        var zfoo = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/user/100/item", Unpooled.wrappedBuffer(new byte[]{1}));
+        zfoo.headers().set(HttpHeaderNames.CONTENT_TYPE, HttpCodecHandler.APPLICATION_ZFOO);
+        Assert.assertThrows(IllegalArgumentException.class, () -> resolver.apply(zfoo));
+        zfoo.release();
+    }
+
+}
@@ -59,4 +59,18 @@ public class HttpServerTest {
         ThreadUtils.sleep(Long.MAX_VALUE);
     }
 
+    /**
+     * 使用HttpRoute注解的路由，访问下面这个网址，查询参数会绑定到HttpHelloRequest的message上：
+     * <p>
+     * http://127.0.0.1:9000/hello?message=zfoo
+     */
+    @Test
+    public void startRouteServer() {
+        var context = new ClassPathXmlApplicationContext("config.xml");
+
+        var server = new HttpServer(HostAndPort.valueOf("127.0.0.1:9000"));
+        server.start();
+        ThreadUtils.sleep(Long.MAX_VALUE);
+    }
+
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.tcpAsync.client;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.core.HostAndPort;
+import com.zfoo.net.core.tcp.TcpClient;
+import com.zfoo.net.packet.tcp.AsyncMessAnswer;
+import com.zfoo.net.packet.tcp.AsyncMessAsk;
+import com.zfoo.net.router.FlushStrategy;
+import com.zfoo.net.session.Session;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比每个包都writeAndFlush和合并flush的性能，先启动tcpAsync下的TcpServerTest
+ *
+ * @author godotg
+ */
+@Ignore
+public class BenchmarkFlushTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkFlushTest.class);
+
+    @Test
+    public void benchmarkTest() throws Exception {
+        var context = new ClassPathXmlApplicationContext("config.xml");
+
+        var client = new TcpClient(HostAndPort.valueOf("127.0.0.1:9000"));
+        var session = client.start();
+
+        // 预热
+        benchmark(session, FlushStrategy.IMMEDIATE);
+        benchmark(session, FlushStrategy.EVENT_LOOP);
+
+        for (var i = 0; i < 3; i++) {
+            benchmark(session, FlushStrategy.IMMEDIATE);
+            benchmark(session, FlushStrategy.EVENT_LOOP);
+            benchmark(session, FlushStrategy.BATCH);
+        }
+    }
+
+    private void benchmark(Session session, FlushStrategy flushStrategy) throws InterruptedException {
+        NetContext.getConfigManager().getLocalConfig().setFlushStrategy(flushStrategy);
+        NetContext.getConfigManager().getLocalConfig().setFlushBatchSize(16);
+
+        // 异步请求消息是一起发送过去的，请求的数量不要太大，否则服务器排队处理消息容易导致超时
+        var threadNums = Runtime.getRuntime().availableProcessors();
+        var requestNums = 500;
+        var latch = new CountDownLatch(threadNums * requestNums);
+        var startTime = System.currentTimeMillis();
+        for (int i = 0; i < threadNums; i++) {
+            var thread = new Thread(() -> {
+                for (int j = 0; j < requestNums; j++) {
+                    var ask = new AsyncMessAsk();
+                    ask.setMessage("Hello, this is flush benchmark client!");
+                    NetContext.getRouter().asyncAsk(session, ask, AsyncMessAnswer.class, null)
+                            .notComplete(latch::countDown)
+                            .whenComplete(answer -> latch.countDown());
+                }
+            });
+            thread.start();
+        }
+        latch.await(1, TimeUnit.MINUTES);
+        logger.info("flush strategy [{}] cost [{}] ms for [{}] requests", flushStrategy, System.currentTimeMillis() - startTime, threadNums * requestNums);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.tcpAsync.client;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.core.HostAndPort;
+import com.zfoo.net.core.NetTransport;
+import com.zfoo.net.core.TransportType;
+import com.zfoo.net.core.tcp.TcpClient;
+import com.zfoo.net.core.tcp.TcpServer;
+import com.zfoo.net.packet.tcp.AsyncMessAnswer;
+import com.zfoo.net.packet.tcp.AsyncMessAsk;
+import com.zfoo.net.session.Session;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比服务器使用io_uring，epoll，nio传输层的吞吐量和延迟，io_uring需要引入netty-incubator-transport-native-io_uring依赖，
+ * 不可用的传输层会回退，日志中会打印实际使用的传输层。
+ * 客户端的线程组是所有客户端共享的，所以客户端始终使用第一次启动时的传输层。
+ *
+ * @author godotg
+ */
+@Ignore
+public class BenchmarkTransportTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BenchmarkTransportTest.class);
+
+    private static final TransportType[] TRANSPORTS = {TransportType.IO_URING, TransportType.EPOLL, TransportType.NIO};
+
+    @Test
+    public void benchmarkTest() throws Exception {
+        var context = new ClassPathXmlApplicationContext("config.xml");
+
+        for (var i = 0; i < 3; i++) {
+            for (var j = 0; j < TRANSPORTS.length; j++) {
+                benchmark(TRANSPORTS[j], 9100 + i * TRANSPORTS.length + j);
+            }
+        }
+    }
+
+    private void benchmark(TransportType transportType, int port) throws InterruptedException {
+        NetContext.getConfigManager().getLocalConfig().setTransport(transportType);
+        var hostAndPort = HostAndPort.valueOf("127.0.0.1", port);
+        var server = new TcpServer(hostAndPort);
+        server.start();
+        var session = new TcpClient(hostAndPort).start();
+
+        // 预热
+        benchmark(session, 200);
+
+        var threadNums = Runtime.getRuntime().availableProcessors();
+        var requestNums = 500;
+        var startTime = System.nanoTime();
+        var latencies = benchmark(session, requestNums);
+        var costTime = System.nanoTime() - startTime;
+
+        // 超时的请求延迟为0，排序之后在最前面
+        Arrays.sort(latencies);
+        var completed = (int) Arrays.stream(latencies).filter(it -> it > 0).count();
+        var timeout = latencies.length - completed;
+        logger.info("transport [{}] resolved to [{}], [{}/{}] requests, throughput [{}] requests/s, latency avg [{}] us p50 [{}] us p99 [{}] us"
+                , transportType, NetTransport.of(transportType).getType(), completed, threadNums * requestNums
+                , completed * TimeUnit.SECONDS.toNanos(1) / costTime
+                , Arrays.stream(latencies).sum() / Math.max(1, completed) / 1000
+                , latencies[Math.min(latencies.length - 1, timeout + completed / 2)] / 1000
+                , latencies[Math.min(latencies.length - 1, timeout + completed * 99 / 100)] / 1000);
+
+        session.close();
+        server.shutdown();
+    }
+
+    /**
+     * 返回每个请求的延迟（纳秒），超时的请求为0
+     */
+    private long[] benchmark(Session session, int requestNums) throws InterruptedException {
+        // 异步请求消息是一起发送过去的，请求的数量不要太大，否则服务器排队处理消息容易导致超时
+        var threadNums = Runtime.getRuntime().availableProcessors();
+        var latencies = new long[threadNums * requestNums];
+        var latch = new CountDownLatch(threadNums * requestNums);
+        for (int i = 0; i < threadNums; i++) {
+            var offset = i * requestNums;
+            var thread = new Thread(() -> {
+                for (int j = 0; j < requestNums; j++) {
+                    var index = offset + j;
+                    var ask = new AsyncMessAsk();
+                    ask.setMessage("Hello, this is transport benchmark client!");
+                    var requestTime = System.nanoTime();
+                    NetContext.getRouter().asyncAsk(session, ask, AsyncMessAnswer.class, null)
+                            .notComplete(latch::countDown)
+                            .whenComplete(answer -> {
+                                latencies[index] = System.nanoTime() - requestTime;
+                                latch.countDown();
+                            });
+                }
+            });
+            thread.start();
+        }
+        latch.await(1, TimeUnit.MINUTES);
+        return latencies;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.core.udp;
+
+import com.zfoo.net.core.HostAndPort;
+import com.zfoo.protocol.util.ThreadUtils;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对比UdpServer每次读取一个datagram和epoll下recvmmsg批量读取加上SO_REUSEPORT多个channel的每秒接收的datagram数量，只在linux的epoll下有区别
+ *
+ * @author godotg
+ */
+@Ignore
+public class UdpBatchBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(UdpBatchBenchmarkTest.class);
+
+    private static final int SENDER_NUM = 8;
+    private static final int DATAGRAM_SIZE = 200;
+    private static final long DURATION = 5_000;
+
+    @ChannelHandler.Sharable
+    private static class CountHandler extends ChannelInboundHandlerAdapter {
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            count.increment();
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    @Test
+    public void benchmarkTest() throws Exception {
+        var context = new ClassPathXmlApplicationContext("config.xml");
+
+        // 预热
+        benchmark(9000, 1, 1);
+        benchmark(9001, 16, Runtime.getRuntime().availableProcessors());
+
+        benchmark(9002, 1, 1);
+        benchmark(9003, 16, 1);
+        benchmark(9004, 1, Runtime.getRuntime().availableProcessors());
+        benchmark(9005, 16, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void benchmark(int port, int readBatchSize, int acceptorNum) throws Exception {
+        var counter = new CountHandler();
+        var server = new UdpServer(HostAndPort.valueOf("127.0.0.1:" + port)) {
+            @Override
+            protected void initChannel(Channel channel) {
+                channel.pipeline().addLast(counter);
+            }
+        };
+        server.setReadBatchSize(readBatchSize);
+        server.setMaxDatagramSize(DATAGRAM_SIZE);
+        server.setAcceptorNum(acceptorNum);
+        server.start();
+
+        // 每个发送方使用不同的端口，SO_REUSEPORT按照对端的地址把datagram分配给不同的channel
+        var running = new AtomicBoolean(true);
+        var sent = new LongAdder();
+        var senders = new ArrayList<Thread>();
+        for (var i = 0; i < SENDER_NUM; i++) {
+            var thread = new Thread(() -> {
+                try (var channel = DatagramChannel.open()) {
+                    channel.connect(new InetSocketAddress("127.0.0.1", port));
+                    var buffer = ByteBuffer.allocateDirect(DATAGRAM_SIZE);
+                    while (running.get()) {
+                        buffer.clear();
+                        channel.write(buffer);
+                        sent.increment();
+                    }
+                } catch (Exception e) {
+                    logger.error("udp sender error", e);
+                }
+            });
+            thread.start();
+            senders.add(thread);
+        }
+
+        ThreadUtils.sleep(DURATION);
+        running.set(false);
+        for (var sender : senders) {
+            sender.join();
+        }
+        ThreadUtils.sleep(100);
+
+        var received = counter.count.sum();
+        logger.info("readBatchSize [{}] acceptorNum [{}] received [{}] datagrams per second, [{}%] of the sent datagrams"
+                , readBatchSize, acceptorNum, received * 1000 / DURATION, received * 100 / Math.max(sent.sum(), 1));
+        server.shutdown();
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.cipher;
+
+import com.zfoo.net.util.security.AesUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 对比不同包大小下，PacketCipher在ByteBuf上原地加密和AesUtils拷贝byte[]加密的吞吐量
+ *
+ * @author godotg
+ */
+@Ignore
+public class PacketCipherBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacketCipherBenchmarkTest.class);
+
+    private static final int[] PACKET_SIZES = new int[]{64, 512, 4 * 1024, 64 * 1024};
+
+    private static final long TOTAL_BYTES = 256L * 1024 * 1024;
+
+    @Test
+    public void correctnessTest() {
+        for (var algorithm : CipherAlgorithm.values()) {
+            var server = newCipher(algorithm, true);
+            var client = newCipher(algorithm, false);
+            for (var size : PACKET_SIZES) {
+                var body = new byte[size];
+                ThreadLocalRandom.current().nextBytes(body);
+                var frame = ByteBufAllocator.DEFAULT.directBuffer().writeInt(size).writeBytes(body);
+                frame = server.encryptFrame(ByteBufAllocator.DEFAULT, frame, false);
+                var header = frame.readInt();
+                Assert.assertTrue(PacketCipher.isEncrypted(header));
+                client.decrypt(frame);
+                Assert.assertArrayEquals(body, ByteBufUtil.getBytes(frame));
+                frame.release();
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkTest() {
+        // 预热
+        for (var size : PACKET_SIZES) {
+            benchmarkAesUtils(size);
+            for (var algorithm : CipherAlgorithm.values()) {
+                benchmarkPacketCipher(algorithm, size);
+            }
+        }
+
+        for (var size : PACKET_SIZES) {
+            benchmarkAesUtils(size);
+            for (var algorithm : CipherAlgorithm.values()) {
+                benchmarkPacketCipher(algorithm, size);
+            }
+        }
+    }
+
+    private void benchmarkPacketCipher(CipherAlgorithm algorithm, int size) {
+        var cipher = newCipher(algorithm, true);
+        var buffer = ByteBufAllocator.DEFAULT.directBuffer(size + 4);
+        var count = TOTAL_BYTES / size;
+        var startTime = System.nanoTime();
+        for (var i = 0; i < count; i++) {
+            buffer.clear().writeInt(size).writerIndex(size + 4);
+            buffer = cipher.encryptFrame(ByteBufAllocator.DEFAULT, buffer, false);
+        }
+        log(algorithm.name(), size, count, System.nanoTime() - startTime);
+        buffer.release();
+    }
+
+    private void benchmarkAesUtils(int size) {
+        var buffer = ByteBufAllocator.DEFAULT.directBuffer(size + 16);
+        var count = TOTAL_BYTES / size;
+        var startTime = System.nanoTime();
+        for (var i = 0; i < count; i++) {
+            buffer.clear().writerIndex(size);
+            // 从ByteBuf中拷贝出来，加密之后再拷贝回去
+            var bytes = AesUtils.encrypt(ByteBufUtil.getBytes(buffer));
+            buffer.clear().writeBytes(bytes);
+        }
+        log("AesUtils byte[]", size, count, System.nanoTime() - startTime);
+        buffer.release();
+    }
+
+    private PacketCipher newCipher(CipherAlgorithm algorithm, boolean server) {
+        var key = new byte[32];
+        var iv = new byte[algorithm == CipherAlgorithm.CHACHA20 ? 12 : 16];
+        return new PacketCipher(algorithm, key, iv, server);
+    }
+
+    private void log(String name, int size, long count, long costNanos) {
+        var throughput = (double) TOTAL_BYTES / 1024 / 1024 / (costNanos / 1_000_000_000D);
+        logger.info("[{}] packet size [{}] count [{}] cost [{}] ms, [{}] ns per packet, throughput [{}] MB/s"
+                , name, size, count, costNanos / 100_0000, costNanos / count, String.format("%.1f", throughput));
+    }
+
+}
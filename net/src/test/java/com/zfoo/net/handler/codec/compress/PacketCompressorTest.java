@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.handler.codec.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ */
+public class PacketCompressorTest {
+
+    private static final ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+
+    @Test
+    public void compressTest() {
+        var compressor = new PacketCompressor(64);
+        compressor.receiveHello();
+        for (var size : new int[]{100, 1000, 100_000}) {
+            var body = new byte[size];
+            for (var i = 0; i < size; i++) {
+                body[i] = (byte) (i % 17);
+            }
+            // 连续的buffer和网关透传使用的CompositeByteBuf
+            roundTrip(compressor, alloc.heapBuffer().writeInt(size).writeBytes(body), body);
+            roundTrip(compressor, Unpooled.wrappedBuffer(Unpooled.buffer().writeInt(size), Unpooled.wrappedBuffer(body)), body);
+        }
+    }
+
+    private void roundTrip(PacketCompressor compressor, ByteBuf frame, byte[] body) {
+        var out = compressor.compressFrame(alloc, frame);
+        var header = out.readInt();
+        Assert.assertTrue(PacketCompressor.isCompressed(header));
+        Assert.assertTrue(PacketCompressor.length(header) < body.length);
+
+        var raw = compressor.decompress(alloc, out.readSlice(PacketCompressor.length(header)));
+        var bytes = new byte[raw.readableBytes()];
+        raw.readBytes(bytes);
+        Assert.assertArrayEquals(body, bytes);
+        raw.release();
+        out.release();
+    }
+
+    @Test
+    public void thresholdTest() {
+        var compressor = new PacketCompressor(64);
+        var frame = alloc.heapBuffer().writeInt(10).writeBytes(new byte[10]);
+        // 对方还没有握手，不会压缩
+        var bigFrame = alloc.heapBuffer().writeInt(1000).writeBytes(new byte[1000]);
+        Assert.assertSame(bigFrame, compressor.compressFrame(alloc, bigFrame));
+        bigFrame.release();
+
+        // 收到握手之后需要回复一次
+        Assert.assertTrue(compressor.receiveHello());
+        compressor.hello(alloc).release();
+        Assert.assertFalse(compressor.receiveHello());
+
+        // 小于阈值的包不压缩
+        Assert.assertSame(frame, compressor.compressFrame(alloc, frame));
+        frame.release();
+    }
+
+}
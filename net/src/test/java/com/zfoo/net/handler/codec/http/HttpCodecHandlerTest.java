@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.http;
+
+import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.http.HttpHelloResponse;
+import com.zfoo.net.router.attachment.HttpAttachment;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author godotg
+ */
+public class HttpCodecHandlerTest {
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new HttpCodecHandler(request -> {
+        if (request.uri().equals("/missing")) {
+            return null;
+        }
+        return DecodedPacketInfo.valueOf(request.uri(), HttpAttachment.valueOf(request, HttpResponseStatus.OK));
+    }));
+
+    private HttpAttachment request(String uri, HttpVersion version) {
+        channel.writeInbound(new DefaultFullHttpRequest(version, HttpMethod.GET, uri));
+        var decodedPacketInfo = channel.<DecodedPacketInfo>readInbound();
+        Assert.assertEquals(uri, decodedPacketInfo.getPacket());
+        return (HttpAttachment) decodedPacketInfo.getAttachment();
+    }
+
+    private EncodedPacketInfo response(String message, HttpAttachment attachment) {
+        var response = new HttpHelloResponse();
+        response.setMessage(message);
+        return EncodedPacketInfo.valueOf(response, attachment);
+    }
+
+    private List<String> readResponses() {
+        var responses = new ArrayList<String>();
+        FullHttpResponse fullHttpResponse;
+        while ((fullHttpResponse = channel.readOutbound()) != null) {
+            Assert.assertEquals(HttpHeaderValues.APPLICATION_JSON.toString(), fullHttpResponse.headers().get(HttpHeaderNames.CONTENT_TYPE));
+            responses.add(fullHttpResponse.content().toString(StringUtils.DEFAULT_CHARSET));
+            fullHttpResponse.release();
+        }
+        return responses;
+    }
+
+    @Test
+    public void pipeliningTest() {
+        var first = request("/first", HttpVersion.HTTP_1_1);
+        var second = request("/second", HttpVersion.HTTP_1_1);
+        var third = request("/third", HttpVersion.HTTP_1_1);
+
+        // 后面的请求先处理完，需要等待前面的响应
+        channel.writeAndFlush(response("third", third));
+        channel.writeAndFlush(response("second", second));
+        Assert.assertTrue(readResponses().isEmpty());
+
+        channel.writeAndFlush(response("first", first));
+        var responses = readResponses();
+        Assert.assertEquals(List.of("{\"message\":\"first\"}", "{\"message\":\"second\"}", "{\"message\":\"third\"}"), responses);
+        Assert.assertTrue(channel.isOpen());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void notFoundTest() {
+        var first = request("/first", HttpVersion.HTTP_1_1);
+        channel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/missing"));
+        Assert.assertNull(channel.readInbound());
+        // 404的响应也要等待前面的响应
+        Assert.assertNull(channel.readOutbound());
+
+        channel.writeAndFlush(response("first", first));
+        var firstResponse = channel.<FullHttpResponse>readOutbound();
+        Assert.assertEquals(HttpResponseStatus.OK, firstResponse.status());
+        firstResponse.release();
+        var notFoundResponse = channel.<FullHttpResponse>readOutbound();
+        Assert.assertEquals(HttpResponseStatus.NOT_FOUND, notFoundResponse.status());
+        notFoundResponse.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void duplicateTest() {
+        var first = request("/first", HttpVersion.HTTP_1_1);
+        var second = request("/second", HttpVersion.HTTP_1_1);
+
+        channel.writeAndFlush(response("second", second));
+        // 已经在等待写入的响应和已经写入的响应，重复的响应都直接丢弃
+        Assert.assertFalse(channel.writeAndFlush(response("second", second)).isSuccess());
+        channel.writeAndFlush(response("first", first));
+        Assert.assertFalse(channel.writeAndFlush(response("first", first)).isSuccess());
+        Assert.assertEquals(List.of("{\"message\":\"first\"}", "{\"message\":\"second\"}"), readResponses());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void timeoutTest() {
+        var timeoutChannel = new EmbeddedChannel(new HttpCodecHandler(request -> DecodedPacketInfo.valueOf(request.uri(), HttpAttachment.valueOf(request, HttpResponseStatus.OK)), null, TimeUnit.SECONDS.toMillis(30)));
+        timeoutChannel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/first"));
+        timeoutChannel.writeInbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/second"));
+        var first = (HttpAttachment) timeoutChannel.<DecodedPacketInfo>readInbound().getAttachment();
+        var second = (HttpAttachment) timeoutChannel.<DecodedPacketInfo>readInbound().getAttachment();
+
+        // 第二个请求先处理完，第一个请求一直没有响应
+        timeoutChannel.writeAndFlush(response("second", second));
+        Assert.assertNull(timeoutChannel.readOutbound());
+
+        // 还没有到超时时间
+        timeoutChannel.advanceTimeBy(10, TimeUnit.SECONDS);
+        timeoutChannel.runScheduledPendingTasks();
+        Assert.assertNull(timeoutChannel.readOutbound());
+
+        timeoutChannel.advanceTimeBy(20, TimeUnit.SECONDS);
+        timeoutChannel.runScheduledPendingTasks();
+        var timeoutResponse = timeoutChannel.<FullHttpResponse>readOutbound();
+        Assert.assertEquals(HttpResponseStatus.GATEWAY_TIMEOUT, timeoutResponse.status());
+        timeoutResponse.release();
+        var secondResponse = timeoutChannel.<FullHttpResponse>readOutbound();
+        Assert.assertEquals(HttpResponseStatus.OK, secondResponse.status());
+        secondResponse.release();
+
+        // 超时之后才到达的响应被丢弃
+        Assert.assertFalse(timeoutChannel.writeAndFlush(response("first", first)).isSuccess());
+        Assert.assertNull(timeoutChannel.readOutbound());
+        Assert.assertTrue(timeoutChannel.isOpen());
+        timeoutChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void closeTest() {
+        // http1.0默认不是keep-alive，响应之后关闭连接
+        var attachment = request("/hello", HttpVersion.HTTP_1_0);
+        channel.writeAndFlush(response("hello", attachment));
+        var fullHttpResponse = channel.<FullHttpResponse>readOutbound();
+        Assert.assertEquals(HttpHeaderValues.CLOSE.toString(), fullHttpResponse.headers().get(HttpHeaderNames.CONNECTION));
+        fullHttpResponse.release();
+        Assert.assertFalse(channel.isOpen());
+    }
+
+}
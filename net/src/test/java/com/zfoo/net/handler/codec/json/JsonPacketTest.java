@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.json;
+
+import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.common.Message;
+import com.zfoo.net.router.attachment.SignalAttachment;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * @author godotg
+ */
+public class JsonPacketTest {
+
+    private static final ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("config.xml");
+
+    private static final String PACKET = "{\"code\":1,\"message\":\"hello\"}";
+
+    /**
+     * heap buffer直接解析数组，direct buffer通过ByteBufInputStream解析
+     */
+    private static DecodedPacketInfo read(String json, boolean direct) {
+        var bytes = StringUtils.bytes(json);
+        var buffer = direct ? Unpooled.directBuffer(bytes.length) : Unpooled.buffer(bytes.length);
+        buffer.writeBytes(bytes);
+        try {
+            var decodedPacketInfo = JsonPacket.readDecodedPacketInfo(buffer);
+            Assert.assertFalse(buffer.isReadable());
+            return decodedPacketInfo;
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private static void assertPacket(DecodedPacketInfo decodedPacketInfo) {
+        var message = (Message) decodedPacketInfo.getPacket();
+        Assert.assertEquals(1, message.getCode());
+        Assert.assertEquals("hello", message.getMessage());
+    }
+
+    private static void roundTrip(ByteBuf buffer) {
+        var attachment = new SignalAttachment();
+        attachment.setTaskExecutorHash(7);
+        try {
+            JsonPacket.writeEncodedPacketInfo(buffer, EncodedPacketInfo.valueOf(Message.valueSuccess("hello"), attachment));
+            var decodedPacketInfo = JsonPacket.readDecodedPacketInfo(buffer);
+            Assert.assertFalse(buffer.isReadable());
+            assertPacket(decodedPacketInfo);
+            var decodedAttachment = (SignalAttachment) decodedPacketInfo.getAttachment();
+            Assert.assertEquals(attachment.getSignalId(), decodedAttachment.getSignalId());
+            Assert.assertEquals(7, decodedAttachment.getTaskExecutorHash());
+
+            JsonPacket.writeEncodedPacketInfo(buffer, EncodedPacketInfo.valueOf(Message.valueSuccess("hello"), null));
+            decodedPacketInfo = JsonPacket.readDecodedPacketInfo(buffer);
+            assertPacket(decodedPacketInfo);
+            Assert.assertNull(decodedPacketInfo.getAttachment());
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void roundTripTest() {
+        roundTrip(Unpooled.buffer());
+        roundTrip(Unpooled.directBuffer());
+    }
+
+    @Test
+    public void packetBeforeProtocolIdTest() {
+        // packet和attachment出现在协议号前面的时候先解析为json树
+        var json = "{\"packet\":" + PACKET + ",\"attachment\":{\"signalId\":99,\"taskExecutorHash\":7},\"attachmentId\":0,\"protocolId\":100}";
+        for (var direct : new boolean[]{false, true}) {
+            var decodedPacketInfo = read(json, direct);
+            assertPacket(decodedPacketInfo);
+            var attachment = (SignalAttachment) decodedPacketInfo.getAttachment();
+            Assert.assertEquals(99, attachment.getSignalId());
+            Assert.assertEquals(7, attachment.getTaskExecutorHash());
+        }
+    }
+
+    @Test
+    public void attachmentBeforeAttachmentIdTest() {
+        var json = "{\"protocolId\":100,\"packet\":" + PACKET + ",\"attachment\":{\"signalId\":99},\"attachmentId\":0}";
+        for (var direct : new boolean[]{false, true}) {
+            var decodedPacketInfo = read(json, direct);
+            assertPacket(decodedPacketInfo);
+            Assert.assertEquals(99, ((SignalAttachment) decodedPacketInfo.getAttachment()).getSignalId());
+        }
+    }
+
+    @Test
+    public void nullAttachmentTest() {
+        var json = "{\"protocolId\":100,\"attachmentId\":-1,\"packet\":" + PACKET + ",\"attachment\":null}";
+        for (var direct : new boolean[]{false, true}) {
+            var decodedPacketInfo = read(json, direct);
+            assertPacket(decodedPacketInfo);
+            Assert.assertNull(decodedPacketInfo.getAttachment());
+        }
+    }
+
+    @Test
+    public void unknownFieldTest() {
+        // 不认识的字段直接跳过，包括嵌套的对象和数组
+        var json = "{\"version\":2,\"protocolId\":100,\"extra\":{\"a\":[1,{\"b\":2}]},\"packet\":" + PACKET + ",\"tags\":[\"x\"]}";
+        for (var direct : new boolean[]{false, true}) {
+            var decodedPacketInfo = read(json, direct);
+            assertPacket(decodedPacketInfo);
+            Assert.assertNull(decodedPacketInfo.getAttachment());
+        }
+    }
+
+    @Test
+    public void stringIdTest() {
+        // js的客户端可能把协议号发送成字符串
+        var json = "{\"protocolId\":\"100\",\"attachmentId\":\"0\",\"packet\":" + PACKET + ",\"attachment\":{\"signalId\":99}}";
+        for (var direct : new boolean[]{false, true}) {
+            var decodedPacketInfo = read(json, direct);
+            assertPacket(decodedPacketInfo);
+            Assert.assertEquals(99, ((SignalAttachment) decodedPacketInfo.getAttachment()).getSignalId());
+        }
+
+        var noAttachment = read("{\"protocolId\":\"100\",\"attachmentId\":\"-1\",\"packet\":" + PACKET + "}", false);
+        assertPacket(noAttachment);
+        Assert.assertNull(noAttachment.getAttachment());
+    }
+
+    @Test
+    public void illegalIdTest() {
+        Assert.assertThrows(IllegalArgumentException.class, () -> read("{\"protocolId\":\"abc\",\"packet\":" + PACKET + "}", false));
+        Assert.assertThrows(IllegalArgumentException.class, () -> read("{\"protocolId\":100000,\"packet\":" + PACKET + "}", false));
+        Assert.assertThrows(IllegalArgumentException.class, () -> read("{\"protocolId\":1.5,\"packet\":" + PACKET + "}", false));
+        Assert.assertThrows(IllegalArgumentException.class, () -> read("{\"packet\":" + PACKET + "}", false));
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.tcp;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.config.model.ProviderConfig;
+import com.zfoo.net.config.model.ProviderModule;
+import com.zfoo.net.consumer.registry.Register;
+import com.zfoo.net.handler.BaseRouteHandler;
+import com.zfoo.net.handler.GatewayRouteHandler;
+import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.packet.PassthroughPacketInfo;
+import com.zfoo.net.packet.common.Heartbeat;
+import com.zfoo.net.packet.common.Ping;
+import com.zfoo.net.packet.gateway.GatewayLoadBalancerRequest;
+import com.zfoo.net.packet.gateway.GatewayToProviderRequest;
+import com.zfoo.net.router.attachment.GatewayAttachment;
+import com.zfoo.net.router.attachment.SignalAttachment;
+import com.zfoo.net.session.Session;
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.List;
+
+/**
+ * 客户端 -> 网关 -> Provider的EmbeddedChannel往返，透传的包和网关完整解码之后再转发的包，Provider收到的结果必须相同
+ *
+ * @author godotg
+ */
+public class GatewayPassthroughTest {
+
+    private static final long UID = 7;
+
+    private static ClassPathXmlApplicationContext context;
+
+    // 网关到Provider的连接，网关写出的字节从这里读取
+    private static EmbeddedChannel providerLink;
+
+    private static Session providerSession;
+
+    @BeforeClass
+    public static void setup() {
+        context = new ClassPathXmlApplicationContext("gateway/gateway_passthrough_config.xml");
+        providerLink = new EmbeddedChannel(new TcpCodecHandler(IOUtils.BYTES_PER_MB, 0, null));
+        providerSession = new Session(providerLink);
+        var providerConfig = ProviderConfig.valueOf("127.0.0.1:9000", List.of(new ProviderModule("myProviderModule", "provider1")));
+        providerSession.setConsumerRegister(Register.valueOf("provider1", providerConfig, null));
+        NetContext.getSessionManager().addClientSession(providerSession);
+        NetContext.getConsumer().updateProviders();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        NetContext.getSessionManager().removeClientSession(providerSession);
+        NetContext.getConsumer().updateProviders();
+        providerLink.finishAndReleaseAll();
+        context.close();
+    }
+
+    private static ByteBuf clientFrame(Object packet, Object attachment) {
+        var client = new EmbeddedChannel(new TcpCodecHandler(IOUtils.BYTES_PER_MB, 0, null));
+        client.writeOutbound(EncodedPacketInfo.valueOf(packet, attachment));
+        ByteBuf frame = client.readOutbound();
+        client.finishAndReleaseAll();
+        return frame;
+    }
+
+    private static EmbeddedChannel gateway(boolean passthrough) {
+        var gateway = new EmbeddedChannel(new GatewayTcpCodecHandler(IOUtils.BYTES_PER_MB, !passthrough), new GatewayRouteHandler(null));
+        gateway.attr(BaseRouteHandler.SESSION_KEY).get().setUid(UID);
+        return gateway;
+    }
+
+    private static DecodedPacketInfo providerRead(ByteBuf buffer) {
+        var provider = new EmbeddedChannel(new TcpCodecHandler(IOUtils.BYTES_PER_MB, 0, null));
+        provider.writeInbound(buffer);
+        DecodedPacketInfo decodedPacketInfo = provider.readInbound();
+        provider.finishAndReleaseAll();
+        return decodedPacketInfo;
+    }
+
+    private static SignalAttachment clientSignalAttachment() {
+        var signalAttachment = new SignalAttachment();
+        signalAttachment.setClient(SignalAttachment.SIGNAL_OUTSIDE_CLIENT);
+        signalAttachment.setTaskExecutorHash(3);
+        return signalAttachment;
+    }
+
+    private static GatewayToProviderRequest request() {
+        var request = new GatewayToProviderRequest();
+        request.setMessage("hello");
+        return request;
+    }
+
+    @Test
+    public void roundTripTest() {
+        var signalAttachment = clientSignalAttachment();
+
+        // 网关完整解码之后再转发
+        var decodeGateway = gateway(false);
+        decodeGateway.writeInbound(clientFrame(request(), signalAttachment));
+        var expected = providerRead(providerLink.readOutbound());
+        var expectedAttachment = (GatewayAttachment) expected.getAttachment();
+
+        // 网关透传
+        var passthroughGateway = gateway(true);
+        var frame = clientFrame(request(), signalAttachment);
+        passthroughGateway.writeInbound(frame.retain());
+        ByteBuf out = providerLink.readOutbound();
+        var header = ((CompositeByteBuf) out).component(0);
+        var actual = providerRead(out);
+        var actualAttachment = (GatewayAttachment) actual.getAttachment();
+
+        Assert.assertEquals("hello", ((GatewayToProviderRequest) actual.getPacket()).getMessage());
+        Assert.assertEquals(decodeGateway.attr(BaseRouteHandler.SESSION_KEY).get().getSid(), expectedAttachment.getSid());
+        Assert.assertEquals(passthroughGateway.attr(BaseRouteHandler.SESSION_KEY).get().getSid(), actualAttachment.getSid());
+        Assert.assertEquals(UID, expectedAttachment.getUid());
+        Assert.assertEquals(expectedAttachment.getUid(), actualAttachment.getUid());
+        Assert.assertEquals(expectedAttachment.isClient(), actualAttachment.isClient());
+        Assert.assertTrue(actualAttachment.isClient());
+        Assert.assertEquals(expectedAttachment.getTaskExecutorHash(), actualAttachment.getTaskExecutorHash());
+
+        // 客户端的SignalAttachment原样带到Provider，client被网关改为SIGNAL_SERVER
+        var expectedSignal = expectedAttachment.getSignalAttachment();
+        var actualSignal = actualAttachment.getSignalAttachment();
+        Assert.assertEquals(SignalAttachment.SIGNAL_SERVER, expectedSignal.getClient());
+        Assert.assertEquals(SignalAttachment.SIGNAL_SERVER, actualSignal.getClient());
+        Assert.assertEquals(signalAttachment.getSignalId(), actualSignal.getSignalId());
+        Assert.assertEquals(expectedSignal.getSignalId(), actualSignal.getSignalId());
+        Assert.assertEquals(expectedSignal.getTaskExecutorHash(), actualSignal.getTaskExecutorHash());
+        Assert.assertEquals(expectedSignal.getTimestamp(), actualSignal.getTimestamp());
+
+        // 写出之后透传的header和客户端buffer的slice都被释放
+        Assert.assertEquals(0, header.refCnt());
+        // 只剩下测试自己持有的引用
+        Assert.assertTrue(frame.release());
+
+        decodeGateway.finishAndReleaseAll();
+        passthroughGateway.finishAndReleaseAll();
+    }
+
+    @Test
+    public void decodeTest() {
+        // 心跳，Ping和IGatewayLoadBalancer的包依然完整解码
+        var channel = new EmbeddedChannel(new GatewayTcpCodecHandler(IOUtils.BYTES_PER_MB, false));
+        var loadBalancerRequest = new GatewayLoadBalancerRequest();
+        loadBalancerRequest.setGroupId(11);
+        for (var packet : List.of(new Heartbeat(), new Ping(), loadBalancerRequest)) {
+            channel.writeInbound(clientFrame(packet, null));
+            Object msg = channel.readInbound();
+            Assert.assertTrue(msg instanceof DecodedPacketInfo);
+            Assert.assertSame(packet.getClass(), ((DecodedPacketInfo) msg).getPacket().getClass());
+        }
+        Assert.assertEquals(11, ((GatewayLoadBalancerRequest) decodedPacket(channel, loadBalancerRequest)).getGroupId());
+
+        // 其它的包只读取protocolId
+        var frame = clientFrame(request(), null);
+        channel.writeInbound(frame.retain());
+        Object msg = channel.readInbound();
+        Assert.assertTrue(msg instanceof PassthroughPacketInfo);
+        Assert.assertSame(GatewayToProviderRequest.class, ((PassthroughPacketInfo) msg).getPacket().getClass());
+        ((PassthroughPacketInfo) msg).release();
+        // 只剩下测试自己持有的引用
+        Assert.assertTrue(frame.release());
+        channel.finishAndReleaseAll();
+    }
+
+    private static Object decodedPacket(EmbeddedChannel channel, Object packet) {
+        channel.writeInbound(clientFrame(packet, null));
+        return channel.<DecodedPacketInfo>readInbound().getPacket();
+    }
+
+    @Test
+    public void nullProviderSessionTest() {
+        var channel = new EmbeddedChannel(new GatewayTcpCodecHandler(IOUtils.BYTES_PER_MB, false));
+        var frame = clientFrame(request(), clientSignalAttachment());
+        channel.writeInbound(frame.retain());
+        PassthroughPacketInfo packetInfo = channel.readInbound();
+
+        // 和GatewayRouteHandler.forwardingPassthrough一样，没有providerSession的时候Router.forward释放header和body
+        var buffer = PacketService.passthroughBuffer(1, UID, packetInfo.getBody().retain());
+        var header = ((CompositeByteBuf) buffer).component(0);
+        NetContext.getRouter().forward(null, EncodedBufferPacketInfo.valueOf(packetInfo.getPacket(), buffer));
+        packetInfo.release();
+
+        Assert.assertEquals(0, buffer.refCnt());
+        Assert.assertEquals(0, header.refCnt());
+        // 只剩下测试自己持有的引用
+        Assert.assertTrue(frame.release());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void noProviderTest() {
+        NetContext.getSessionManager().removeClientSession(providerSession);
+        NetContext.getConsumer().updateProviders();
+        try {
+            // 找不到Provider的时候GatewayRouteHandler打印错误日志，客户端buffer的slice依然被释放
+            var gateway = gateway(true);
+            var frame = clientFrame(request(), null);
+            gateway.writeInbound(frame.retain());
+            Assert.assertNull(providerLink.readOutbound());
+            Assert.assertTrue(frame.release());
+            gateway.finishAndReleaseAll();
+        } finally {
+            NetContext.getSessionManager().addClientSession(providerSession);
+            NetContext.getConsumer().updateProviders();
+        }
+    }
+
+}
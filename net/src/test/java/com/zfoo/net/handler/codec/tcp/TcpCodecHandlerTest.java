@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.tcp;
+
+import com.zfoo.net.handler.codec.cipher.CipherAlgorithm;
+import com.zfoo.net.handler.codec.cipher.PacketCipher;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
+import com.zfoo.net.packet.PacketService;
+import com.zfoo.net.session.Session;
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author godotg
+ */
+public class TcpCodecHandlerTest {
+
+    /**
+     * 不需要PacketService，解析出来的包就是包体的字节
+     */
+    private static class BytesCodecHandler extends TcpCodecHandler {
+        private BytesCodecHandler(int fragmentSize) {
+            super(IOUtils.BYTES_PER_MB, fragmentSize, null);
+        }
+
+        @Override
+        protected Object decodePacket(ChannelHandlerContext ctx, ByteBuf sliceByteBuf) {
+            return ByteBufUtil.getBytes(sliceByteBuf.readSlice(sliceByteBuf.readableBytes()));
+        }
+    }
+
+    private static byte[] body(int length) {
+        var body = new byte[length];
+        for (var i = 0; i < length; i++) {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    private static ByteBuf frame(byte[] body) {
+        return Unpooled.buffer().writeInt(body.length).writeBytes(body);
+    }
+
+    private static PacketCipher newCipher(boolean server) {
+        return new PacketCipher(CipherAlgorithm.AES_CTR, new byte[16], new byte[16], server);
+    }
+
+    private static ByteBuf fragment(ByteBuf chunk) {
+        return Unpooled.wrappedBuffer(Unpooled.buffer().writeInt(PacketService.PACKET_FRAGMENT_FLAG | chunk.readableBytes()), chunk);
+    }
+
+    /**
+     * 发送方写出的所有buffer
+     */
+    private static List<ByteBuf> readOutbound(EmbeddedChannel channel) {
+        var buffers = new ArrayList<ByteBuf>();
+        ByteBuf buffer;
+        while ((buffer = channel.readOutbound()) != null) {
+            buffers.add(buffer);
+        }
+        return buffers;
+    }
+
+    @Test
+    public void fragmentRoundTripTest() {
+        var sender = new EmbeddedChannel(new BytesCodecHandler(64));
+        var receiver = new EmbeddedChannel(new BytesCodecHandler(64));
+        var big = body(1000);
+        var small = body(10);
+
+        // 小包可以插在大包的分片之间发送
+        sender.write(EncodedBufferPacketInfo.valueOf(new Object(), frame(big)));
+        sender.write(EncodedBufferPacketInfo.valueOf(new Object(), frame(small)));
+        sender.flush();
+        var buffers = readOutbound(sender);
+        Assert.assertTrue(buffers.size() > 2);
+        for (var buffer : buffers) {
+            receiver.writeInbound(buffer);
+        }
+        Assert.assertArrayEquals(small, receiver.readInbound());
+        Assert.assertArrayEquals(big, receiver.readInbound());
+        Assert.assertNull(receiver.readInbound());
+        Assert.assertFalse(sender.finishAndReleaseAll());
+        Assert.assertFalse(receiver.finishAndReleaseAll());
+    }
+
+    @Test
+    public void fragmentCipherTest() {
+        var sender = new EmbeddedChannel(new BytesCodecHandler(64));
+        var receiver = new EmbeddedChannel(new BytesCodecHandler(64));
+        sender.attr(PacketCipher.CIPHER_KEY).set(newCipher(false));
+        receiver.attr(PacketCipher.CIPHER_KEY).set(newCipher(true));
+        PacketCipher.enableEncrypt(new Session(sender));
+        sender.runPendingTasks();
+        var big = body(1000);
+        var small = body(10);
+
+        // 加密之后小包不能插在大包的分片之间，否则接收方的密钥流会错位
+        sender.write(EncodedBufferPacketInfo.valueOf(new Object(), frame(big)));
+        var smallFuture = sender.write(EncodedBufferPacketInfo.valueOf(new Object(), frame(small)));
+        sender.flush();
+        var buffers = readOutbound(sender);
+        Assert.assertTrue(buffers.size() > 2);
+        Assert.assertTrue(smallFuture.isSuccess());
+        for (var buffer : buffers) {
+            receiver.writeInbound(buffer);
+        }
+        Assert.assertArrayEquals(big, receiver.readInbound());
+        Assert.assertArrayEquals(small, receiver.readInbound());
+
+        // 后面的包也能继续解密
+        sender.writeAndFlush(EncodedBufferPacketInfo.valueOf(new Object(), frame(small)));
+        for (var buffer : readOutbound(sender)) {
+            receiver.writeInbound(buffer);
+        }
+        Assert.assertArrayEquals(small, receiver.readInbound());
+        Assert.assertNull(receiver.readInbound());
+        Assert.assertFalse(sender.finishAndReleaseAll());
+        Assert.assertFalse(receiver.finishAndReleaseAll());
+    }
+
+    @Test
+    public void fragmentInterleaveTest() {
+        var channel = new EmbeddedChannel(new BytesCodecHandler(0));
+        var big = body(300);
+        var small = body(10);
+        var frame = frame(big);
+        // 每个分片只有一个字节，也不会持有读取的buffer
+        channel.writeInbound(fragment(frame.readRetainedSlice(100)));
+        while (frame.readableBytes() > 1) {
+            channel.writeInbound(fragment(frame.readRetainedSlice(1)));
+            if (frame.readableBytes() % 50 == 0) {
+                channel.writeInbound(frame(small));
+                Assert.assertArrayEquals(small, channel.readInbound());
+            }
+        }
+        Assert.assertNull(channel.readInbound());
+        channel.writeInbound(fragment(frame.readRetainedSlice(1)));
+        frame.release();
+        Assert.assertArrayEquals(big, channel.readInbound());
+        Assert.assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void fragmentOversizeTest() {
+        var channel = new EmbeddedChannel(new TcpCodecHandler(100, 0, null));
+        // 第一个分片声明的原始包的长度超过最大长度，不需要等到接收完
+        var e = Assert.assertThrows(DecoderException.class, () -> channel.writeInbound(fragment(Unpooled.buffer().writeInt(101).writeZero(10))));
+        Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        channel.finishAndReleaseAll();
+
+        // 分片的总长度超过第一个分片声明的长度
+        var overflow = new EmbeddedChannel(new BytesCodecHandler(0));
+        overflow.writeInbound(fragment(Unpooled.buffer().writeInt(10).writeZero(6)));
+        e = Assert.assertThrows(DecoderException.class, () -> overflow.writeInbound(fragment(Unpooled.buffer().writeZero(5))));
+        Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        overflow.finishAndReleaseAll();
+    }
+
+    @Test
+    public void fragmentNestedTest() {
+        var channel = new EmbeddedChannel(new BytesCodecHandler(0));
+        // 分片拼接出来的包又是一个分片
+        var nested = Unpooled.buffer().writeInt(PacketService.PACKET_FRAGMENT_FLAG | 10).writeZero(10);
+        var e = Assert.assertThrows(DecoderException.class, () -> channel.writeInbound(fragment(nested)));
+        Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void fragmentCloseTest() {
+        // 接收到一半的分片在关闭的时候释放
+        var receiver = new EmbeddedChannel(new BytesCodecHandler(0));
+        receiver.writeInbound(fragment(Unpooled.buffer().writeInt(100).writeZero(50)));
+        receiver.close();
+        Assert.assertNull(receiver.readInbound());
+        Assert.assertFalse(receiver.finishAndReleaseAll());
+
+        // 没有发送完的分片在关闭的时候失败
+        var sender = new EmbeddedChannel(new BytesCodecHandler(64));
+        var frame = frame(body(1000));
+        var future = sender.write(EncodedBufferPacketInfo.valueOf(new Object(), frame));
+        sender.close();
+        Assert.assertTrue(future.cause() instanceof ClosedChannelException);
+        Assert.assertEquals(0, frame.refCnt());
+        sender.finishAndReleaseAll();
+    }
+
+    @Test
+    public void cipherDowngradeTest() {
+        var channel = new EmbeddedChannel(new BytesCodecHandler(0));
+        channel.attr(PacketCipher.CIPHER_KEY).set(newCipher(true));
+        var client = newCipher(false);
+
+        // 开启解密之后，第一个密文包之前依然可以收到明文包
+        var body = body(100);
+        channel.writeInbound(frame(body));
+        Assert.assertArrayEquals(body, channel.readInbound());
+
+        channel.writeInbound(client.encryptFrame(channel.alloc(), frame(body), false));
+        Assert.assertArrayEquals(body, channel.readInbound());
+
+        // 清除了加密标记的密文包被当作降级攻击，断开连接
+        var encrypted = client.encryptFrame(channel.alloc(), frame(body), false);
+        encrypted.setInt(0, encrypted.getInt(0) & ~PacketCipher.CIPHER_FLAG);
+        var e = Assert.assertThrows(DecoderException.class, () -> channel.writeInbound(encrypted));
+        Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+        Assert.assertNull(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.udp;
+
+import com.zfoo.net.core.udp.UdpPeerChannel;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author godotg
+ */
+public class ReliableUdpConnectionTest {
+
+    private static final InetSocketAddress SERVER = new InetSocketAddress("127.0.0.1", 9000);
+    private static final InetSocketAddress CLIENT = new InetSocketAddress("127.0.0.1", 9001);
+
+    @ChannelHandler.Sharable
+    private static class Collector extends ChannelInboundHandlerAdapter {
+        private final List<byte[]> messages = new ArrayList<>();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            var buffer = (ByteBuf) msg;
+            var bytes = new byte[buffer.readableBytes()];
+            buffer.readBytes(bytes);
+            buffer.release();
+            messages.add(bytes);
+        }
+    }
+
+    private final Collector serverCollector = new Collector();
+    private final Collector clientCollector = new Collector();
+    private final EmbeddedChannel serverChannel = new EmbeddedChannel(new ReliableUdpHandler(serverCollector, 1400, 64));
+    private final EmbeddedChannel clientChannel = new EmbeddedChannel();
+    private UdpPeerChannel clientPeer;
+    private int datagramCount;
+
+    private UdpPeerChannel startClient() {
+        var handler = new ReliableUdpHandler(null, 1400, 64);
+        clientChannel.pipeline().addLast(handler);
+        var peer = handler.newPeer(clientChannel, SERVER);
+        peer.pipeline().addLast(clientCollector);
+        clientChannel.eventLoop().register(peer).syncUninterruptibly();
+        // CONNECT -> COOKIE -> CONNECT(cookie) -> ACK
+        for (var i = 0; i < 3 && peer.connection().isConnecting(); i++) {
+            exchange(0);
+        }
+        Assert.assertFalse(peer.connection().isConnecting());
+        return peer;
+    }
+
+    /**
+     * 在两个channel之间传递datagram，每lossEvery个datagram丢弃一个，返回传递成功的数量
+     */
+    private int exchange(int lossEvery) {
+        var exchanged = 0;
+        DatagramPacket datagram;
+        while ((datagram = clientChannel.readOutbound()) != null) {
+            if (lossEvery > 0 && ++datagramCount % lossEvery == 0) {
+                datagram.release();
+                continue;
+            }
+            serverChannel.writeInbound(new DatagramPacket(datagram.content(), SERVER, CLIENT));
+            exchanged++;
+        }
+        while ((datagram = serverChannel.readOutbound()) != null) {
+            if (lossEvery > 0 && ++datagramCount % lossEvery == 0) {
+                datagram.release();
+                continue;
+            }
+            clientChannel.writeInbound(new DatagramPacket(datagram.content(), CLIENT, SERVER));
+            exchanged++;
+        }
+        return exchanged;
+    }
+
+    private static byte[] message(int index, int size) {
+        var bytes = new byte[size];
+        for (var i = 0; i < size; i++) {
+            bytes[i] = (byte) (index + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void reliableTest() {
+        clientPeer = startClient();
+        var sizes = new int[]{1, 10, 100, 1386, 1387, 1388, 5000, 60_000};
+        var expected = new ArrayList<byte[]>();
+        for (var i = 0; i < 100; i++) {
+            var bytes = message(i, sizes[i % sizes.length]);
+            expected.add(bytes);
+            clientPeer.write(Unpooled.wrappedBuffer(bytes));
+            if (i % 10 == 0) {
+                clientPeer.flush();
+            }
+        }
+        clientPeer.flush();
+
+        // 丢包之后依靠快速重传和超时重传保证顺序到达
+        var now = ReliableUdpConnection.now();
+        for (var i = 0; i < 1000 && serverCollector.messages.size() < expected.size(); i++) {
+            exchange(3);
+            now += 1000;
+            clientPeer.connection().update(now);
+            clientPeer.resumeWrite();
+        }
+        Assert.assertEquals(expected.size(), serverCollector.messages.size());
+        for (var i = 0; i < expected.size(); i++) {
+            Assert.assertArrayEquals(expected.get(i), serverCollector.messages.get(i));
+        }
+
+        // 所有的消息都被确认之后发送窗口是空的
+        exchange(0);
+        Assert.assertTrue(clientPeer.connection().isSendWindowAvailable());
+        Assert.assertTrue(clientPeer.isWritable());
+        clientPeer.close();
+        serverChannel.finishAndReleaseAll();
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void sequencedTest() {
+        clientPeer = startClient();
+        clientPeer.writeAndFlush(new UdpSequencedFrame(Unpooled.wrappedBuffer(message(1, 10))));
+        var old = clientChannel.<DatagramPacket>readOutbound();
+        clientPeer.writeAndFlush(new UdpSequencedFrame(Unpooled.wrappedBuffer(message(2, 10))));
+        exchange(0);
+        // 比已经收到的旧的消息直接丢弃
+        serverChannel.writeInbound(new DatagramPacket(old.content(), SERVER, CLIENT));
+        Assert.assertEquals(1, serverCollector.messages.size());
+        Assert.assertArrayEquals(message(2, 10), serverCollector.messages.get(0));
+        clientPeer.close();
+        serverChannel.finishAndReleaseAll();
+        clientChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void handshakeTest() {
+        // 没有CONNECT的datagram直接丢弃
+        serverChannel.writeInbound(new DatagramPacket(Unpooled.buffer().writeByte(ReliableUdpConnection.CMD_PUSH).writeInt(0).writeByte(0).writeShort(0), SERVER, CLIENT));
+        Assert.assertNull(serverChannel.readOutbound());
+
+        // 没有合法cookie的CONNECT只回复cookie，不会创建对端
+        serverChannel.writeInbound(new DatagramPacket(Unpooled.buffer().writeByte(ReliableUdpConnection.CMD_CONNECT).writeInt(12345), SERVER, CLIENT));
+        var reply = serverChannel.<DatagramPacket>readOutbound();
+        Assert.assertEquals(ReliableUdpConnection.CONNECT_LENGTH, reply.content().readableBytes());
+        Assert.assertEquals(ReliableUdpConnection.CMD_COOKIE, reply.content().readByte());
+        var cookie = reply.content().readInt();
+        reply.release();
+
+        // cookie和地址绑定，其它地址不能使用
+        var other = new InetSocketAddress("127.0.0.1", 9002);
+        serverChannel.writeInbound(new DatagramPacket(Unpooled.buffer().writeByte(ReliableUdpConnection.CMD_CONNECT).writeInt(cookie), SERVER, other));
+        reply = serverChannel.readOutbound();
+        Assert.assertEquals(ReliableUdpConnection.CMD_COOKIE, reply.content().readByte());
+        reply.release();
+
+        // 带上cookie之后创建对端，并且回复确认
+        serverChannel.writeInbound(new DatagramPacket(Unpooled.buffer().writeByte(ReliableUdpConnection.CMD_CONNECT).writeInt(cookie), SERVER, CLIENT));
+        reply = serverChannel.readOutbound();
+        Assert.assertEquals(ReliableUdpConnection.CMD_ACK, reply.content().readByte());
+        reply.release();
+        Assert.assertFalse(serverChannel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void maxPeersTest() {
+        var server = new EmbeddedChannel(new ReliableUdpHandler(serverCollector, 1400, 64, 1));
+        for (var port = 9001; port <= 9002; port++) {
+            var address = new InetSocketAddress("127.0.0.1", port);
+            server.writeInbound(new DatagramPacket(Unpooled.buffer().writeByte(ReliableUdpConnection.CMD_CONNECT).writeInt(0), SERVER, address));
+            var cookie = server.<DatagramPacket>readOutbound();
+            server.writeInbound(new DatagramPacket(cookie.content().setByte(0, ReliableUdpConnection.CMD_CONNECT), SERVER, address));
+            var reply = server.<DatagramPacket>readOutbound();
+            // 只有第一个对端被创建并且回复了确认
+            if (port == 9001) {
+                Assert.assertEquals(ReliableUdpConnection.CMD_ACK, reply.content().readByte());
+                reply.release();
+            } else {
+                Assert.assertNull(reply);
+            }
+        }
+        Assert.assertFalse(server.finishAndReleaseAll());
+    }
+
+    @Test
+    public void batchTest() {
+        clientPeer = startClient();
+        // 一次flush的多个小消息合并到一个datagram中
+        for (var i = 0; i < 40; i++) {
+            clientPeer.write(Unpooled.wrappedBuffer(message(i, 20)));
+        }
+        clientPeer.flush();
+        // 一个数据的datagram和一个确认的datagram
+        Assert.assertEquals(2, exchange(0));
+        Assert.assertEquals(40, serverCollector.messages.size());
+        clientPeer.close();
+        serverChannel.finishAndReleaseAll();
+        clientChannel.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.websocket;
+
+import com.zfoo.net.handler.codec.compress.PacketCompressor;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ */
+public class WebSocketCodecHandlerTest {
+
+    // 已经编码过的包直接透传buffer，不需要PacketService
+    private EncodedBufferPacketInfo packet(int bodyLength) {
+        var buffer = Unpooled.buffer().writeInt(bodyLength).writeZero(bodyLength);
+        return EncodedBufferPacketInfo.valueOf(new Object(), buffer);
+    }
+
+    @Test
+    public void coalesceTest() {
+        var channel = new EmbeddedChannel(new WebSocketCodecHandler(null, 64));
+        var first = channel.write(packet(10));
+        var second = channel.write(packet(20));
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertFalse(first.isDone());
+
+        channel.flush();
+        var frame = channel.<BinaryWebSocketFrame>readOutbound();
+        Assert.assertEquals(14 + 24, frame.content().readableBytes());
+        frame.release();
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertTrue(first.isSuccess());
+        Assert.assertTrue(second.isSuccess());
+        Assert.assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void coalesceSizeTest() {
+        var channel = new EmbeddedChannel(new WebSocketCodecHandler(null, 64));
+        // 超过合并的大小之后，前面的包先单独成帧
+        channel.write(packet(40));
+        channel.write(packet(40));
+        channel.write(packet(10));
+        channel.flush();
+        assertFrame(channel, 44);
+        assertFrame(channel, 44 + 14);
+        Assert.assertNull(channel.readOutbound());
+
+        // 其它的帧不能插队到合并的包的前面
+        channel.write(packet(10));
+        channel.writeAndFlush(new TextWebSocketFrame("text"));
+        assertFrame(channel, 14);
+        var text = channel.<TextWebSocketFrame>readOutbound();
+        Assert.assertEquals("text", text.text());
+        text.release();
+        Assert.assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void noCoalesceTest() {
+        var channel = new EmbeddedChannel(new WebSocketCodecHandler(null, 0));
+        channel.write(packet(10));
+        channel.write(packet(20));
+        channel.flush();
+        assertFrame(channel, 14);
+        assertFrame(channel, 24);
+        Assert.assertFalse(channel.finishAndReleaseAll());
+    }
+
+    @Test
+    public void ignoreCompressHelloTest() {
+        // 没有开启压缩，收到对方的压缩握手不回复也不断开连接
+        var channel = new EmbeddedChannel(new WebSocketCodecHandler(null, 0));
+        channel.writeInbound(new BinaryWebSocketFrame(Unpooled.buffer().writeInt(PacketCompressor.COMPRESS_FLAG)));
+        Assert.assertTrue(channel.isActive());
+        Assert.assertNull(channel.readInbound());
+        Assert.assertNull(channel.readOutbound());
+        Assert.assertFalse(channel.finishAndReleaseAll());
+    }
+
+    private void assertFrame(EmbeddedChannel channel, int length) {
+        var frame = channel.<BinaryWebSocketFrame>readOutbound();
+        Assert.assertEquals(length, frame.content().readableBytes());
+        frame.release();
+    }
+
+}
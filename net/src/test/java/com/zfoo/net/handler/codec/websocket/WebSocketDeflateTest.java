@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.codec.websocket;
+
+import com.zfoo.protocol.util.IOUtils;
+import com.zfoo.protocol.util.StringUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.*;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtension;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * 和WebsocketServer一样的pipeline，模拟浏览器发送permessage-deflate压缩的帧
+ *
+ * @author godotg
+ */
+public class WebSocketDeflateTest {
+
+    private static final String HANDSHAKE = "GET /websocket HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+            + "Sec-WebSocket-Version: 13\r\n"
+            + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+            + "\r\n";
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new HttpServerCodec()
+            , new HttpObjectAggregator(16 * IOUtils.BYTES_PER_MB)
+            , WebSocketDeflate.newServerHandler(15, IOUtils.BYTES_PER_MB)
+            , new WebSocketServerProtocolHandler("/websocket", null, true)
+            , new WebSocketFrameAggregator(IOUtils.BYTES_PER_MB));
+
+    // 客户端的压缩上下文在多个消息之间保留，和浏览器一样使用默认的压缩级别
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final EmbeddedChannel client = new EmbeddedChannel(new WebSocket13FrameEncoder(true));
+
+    @After
+    public void after() {
+        deflater.end();
+        channel.finishAndReleaseAll();
+        client.finishAndReleaseAll();
+    }
+
+    private void handshake() {
+        channel.writeInbound(Unpooled.copiedBuffer(StringUtils.bytes(HANDSHAKE)));
+        channel.runPendingTasks();
+        var response = new StringBuilder();
+        ByteBuf buffer;
+        while ((buffer = channel.readOutbound()) != null) {
+            response.append(StringUtils.bytesToString(ByteBufUtil.getBytes(buffer)));
+            buffer.release();
+        }
+        Assert.assertTrue(response.toString(), response.toString().contains("101 Switching Protocols"));
+        Assert.assertTrue(response.toString(), response.toString().contains("permessage-deflate"));
+    }
+
+    /**
+     * 浏览器的压缩方式，sync flush之后去掉末尾的0x00 0x00 0xff 0xff
+     */
+    private byte[] deflate(byte[] bytes) {
+        deflater.setInput(bytes);
+        var out = Unpooled.buffer();
+        var buffer = new byte[IOUtils.BYTES_PER_KB];
+        int count;
+        do {
+            count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            out.writeBytes(buffer, 0, count);
+        } while (count == buffer.length);
+        var compressed = ByteBufUtil.getBytes(out, 0, out.readableBytes() - 4);
+        out.release();
+        return compressed;
+    }
+
+    /**
+     * 客户端发送的帧需要mask
+     */
+    private void send(WebSocketFrame frame) {
+        client.writeOutbound(frame);
+        ByteBuf buffer;
+        while ((buffer = client.readOutbound()) != null) {
+            channel.writeInbound(buffer);
+        }
+    }
+
+    private byte[] receive() {
+        var frame = channel.<BinaryWebSocketFrame>readInbound();
+        Assert.assertNotNull(frame);
+        Assert.assertEquals(0, frame.rsv());
+        var bytes = ByteBufUtil.getBytes(frame.content());
+        frame.release();
+        return bytes;
+    }
+
+    private static byte[] message(int length) {
+        var bytes = new byte[length];
+        for (var i = 0; i < length; i++) {
+            bytes[i] = (byte) (i % 100);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void inflateTest() {
+        handshake();
+        var first = message(10 * IOUtils.BYTES_PER_KB);
+        send(new BinaryWebSocketFrame(true, WebSocketExtension.RSV1, Unpooled.wrappedBuffer(deflate(first))));
+        Assert.assertArrayEquals(first, receive());
+
+        // 第二个消息引用了第一个消息的滑动窗口
+        var second = message(5 * IOUtils.BYTES_PER_KB);
+        var compressed = deflate(second);
+        Assert.assertTrue(compressed.length < 100);
+        send(new BinaryWebSocketFrame(true, WebSocketExtension.RSV1, Unpooled.wrappedBuffer(compressed)));
+        Assert.assertArrayEquals(second, receive());
+
+        // 没有压缩的帧直接透传
+        var raw = message(10);
+        send(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(raw)));
+        Assert.assertArrayEquals(raw, receive());
+        Assert.assertTrue(channel.isActive());
+    }
+
+    @Test
+    public void maxLengthTest() {
+        handshake();
+        // 刚好1M的消息可以正常解压
+        var message = new byte[IOUtils.BYTES_PER_MB];
+        send(new BinaryWebSocketFrame(true, WebSocketExtension.RSV1, Unpooled.wrappedBuffer(deflate(message))));
+        Assert.assertArrayEquals(message, receive());
+        Assert.assertTrue(channel.isActive());
+    }
+
+    @Test
+    public void deflateBombTest() {
+        handshake();
+        // 32M的0压缩之后只有32K，小于WebSocketServerProtocolHandler默认的64K帧长度限制，解压超过1M就断开连接，不会解压出整个帧
+        var compressed = deflate(new byte[32 * IOUtils.BYTES_PER_MB]);
+        Assert.assertTrue(compressed.length < 64 * IOUtils.BYTES_PER_KB);
+        var exception = Assert.assertThrows(CorruptedWebSocketFrameException.class
+                , () -> send(new BinaryWebSocketFrame(true, WebSocketExtension.RSV1, Unpooled.wrappedBuffer(compressed))));
+        // 在解压的时候就断开了，不是解压完之后被WebSocketFrameAggregator拒绝
+        Assert.assertEquals(WebSocketCloseStatus.MESSAGE_TOO_BIG, exception.closeStatus());
+        Assert.assertTrue(exception.getMessage(), exception.getMessage().startsWith("inflated"));
+        Assert.assertNull(channel.readInbound());
+        Assert.assertFalse(channel.isActive());
+    }
+
+    @Test
+    public void fragmentedDeflateBombTest() {
+        handshake();
+        // 每个分片都小于1M，整个消息超过了1M
+        var compressed = deflate(new byte[3 * IOUtils.BYTES_PER_MB / 2]);
+        var half = compressed.length / 2;
+        send(new BinaryWebSocketFrame(false, WebSocketExtension.RSV1, Unpooled.wrappedBuffer(Arrays.copyOfRange(compressed, 0, half))));
+        Assert.assertTrue(channel.isActive());
+        Assert.assertThrows(CorruptedWebSocketFrameException.class
+                , () -> send(new ContinuationWebSocketFrame(true, 0, Unpooled.wrappedBuffer(Arrays.copyOfRange(compressed, half, compressed.length)))));
+        Assert.assertNull(channel.readInbound());
+        Assert.assertFalse(channel.isActive());
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.handler.idle;
+
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.packet.common.Heartbeat;
+import com.zfoo.scheduler.util.TimeUtils;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ */
+public class IdleHandlerTest {
+
+    private static final long SECOND = 1000;
+
+    @Test
+    public void serverIdleTest() {
+        var handler = new ServerIdleHandler(60 * SECOND);
+        var channel = new EmbeddedChannel(handler);
+        Assert.assertSame(handler, channel.attr(AbstractIdleHandler.IDLE_KEY).get());
+        var now = handler.lastActiveTime;
+
+        // 超时之前有读写，按照剩余的时间重新检查
+        handler.check(now + 59 * SECOND);
+        Assert.assertTrue(channel.isActive());
+
+        handler.check(now + 60 * SECOND);
+        Assert.assertFalse(channel.isActive());
+    }
+
+    @Test
+    public void serverWriteIdleTest() {
+        var handler = new ServerIdleHandler(60 * SECOND);
+        var channel = new EmbeddedChannel(handler);
+        var now = handler.lastReadTime;
+
+        // 服务器的推送不能让断线的客户端一直保持连接
+        channel.writeOutbound(EncodedPacketInfo.valueOf(new Heartbeat(), null));
+        handler.lastActiveTime = now + 59 * SECOND;
+        handler.check(now + 60 * SECOND);
+        Assert.assertFalse(channel.isActive());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void adaptiveTimeoutTest() {
+        var handler = new ServerIdleHandler(180 * SECOND);
+        var channel = new EmbeddedChannel(handler);
+        var now = TimeUtils.now();
+
+        // 只有一次心跳，还不知道心跳间隔
+        handler.onHeartbeat(now);
+        Assert.assertEquals(180 * SECOND, handler.idleTimeoutMillis());
+
+        handler.onHeartbeat(now + 20 * SECOND);
+        handler.onHeartbeat(now + 40 * SECOND);
+        Assert.assertEquals(20 * SECOND * ServerIdleHandler.HEARTBEAT_MISS, handler.idleTimeoutMillis());
+
+        // 不会小于最小的超时时间，也不会超过配置的超时时间
+        for (var i = 1; i <= 20; i++) {
+            handler.onHeartbeat(now + 40 * SECOND + i);
+        }
+        Assert.assertEquals(ServerIdleHandler.MIN_IDLE_TIMEOUT, handler.idleTimeoutMillis());
+        handler.onHeartbeat(now + 3600 * SECOND);
+        Assert.assertEquals(180 * SECOND, handler.idleTimeoutMillis());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void clientHeartbeatTest() {
+        var handler = new ClientIdleHandler(60 * SECOND);
+        var channel = new EmbeddedChannel(handler);
+        var now = handler.lastWriteTime;
+
+        handler.check(now + 30 * SECOND);
+        Assert.assertNull(channel.readOutbound());
+
+        handler.check(now + 60 * SECOND);
+        var packet = channel.<EncodedPacketInfo>readOutbound();
+        Assert.assertEquals(Heartbeat.class, packet.getPacket().getClass());
+        Assert.assertTrue(channel.isActive());
+
+        // 发送心跳之后重新计时
+        handler.check(handler.lastWriteTime + 30 * SECOND);
+        Assert.assertNull(channel.readOutbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void clientPushedTest() {
+        var client = new ClientIdleHandler(60 * SECOND);
+        var clientChannel = new EmbeddedChannel(client);
+        var server = new ServerIdleHandler(180 * SECOND);
+        var serverChannel = new EmbeddedChannel(server);
+        var start = client.lastWriteTime;
+        server.lastReadTime = start;
+
+        // 服务器每10秒推送一次，客户端只接收不发送业务包，按照模拟的时间记录读写
+        var heartbeats = 0;
+        for (var now = start; now <= start + 600 * SECOND; now += 10 * SECOND) {
+            client.lastReadTime = now;
+            client.lastActiveTime = now;
+            client.check(now);
+            EncodedPacketInfo packet;
+            while ((packet = clientChannel.readOutbound()) != null) {
+                Assert.assertEquals(Heartbeat.class, packet.getPacket().getClass());
+                client.lastWriteTime = now;
+                server.lastReadTime = now;
+                heartbeats++;
+            }
+            server.check(now);
+            Assert.assertTrue(serverChannel.isActive());
+        }
+        // 收到推送不影响心跳，每60秒发送一次
+        Assert.assertEquals(10, heartbeats);
+        clientChannel.finishAndReleaseAll();
+        serverChannel.finishAndReleaseAll();
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.packet;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.packet.common.Message;
+import com.zfoo.net.router.attachment.GatewayAttachment;
+import com.zfoo.net.router.attachment.SignalAttachment;
+import com.zfoo.net.session.Session;
+import com.zfoo.net.task.PacketReceiverTask;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+
+/**
+ * inbound-recycle的对象放回对象池之后字段都被清除，还在使用中的对象不会被再次取出
+ *
+ * @author godotg
+ */
+public class InboundRecycleTest {
+
+    private static final int NUM = 100;
+
+    private static ClassPathXmlApplicationContext context;
+
+    @BeforeClass
+    public static void setup() {
+        context = new ClassPathXmlApplicationContext("config.xml");
+        NetContext.getConfigManager().getLocalConfig().setInboundRecycle(true);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        NetContext.getConfigManager().getLocalConfig().setInboundRecycle(false);
+        context.close();
+    }
+
+    private static void assertDistinct(ArrayList<?> objects) {
+        var identitySet = Collections.newSetFromMap(new IdentityHashMap<>());
+        identitySet.addAll(objects);
+        Assert.assertEquals(objects.size(), identitySet.size());
+    }
+
+    @Test
+    public void decodedPacketInfoTest() {
+        for (var round = 0; round < 2; round++) {
+            var packetInfos = new ArrayList<DecodedPacketInfo>();
+            for (var i = 0; i < NUM; i++) {
+                packetInfos.add(DecodedPacketInfo.recycledValueOf("packet" + i, "attachment" + i));
+            }
+            // 同时在使用中的对象都是不同的对象，字段没有被覆盖
+            assertDistinct(packetInfos);
+            for (var i = 0; i < NUM; i++) {
+                Assert.assertEquals("packet" + i, packetInfos.get(i).getPacket());
+                Assert.assertEquals("attachment" + i, packetInfos.get(i).getAttachment());
+            }
+            for (var packetInfo : packetInfos) {
+                packetInfo.recycle();
+                Assert.assertNull(packetInfo.getPacket());
+                Assert.assertNull(packetInfo.getAttachment());
+            }
+        }
+
+        // 不是从对象池中获取的对象recycle没有任何作用
+        var packetInfo = DecodedPacketInfo.valueOf("packet", "attachment");
+        packetInfo.recycle();
+        Assert.assertEquals("packet", packetInfo.getPacket());
+        Assert.assertEquals("attachment", packetInfo.getAttachment());
+    }
+
+    @Test
+    public void packetReceiverTaskTest() {
+        var session = new Session(new EmbeddedChannel());
+        for (var round = 0; round < 2; round++) {
+            var tasks = new ArrayList<PacketReceiverTask>();
+            for (var i = 0; i < NUM; i++) {
+                tasks.add(PacketReceiverTask.valueOf(session, "packet" + i, "attachment" + i));
+            }
+            assertDistinct(tasks);
+            for (var i = 0; i < NUM; i++) {
+                Assert.assertSame(session, tasks.get(i).getSession());
+                Assert.assertEquals("packet" + i, tasks.get(i).getPacket());
+                Assert.assertEquals("attachment" + i, tasks.get(i).getAttachment());
+            }
+            for (var task : tasks) {
+                task.recycle();
+                Assert.assertNull(task.getSession());
+                Assert.assertNull(task.getPacket());
+                Assert.assertNull(task.getAttachment());
+            }
+        }
+
+        var task = new PacketReceiverTask(session, "packet", "attachment");
+        task.recycle();
+        Assert.assertSame(session, task.getSession());
+        Assert.assertEquals("packet", task.getPacket());
+    }
+
+    @Test
+    public void gatewayAttachmentTest() {
+        var session = new Session(new EmbeddedChannel());
+        session.setUid(7);
+        for (var round = 0; round < 2; round++) {
+            var attachments = new ArrayList<GatewayAttachment>();
+            for (var i = 0; i < NUM; i++) {
+                var attachment = GatewayAttachment.recycledValueOf(session);
+                attachment.setTaskExecutorHash(i + 1);
+                attachment.setSignalAttachment(new SignalAttachment());
+                attachments.add(attachment);
+            }
+            assertDistinct(attachments);
+            for (var i = 0; i < NUM; i++) {
+                var attachment = attachments.get(i);
+                Assert.assertTrue(attachment.isClient());
+                Assert.assertEquals(session.getSid(), attachment.getSid());
+                Assert.assertEquals(7, attachment.getUid());
+                Assert.assertEquals(i + 1, attachment.getTaskExecutorHash());
+                Assert.assertNotNull(attachment.getSignalAttachment());
+            }
+            for (var attachment : attachments) {
+                attachment.recycle();
+                Assert.assertFalse(attachment.isClient());
+                Assert.assertEquals(0, attachment.getSid());
+                Assert.assertEquals(0, attachment.getUid());
+                Assert.assertEquals(0, attachment.getTaskExecutorHash());
+                Assert.assertNull(attachment.getSignalAttachment());
+            }
+        }
+    }
+
+    @Test
+    public void writeKeepsAttachmentTest() {
+        var session = new Session(new EmbeddedChannel());
+        session.setUid(7);
+        var attachment = GatewayAttachment.recycledValueOf(session);
+        var buffer = ByteBufAllocator.DEFAULT.ioBuffer();
+        try {
+            // 编码不会把attachment放回对象池，什么时候放回由持有attachment的调用者决定
+            NetContext.getPacketService().write(buffer, Message.valueInfo("hello"), attachment);
+            Assert.assertTrue(attachment.isClient());
+            Assert.assertEquals(session.getSid(), attachment.getSid());
+            Assert.assertEquals(7, attachment.getUid());
+        } finally {
+            buffer.release();
+            attachment.recycle();
+        }
+    }
+
+}
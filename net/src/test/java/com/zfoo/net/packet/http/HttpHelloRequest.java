@@ -12,12 +12,14 @@
 
 package com.zfoo.net.packet.http;
 
+import com.zfoo.net.anno.HttpRoute;
 import com.zfoo.protocol.anno.Protocol;
 
 /**
  * @author godotg
  */
 @Protocol(id = 1700)
+@HttpRoute("/hello")
 public class HttpHelloRequest {
 
     private String message;
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.router;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * @author godotg
+ */
+public class PacketStatisticsTest {
+
+    @Test
+    public void statisticsTest() throws Exception {
+        PacketStatistics.enable();
+        Assert.assertTrue(PacketStatistics.isEnabled());
+
+        short protocolId = 30000;
+        PacketStatistics.recordIn(protocolId, 100);
+        PacketStatistics.recordIn(protocolId, 50);
+        PacketStatistics.recordOut(protocolId, 10);
+        PacketStatistics.recordSend(protocolId);
+        // 网关透传的包不属于任何协议
+        PacketStatistics.recordIn((short) -1, 100);
+
+        // 0微秒，3微秒，1毫秒
+        PacketStatistics.recordHandler(protocolId, 100);
+        PacketStatistics.recordHandler(protocolId, 3_000);
+        PacketStatistics.recordHandler(protocolId, 1_000_000);
+
+        var counter = PacketStatistics.protocolCounters().stream().filter(it -> it.getProtocolId() == protocolId).findFirst().orElseThrow();
+        Assert.assertEquals(150, counter.getBytesIn());
+        Assert.assertEquals(2, counter.getPacketsIn());
+        Assert.assertEquals(10, counter.getBytesOut());
+        Assert.assertEquals(1, counter.getSent());
+        Assert.assertEquals(3, counter.getHandled());
+        var buckets = counter.getLatencyBuckets();
+        Assert.assertEquals(1, buckets[0]);
+        Assert.assertEquals(1, buckets[2]);
+        Assert.assertEquals(1, buckets[10]);
+        Assert.assertEquals(4, counter.getP50Micros());
+        Assert.assertEquals(1024, counter.getP99Micros());
+
+        var prometheus = PacketStatistics.prometheus();
+        Assert.assertTrue(prometheus.contains("zfoo_packet_in_bytes_total{protocol=\"30000\",name=\"30000\"} 150"));
+        Assert.assertTrue(prometheus.contains("zfoo_packet_handler_microseconds_bucket{protocol=\"30000\",name=\"30000\",le=\"4\"} 2"));
+        Assert.assertTrue(prometheus.contains("zfoo_packet_handler_microseconds_count{protocol=\"30000\",name=\"30000\"} 3"));
+
+        // JMX
+        var mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        var objectName = new ObjectName(PacketStatistics.OBJECT_NAME);
+        Assert.assertEquals(150L, mBeanServer.getAttribute(objectName, "BytesIn"));
+        var protocols = (CompositeData[]) mBeanServer.getAttribute(objectName, "Protocols");
+        Assert.assertEquals("30000", protocols[0].get("protocolName"));
+        Assert.assertEquals(3L, protocols[0].get("handled"));
+    }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.router;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.handler.BaseRouteHandler;
+import com.zfoo.net.handler.codec.tcp.TcpCodecHandler;
+import com.zfoo.net.packet.DecodedPacketInfo;
+import com.zfoo.net.packet.common.Message;
+import com.zfoo.net.session.Session;
+import com.zfoo.protocol.util.IOUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 广播只序列化一次，所有的session收到相同的字节，共享的buffer在所有的写入完成之后被释放
+ *
+ * @author godotg
+ */
+public class RouterBroadcastTest {
+
+    private static final int SESSION_NUM = 4;
+
+    private static final ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("config.xml");
+
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    @AfterClass
+    public static void tearDown() {
+        context.close();
+    }
+
+    @After
+    public void after() {
+        NetContext.getConfigManager().getLocalConfig().setUnwritablePolicy(null);
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+    }
+
+    private Session session() {
+        var channel = new EmbeddedChannel(new TcpCodecHandler(IOUtils.BYTES_PER_MB, 0, null), new BaseRouteHandler() {
+        });
+        channels.add(channel);
+        return BaseRouteHandler.initChannel(channel);
+    }
+
+    private static void setWritable(Session session, boolean writable) {
+        var channel = (EmbeddedChannel) session.getChannel();
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, writable);
+        channel.runPendingTasks();
+    }
+
+    /**
+     * writeAndFlushLater的flush是event loop中的任务
+     */
+    private static ByteBuf readOutbound(Session session) {
+        var channel = (EmbeddedChannel) session.getChannel();
+        channel.runPendingTasks();
+        ByteBuf buffer = channel.readOutbound();
+        Assert.assertNull(channel.readOutbound());
+        return buffer;
+    }
+
+    private static Message decode(ByteBuf buffer) {
+        var channel = new EmbeddedChannel(new TcpCodecHandler(IOUtils.BYTES_PER_MB, 0, null));
+        channel.writeInbound(buffer);
+        DecodedPacketInfo decodedPacketInfo = channel.readInbound();
+        channel.finishAndReleaseAll();
+        return (Message) decodedPacketInfo.getPacket();
+    }
+
+    @Test
+    public void broadcastTest() {
+        var sessions = new ArrayList<Session>();
+        for (var i = 0; i < SESSION_NUM; i++) {
+            sessions.add(session());
+        }
+
+        NetContext.getRouter().broadcast(sessions, Message.valueInfo("hello"));
+
+        var buffers = new ArrayList<ByteBuf>();
+        for (var session : sessions) {
+            buffers.add(readOutbound(session));
+        }
+        // 每个session收到的是同一个buffer的副本，说明只序列化了一次
+        var shared = buffers.get(0).unwrap();
+        Assert.assertNotNull(shared);
+        for (var buffer : buffers) {
+            Assert.assertSame(shared, buffer.unwrap());
+            Assert.assertTrue(ByteBufUtil.equals(buffers.get(0), buffer));
+        }
+        Assert.assertEquals(SESSION_NUM, shared.refCnt());
+
+        // 前面的session写出之后共享的buffer依然可读
+        for (var i = 0; i < SESSION_NUM - 1; i++) {
+            buffers.get(i).release();
+        }
+        Assert.assertEquals("hello", decode(buffers.get(SESSION_NUM - 1)).getMessage());
+        Assert.assertEquals(0, shared.refCnt());
+    }
+
+    @Test
+    public void skippedSessionTest() {
+        NetContext.getConfigManager().getLocalConfig().setUnwritablePolicy(UnwritablePolicy.DROP);
+        var active = session();
+        var inactive = session();
+        inactive.getChannel().close();
+        var unwritable = session();
+        setWritable(unwritable, false);
+        var sessions = new ArrayList<Session>();
+        sessions.add(active);
+        sessions.add(inactive);
+        sessions.add(null);
+        sessions.add(unwritable);
+
+        NetContext.getRouter().broadcast(sessions, Message.valueInfo("hello"));
+
+        // 跳过的session没有持有共享buffer的引用
+        Assert.assertNull(readOutbound(inactive));
+        Assert.assertNull(readOutbound(unwritable));
+        var buffer = readOutbound(active);
+        var shared = buffer.unwrap();
+        Assert.assertEquals(1, shared.refCnt());
+        Assert.assertEquals("hello", decode(buffer).getMessage());
+        Assert.assertEquals(0, shared.refCnt());
+    }
+
+    @Test
+    public void unwritableWriteTest() {
+        NetContext.getConfigManager().getLocalConfig().setUnwritablePolicy(UnwritablePolicy.WRITE);
+        var writable = session();
+        var unwritable = session();
+        setWritable(unwritable, false);
+
+        NetContext.getRouter().broadcast(List.of(writable, unwritable), Message.valueInfo("hello"));
+
+        // WRITE策略下不可写的session排队，重新可写之后写入相同的字节
+        var first = readOutbound(writable);
+        Assert.assertNull(readOutbound(unwritable));
+        Assert.assertEquals(2, first.unwrap().refCnt());
+        setWritable(unwritable, true);
+        var second = readOutbound(unwritable);
+        var shared = first.unwrap();
+        Assert.assertSame(shared, second.unwrap());
+        Assert.assertTrue(ByteBufUtil.equals(first, second));
+        first.release();
+        second.release();
+        Assert.assertEquals(0, shared.refCnt());
+    }
+
+}
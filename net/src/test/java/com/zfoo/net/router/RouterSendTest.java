@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.router;
+
+import com.zfoo.net.NetContext;
+import com.zfoo.net.handler.BaseRouteHandler;
+import com.zfoo.net.packet.EncodedBufferPacketInfo;
+import com.zfoo.net.packet.EncodedPacketInfo;
+import com.zfoo.net.session.Session;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * channel不可写的时候各个unwritable-policy和SendGuarantee的处理，CRITICAL的消息排在排队的NORMAL消息前面
+ *
+ * @author godotg
+ */
+public class RouterSendTest {
+
+    private static final ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("config.xml");
+
+    private final EmbeddedChannel channel = new EmbeddedChannel(new BaseRouteHandler() {
+    });
+
+    @After
+    public void after() {
+        NetContext.getConfigManager().getLocalConfig().setUnwritablePolicy(null);
+        channel.finishAndReleaseAll();
+    }
+
+    private Session session() {
+        return BaseRouteHandler.initChannel(channel);
+    }
+
+    /**
+     * 用户定义的不可写标记，和发送缓冲区的高水位一样让channel不可写，重新可写的channelWritabilityChanged是在event loop中延迟触发的
+     */
+    private void setWritable(boolean writable) {
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, writable);
+        channel.runPendingTasks();
+    }
+
+    private List<Object> readPackets() {
+        var packets = new ArrayList<Object>();
+        EncodedPacketInfo packetInfo;
+        while ((packetInfo = channel.readOutbound()) != null) {
+            packets.add(packetInfo.getPacket());
+        }
+        return packets;
+    }
+
+    private void usePolicy(UnwritablePolicy policy) {
+        NetContext.getConfigManager().getLocalConfig().setUnwritablePolicy(policy);
+    }
+
+    @Test
+    public void writePolicyTest() {
+        usePolicy(UnwritablePolicy.WRITE);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        router.send(session, "normal1", SendGuarantee.NORMAL);
+        router.send(session, "droppable", SendGuarantee.DROPPABLE);
+        router.sendLatest(session, "position1-old", 1);
+        router.sendLatest(session, "position1", 1);
+        router.send(session, "normal2", SendGuarantee.NORMAL);
+        router.send(session, "critical", SendGuarantee.CRITICAL);
+        // CRITICAL的消息不会排在不可写之后发送的NORMAL消息后面
+        Assert.assertEquals(List.of("critical"), readPackets());
+        Assert.assertTrue(channel.isActive());
+
+        // 重新可写之后先按顺序写入排队的NORMAL消息，再写入合并的消息
+        setWritable(true);
+        router.send(session, "normal3", SendGuarantee.NORMAL);
+        Assert.assertEquals(List.of("normal1", "normal2", "position1", "normal3"), readPackets());
+        Assert.assertFalse(session.hasHeldPackets());
+
+        var counter = session.getUnwritableCounter();
+        Assert.assertEquals(1, counter.getWritten());
+        Assert.assertEquals(2, counter.getHeld());
+        Assert.assertEquals(1, counter.getDropped());
+        Assert.assertEquals(2, counter.getCoalesced());
+        Assert.assertEquals(0, counter.getDisconnected());
+    }
+
+    @Test
+    public void heldOrderTest() {
+        usePolicy(UnwritablePolicy.WRITE);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        router.send(session, "normal1", SendGuarantee.NORMAL);
+        // channel已经可写，但是channelWritabilityChanged还没有执行，新的NORMAL消息依然排在排队的消息后面
+        channel.unsafe().outboundBuffer().setUserDefinedWritability(1, true);
+        router.send(session, "normal2", SendGuarantee.NORMAL);
+        Assert.assertTrue(readPackets().isEmpty());
+
+        channel.runPendingTasks();
+        Assert.assertEquals(List.of("normal1", "normal2"), readPackets());
+        // 只有不可写的时候排队的消息才会被计数
+        Assert.assertEquals(1, session.getUnwritableCounter().getHeld());
+    }
+
+    @Test
+    public void heldReleaseTest() {
+        usePolicy(UnwritablePolicy.WRITE);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        var heldBefore = UnwritableStatistics.held();
+        var buffer = Unpooled.buffer().writeInt(1);
+        router.forward(session, EncodedBufferPacketInfo.valueOf("forward", buffer));
+        Assert.assertTrue(readPackets().isEmpty());
+        Assert.assertEquals(1, buffer.refCnt());
+        Assert.assertEquals(heldBefore + 1, UnwritableStatistics.held());
+
+        // 断开之后排队的buffer被释放
+        channel.close();
+        Assert.assertEquals(0, buffer.refCnt());
+        Assert.assertFalse(session.hasHeldPackets());
+    }
+
+    @Test
+    public void dropPolicyTest() {
+        usePolicy(UnwritablePolicy.DROP);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        router.send(session, "normal", SendGuarantee.NORMAL);
+        router.send(session, "droppable", SendGuarantee.DROPPABLE);
+        router.sendLatest(session, "latest", 1);
+        router.send(session, "critical", SendGuarantee.CRITICAL);
+        Assert.assertEquals(List.of("critical"), readPackets());
+
+        // 重新可写之后没有等待中的消息
+        setWritable(true);
+        Assert.assertTrue(readPackets().isEmpty());
+    }
+
+    @Test
+    public void coalescePolicyTest() {
+        usePolicy(UnwritablePolicy.COALESCE);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        router.sendLatest(session, "position1-old", 1);
+        router.sendLatest(session, "position1", 1);
+        router.sendLatest(session, "position2", 2);
+        router.send(session, "normal", SendGuarantee.NORMAL);
+        router.send(session, "critical", SendGuarantee.CRITICAL);
+        Assert.assertEquals(List.of("critical"), readPackets());
+
+        // channel重新可写的时候每个key只写入最新的消息
+        setWritable(true);
+        Assert.assertEquals(Set.of("position1", "position2"), Set.copyOf(readPackets()));
+        Assert.assertTrue(session.getCoalescedPackets().isEmpty());
+
+        // 可写的时候直接写入
+        router.sendLatest(session, "position1-new", 1);
+        Assert.assertEquals(List.of("position1-new"), readPackets());
+    }
+
+    @Test
+    public void coalesceRaceTest() {
+        usePolicy(UnwritablePolicy.COALESCE);
+        var router = NetContext.getRouter();
+        // 放入合并消息之前channel变为可写，channelWritabilityChanged中的writeCoalesced已经执行过了
+        var session = new Session(channel) {
+            @Override
+            public boolean coalesce(Object coalesceKey, Object packet) {
+                setWritable(true);
+                return super.coalesce(coalesceKey, packet);
+            }
+        };
+        channel.attr(BaseRouteHandler.SESSION_KEY).set(session);
+        setWritable(false);
+
+        router.sendLatest(session, "position", 1);
+        Assert.assertTrue(channel.isWritable());
+        // sendLatest放入之后再次检查，在event loop中写入，不需要等待下一次可写
+        channel.runPendingTasks();
+        Assert.assertEquals(List.of("position"), readPackets());
+        Assert.assertTrue(session.getCoalescedPackets().isEmpty());
+    }
+
+    @Test
+    public void disconnectPolicyTest() {
+        usePolicy(UnwritablePolicy.DISCONNECT);
+        var router = NetContext.getRouter();
+        var session = session();
+        setWritable(false);
+
+        router.send(session, "critical", SendGuarantee.CRITICAL);
+        Assert.assertEquals(List.of("critical"), readPackets());
+        Assert.assertTrue(channel.isActive());
+
+        router.send(session, "normal", SendGuarantee.NORMAL);
+        Assert.assertTrue(readPackets().isEmpty());
+        Assert.assertFalse(channel.isActive());
+    }
+
+}
@@ -15,22 +15,27 @@ package com.zfoo.net.router;
 import com.zfoo.event.manager.EventBus;
 import com.zfoo.net.router.attachment.SignalAttachment;
 import com.zfoo.scheduler.util.TimeUtils;
+import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author godotg
  */
-@Ignore
 public class SignalBridgeTest {
 
     private final int executorSize = Runtime.getRuntime().availableProcessors() * 2;
     private final int count = 100_0000;
     private final int totalIndex = 10;
 
+    @Ignore
     @Test
     public void test() throws InterruptedException {
         for (int i = 0; i < 10; i++) {
@@ -74,4 +79,101 @@ public class SignalBridgeTest {
         }
     }
 
+    /**
+     * 记录complete被调用的次数
+     */
+    private static class CountingFuture extends CompletableFuture<Object> {
+        private final AtomicInteger completeCount = new AtomicInteger(0);
+
+        @Override
+        public boolean complete(Object value) {
+            completeCount.incrementAndGet();
+            return super.complete(value);
+        }
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        var signalAttachment = new SignalAttachment();
+        var startTime = System.nanoTime();
+        SignalBridge.addTimeoutSignalAttachment(signalAttachment);
+
+        // 没有应答的请求在DEFAULT_TIMEOUT之后使用null完成，asyncAsk会把null转换为NetTimeOutException
+        var answer = signalAttachment.getResponseFuture().get(Router.DEFAULT_TIMEOUT * 2, TimeUnit.MILLISECONDS);
+        var elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        Assert.assertNull(answer);
+        Assert.assertTrue(elapsed >= Router.DEFAULT_TIMEOUT);
+        Assert.assertNull(SignalBridge.removeSignalAttachment(signalAttachment));
+    }
+
+    @Test
+    public void answeredTest() throws Exception {
+        var signalAttachment = new SignalAttachment();
+        var responseFuture = new CountingFuture();
+        signalAttachment.setResponseFuture(responseFuture);
+        SignalBridge.addTimeoutSignalAttachment(signalAttachment);
+
+        // 收到应答的线程移除attachment之后完成
+        var answer = new Object();
+        Assert.assertSame(signalAttachment, SignalBridge.removeSignalAttachment(signalAttachment));
+        responseFuture.complete(answer);
+
+        // 时间轮到期之后不会再次完成
+        Thread.sleep(Router.DEFAULT_TIMEOUT * 2);
+        Assert.assertEquals(1, responseFuture.completeCount.get());
+        Assert.assertSame(answer, responseFuture.get());
+    }
+
+    @Test
+    public void removeRaceTest() throws Exception {
+        var barrier = new CyclicBarrier(2);
+        var claimed = new AtomicInteger(0);
+        for (var i = 0; i < 1_0000; i++) {
+            var signalAttachment = new SignalAttachment();
+            SignalBridge.addSignalAttachment(signalAttachment);
+            claimed.set(0);
+
+            // 超时线程和收到应答的线程同时移除，只能有一个成功
+            var thread = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                if (SignalBridge.removeSignalAttachment(signalAttachment) != null) {
+                    claimed.incrementAndGet();
+                }
+            });
+            thread.start();
+            barrier.await();
+            if (SignalBridge.removeSignalAttachment(signalAttachment) != null) {
+                claimed.incrementAndGet();
+            }
+            thread.join();
+            Assert.assertEquals(1, claimed.get());
+        }
+    }
+
+    @Test
+    public void statusTest() {
+        var before = SignalBridge.status();
+
+        var arrayAttachment = new SignalAttachment();
+        arrayAttachment.setTimestamp(TimeUtils.currentTimeMillis() - TimeUtils.MILLIS_PER_HOUR);
+        SignalBridge.addTimeoutSignalAttachment(arrayAttachment);
+        // 相同的槽位被占用，保存在map中
+        var mapAttachment = new SignalAttachment();
+        mapAttachment.setSignalId(arrayAttachment.getSignalId() + 65536);
+        SignalBridge.addSignalAttachment(mapAttachment);
+
+        var status = SignalBridge.status();
+        Assert.assertEquals(before.getArrayCount() + 1, status.getArrayCount());
+        Assert.assertEquals(before.getMapCount() + 1, status.getMapCount());
+        Assert.assertEquals(before.getWheelCount() + 1, status.getWheelCount());
+        Assert.assertTrue(status.getOldestAge() >= TimeUtils.MILLIS_PER_HOUR);
+
+        Assert.assertSame(arrayAttachment, SignalBridge.removeSignalAttachment(arrayAttachment));
+        Assert.assertSame(mapAttachment, SignalBridge.removeSignalAttachment(mapAttachment));
+    }
+
 }
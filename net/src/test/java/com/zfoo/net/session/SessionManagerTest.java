@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.session;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author godotg
+ */
+public class SessionManagerTest {
+
+    @Test
+    public void uidIndexTest() {
+        var sessionManager = new SessionManager();
+        var session = new Session(new EmbeddedChannel());
+        // 登录之前设置的uid在加入的时候建立索引
+        session.setUid(1);
+        sessionManager.addServerSession(session);
+        Assert.assertSame(session, sessionManager.getServerSessionByUid(1));
+
+        session.setUid(2);
+        Assert.assertNull(sessionManager.getServerSessionByUid(1));
+        Assert.assertSame(session, sessionManager.getServerSessionByUid(2));
+
+        // 同一个uid重复登录，索引指向最新的Session，旧的Session断开的时候不会删除新的索引
+        var newSession = new Session(new EmbeddedChannel());
+        sessionManager.addServerSession(newSession);
+        newSession.setUid(2);
+        Assert.assertSame(newSession, sessionManager.getServerSessionByUid(2));
+        sessionManager.removeServerSession(session);
+        Assert.assertSame(newSession, sessionManager.getServerSessionByUid(2));
+        Assert.assertFalse(session.getChannel().isOpen());
+
+        // 断开之后再修改uid不会影响索引
+        sessionManager.removeServerSession(newSession);
+        Assert.assertNull(sessionManager.getServerSessionByUid(2));
+        newSession.setUid(3);
+        Assert.assertNull(sessionManager.getServerSessionByUid(3));
+        Assert.assertEquals(0, sessionManager.serverSessionSize());
+    }
+
+    @Test
+    public void forEachParallelTest() {
+        var sessionManager = new SessionManager();
+        var num = 1000;
+        for (var i = 0; i < num; i++) {
+            sessionManager.addServerSession(new Session(new EmbeddedChannel()));
+        }
+        var count = new AtomicInteger();
+        sessionManager.forEachServerSessionParallel(it -> count.incrementAndGet());
+        Assert.assertEquals(num, count.get());
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.session;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.local.LocalChannel;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author godotg
+ */
+public class SessionTest {
+
+    /**
+     * 记录写入和flush的消息，只在event loop中访问
+     */
+    private static class FlushRecorder extends ChannelOutboundHandlerAdapter {
+        private final List<Object> written = new ArrayList<>();
+        private final List<Object> flushed = new ArrayList<>();
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            written.add(msg);
+            promise.setSuccess();
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            flushed.addAll(written);
+            written.clear();
+        }
+    }
+
+    @Test
+    public void writeAndFlushLaterTest() throws Exception {
+        var group = new DefaultEventLoopGroup(1);
+        try {
+            var recorder = new FlushRecorder();
+            var channel = new Bootstrap().group(group).channel(LocalChannel.class).handler(recorder).register().sync().channel();
+            var session = new Session(channel);
+
+            var threadNum = 8;
+            var writeNum = 10000;
+            var latch = new CountDownLatch(threadNum);
+            for (var i = 0; i < threadNum; i++) {
+                new Thread(() -> {
+                    for (var j = 0; j < writeNum; j++) {
+                        session.writeAndFlushLater(j, 0);
+                    }
+                    latch.countDown();
+                }).start();
+            }
+            latch.await();
+
+            // 所有线程写完之后，不需要再次写入或者手动flush，所有的消息都应该被flush
+            channel.eventLoop().submit(() -> {
+            }).sync();
+            channel.eventLoop().submit(() -> {
+                Assert.assertTrue(recorder.written.isEmpty());
+                Assert.assertEquals(threadNum * writeNum, recorder.flushed.size());
+            }).sync();
+            channel.close().sync();
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.task;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author godotg
+ */
+public class VirtualTaskBusTest {
+
+    private static final int KEY_NUM = 100;
+    private static final int TASK_NUM = 2000;
+
+    @Test
+    public void orderTest() throws InterruptedException {
+        // 只在邮箱中访问，同一个key的任务串行执行，不需要同步
+        var sequences = new int[KEY_NUM];
+        var running = new AtomicBoolean[KEY_NUM];
+        for (var i = 0; i < KEY_NUM; i++) {
+            running[i] = new AtomicBoolean(false);
+        }
+        var outOfOrder = new AtomicInteger(0);
+        var overlapped = new AtomicInteger(0);
+        var latch = new CountDownLatch(KEY_NUM * TASK_NUM);
+
+        // 多个线程提交，同一个key只由一个线程按顺序提交
+        var submitters = new Thread[4];
+        for (var t = 0; t < submitters.length; t++) {
+            var submitter = t;
+            submitters[t] = new Thread(() -> {
+                for (var i = 0; i < TASK_NUM; i++) {
+                    for (var key = submitter; key < KEY_NUM; key += submitters.length) {
+                        var k = key;
+                        var expected = i;
+                        VirtualTaskBus.execute(k, () -> {
+                            if (!running[k].compareAndSet(false, true)) {
+                                overlapped.incrementAndGet();
+                            }
+                            if (sequences[k] != expected) {
+                                outOfOrder.incrementAndGet();
+                            }
+                            sequences[k] = expected + 1;
+                            running[k].set(false);
+                            latch.countDown();
+                        });
+                    }
+                }
+            });
+            submitters[t].start();
+        }
+
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, outOfOrder.get());
+        Assert.assertEquals(0, overlapped.get());
+    }
+
+    @Test
+    public void blockingTest() throws InterruptedException {
+        var blocked = new CountDownLatch(1);
+        var other = new CountDownLatch(1);
+        var next = new CountDownLatch(1);
+        // 一个key阻塞，不影响其它key，阻塞的key后面的任务等待
+        VirtualTaskBus.execute(1, () -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        VirtualTaskBus.execute(1, next::countDown);
+        VirtualTaskBus.execute(2, other::countDown);
+
+        Assert.assertTrue(other.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(next.await(100, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+        Assert.assertTrue(next.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void attachmentTest() throws InterruptedException {
+        var attachments = new Object[3];
+        var latch = new CountDownLatch(1);
+        Assert.assertFalse(VirtualTaskBus.isMailboxThread());
+        VirtualTaskBus.execute(3, () -> {
+            Assert.assertTrue(VirtualTaskBus.isMailboxThread());
+            VirtualTaskBus.setCurrentAttachment("attachment");
+            attachments[0] = VirtualTaskBus.currentAttachment();
+        });
+        // attachment只属于设置它的任务，下一个任务开始的时候已经被清除
+        VirtualTaskBus.execute(3, () -> {
+            attachments[1] = VirtualTaskBus.currentAttachment();
+            latch.countDown();
+        });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals("attachment", attachments[0]);
+        Assert.assertNull(attachments[1]);
+
+        // 不在邮箱中执行的时候没有任何作用
+        VirtualTaskBus.setCurrentAttachment("attachment");
+        Assert.assertNull(VirtualTaskBus.currentAttachment());
+    }
+
+    @Test
+    public void rejectedTest() throws InterruptedException {
+        Executor rejectedExecutor = runnable -> {
+            throw new RejectedExecutionException();
+        };
+        var rejected = new AtomicInteger(0);
+        Assert.assertThrows(RejectedExecutionException.class, () -> VirtualTaskBus.execute(rejectedExecutor, 4, rejected::incrementAndGet));
+
+        // 被拒绝的邮箱已经移除，这个key后面的任务依然可以执行
+        var latch = new CountDownLatch(1);
+        VirtualTaskBus.execute(4, latch::countDown);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, rejected.get());
+    }
+
+}
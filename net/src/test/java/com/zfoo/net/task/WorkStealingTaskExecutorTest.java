@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.net.task;
+
+import io.netty.channel.DefaultEventLoop;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author godotg
+ */
+public class WorkStealingTaskExecutorTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkStealingTaskExecutorTest.class);
+
+    private static final int KEY_NUM = 100;
+    private static final int TASK_NUM = 2000;
+
+    @Test
+    public void orderTest() throws InterruptedException {
+        var executor = new WorkStealingTaskExecutor(4, 1000, BackPressurePolicy.BLOCK);
+        var sequences = new int[KEY_NUM];
+        var outOfOrder = new AtomicInteger(0);
+        var latch = new CountDownLatch(KEY_NUM * TASK_NUM);
+        for (var i = 0; i < TASK_NUM; i++) {
+            for (var key = 0; key < KEY_NUM; key++) {
+                var taskKey = key;
+                var sequence = i;
+                executor.execute(taskKey, () -> {
+                    if (sequences[taskKey] != sequence) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    sequences[taskKey] = sequence + 1;
+                    // key为0的任务是热点任务，其它线程会窃取和它在同一个线程的任务
+                    if (taskKey == 0) {
+                        var startTime = System.nanoTime();
+                        while (System.nanoTime() - startTime < 20_000) {
+                        }
+                    }
+                    latch.countDown();
+                });
+            }
+        }
+        latch.await(1, TimeUnit.MINUTES);
+        executor.status();
+
+        Assert.assertEquals(0, latch.getCount());
+        Assert.assertEquals(0, outOfOrder.get());
+        Assert.assertEquals(0, executor.pendingTasks());
+        Assert.assertEquals(0, executor.hotKeys(1).get(0).getTaskExecutorHash());
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void hotKeyTest() throws InterruptedException {
+        var executor = new WorkStealingTaskExecutor(1, 0, BackPressurePolicy.BLOCK);
+        var hotKey = 10000;
+        var latch = new CountDownLatch(KEY_NUM + TASK_NUM);
+        // 先让冷key占满热点key的记录，热点key之后才出现，需要通过采样替换进入记录
+        for (var key = 0; key < KEY_NUM; key++) {
+            executor.execute(key, latch::countDown);
+        }
+        for (var i = 0; i < TASK_NUM; i++) {
+            executor.execute(hotKey, () -> {
+                var startTime = System.nanoTime();
+                while (System.nanoTime() - startTime < 10_000) {
+                }
+                latch.countDown();
+            });
+        }
+        latch.await(1, TimeUnit.MINUTES);
+
+        Assert.assertEquals(0, latch.getCount());
+        Assert.assertEquals(0, executor.pendingTasks());
+        Assert.assertEquals(hotKey, executor.hotKeys(1).get(0).getTaskExecutorHash());
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void abortTest() throws InterruptedException {
+        var executor = new WorkStealingTaskExecutor(1, 2, BackPressurePolicy.ABORT);
+        var latch = new CountDownLatch(1);
+        try {
+            executor.execute(1, () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    logger.error("interrupted", e);
+                }
+            });
+            // 等待第一个任务开始执行，队列中最多只能排队2个任务
+            while (executor.pendingTasks() > 0) {
+                Thread.sleep(1);
+            }
+            executor.execute(1, () -> {});
+            executor.execute(1, () -> {});
+            executor.execute(1, () -> {});
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void blockInEventLoopTest() throws Exception {
+        var executor = new WorkStealingTaskExecutor(1, 2, BackPressurePolicy.BLOCK);
+        var eventLoop = new DefaultEventLoop();
+        var latch = new CountDownLatch(1);
+        try {
+            executor.execute(1, () -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    logger.error("interrupted", e);
+                }
+            });
+            while (executor.pendingTasks() > 0) {
+                Thread.sleep(1);
+            }
+            // 队列满了之后netty的io线程不会阻塞，超出的任务被丢弃
+            eventLoop.submit(() -> {
+                for (var i = 0; i < 5; i++) {
+                    executor.execute(1, () -> {});
+                }
+            }).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(2, executor.pendingTasks());
+            Assert.assertEquals(3, executor.discardedTasks());
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+            eventLoop.shutdownGracefully();
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.net.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author godotg
+ */
+public class HashUtilsTest {
+
+    /**
+     * long的fnvHash不创建字符串，结果需要和对应的十进制字符串的fnvHash一致
+     */
+    @Test
+    public void fnvHashLongTest() {
+        for (var i = -100_0000L; i < 100_0000L; i++) {
+            Assert.assertEquals(HashUtils.fnvHash((Object) String.valueOf(i)), HashUtils.fnvHash(i));
+        }
+        Assert.assertEquals(HashUtils.fnvHash((Object) String.valueOf(Long.MIN_VALUE)), HashUtils.fnvHash(Long.MIN_VALUE));
+        Assert.assertEquals(HashUtils.fnvHash((Object) String.valueOf(Long.MAX_VALUE)), HashUtils.fnvHash(Long.MAX_VALUE));
+    }
+
+}
@@ -24,6 +24,8 @@ import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
 import com.zfoo.protocol.exception.RunException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -73,6 +75,17 @@ public abstract class JsonUtils {
         }
     }
 
+    /**
+     * 直接从输入流中读取json，不会生成中间的字符串和字节数组
+     */
+    public static <T> T inputStream2Object(InputStream inputStream, Class<T> clazz) {
+        try {
+            return MAPPER.readValue(inputStream, clazz);
+        } catch (Exception e) {
+            throw new RunException("将json输入流转换为对象[class:{}]时异常", clazz, e);
+        }
+    }
+
     //普通输出
     public static String object2String(Object object) {
         try {
@@ -82,6 +95,17 @@ public abstract class JsonUtils {
         }
     }
 
+    /**
+     * 直接把json写入到输出流，不会生成中间的字符串和字节数组
+     */
+    public static void object2OutputStream(OutputStream outputStream, Object object) {
+        try {
+            MAPPER.writeValue(outputStream, object);
+        } catch (Exception e) {
+            throw new RunException("将对象[object:{}]转换为json字符串时异常", object, e);
+        }
+    }
+
     // 格式化/美化/优雅的输出
     public static String object2StringPrettyPrinter(Object object) {
         try {
@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.protocol.util;
+
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EN: A single thread executor backed by a lock-free multi-producer single-consumer array queue (the JCTools queue shaded in netty),
+ * it replaces Executors.newSingleThreadExecutor() and Executors.newSingleThreadScheduledExecutor() in TaskBus, EventBus and SchedulerBus.
+ * Compared with the LinkedBlockingQueue, execute() takes no lock and allocates no queue node, the consumer thread drains the tasks in batches
+ * and only the idle consumer thread needs to be unparked.
+ * CN: 基于无锁的多生产者单消费者数组队列（netty中的JCTools队列）的单线程执行器，用来代替TaskBus，EventBus和SchedulerBus中的
+ * Executors.newSingleThreadExecutor()和Executors.newSingleThreadScheduledExecutor()。
+ * 和LinkedBlockingQueue相比，execute()不需要加锁也不需要为每个任务分配链表节点，消费线程批量执行任务，只有消费线程空闲的时候才需要唤醒。
+ *
+ * @author godotg
+ */
+public class MpscSingleThreadExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MpscSingleThreadExecutor.class);
+
+    public enum IdleStrategy {
+        /**
+         * EN: Park the thread immediately when there are no tasks, the default strategy
+         * CN: 没有任务的时候立刻挂起线程，默认的策略
+         */
+        PARK,
+
+        /**
+         * EN: Spin and yield for a while before parking, lower latency but more cpu usage
+         * CN: 挂起线程之前先自旋和让出cpu一段时间，延迟更低但是会消耗更多的cpu
+         */
+        SPIN_THEN_PARK;
+
+        /**
+         * EN: Can be changed by the jvm argument -Dzfoo.executor.idle-strategy=SPIN_THEN_PARK
+         * CN: 可以通过jvm参数-Dzfoo.executor.idle-strategy=SPIN_THEN_PARK修改
+         */
+        public static final IdleStrategy DEFAULT = valueOf(System.getProperty("zfoo.executor.idle-strategy", PARK.name()));
+    }
+
+    // 一次最多连续执行的任务数量，执行完一批之后检查定时任务
+    private static final int DRAIN_BATCH = 1024;
+
+    private static final int SPIN_TIMES = 100;
+    private static final int YIELD_TIMES = 10;
+
+    // 没有定时任务时的最长挂起时间
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int ST_NOT_STARTED = 0;
+    private static final int ST_STARTED = 1;
+    private static final int ST_SHUTDOWN = 2;
+    private static final int ST_STOP = 3;
+    private static final int ST_TERMINATED = 4;
+
+    private final ThreadFactory threadFactory;
+
+    private final IdleStrategy idleStrategy;
+
+    private final Queue<Runnable> taskQueue = PlatformDependent.newMpscQueue();
+
+    /**
+     * 只会在消费线程中访问
+     */
+    private final PriorityQueue<ScheduledTask<?>> scheduledTaskQueue = new PriorityQueue<>();
+
+    private final AtomicInteger state = new AtomicInteger(ST_NOT_STARTED);
+
+    private final AtomicLong scheduledSequence = new AtomicLong(0);
+
+    private final CountDownLatch terminationLatch = new CountDownLatch(1);
+
+    /**
+     * 设置了ST_TERMINATED之后，消费线程和生产者都可能需要取出队列中剩余的任务，用这个锁保证队列依然只有一个消费者
+     */
+    private final Object drainLock = new Object();
+
+    private volatile Thread thread;
+
+    // 消费线程是否挂起，生产者只在消费线程挂起的时候才唤醒
+    private volatile boolean parked = false;
+
+    public MpscSingleThreadExecutor(ThreadFactory threadFactory) {
+        this(threadFactory, IdleStrategy.DEFAULT);
+    }
+
+    public MpscSingleThreadExecutor(ThreadFactory threadFactory, IdleStrategy idleStrategy) {
+        this.threadFactory = threadFactory;
+        this.idleStrategy = idleStrategy;
+    }
+
+    private class ScheduledTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private final long sequence = scheduledSequence.getAndIncrement();
+        private long deadlineNanos;
+        /**
+         * 0表示只执行一次，大于0表示固定频率，小于0表示固定延迟
+         */
+        private final long periodNanos;
+
+        private ScheduledTask(Runnable runnable, V result, long deadlineNanos, long periodNanos) {
+            super(runnable, result);
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        private ScheduledTask(Callable<V> callable, long deadlineNanos) {
+            super(callable);
+            this.deadlineNanos = deadlineNanos;
+            this.periodNanos = 0;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodNanos != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (this == other) {
+                return 0;
+            }
+            if (other instanceof ScheduledTask<?> that) {
+                var diff = deadlineNanos - that.deadlineNanos;
+                if (diff != 0) {
+                    return diff < 0 ? -1 : 1;
+                }
+                return sequence < that.sequence ? -1 : 1;
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+                return;
+            }
+            if (runAndReset() && state.get() < ST_SHUTDOWN) {
+                deadlineNanos = periodNanos > 0 ? deadlineNanos + periodNanos : System.nanoTime() - periodNanos;
+                scheduledTaskQueue.add(this);
+            }
+        }
+    }
+
+    // -------------------------------------------consumer thread-------------------------------------------
+    private void startThread() {
+        if (state.get() == ST_NOT_STARTED && state.compareAndSet(ST_NOT_STARTED, ST_STARTED)) {
+            var newThread = threadFactory.newThread(this::run);
+            thread = newThread;
+            newThread.start();
+        }
+    }
+
+    private void run() {
+        try {
+            var idleCount = 0;
+            while (state.get() < ST_STOP) {
+                var count = runTasks();
+                count += runScheduledTasks();
+                if (count > 0) {
+                    idleCount = 0;
+                    continue;
+                }
+                if (state.get() >= ST_SHUTDOWN) {
+                    break;
+                }
+                idle(idleCount++);
+            }
+        } finally {
+            synchronized (drainLock) {
+                var stopped = state.get() >= ST_STOP;
+                state.set(ST_TERMINATED);
+                // 和shutdown()并发的execute()可能在最后一次检查队列之后才放入任务，设置ST_TERMINATED之前放入的任务在这里处理，
+                // shutdown()之后已经接受的任务依然执行，shutdownNow()之后则取消；设置ST_TERMINATED之后放入的任务由execute()自己拒绝
+                Runnable task;
+                while ((task = taskQueue.poll()) != null) {
+                    if (stopped || task instanceof ScheduledTask) {
+                        cancel(task);
+                    } else {
+                        safeRun(task);
+                    }
+                }
+            }
+            scheduledTaskQueue.forEach(it -> it.cancel(false));
+            scheduledTaskQueue.clear();
+            terminationLatch.countDown();
+        }
+    }
+
+    private int runTasks() {
+        var count = 0;
+        Runnable task;
+        // shutdownNow()之后不再执行剩余的任务
+        while (count < DRAIN_BATCH && state.get() < ST_STOP && (task = taskQueue.poll()) != null) {
+            // 其它线程提交的定时任务先放入任务队列，再由消费线程放入定时任务队列
+            if (task instanceof ScheduledTask) {
+                scheduledTaskQueue.add((ScheduledTask<?>) task);
+            } else {
+                safeRun(task);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private int runScheduledTasks() {
+        var count = 0;
+        var now = System.nanoTime();
+        ScheduledTask<?> scheduledTask;
+        while ((scheduledTask = scheduledTaskQueue.peek()) != null && scheduledTask.deadlineNanos - now <= 0) {
+            scheduledTaskQueue.poll();
+            if (!scheduledTask.isCancelled()) {
+                safeRun(scheduledTask);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void idle(int idleCount) {
+        if (idleStrategy == IdleStrategy.SPIN_THEN_PARK) {
+            if (idleCount < SPIN_TIMES) {
+                Thread.onSpinWait();
+                return;
+            }
+            if (idleCount < SPIN_TIMES + YIELD_TIMES) {
+                Thread.yield();
+                return;
+            }
+        }
+
+        var parkNanos = MAX_PARK_NANOS;
+        var scheduledTask = scheduledTaskQueue.peek();
+        if (scheduledTask != null) {
+            parkNanos = Math.min(parkNanos, scheduledTask.deadlineNanos - System.nanoTime());
+            if (parkNanos <= 0) {
+                return;
+            }
+        }
+
+        // 先设置parked再检查一次队列，和wakeup()配合避免丢失唤醒
+        parked = true;
+        try {
+            if (taskQueue.isEmpty() && state.get() < ST_SHUTDOWN) {
+                LockSupport.parkNanos(this, parkNanos);
+            }
+        } finally {
+            parked = false;
+        }
+    }
+
+    private void safeRun(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            logger.error("unknown exception", e);
+        } catch (Throwable t) {
+            logger.error("unknown error", t);
+        }
+    }
+
+    private void cancel(Runnable task) {
+        if (task instanceof Future<?>) {
+            ((Future<?>) task).cancel(false);
+        } else {
+            logger.warn("[{}] is terminated, task [{}] is discarded", this, task);
+        }
+    }
+
+    /**
+     * 执行器已经终止，取出队列中剩余的任务，返回true表示task还在队列中，需要拒绝
+     */
+    private boolean rejectRemainingTasks(Runnable task) {
+        var rejected = false;
+        synchronized (drainLock) {
+            Runnable remainingTask;
+            while ((remainingTask = taskQueue.poll()) != null) {
+                if (remainingTask == task) {
+                    rejected = true;
+                } else {
+                    cancel(remainingTask);
+                }
+            }
+        }
+        return rejected;
+    }
+
+    private void wakeup() {
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean inExecutorThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * 排队中的任务数量，不包括定时任务
+     */
+    public int pendingTasks() {
+        return taskQueue.size();
+    }
+
+    // -------------------------------------------ExecutorService-------------------------------------------
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (state.get() >= ST_SHUTDOWN) {
+            throw new RejectedExecutionException(StringUtils.format("[{}] has been shutdown", this));
+        }
+        taskQueue.offer(task);
+        if (state.get() == ST_NOT_STARTED) {
+            startThread();
+        } else {
+            wakeup();
+        }
+        // 放入任务的同时执行器被关闭了，消费线程可能已经退出，需要再检查一次
+        if (state.get() == ST_TERMINATED && rejectRemainingTasks(task)) {
+            throw new RejectedExecutionException(StringUtils.format("[{}] has been shutdown", this));
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        while (true) {
+            var oldState = state.get();
+            if (oldState >= ST_SHUTDOWN) {
+                return;
+            }
+            // 没有启动的执行器直接终止，并发放入的任务由execute()自己拒绝
+            if (state.compareAndSet(oldState, oldState == ST_NOT_STARTED ? ST_TERMINATED : ST_SHUTDOWN)) {
+                if (oldState == ST_NOT_STARTED) {
+                    terminationLatch.countDown();
+                } else {
+                    LockSupport.unpark(thread);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 队列只能有一个消费者，消费线程还在运行的时候剩余的任务由消费线程取消，返回空的列表
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        while (true) {
+            var oldState = state.get();
+            if (oldState >= ST_STOP) {
+                return new ArrayList<>();
+            }
+            if (state.compareAndSet(oldState, oldState == ST_NOT_STARTED ? ST_TERMINATED : ST_STOP)) {
+                if (oldState != ST_NOT_STARTED) {
+                    LockSupport.unpark(thread);
+                    return new ArrayList<>();
+                }
+                terminationLatch.countDown();
+                var tasks = new ArrayList<Runnable>();
+                synchronized (drainLock) {
+                    Runnable task;
+                    while ((task = taskQueue.poll()) != null) {
+                        tasks.add(task);
+                    }
+                }
+                return tasks;
+            }
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return state.get() >= ST_SHUTDOWN;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return state.get() == ST_TERMINATED;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (inExecutorThread()) {
+            throw new IllegalStateException("can not await termination in the executor thread");
+        }
+        return terminationLatch.await(timeout, unit);
+    }
+
+    // -------------------------------------------ScheduledExecutorService-------------------------------------------
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<Void>(command, null, deadlineNanos(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new ScheduledTask<>(callable, deadlineNanos(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException(StringUtils.format("period [{}] must be positive", period));
+        }
+        return schedule(new ScheduledTask<Void>(command, null, deadlineNanos(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException(StringUtils.format("delay [{}] must be positive", delay));
+        }
+        return schedule(new ScheduledTask<Void>(command, null, deadlineNanos(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    private long deadlineNanos(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+    }
+
+    private <V> ScheduledFuture<V> schedule(ScheduledTask<V> scheduledTask) {
+        // 定时任务队列只在消费线程中修改
+        if (inExecutorThread()) {
+            scheduledTaskQueue.add(scheduledTask);
+        } else {
+            execute(scheduledTask);
+        }
+        return scheduledTask;
+    }
+
+}
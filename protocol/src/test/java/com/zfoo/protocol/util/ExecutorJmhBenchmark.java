@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+package com.zfoo.protocol.util;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比TaskBus，EventBus，SchedulerBus原来使用的Executors.newSingleThreadExecutor()和MpscSingleThreadExecutor，多个生产者向一个单线程执行器提交任务
+ *
+ * @author godotg
+ */
+@Ignore
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class ExecutorJmhBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"JDK", "MPSC_PARK", "MPSC_SPIN_THEN_PARK"})
+    public String executorType;
+
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = switch (executorType) {
+            case "MPSC_PARK" -> new MpscSingleThreadExecutor(Executors.defaultThreadFactory(), MpscSingleThreadExecutor.IdleStrategy.PARK);
+            case "MPSC_SPIN_THEN_PARK" -> new MpscSingleThreadExecutor(Executors.defaultThreadFactory(), MpscSingleThreadExecutor.IdleStrategy.SPIN_THEN_PARK);
+            default -> Executors.newSingleThreadExecutor();
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ThreadUtils.shutdown(executor);
+    }
+
+    /**
+     * 每次提交BATCH_SIZE个任务，等待所有任务执行完成
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void execute() throws InterruptedException {
+        var latch = new CountDownLatch(BATCH_SIZE);
+        for (var i = 0; i < BATCH_SIZE; i++) {
+            executor.execute(latch::countDown);
+        }
+        latch.await();
+    }
+
+    @Test
+    public void test() throws RunnerException {
+        // upload jmh-result.json to the following website in order to generate chart
+        // https://deepoove.com/jmh-visual-chart/
+        Options opt = new OptionsBuilder()
+                .include(ExecutorJmhBenchmark.class.getSimpleName())
+                .resultFormat(ResultFormatType.JSON)
+                .forks(1)
+                .build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 The zfoo Authors
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package com.zfoo.protocol.util;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author godotg
+ */
+public class MpscSingleThreadExecutorTest {
+
+    @Test
+    public void executeTest() throws Exception {
+        var executor = new MpscSingleThreadExecutor(new DefaultThreadFactory("mpsc-test", true));
+        var future = executor.submit(() -> 1);
+        Assert.assertEquals(1, (int) future.get(5, TimeUnit.SECONDS));
+
+        var scheduled = executor.schedule(() -> 2, 10, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, (int) scheduled.get(5, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 和shutdown()并发提交的任务，要么被拒绝，要么被执行或者取消，不会留下永远不会完成的future
+     */
+    @Test
+    public void shutdownRaceTest() throws Exception {
+        var submitterNum = 4;
+        for (var round = 0; round < 200; round++) {
+            var executor = new MpscSingleThreadExecutor(new DefaultThreadFactory("mpsc-test", true));
+            var futures = new ConcurrentLinkedQueue<Future<?>>();
+            var rejected = new AtomicInteger();
+            var start = new CountDownLatch(1);
+            var submitters = new ArrayList<Thread>();
+            for (var i = 0; i < submitterNum; i++) {
+                var submitter = new Thread(() -> {
+                    try {
+                        start.await();
+                        while (true) {
+                            futures.add(executor.submit(() -> {
+                            }));
+                        }
+                    } catch (RejectedExecutionException e) {
+                        rejected.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                submitter.start();
+                submitters.add(submitter);
+            }
+            start.countDown();
+            Thread.sleep(1);
+            executor.shutdown();
+            for (var submitter : submitters) {
+                submitter.join(5000);
+            }
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertEquals(submitterNum, rejected.get());
+            for (var future : futures) {
+                Assert.assertTrue(future.isDone());
+            }
+        }
+    }
+
+    @Test
+    public void shutdownNowTest() throws Exception {
+        var executor = new MpscSingleThreadExecutor(new DefaultThreadFactory("mpsc-test", true));
+        var latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (var i = 0; i < 10; i++) {
+            futures.add(executor.submit(() -> {
+            }));
+        }
+        executor.shutdownNow();
+        latch.countDown();
+        Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        // 没有执行的任务被取消
+        for (var future : futures) {
+            Assert.assertTrue(future.isCancelled());
+        }
+    }
+
+}
@@ -14,6 +14,7 @@
 package com.zfoo.scheduler.manager;
 
 import com.zfoo.protocol.collection.CollectionUtils;
+import com.zfoo.protocol.util.MpscSingleThreadExecutor;
 import com.zfoo.protocol.util.StringUtils;
 import com.zfoo.protocol.util.ThreadUtils;
 import com.zfoo.scheduler.SchedulerContext;
@@ -41,7 +42,7 @@ public abstract class SchedulerBus {
     /**
      * scheduler默认只有一个单线程的线程池
      */
-    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new SchedulerThreadFactory(1));
+    private static final ScheduledExecutorService executor = new MpscSingleThreadExecutor(new SchedulerThreadFactory(1));
 
     /**
      * executor创建的线程id号